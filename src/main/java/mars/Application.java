@@ -100,6 +100,19 @@ public class Application {
      * Maximum number of back-step operations to buffer.
      */
     public static final int MAXIMUM_BACKSTEPS = getBackstepLimit();
+    /**
+     * Maximum number of bytes of disk space used to keep back-step operations beyond {@link #MAXIMUM_BACKSTEPS}.
+     */
+    public static final long MAXIMUM_BACKSTEP_SPILL_BYTES = getBackstepSpillLimit();
+    /**
+     * Number of instructions executed between time travel snapshots.
+     */
+    public static final int TIME_TRAVEL_SNAPSHOT_INTERVAL = getTimeTravelInterval();
+    /**
+     * Maximum number of bytes of memory pages and logged input kept by time travel before the oldest snapshots
+     * are discarded.
+     */
+    public static final long MAXIMUM_TIME_TRAVEL_BYTES = getTimeTravelLimit();
     /**
      * Name of properties file used to hold internal configurations.
      */
@@ -226,6 +239,27 @@ public class Application {
         return getConfigInteger("BackstepLimit", 1000);
     }
 
+    /**
+     * Read backstep spill limit (megabytes of disk space for older operations) from properties file.
+     */
+    private static long getBackstepSpillLimit() {
+        return Math.max(0, getConfigInteger("BackstepSpillLimit", 64)) * 1024L * 1024L;
+    }
+
+    /**
+     * Read time travel snapshot interval (number of instructions) from properties file.
+     */
+    private static int getTimeTravelInterval() {
+        return Math.max(1, getConfigInteger("TimeTravelInterval", 100000));
+    }
+
+    /**
+     * Read time travel memory limit (megabytes of saved memory pages) from properties file.
+     */
+    private static long getTimeTravelLimit() {
+        return Math.max(0, getConfigInteger("TimeTravelLimit", 256)) * 1024L * 1024L;
+    }
+
     /**
      * Read ASCII default display character for non-printing characters, from properties file.
      */
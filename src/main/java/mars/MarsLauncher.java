@@ -3,7 +3,26 @@ package mars;
 import mars.mips.dump.DumpFormat;
 import mars.mips.dump.DumpFormatManager;
 import mars.mips.hardware.*;
+import mars.simulator.InputLog;
+import mars.simulator.MidiRecorder;
+import mars.simulator.OutputComparator;
 import mars.simulator.ProgramArgumentList;
+import mars.simulator.ResourceBudget;
+import mars.simulator.ResultCache;
+import mars.simulator.Simulator;
+import mars.simulator.SimulatorFinishEvent;
+import mars.simulator.SimulatorListener;
+import mars.simulator.VirtualClock;
+import mars.simulator.VirtualFileSystem;
+import mars.simulator.branch.BranchPredictorEvaluator;
+import mars.simulator.gdb.GdbServer;
+import mars.simulator.cache.CacheHierarchy;
+import mars.simulator.pipeline.PipelineTimingModel;
+import mars.simulator.profile.CallGraphProfiler;
+import mars.simulator.profile.ExecutionProfiler;
+import mars.simulator.trace.DineroTraceWriter;
+import mars.simulator.trace.ExecutionTraceReader;
+import mars.simulator.trace.ExecutionTracer;
 import mars.util.Binary;
 import mars.util.FilenameFinder;
 import mars.util.MemoryDump;
@@ -12,6 +31,9 @@ import mars.venus.VenusUI;
 
 import javax.swing.*;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.*;
 
 /*
@@ -64,6 +86,31 @@ public class MarsLauncher {
     private boolean startAtMain; // Whether to start execution at statement labeled 'main'
     private boolean countInstructions; // Whether to count and report number of instructions executed
     private boolean selfModifyingCode; // Whether to allow self-modifying code (e.g. write to text segment)
+    private int hartCount; // Number of harts (hardware threads) sharing memory
+    private int hartQuantum; // Number of instructions each hart runs before the next is scheduled
+    private PipelineTimingModel pipelineModel; // Pipeline timing model to run alongside simulation, if any
+    private CacheHierarchy cacheHierarchy; // Cache hierarchy model to run alongside simulation, if any
+    private BranchPredictorEvaluator branchEvaluator; // Branch predictors to evaluate alongside simulation, if any
+    private ExecutionProfiler profiler; // Per-address execution profiler to run alongside simulation, if any
+    private CallGraphProfiler callGraphProfiler; // Function-level profiler to run alongside simulation, if any
+    private Path recordPath; // File to record the program's input to, if any
+    private Path replayPath; // File to replay the program's input from, if any
+    private Path inputPath; // File to provide the program's console input from, if any
+    private byte[] consoleInput; // The program's complete console input, if it was loaded before running
+    private Path expectedOutputPath; // File holding the output the program is expected to produce, if any
+    private OutputComparator outputComparator; // Checker of the program's output against the expected output
+    private VirtualFileSystem fileSystem; // In-memory file system to use for file syscalls instead of the host, if any
+    private boolean virtualTime; // Whether time and sleep syscalls use the simulator's virtual clock instead of the host
+    private MidiRecorder midiRecorder; // Recorder of notes played by the MIDI syscalls instead of the synthesizer, if any
+    private Integer gdbPort; // Loopback port to serve the GDB remote protocol on instead of running, if any
+    private Path tracePath; // File to write a binary execution trace to, if any
+    private ExecutionTracer tracer; // Writer of the execution trace while the program runs
+    private DineroTraceWriter dineroWriter; // Writer of a memory reference trace in Dinero format, if any
+    private ResultCache resultCache; // Cache of results of earlier identical runs to reuse, if any
+    private String resultCacheKey; // Key of the current run in the result cache
+    private ResultCache.OutputCapture outputCapture; // Copy of the output of the current run to store in the cache
+    private SimulatorFinishEvent.Reason finishReason; // Why the current run stopped, to store in the cache
+    private SimulatorListener finishListener; // Observer of the current run which sets finishReason
 
     private int displayFormat;
     private ArrayList<String> registerDisplayList;
@@ -101,28 +148,107 @@ public class MarsLauncher {
      * <li><code>ae&lt;n&gt;</code>  -- Terminate MARS with integer exit code <i>n</i> if an assemble error occurs.
      * <li><code>ascii</code>  -- Display memory or register contents interpreted as ASCII.
      * <li><code>b</code>  -- Brief; do not display register/memory address along with contents.
+     * <li><code>branch</code>, <code>branch:&lt;predictors&gt;</code>  -- Evaluate branch predictors side by side
+     *     alongside simulation and report their accuracy overall and per branch afterward. Predictors are a
+     *     comma-separated list of <code>taken</code>, <code>not-taken</code>, <code>bimodal[=&lt;entries&gt;]</code>,
+     *     <code>gshare[=&lt;entries&gt;/&lt;history bits&gt;]</code>,
+     *     <code>tournament[=&lt;entries&gt;/&lt;history bits&gt;]</code>, and <code>btb[=&lt;entries&gt;]</code>,
+     *     plus <code>top=&lt;n&gt;</code> for the number of branches listed. Without a list, all are evaluated.
+     * <li><code>budget:&lt;limits&gt;</code>  -- Terminate the program if it exceeds any of the given limits, which are
+     *     a comma-separated list of <code>time=&lt;ms&gt;</code> for wall-clock time, <code>output=&lt;bytes&gt;</code>
+     *     for bytes written to the console and files, <code>heap=&lt;bytes&gt;</code> for heap growth, and
+     *     <code>files=&lt;n&gt;</code> for files open at once. The simulation error exit code is returned.
+     * <li><code>cache</code>, <code>cache:&lt;options&gt;</code>  -- Simulate a cache hierarchy (split L1, unified L2)
+     *     alongside simulation and report statistics for each level afterward. Options are a comma-separated list
+     *     of <code>l1i=&lt;geometry&gt;</code>, <code>l1d=&lt;geometry&gt;</code>, <code>l2=&lt;geometry&gt;</code>,
+     *     <code>write=back|through</code>, and <code>allocate=on|off</code>, where a geometry is
+     *     <code>&lt;size&gt;/&lt;block size&gt;/&lt;ways&gt;[/lru|plru|random]</code> or <code>none</code>.
+     * <li><code>callgraph</code>, <code>callgraph:top=&lt;n&gt;</code>  -- Track function calls and returns with a
+     *     shadow call stack and report the call count, exclusive and inclusive instruction counts, and maximum
+     *     recursion depth of each function afterward, listing the <i>n</i> functions with the most inclusive
+     *     instructions.
+     * <li><code>clock</code>, <code>clock:&lt;options&gt;</code>  -- Simulate time instead of using the host clock:
+     *     every instruction takes a fixed time, and sleeps and synchronous MIDI notes advance the time without
+     *     waiting. Options are a comma-separated list of <code>ns=&lt;n&gt;</code> for the nanoseconds per instruction
+     *     and <code>start=&lt;ms&gt;</code> for the time reported at the start, in milliseconds since the Unix epoch.
      * <li><code>d</code>  -- Print debugging statements.
      * <li><code>da</code>, <code>ad</code>  -- Both <code>a</code> and <code>d</code>.
      * <li><code>db</code>  -- Enable delayed branching.
      * <li><code>dec</code>  -- Display memory or register contents in decimal.
+     * <li><code>dinero &lt;file&gt;</code>, <code>dinero:&lt;options&gt; &lt;file&gt;</code>  -- Write every
+     *     instruction fetch, load, and store to a file in the "din" format read by the Dinero IV cache simulator.
+     *     Options are a comma-separated list of <code>range=&lt;low&gt;-&lt;high&gt;</code>, which may be repeated,
+     *     to only write references within the given address ranges, and <code>fetch=off</code> to leave out
+     *     instruction fetches.
      * <li><code>dump &lt;segment&gt; &lt;format&gt; &lt;file&gt;</code>  -- Dump memory contents to file.
      *     Supports an address range (see <code>&lt;m&gt;-&lt;n&gt;</code> below).  Current supported
      *     segments are <code>.text</code> and <code>.data</code>.  Current supported dump formats
      *     are <code>Binary</code>, <code>HexText</code>, <code>BinaryText</code>.
+     * <li><code>expect &lt;file&gt;</code>  -- Compare the program's standard output against the contents of the file
+     *     as it is produced, and terminate the program at the first byte which differs or goes past the end of the
+     *     expected output. The offset of the difference, the output around it, and the number of instructions
+     *     executed are reported, and the simulation error exit code is returned.
+     * <li><code>gdb &lt;port&gt;</code>  -- Instead of running the program, wait for GDB to connect on the given
+     *     loopback TCP port (0 for any free port) and let it control execution through the remote serial protocol,
+     *     e.g. with <code>target remote localhost:&lt;port&gt;</code>. Reverse execution is available.
      * <li><code>h</code>  -- Display help.  Use by itself and with no filename.
+     * <li><code>harts &lt;n&gt;</code>  -- Simulate <i>n</i> harts (hardware threads, 1 to 8) sharing memory,
+     *     interleaved deterministically in round-robin order on the simulator thread, one instruction at a time.
      * <li><code>hex</code>  -- Display memory or register contents in hexadecimal (default).
+     * <li><code>hq &lt;n&gt;</code>  -- Set the number of instructions each hart executes before the next is scheduled
+     *     (default 1).
      * <li><code>ic</code>  -- Display count of MIPS basic instructions 'executed'.
+     * <li><code>input &lt;file&gt;</code>  -- Provide the contents of the file as the program's console input, for both
+     *     the input syscalls and reads from file descriptor 0, instead of reading standard input.
      * <li><code>mc &lt;config&gt;</code>  -- Set memory configuration, where <i>config</i> is <code>Default</code>
      *     for the MARS default 32-bit address space, <code>CompactDataAtZero</code> for
      *     a 32KB address space with data segment at address 0, or <code>CompactTextAtZero</code>
      *     for a 32KB address space with text segment at address 0.
      * <li><code>me</code>  -- Display MARS messages to standard error instead of standard output. Can separate via redirection.
+     * <li><code>midi &lt;file&gt;</code>, <code>midi:&lt;options&gt; &lt;file&gt;</code>  -- Record the notes played by
+     *     the MIDI syscalls to a standard MIDI file instead of playing them, without waiting for synchronous notes.
+     *     This enables the simulated clock of the <code>clock</code> option, which times the notes. The option
+     *     <code>format=text</code> writes one line per note instead, giving its start time in milliseconds, pitch,
+     *     duration, instrument, and volume.
      * <li><code>nc</code>  -- Do not display copyright notice (for cleaner redirected/piped output).
      * <li><code>np</code>, <code>ne</code>  -- No extended instructions (pseudo-instructions) allowed.
      * <li><code>p</code>  -- Project mode; assemble all files in the same directory as given file.
+     * <li><code>pipeline</code>, <code>pipeline:&lt;options&gt;</code>  -- Run a 5-stage pipeline timing model
+     *     alongside simulation and report cycles, CPI, and stalls afterward. Options are a comma-separated list
+     *     of <code>forwarding=on|off</code>, <code>branch=&lt;n&gt;</code>, <code>jump=&lt;n&gt;</code>,
+     *     <code>mult=&lt;n&gt;</code>, and <code>div=&lt;n&gt;</code>.
+     * <li><code>profile</code>, <code>profile:&lt;options&gt;</code>  -- Count every instruction executed and report
+     *     the source lines which executed the most instructions afterward. Options are a comma-separated list of
+     *     <code>top=&lt;n&gt;</code>, <code>annotate=&lt;file&gt;</code> to write source annotated with counts and
+     *     branch outcomes, and <code>flame=&lt;file&gt;</code> to write collapsed stacks for flame graph tools.
+     * <li><code>record &lt;file&gt;</code>  -- Record every non-deterministic value the program receives (input,
+     *     random numbers, the time, file reads, and MMIO keyboard input) to a binary input log file.
+     * <li><code>replay &lt;file&gt;</code>  -- Replay the values recorded by <code>record</code> so the program runs
+     *     exactly as it did when recorded, without waiting for input.
+     * <li><code>results &lt;directory&gt;</code>, <code>results:&lt;options&gt; &lt;directory&gt;</code>  -- Look up
+     *     the result of an identical earlier run in a cache kept in the directory, and if found, repeat its output
+     *     and exit code instead of simulating. Runs are identical if the assembled program, initial memory contents,
+     *     settings which affect execution, program arguments, and input are. The cache is only used when console
+     *     input is given with the <code>input</code> option or standard input is redirected from a regular file,
+     *     which is then read in full before running, as it is part of the input. Otherwise the result is stored, unless the program used the host
+     *     clock, unseeded random numbers, or host files, or reached a time limit. Options which report on anything
+     *     besides the console output disable the cache. Options are a comma-separated list of
+     *     <code>size=&lt;bytes&gt;</code> and <code>age=&lt;days&gt;</code>, which limit the total size of the cache
+     *     and how long an unused result is kept.
      * <li><code>se&lt;n&gt;</code>  -- Terminate MARS with integer exit code <i>n</i> if a simulation error occurs.
      * <li><code>sm</code>  -- Start execution at <code>main</code>. Execution will start at program statement globally labeled <code>main</code>.
      * <li><code>smc</code>  -- Allow self-modifying code. If enabled, the program can write and branch to either text or data segment.
+     * <li><code>trace &lt;file&gt;</code>  -- Write a compact binary trace of every instruction executed, including
+     *     the registers it wrote and the memory it accessed, to a file. The trace is compressed with GZIP if the file
+     *     name ends with <code>.gz</code>.
+     * <li><code>tracetext &lt;trace file&gt; &lt;text file&gt;</code>  -- Convert a trace written by
+     *     <code>trace</code> to text, with one line per instruction.
+     * <li><code>vfs</code>, <code>vfs:&lt;options&gt;</code>  -- Give the file syscalls an in-memory file system
+     *     instead of the host file system, so the program cannot read or modify any host file. Options are a
+     *     comma-separated list of <code>load=&lt;file&gt;</code>, which may be repeated, to preload a copy of a host
+     *     file, <code>quota=&lt;bytes&gt;</code> to limit the total size of all files, and
+     *     <code>save=&lt;directory&gt;</code> to copy the files the program created or modified to a host
+     *     directory afterward.
      * <li><code>we</code>  -- Assembler warnings will be considered errors.
      * <li><code>&lt;n&gt;</code>  -- Set the step limit, where <i>n</i> is the maximum number of steps to simulate.
      *     If 0, negative or not specified, no step limit will be applied.
@@ -160,6 +286,31 @@ public class MarsLauncher {
             startAtMain = false;
             countInstructions = false;
             selfModifyingCode = false;
+            hartCount = 1;
+            hartQuantum = 1;
+            pipelineModel = null;
+            cacheHierarchy = null;
+            branchEvaluator = null;
+            profiler = null;
+            callGraphProfiler = null;
+            recordPath = null;
+            replayPath = null;
+            inputPath = null;
+            consoleInput = null;
+            expectedOutputPath = null;
+            outputComparator = null;
+            fileSystem = null;
+            virtualTime = false;
+            midiRecorder = null;
+            gdbPort = null;
+            tracePath = null;
+            tracer = null;
+            dineroWriter = null;
+            resultCache = null;
+            resultCacheKey = null;
+            outputCapture = null;
+            finishReason = null;
+            finishListener = null;
             instructionCount = 0;
             assembleErrorExitCode = 0;
             simulateErrorExitCode = 0;
@@ -324,6 +475,284 @@ public class MarsLauncher {
                 }
                 continue;
             }
+            if (args[i].equalsIgnoreCase("harts") || args[i].equalsIgnoreCase("hq")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Option " + args[i] + " requires an integer argument.");
+                    argsOK = false;
+                    continue;
+                }
+                String option = args[i];
+                try {
+                    int value = Integer.decode(args[++i]);
+                    if (option.equalsIgnoreCase("harts")) {
+                        if (value < 1 || value > ReservationTable.MAX_HARTS) {
+                            throw new NumberFormatException();
+                        }
+                        hartCount = value;
+                    }
+                    else {
+                        if (value < 1) {
+                            throw new NumberFormatException();
+                        }
+                        hartQuantum = value;
+                    }
+                }
+                catch (NumberFormatException exception) {
+                    out.println("Invalid value for option " + option + ": " + args[i]);
+                    argsOK = false;
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("record") || args[i].equalsIgnoreCase("replay")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Option " + args[i] + " requires a file name.");
+                    argsOK = false;
+                    continue;
+                }
+                if (args[i].equalsIgnoreCase("record")) {
+                    recordPath = Path.of(args[++i]);
+                }
+                else {
+                    replayPath = Path.of(args[++i]);
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("input")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Option input requires a file name.");
+                    argsOK = false;
+                    continue;
+                }
+                inputPath = Path.of(args[++i]);
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("vfs") || args[i].toLowerCase().startsWith("vfs:")) {
+                if (fileSystem == null) {
+                    fileSystem = new VirtualFileSystem();
+                }
+                if (args[i].length() > "vfs:".length()) {
+                    try {
+                        fileSystem.configure(args[i].substring("vfs:".length()));
+                    }
+                    catch (IllegalArgumentException exception) {
+                        out.println("Invalid vfs option: " + exception.getMessage());
+                        argsOK = false;
+                    }
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("clock") || args[i].toLowerCase().startsWith("clock:")) {
+                virtualTime = true;
+                if (args[i].length() > "clock:".length()) {
+                    try {
+                        Simulator.getInstance().getVirtualClock().configure(args[i].substring("clock:".length()));
+                    }
+                    catch (IllegalArgumentException exception) {
+                        out.println("Invalid clock option: " + exception.getMessage());
+                        argsOK = false;
+                    }
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().startsWith("budget:")) {
+                try {
+                    Simulator.getInstance().getResourceBudget().configure(args[i].substring("budget:".length()));
+                }
+                catch (IllegalArgumentException exception) {
+                    out.println("Invalid budget option: " + exception.getMessage());
+                    argsOK = false;
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("expect")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Option expect requires a file name.");
+                    argsOK = false;
+                    continue;
+                }
+                expectedOutputPath = Path.of(args[++i]);
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("trace")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Option trace requires a file name.");
+                    argsOK = false;
+                    continue;
+                }
+                tracePath = Path.of(args[++i]);
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("dinero") || args[i].toLowerCase().startsWith("dinero:")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Option dinero requires a file name.");
+                    argsOK = false;
+                    continue;
+                }
+                String option = args[i];
+                dineroWriter = new DineroTraceWriter(Path.of(args[++i]));
+                if (option.length() > "dinero:".length()) {
+                    try {
+                        dineroWriter.configure(option.substring("dinero:".length()));
+                    }
+                    catch (IllegalArgumentException exception) {
+                        out.println("Invalid dinero option: " + exception.getMessage());
+                        argsOK = false;
+                    }
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("midi") || args[i].toLowerCase().startsWith("midi:")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Option midi requires a file name.");
+                    argsOK = false;
+                    continue;
+                }
+                String option = args[i];
+                midiRecorder = new MidiRecorder(Path.of(args[++i]));
+                if (option.length() > "midi:".length()) {
+                    try {
+                        midiRecorder.configure(option.substring("midi:".length()));
+                    }
+                    catch (IllegalArgumentException exception) {
+                        out.println("Invalid midi option: " + exception.getMessage());
+                        argsOK = false;
+                    }
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("results") || args[i].toLowerCase().startsWith("results:")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Option results requires a directory name.");
+                    argsOK = false;
+                    continue;
+                }
+                String option = args[i];
+                resultCache = new ResultCache(Path.of(args[++i]));
+                if (option.length() > "results:".length()) {
+                    try {
+                        resultCache.configure(option.substring("results:".length()));
+                    }
+                    catch (IllegalArgumentException exception) {
+                        out.println("Invalid results option: " + exception.getMessage());
+                        argsOK = false;
+                    }
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("tracetext")) {
+                if (args.length <= (i + 2)) {
+                    out.println("Option tracetext requires a trace file name and a text file name.");
+                    argsOK = false;
+                    continue;
+                }
+                Path traceFile = Path.of(args[++i]);
+                Path textFile = Path.of(args[++i]);
+                try {
+                    long count = ExecutionTraceReader.convertToText(traceFile, textFile);
+                    out.println("Converted " + count + " instructions from " + traceFile + " to " + textFile);
+                }
+                catch (IOException exception) {
+                    out.println("Unable to convert execution trace " + traceFile + ": " + exception.getMessage());
+                    argsOK = false;
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("gdb")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Option gdb requires a port number.");
+                    argsOK = false;
+                    continue;
+                }
+                try {
+                    gdbPort = Integer.decode(args[++i]);
+                    if (gdbPort < 0 || gdbPort > 0xFFFF) {
+                        throw new NumberFormatException();
+                    }
+                }
+                catch (NumberFormatException exception) {
+                    out.println("Invalid port for option gdb: " + args[i]);
+                    argsOK = false;
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("branch") || args[i].toLowerCase().startsWith("branch:")) {
+                if (branchEvaluator == null) {
+                    branchEvaluator = new BranchPredictorEvaluator();
+                }
+                try {
+                    if (args[i].length() > "branch:".length()) {
+                        branchEvaluator.configure(args[i].substring("branch:".length()));
+                    }
+                    else {
+                        branchEvaluator.addDefaultPredictors();
+                    }
+                }
+                catch (IllegalArgumentException exception) {
+                    out.println("Invalid branch predictor option: " + exception.getMessage());
+                    argsOK = false;
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("cache") || args[i].toLowerCase().startsWith("cache:")) {
+                if (cacheHierarchy == null) {
+                    cacheHierarchy = new CacheHierarchy();
+                }
+                if (args[i].length() > "cache:".length()) {
+                    try {
+                        cacheHierarchy.configure(args[i].substring("cache:".length()));
+                    }
+                    catch (IllegalArgumentException exception) {
+                        out.println("Invalid cache option: " + exception.getMessage());
+                        argsOK = false;
+                    }
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("callgraph") || args[i].toLowerCase().startsWith("callgraph:")) {
+                if (callGraphProfiler == null) {
+                    callGraphProfiler = new CallGraphProfiler();
+                }
+                if (args[i].length() > "callgraph:".length()) {
+                    try {
+                        callGraphProfiler.configure(args[i].substring("callgraph:".length()));
+                    }
+                    catch (IllegalArgumentException exception) {
+                        out.println("Invalid callgraph option: " + exception.getMessage());
+                        argsOK = false;
+                    }
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("profile") || args[i].toLowerCase().startsWith("profile:")) {
+                if (profiler == null) {
+                    profiler = new ExecutionProfiler();
+                }
+                if (args[i].length() > "profile:".length()) {
+                    try {
+                        profiler.configure(args[i].substring("profile:".length()));
+                    }
+                    catch (IllegalArgumentException exception) {
+                        out.println("Invalid profile option: " + exception.getMessage());
+                        argsOK = false;
+                    }
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("pipeline") || args[i].toLowerCase().startsWith("pipeline:")) {
+                if (pipelineModel == null) {
+                    pipelineModel = new PipelineTimingModel();
+                }
+                if (args[i].length() > "pipeline:".length()) {
+                    try {
+                        pipelineModel.configure(args[i].substring("pipeline:".length()));
+                    }
+                    catch (IllegalArgumentException exception) {
+                        out.println("Invalid pipeline option: " + exception.getMessage());
+                        argsOK = false;
+                    }
+                }
+                continue;
+            }
             // Set MARS exit code for assemble error
             if (args[i].toLowerCase().indexOf("ae") == 0) {
                 String s = args[i].substring(2);
@@ -464,6 +893,8 @@ public class MarsLauncher {
         try {
             Application.getSettings().delayedBranchingEnabled.setNonPersistent(delayedBranching);
             Application.getSettings().selfModifyingCodeEnabled.setNonPersistent(selfModifyingCode);
+            Simulator.getInstance().setHartCount(hartCount);
+            Simulator.getInstance().setHartQuantum(hartQuantum);
             File mainFile = new File(filenameList.get(0)).getAbsoluteFile(); // First file is "main" file
             List<String> filesToAssemble;
             if (assembleProject) {
@@ -512,11 +943,32 @@ public class MarsLauncher {
                 if (Application.debug) {
                     out.println("--------  SIMULATION BEGINS  -----------");
                 }
+                if (!loadConsoleInput() || !startOutputComparison() || !startInputLog()) {
+                    return false;
+                }
                 programRan = true;
-                code.simulate(maxSteps);
-                if (maxSteps > 0) {
+                if (resultCache != null && isCacheable()) {
+                    resultCacheKey = computeResultCacheKey();
+                    if (reuseCachedResult()) {
+                        return true;
+                    }
+                    startOutputCapture();
+                }
+                if (gdbPort != null) {
+                    serveGdb();
+                }
+                else {
+                    code.simulate(maxSteps);
+                }
+                if (maxSteps > 0 && gdbPort == null) {
                     out.println("\nProgram terminated after " + maxSteps + " steps.");
                 }
+                stopInputLog();
+                stopTrace();
+                reportOutputComparison();
+                reportBudget();
+                saveVirtualFiles();
+                saveMidi();
             }
             if (Application.debug) {
                 out.println("\n--------  ALL PROCESSING COMPLETE  -----------");
@@ -527,9 +979,347 @@ public class MarsLauncher {
             out.println(exception.getErrors().generateErrorAndWarningReport());
             out.println("Processing terminated due to errors.");
         }
+        if (outputCapture != null) {
+            storeCachedResult();
+        }
         return programRan;
     }
 
+    /**
+     * Let GDB control execution of the program through the remote serial protocol, if requested on the
+     * command line. Time travel is enabled so GDB can execute in reverse.
+     */
+    private void serveGdb() {
+        Simulator.getInstance().getTimeTravel().setEnabled(true);
+        try {
+            new GdbServer(code, out).serve(gdbPort);
+        }
+        catch (IOException exception) {
+            out.println("GDB connection failed: " + exception.getMessage());
+            Application.exitCode = simulateErrorExitCode;
+        }
+    }
+
+    /**
+     * Load the program's console input from a file, if requested on the command line. If the result may be taken
+     * from the result cache, the input is read from standard input beforehand instead, since it is part of the key.
+     *
+     * @return <code>true</code> if successful, or <code>false</code> if the input could not be read.
+     */
+    private boolean loadConsoleInput() {
+        try {
+            if (inputPath != null) {
+                consoleInput = Files.readAllBytes(inputPath);
+            }
+            else if (resultCache != null && isCacheable()) {
+                consoleInput = System.in.readAllBytes();
+            }
+            else {
+                return true;
+            }
+        }
+        catch (IOException exception) {
+            out.println("Unable to read console input: " + exception.getMessage());
+            Application.exitCode = simulateErrorExitCode;
+            return false;
+        }
+        Simulator.getInstance().getSystemIO().setConsoleInput(consoleInput);
+        return true;
+    }
+
+    /**
+     * Determine whether standard input is known to be redirected from a regular file, so that reading it in full
+     * cannot wait for a user. Pipes and terminals, or systems where this cannot be determined, count as not.
+     *
+     * @return <code>true</code> if standard input is a regular file, or <code>false</code> otherwise.
+     */
+    private static boolean isStandardInputFile() {
+        try {
+            return Files.isRegularFile(Path.of("/dev/stdin"));
+        }
+        catch (InvalidPathException exception) {
+            return false;
+        }
+    }
+
+    /**
+     * Determine whether the result of running the program is entirely what it writes to the console and the exit
+     * code, so that it can be stored in and taken from the result cache. Options which report or save anything else
+     * about the run, or which make it depend on more than its input, rule this out. So does console input which may
+     * be typed at a terminal, since it would have to be read in full before the program starts.
+     *
+     * @return <code>true</code> if the result can be cached, or <code>false</code> otherwise.
+     */
+    private boolean isCacheable() {
+        return (inputPath != null || isStandardInputFile()) && gdbPort == null && !countInstructions
+            && registerDisplayList.isEmpty() && memoryDisplayList.isEmpty() && (dumpTriples == null || dumpTriples.isEmpty())
+            && pipelineModel == null && cacheHierarchy == null && branchEvaluator == null
+            && profiler == null && callGraphProfiler == null && tracePath == null && dineroWriter == null
+            && recordPath == null && replayPath == null && midiRecorder == null && (fileSystem == null || fileSystem.getSaveDirectory() == null);
+    }
+
+    /**
+     * Compute the result cache key of the program about to run, from the assembled program, the initial contents
+     * of memory and registers, every setting which affects execution, and the input.
+     *
+     * @return The key.
+     */
+    private String computeResultCacheKey() {
+        ResultCache.KeyBuilder key = new ResultCache.KeyBuilder();
+        key.add(Application.VERSION);
+        // The machine code, including where it is, since programs can read and jump into their own code
+        key.add(code.getMachineStatements().size());
+        for (ProgramStatement statement : code.getMachineStatements()) {
+            key.add(statement.getAddress()).add(statement.getBinaryStatement());
+        }
+        // The data segments, including the program arguments, which are stored on the stack
+        Memory memory = Memory.getInstance();
+        for (int lowAddressKey : new int[] { MemoryConfigurations.DATA_LOW, MemoryConfigurations.KERNEL_DATA_LOW }) {
+            key.add(lowAddressKey);
+            memory.getDataRegionForAddress(memory.getAddress(lowAddressKey)).forEachPage((words, address) -> key.add(address).add(words));
+        }
+        for (int number = 0; number < 32; number++) {
+            key.add(RegisterFile.getValue(number));
+        }
+        key.add(RegisterFile.getProgramCounter());
+        // Settings
+        key.add(MemoryConfigurations.getCurrentConfiguration().identifier());
+        key.add(delayedBranching).add(selfModifyingCode).add(hartCount).add(hartQuantum).add(maxSteps);
+        key.add(simulateErrorExitCode).add(out == System.err);
+        VirtualClock clock = Simulator.getInstance().getVirtualClock();
+        key.add(virtualTime).add(clock.getNanosPerInstruction()).add(clock.getStartMillis());
+        ResourceBudget budget = Simulator.getInstance().getResourceBudget();
+        key.add(budget.getTimeLimit()).add(budget.getOutputLimit()).add(budget.getHeapLimit()).add(budget.getOpenFileLimit());
+        key.add((outputComparator == null) ? null : outputComparator.getExpectedOutput());
+        // Input
+        key.add(consoleInput);
+        key.add((programArgumentList == null) ? -1 : programArgumentList.size());
+        if (programArgumentList != null) {
+            for (String argument : programArgumentList) {
+                key.add(argument);
+            }
+        }
+        key.add(fileSystem != null);
+        if (fileSystem != null) {
+            key.add(fileSystem.getSizeQuota());
+            for (String name : fileSystem.getFileNames()) {
+                key.add(name).add(fileSystem.getFile(name));
+            }
+        }
+        return key.build();
+    }
+
+    /**
+     * Repeat the output and exit code of an earlier identical run from the result cache, if there was one.
+     *
+     * @return <code>true</code> if the result was found, or <code>false</code> if the program must be run.
+     */
+    private boolean reuseCachedResult() {
+        ResultCache.Result result = resultCache.lookup(resultCacheKey);
+        if (result == null) {
+            return false;
+        }
+        System.out.write(result.standardOutput(), 0, result.standardOutput().length);
+        System.out.flush();
+        System.err.write(result.standardError(), 0, result.standardError().length);
+        System.err.flush();
+        Application.exitCode = result.exitCode();
+        if (Application.debug) {
+            out.println("\n--------  REUSED CACHED RESULT: " + result.instructionCount() + " INSTRUCTIONS, " + result.reason() + "  -----------");
+        }
+        return true;
+    }
+
+    /**
+     * Begin copying everything written to standard output and standard error, both by the program and by the
+     * messages about the run, so it can be stored in the result cache.
+     */
+    private void startOutputCapture() {
+        boolean messagesToError = (out == System.err);
+        outputCapture = new ResultCache.OutputCapture();
+        out = messagesToError ? System.err : System.out;
+        Simulator.getInstance().getSystemIO().resetFiles();
+        finishListener = new SimulatorListener() {
+            @Override
+            public void simulatorFinished(SimulatorFinishEvent event) {
+                finishReason = event.getReason();
+            }
+        };
+        Simulator.getInstance().addThreadListener(finishListener);
+    }
+
+    /**
+     * Stop copying the output of the run, and store it in the result cache unless the run may not turn out the same
+     * when repeated.
+     */
+    private void storeCachedResult() {
+        Simulator.getInstance().removeThreadListener(finishListener);
+        Simulator.getInstance().getSystemIO().flushOutput();
+        boolean messagesToError = (out == System.err);
+        outputCapture.stop();
+        out = messagesToError ? System.err : System.out;
+        // Whether a time limit is reached depends on the host, as does anything the program learns from it
+        if (Simulator.getInstance().getInputLog().isHostDependent() || finishReason == SimulatorFinishEvent.Reason.TIME_LIMIT_EXCEEDED) {
+            return;
+        }
+        ResultCache.Result result = new ResultCache.Result(
+            finishReason,
+            Simulator.getInstance().getInstructionCount(),
+            Application.exitCode,
+            outputCapture.getStandardOutput(),
+            outputCapture.getStandardError()
+        );
+        try {
+            resultCache.store(resultCacheKey, result);
+        }
+        catch (IOException exception) {
+            out.println("Unable to store result in " + resultCache.getDirectory() + ": " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Begin comparing the program's output against the expected output, if requested on the command line.
+     *
+     * @return <code>true</code> if successful, or <code>false</code> if the file could not be read.
+     */
+    private boolean startOutputComparison() {
+        if (expectedOutputPath == null) {
+            return true;
+        }
+        try {
+            outputComparator = new OutputComparator(Files.readAllBytes(expectedOutputPath));
+        }
+        catch (IOException exception) {
+            out.println("Unable to read expected output: " + exception.getMessage());
+            Application.exitCode = simulateErrorExitCode;
+            return false;
+        }
+        outputComparator.setMismatchHandler(() -> Simulator.getInstance().terminate(SimulatorFinishEvent.Reason.OUTPUT_MISMATCH));
+        Simulator.getInstance().getSystemIO().setOutputComparator(outputComparator);
+        return true;
+    }
+
+    /**
+     * Report where the program's output first differed from the expected output, if it did.
+     */
+    private void reportOutputComparison() {
+        if (outputComparator == null) {
+            return;
+        }
+        Simulator.getInstance().getSystemIO().setOutputComparator(null);
+        if (!outputComparator.isComplete()) {
+            out.println("\n" + outputComparator.describeMismatch());
+            out.println("  instructions executed: " + Simulator.getInstance().getInstructionCount());
+            Application.exitCode = simulateErrorExitCode;
+        }
+    }
+
+    /**
+     * Report the resource limit which terminated the program, if any.
+     */
+    private void reportBudget() {
+        String limit = Simulator.getInstance().getResourceBudget().describeExceeded();
+        if (limit != null) {
+            out.println("\nProgram terminated: " + limit + ".");
+            Application.exitCode = simulateErrorExitCode;
+        }
+    }
+
+    /**
+     * Begin recording or replaying the input log, if requested on the command line.
+     *
+     * @return <code>true</code> if successful, or <code>false</code> if a file could not be opened.
+     */
+    private boolean startInputLog() {
+        InputLog inputLog = Simulator.getInstance().getInputLog();
+        try {
+            if (replayPath != null) {
+                inputLog.startReplayingFile(replayPath);
+            }
+            if (recordPath != null) {
+                inputLog.startRecordingFile(recordPath);
+            }
+            return true;
+        }
+        catch (IOException exception) {
+            out.println("Unable to open input log: " + exception.getMessage());
+            Application.exitCode = simulateErrorExitCode;
+            return false;
+        }
+    }
+
+    /**
+     * Finish recording the input log, if requested on the command line.
+     */
+    private void stopInputLog() {
+        InputLog inputLog = Simulator.getInstance().getInputLog();
+        if (replayPath != null && inputLog.isReplayingFile()) {
+            out.println("\nNote: the program finished before all recorded input in " + replayPath + " was replayed.");
+        }
+        try {
+            inputLog.stopRecordingFile();
+        }
+        catch (IOException exception) {
+            out.println("Unable to write input log " + recordPath + ": " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Finish writing the execution trace and memory reference trace, if requested on the command line.
+     */
+    private void stopTrace() {
+        if (tracer != null) {
+            Simulator.getInstance().removeExecutionListener(tracer);
+            try {
+                tracer.close();
+            }
+            catch (IOException exception) {
+                out.println("Unable to write execution trace " + tracePath + ": " + exception.getMessage());
+            }
+            tracer = null;
+        }
+        if (dineroWriter != null) {
+            Simulator.getInstance().removeExecutionListener(dineroWriter);
+            try {
+                dineroWriter.close();
+            }
+            catch (IOException exception) {
+                out.println("Unable to write Dinero trace: " + exception.getMessage());
+            }
+            dineroWriter = null;
+        }
+    }
+
+    /**
+     * Copy the files created or modified in the virtual file system to the host, if requested on the command line.
+     */
+    private void saveVirtualFiles() {
+        if (fileSystem == null || fileSystem.getSaveDirectory() == null) {
+            return;
+        }
+        try {
+            fileSystem.saveModifiedFiles();
+        }
+        catch (IOException exception) {
+            out.println("Unable to save virtual files to " + fileSystem.getSaveDirectory() + ": " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Save the notes played by the MIDI syscalls, if requested on the command line.
+     */
+    private void saveMidi() {
+        if (midiRecorder == null) {
+            return;
+        }
+        try {
+            midiRecorder.save();
+        }
+        catch (IOException exception) {
+            out.println("Unable to write MIDI notes to " + midiRecorder.getPath() + ": " + exception.getMessage());
+        }
+    }
+
     /**
      * Check for memory address subrange.  Has to be two integers separated
      * by "-"; no embedded spaces.  e.g. 0x00400000-0x00400010
@@ -555,8 +1345,56 @@ public class MarsLauncher {
     /**
      * Required for counting instructions executed, if that option is specified.
      * DPS 19 July 2012
+     * <p>
+     * Also attaches any analysis engines (pipeline timing model, cache hierarchy, branch predictors, profilers, execution trace) requested on the command line.
      */
     private void establishObserver() {
+        if (pipelineModel != null) {
+            pipelineModel.setDelayedBranching(delayedBranching);
+            Simulator.getInstance().addExecutionListener(pipelineModel);
+        }
+        if (cacheHierarchy != null) {
+            Simulator.getInstance().addExecutionListener(cacheHierarchy);
+        }
+        if (branchEvaluator != null) {
+            Simulator.getInstance().addExecutionListener(branchEvaluator);
+        }
+        if (profiler != null) {
+            Simulator.getInstance().setProfiler(profiler);
+        }
+        if (fileSystem != null) {
+            Simulator.getInstance().getSystemIO().setFileSystem(fileSystem);
+        }
+        if (midiRecorder != null) {
+            Simulator.getInstance().setMidiRecorder(midiRecorder);
+        }
+        if (virtualTime || midiRecorder != null) {
+            // Recorded notes are timed by the virtual clock
+            Simulator.getInstance().getVirtualClock().setEnabled(true);
+        }
+        if (tracePath != null) {
+            try {
+                // Traces are compressed if the file name says so
+                tracer = new ExecutionTracer(tracePath, tracePath.getFileName().toString().endsWith(".gz"));
+                Simulator.getInstance().addExecutionListener(tracer);
+            }
+            catch (IOException exception) {
+                out.println("Unable to write execution trace " + tracePath + ": " + exception.getMessage());
+            }
+        }
+        if (dineroWriter != null) {
+            try {
+                dineroWriter.open();
+                Simulator.getInstance().addExecutionListener(dineroWriter);
+            }
+            catch (IOException exception) {
+                out.println("Unable to write Dinero trace: " + exception.getMessage());
+                dineroWriter = null;
+            }
+        }
+        if (callGraphProfiler != null) {
+            Simulator.getInstance().setCallGraphProfiler(callGraphProfiler);
+        }
         if (countInstructions) {
             Memory.Listener instructionCounter = new Memory.Listener() {
                 private int lastAddress = -1;
@@ -590,6 +1428,26 @@ public class MarsLauncher {
         if (countInstructions) {
             out.println("\n" + instructionCount);
         }
+        if (pipelineModel != null) {
+            out.println();
+            pipelineModel.writeReport(out);
+        }
+        if (cacheHierarchy != null) {
+            out.println();
+            cacheHierarchy.writeReport(out);
+        }
+        if (branchEvaluator != null) {
+            out.println();
+            branchEvaluator.writeReport(out);
+        }
+        if (profiler != null) {
+            out.println();
+            profiler.writeReport(out);
+        }
+        if (callGraphProfiler != null) {
+            out.println();
+            callGraphProfiler.writeReport(out);
+        }
     }
 
     /**
@@ -756,18 +1614,46 @@ public class MarsLauncher {
         out.println("  ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.");
         out.println("  ascii  -- display memory or register contents interpreted as ASCII codes.");
         out.println("      b  -- brief - do not display register/memory address along with contents");
+        out.println("  branch[:<predictors>]  -- evaluate branch predictors side by side and report accuracy");
+        out.println("            overall and per branch.  Predictors are comma-separated, e.g. branch:bimodal=1024,btb");
+        out.println("            Items: taken, not-taken, bimodal[=<entries>], gshare[=<entries>/<history bits>],");
+        out.println("            tournament[=<entries>/<history bits>], btb[=<entries>], top=<n>.  Default: all");
+        out.println("  budget:<limits>  -- terminate the program if it exceeds a limit.  Limits are comma-separated,");
+        out.println("            e.g. budget:time=5000,output=1048576  Keys: time=<ms>, output=<bytes>, heap=<bytes>,");
+        out.println("            files=<n> (open at once)");
+        out.println("  cache[:<options>]  -- simulate a split L1 / unified L2 cache hierarchy and report");
+        out.println("            statistics per level.  Options are comma-separated, e.g. cache:l1d=8K/16/1,l2=none");
+        out.println("            Keys: l1i, l1d, l2 = <size>/<block size>/<ways>[/lru|plru|random] or none,");
+        out.println("            write=back|through, allocate=on|off");
+        out.println("  callgraph[:top=<n>]  -- track calls (jal, jalr, bal) and returns (jr $ra) and report the");
+        out.println("            calls, exclusive and inclusive instruction counts, and recursion depth per function.");
+        out.println("  clock[:<options>]  -- simulate time: each instruction takes a fixed time, and sleep and");
+        out.println("            MIDI syscalls advance it without waiting.  Options are comma-separated,");
+        out.println("            e.g. clock:ns=10,start=0  Keys: ns=<nanoseconds per instruction>, start=<epoch ms>");
         out.println("      d  -- display MARS debugging statements");
         out.println("     db  -- MIPS delayed branching is enabled");
         out.println("    dec  -- display memory or register contents in decimal.");
+        out.println("  dinero[:<options>] <file>  -- write every instruction fetch, load and store to <file>");
+        out.println("            in Dinero IV din format.  Options are comma-separated, e.g.");
+        out.println("            dinero:fetch=off,range=0x10010000-0x1003ffff  (range may be repeated)");
         out.println("   dump <segment> <format> <file> -- memory dump of specified memory segment");
         out.println("            in specified format to specified file.  Option may be repeated.");
         out.println("            Dump occurs at the end of simulation unless 'a' option is used.");
         out.println("            Segment and format are case-sensitive and possible values are:");
         out.println("            <segment> = " + segments);
         out.println("            <format> = " + formats);
+        out.println("  expect <file>  -- compare the program's output with <file> as it is produced, and stop");
+        out.println("            at the first difference, reporting its offset and the instruction count.");
+        out.println("  gdb <port>  -- instead of running, wait for GDB to connect on the given loopback TCP port");
+        out.println("            (0 for any free port) and let it control execution, with reverse execution.");
         out.println("      h  -- display this help.  Use by itself with no filename.");
+        out.println("  harts <n>  -- simulate <n> harts (hardware threads, 1 to 8) sharing memory,");
+        out.println("            interleaved deterministically in round-robin order, one instruction at a time.");
         out.println("    hex  -- display memory or register contents in hexadecimal (default)");
+        out.println("     hq <n>  -- number of instructions each hart runs before the next is scheduled (default 1)");
         out.println("     ic  -- display count of MIPS basic instructions 'executed'");
+        out.println("  input <file>  -- use the contents of <file> as the program's console input (input syscalls");
+        out.println("            and reads from descriptor 0) instead of standard input.");
         out.println("     mc <config>  -- set memory configuration.  Argument <config> is");
         out.println("            case-sensitive and possible values are: Default for the default");
         out.println("            32-bit address space, CompactDataAtZero for a 32KB memory with");
@@ -775,12 +1661,35 @@ public class MarsLauncher {
         out.println("            memory with text segment at address 0.");
         out.println("     me  -- display MARS messages to standard err instead of standard out. ");
         out.println("            Can separate messages from program output using redirection");
+        out.println("  midi[:format=text] <file>  -- record notes from the MIDI syscalls to a MIDI file (or");
+        out.println("            text, one note per line) instead of playing them.  Implies the clock option.");
         out.println("     nc  -- do not display copyright notice (for cleaner redirected/piped output).");
         out.println("     np  -- use of pseudo instructions and formats not permitted");
         out.println("      p  -- Project mode - assemble all files in the same directory as given file.");
+        out.println("  pipeline[:<options>]  -- run a 5-stage pipeline timing model and report cycles, CPI");
+        out.println("            and stalls.  Options are comma-separated, e.g. pipeline:forwarding=off,branch=2");
+        out.println("            Keys: forwarding=on|off, branch=<n>, jump=<n>, mult=<n>, div=<n> (cycles)");
+        out.println("  profile[:<options>]  -- count every instruction executed and report the hottest source");
+        out.println("            lines.  Options are comma-separated, e.g. profile:top=10,annotate=prof.txt");
+        out.println("            Keys: top=<n>, annotate=<file> (annotated source), flame=<file> (collapsed stacks)");
+        out.println("  record <file>  -- record all input the program receives (console, files, random numbers,");
+        out.println("            time, MMIO keyboard) to a binary input log file.");
+        out.println("  replay <file>  -- replay input recorded with 'record' so the run is reproduced exactly,");
+        out.println("            without waiting for input.");
+        out.println("  results[:<options>] <dir>  -- reuse the output and exit code of an identical earlier run");
+        out.println("            kept in <dir> instead of simulating, and keep this run's result there.  Only used");
+        out.println("            when input comes from a file (input option or redirection).  Comma-separated, e.g.");
+        out.println("            results:size=268435456,age=7  Keys: size=<bytes>, age=<days since last used>");
         out.println("  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.");
         out.println("     sm  -- start execution at statement with global label main, if defined");
         out.println("    smc  -- Self Modifying Code - Program can write and branch to either text or data segment");
+        out.println("  trace <file>  -- write a compact binary trace of every instruction executed, with the");
+        out.println("            registers written and memory accessed.  Compressed if <file> ends with .gz");
+        out.println("  tracetext <trace file> <text file>  -- convert a trace written by 'trace' to text,");
+        out.println("            one line per instruction.  Use without a program file.");
+        out.println("  vfs[:<options>]  -- give file syscalls an in-memory file system instead of the host's.");
+        out.println("            Options are comma-separated, e.g. vfs:load=in.txt,quota=1048576,save=outdir");
+        out.println("            Keys: load=<file> (may be repeated), quota=<bytes>, save=<directory>");
         out.println("    <n>  -- where <n> is an integer maximum count of steps to simulate.");
         out.println("            If 0, negative or not specified, there is no maximum.");
         out.println(" $<reg>  -- where <reg> is number or name (e.g. 5, t3, f10) of register whose ");
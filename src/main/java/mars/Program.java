@@ -295,6 +295,9 @@ public class Program {
      * @throws ProcessingException Will throw exception if errors occurred while assembling.
      */
     public ErrorList assemble(List<Program> programsToAssemble, boolean extendedAssemblerEnabled, boolean warningsAreErrors) throws ProcessingException {
+        if (this.backStepper != null) {
+            this.backStepper.dispose();
+        }
         this.backStepper = null;
         Assembler assembler = new Assembler();
         this.machineList = assembler.assemble(programsToAssemble, extendedAssemblerEnabled, warningsAreErrors);
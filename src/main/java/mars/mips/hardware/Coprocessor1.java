@@ -381,6 +381,15 @@ public class Coprocessor1 {
         CONDITION_FLAGS.setValue(CONDITION_FLAGS.getValueNoNotify() | 0x000000FF);
     }
 
+    /**
+     * Get the register which holds the condition flags as a bitfield.  Use with caution.
+     *
+     * @return The condition flags register.
+     */
+    public static Register getConditionFlagsRegister() {
+        return CONDITION_FLAGS;
+    }
+
     /**
      * Get count of condition flags.
      *
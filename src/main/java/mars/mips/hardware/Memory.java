@@ -6,7 +6,10 @@ import mars.mips.instructions.Instruction;
 import mars.simulator.ExceptionCause;
 import mars.util.Binary;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.*;
+import java.util.function.ObjIntConsumer;
 
 /*
 Copyright (c) 2003-2009,  Pete Sanderson and Kenneth Vollmar
@@ -88,6 +91,37 @@ public class Memory {
         }
     }
 
+    /**
+     * Interface representing a journal of modified pages, used to take snapshots of memory without copying it all.
+     * When attached via {@link Memory#setPageJournal(PageJournal)}, the journal is given the previous contents of
+     * each page of a {@link DataRegion} the first time that page is written to after
+     * {@link Memory#clearPageJournal()} was last called, and likewise the previous mappings of a region the first
+     * time they change. Text regions are not journaled.
+     */
+    public interface PageJournal {
+        /**
+         * Invoked before the first write to a page since the journal was last cleared.
+         * This is called while the region's lock is held, so it must not access memory itself.
+         *
+         * @param region    The region containing the page.
+         * @param pageIndex The index of the page within the region, as accepted by
+         *                  {@link DataRegion#restorePage(int, int[])}.
+         * @param contents  A copy of the page's contents before the write, or <code>null</code> if the page
+         *                  had never been written to.
+         */
+        void pageModified(DataRegion region, int pageIndex, int[] contents);
+
+        /**
+         * Invoked before the first change to a region's mappings since the journal was last cleared.
+         * This is called while the region's lock is held, so it must not access memory itself.
+         *
+         * @param region   The region whose mappings are changing.
+         * @param mappings The mappings before the change, as accepted by {@link DataRegion#restoreMappings(List)},
+         *                 or <code>null</code> if there were none.
+         */
+        void mappingsModified(DataRegion region, List<DataRegion.Mapping> mappings);
+    }
+
     /**
      * MIPS word length in bytes.
      */
@@ -100,6 +134,15 @@ public class Memory {
      * MIPS doubleword length in bytes.
      */
     public static final int BYTES_PER_DOUBLEWORD = BYTES_PER_WORD * 2;
+    /**
+     * Size of the pages data regions are allocated in, which is also the granularity of file mappings.
+     */
+    public static final int BYTES_PER_PAGE = BYTES_PER_WORD * DataRegion.WORDS_PER_BLOCK;
+    /**
+     * Maximum number of bytes buffered at once by {@link #copyBytes(int, int, int)}
+     * and {@link #fillBytes(int, int, int)}.
+     */
+    private static final int BULK_CHUNK_BYTES = 64 * 1024;
 
     /**
      * Determine whether a given address is aligned on a word boundary.
@@ -264,12 +307,17 @@ public class Memory {
      * The next address on the heap which will be used for dynamic memory allocation.
      */
     private int nextHeapAddress;
+    /**
+     * Load-linked reservations held by each hart, which are broken by any store to the reserved word.
+     */
+    private final ReservationTable reservationTable = new ReservationTable();
 
     private DataRegion dataSegmentRegion;
     private DataRegion kernelDataSegmentRegion;
     private DataRegion mmioRegion;
     private TextRegion textSegmentRegion;
     private TextRegion kernelTextSegmentRegion;
+    private PageJournal pageJournal = null;
 
     private static Memory instance = null;
 
@@ -303,6 +351,10 @@ public class Memory {
         this.mmioRegion = new DataRegion(this.getAddress(MemoryConfigurations.MMIO_LOW), this.getAddress(MemoryConfigurations.MMIO_HIGH));
         this.textSegmentRegion = new TextRegion(this.getAddress(MemoryConfigurations.TEXT_LOW), this.getAddress(MemoryConfigurations.TEXT_HIGH));
         this.kernelTextSegmentRegion = new TextRegion(this.getAddress(MemoryConfigurations.KERNEL_TEXT_LOW), this.getAddress(MemoryConfigurations.KERNEL_TEXT_HIGH));
+        this.setPageJournal(this.pageJournal);
+
+        // Any reservations refer to the old memory contents
+        this.reservationTable.clear();
 
         // Encourage the garbage collector to clean up any region objects now orphaned
         System.gc();
@@ -319,6 +371,16 @@ public class Memory {
         return this.configuration.getAddress(key);
     }
 
+    /**
+     * Get the table of load-linked reservations used by the <code>ll</code> and <code>sc</code> instructions.
+     * Reservations are broken automatically by any store to memory made through this class.
+     *
+     * @return The reservation table for this memory.
+     */
+    public ReservationTable getReservationTable() {
+        return this.reservationTable;
+    }
+
     /**
      * Get the current endianness (i.e. byte ordering) in use.
      * This reflects the value of {@link mars.settings.Settings#useBigEndian};
@@ -339,6 +401,43 @@ public class Memory {
         return this.nextHeapAddress;
     }
 
+    /**
+     * Set the next address on the heap which will be used for dynamic memory allocation. This is used to restore
+     * a previously saved state of memory, and does not check the address against the memory configuration.
+     *
+     * @param nextHeapAddress The next heap address, which should be word-aligned.
+     */
+    public void setNextHeapAddress(int nextHeapAddress) {
+        this.nextHeapAddress = nextHeapAddress;
+    }
+
+    /**
+     * Attach a journal which will be given the previous contents of each data page the first time it is modified
+     * after {@link #clearPageJournal()} is called. The journal stays attached when memory is reset.
+     *
+     * @param journal The journal to attach, or <code>null</code> to detach the current one.
+     */
+    public void setPageJournal(PageJournal journal) {
+        this.pageJournal = journal;
+        if (this.dataSegmentRegion != null) {
+            this.dataSegmentRegion.setPageJournal(journal);
+            this.kernelDataSegmentRegion.setPageJournal(journal);
+            this.mmioRegion.setPageJournal(journal);
+        }
+    }
+
+    /**
+     * Begin a new interval for the attached page journal, so that every page will be journaled again
+     * the next time it is modified. Does nothing if no journal is attached.
+     */
+    public void clearPageJournal() {
+        if (this.pageJournal != null) {
+            this.dataSegmentRegion.clearPageJournal();
+            this.kernelDataSegmentRegion.clearPageJournal();
+            this.mmioRegion.clearPageJournal();
+        }
+    }
+
     /**
      * Returns the next available word-aligned heap address. This is roughly equivalent to <code>malloc</code> in C.
      * Unfortunately, there is currently no way to deallocate space. (Might be added in the future.)
@@ -361,6 +460,75 @@ public class Memory {
         return result;
     }
 
+    /**
+     * Allocate page-aligned heap space and fill it with the given contents, like <code>mmap</code> in C.
+     * Nothing is copied up front: fetches read from <code>contents</code> directly, and each page is filled from it
+     * the first time it is stored to.
+     * Bytes beyond the end of <code>contents</code> read as zero.
+     *
+     * @param contents The bytes to map, such as a {@link java.nio.MappedByteBuffer} for a file, which must not be
+     *                 modified afterward.
+     * @param length   The number of bytes of heap space to allocate.
+     * @param readOnly Whether stores to the mapped space should raise an exception. Otherwise, stores modify only
+     *                 the simulated memory and never the contents.
+     * @return Address of the mapped space.
+     * @throws IllegalArgumentException Thrown if the length is not positive or exceeds available heap storage.
+     */
+    public int mapHeapSpace(ByteBuffer contents, int length, boolean readOnly) throws IllegalArgumentException {
+        this.checkHeapMapping(length);
+        int address = alignToNext(this.nextHeapAddress, BYTES_PER_PAGE);
+        long endAddress = Integer.toUnsignedLong(address) + ((length + BYTES_PER_PAGE - 1L) & -BYTES_PER_PAGE);
+        DataRegion dataRegion = this.getDataRegionForAddress(address);
+        ByteOrder order = (this.endianness == Endianness.BIG_ENDIAN) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        dataRegion.mapPages(address, length, contents.duplicate().order(order), readOnly);
+        this.reservationTable.invalidate(address, (int) (endAddress - Integer.toUnsignedLong(address)));
+        this.nextHeapAddress = (int) endAddress;
+        // Add a corresponding backstep for the mapping
+        if (Application.isBackSteppingEnabled()) {
+            Application.program.getBackStepper().addMappingRemove(address, length);
+        }
+        return address;
+    }
+
+    /**
+     * Check that {@link #mapHeapSpace(ByteBuffer, int, boolean)} would succeed for a given length, which allows
+     * callers to reject a mapping before preparing its contents.
+     *
+     * @param length The number of bytes of heap space to map.
+     * @throws IllegalArgumentException Thrown if the length is not positive or exceeds available heap storage.
+     */
+    public void checkHeapMapping(int length) throws IllegalArgumentException {
+        if (length <= 0) {
+            throw new IllegalArgumentException("invalid heap mapping of " + length + " bytes requested");
+        }
+        // Compare against the space left before rounding the length up, which could overflow
+        int address = alignToNext(this.nextHeapAddress, BYTES_PER_PAGE);
+        DataRegion dataRegion = this.getDataRegionForAddress(address);
+        long available = 0;
+        if (address != 0 && dataRegion != null) {
+            long limit = Math.min(Integer.toUnsignedLong(this.getAddress(MemoryConfigurations.DYNAMIC_HIGH)), Integer.toUnsignedLong(dataRegion.getLastAddress())) + 1;
+            available = (limit - Integer.toUnsignedLong(address)) & -BYTES_PER_PAGE;
+        }
+        if (length > available) {
+            throw new IllegalArgumentException("heap mapping of " + length + " bytes failed due to insufficient heap space");
+        }
+    }
+
+    /**
+     * Undo {@link #mapHeapSpace(ByteBuffer, int, boolean)}, so that the pages it mapped are unallocated and read as
+     * zero again. This is used when backstepping; like other heap allocations, the heap address is not restored.
+     *
+     * @param address The address of the mapped space.
+     * @param length  The number of bytes which were mapped.
+     */
+    public void unmapHeapSpace(int address, int length) {
+        DataRegion dataRegion = this.getDataRegionForAddress(address);
+        if (dataRegion != null) {
+            dataRegion.unmapPages(address, length);
+            this.reservationTable.invalidate(address, alignToNext(length, BYTES_PER_PAGE));
+        }
+    }
+
     /**
      * Determine whether the current memory configuration fits a 16-bit address space.
      *
@@ -511,6 +679,9 @@ public class Memory {
         TextRegion textRegion;
         if ((dataRegion = this.getDataRegionForAddress(address)) != null) {
             // Falls within a region containing data
+            if (dataRegion.isReadOnly(address, BYTES_PER_WORD)) {
+                throw new AddressErrorException("cannot write to read-only mapped memory", ExceptionCause.ADDRESS_EXCEPTION_STORE, address);
+            }
             int oldValue = dataRegion.storeWord(address, value);
             // Add a corresponding backstep for the write
             if (Application.isBackSteppingEnabled()) {
@@ -536,6 +707,9 @@ public class Memory {
             throw new AddressErrorException("segmentation fault (address out of range)", ExceptionCause.ADDRESS_EXCEPTION_STORE, address);
         }
 
+        // Break any load-linked reservations on this word
+        this.reservationTable.invalidate(address, BYTES_PER_WORD);
+
         if (notify) {
             // Notify listeners of the write operation
             this.dispatchWriteEvent(address, BYTES_PER_WORD, value, address, value);
@@ -678,6 +852,9 @@ public class Memory {
             throw new AddressErrorException("segmentation fault (address out of range)", ExceptionCause.ADDRESS_EXCEPTION_FETCH, address);
         }
 
+        // Break any load-linked reservations on this word
+        this.reservationTable.invalidate(address, BYTES_PER_WORD);
+
         if (notify) {
             // Notify listeners of the write operation
             this.dispatchWriteEvent(address, BYTES_PER_WORD, binaryStatement, address, binaryStatement);
@@ -939,6 +1116,279 @@ public class Memory {
         return content.toString();
     }
 
+    /**
+     * Fetch a contiguous range of bytes from memory starting at the given address, which need not be aligned.
+     * May read from a memory region containing text, even if
+     * {@link mars.settings.Settings#selfModifyingCodeEnabled} is set to false.
+     * Listeners are not notified of any read operations.
+     * <p>
+     * This is equivalent to calling {@link #fetchByte(int, boolean)} for each byte in the range, but operates on
+     * whole blocks of words at a time wherever possible. If an address in the range is not mapped, the bytes
+     * preceding it are still written to <code>bytes</code> before the exception is thrown.
+     *
+     * @param address The address of the first byte to fetch.
+     * @param bytes   The array to store the fetched bytes into.
+     * @param offset  The index in <code>bytes</code> at which to store the first byte.
+     * @param length  The number of bytes to fetch.
+     * @throws AddressErrorException Thrown if any byte in the range is out of range, in which case the address
+     *         given by the exception is the first unmapped byte.
+     */
+    public void fetchBytes(int address, byte[] bytes, int offset, int length) throws AddressErrorException {
+        if (length <= 0) {
+            return;
+        }
+        int endAddress = address + length; // Exclusive
+        int wordAddress = alignToPrevious(address, BYTES_PER_WORD);
+        int remainingWords = getWordSpan(address, length);
+        int[] words = new int[Math.min(remainingWords, DataRegion.WORDS_PER_BLOCK)];
+
+        while (remainingWords > 0) {
+            int wordCount = this.fetchWordChunk(wordAddress, Math.min(remainingWords, words.length), words, Math.max(address, wordAddress));
+            for (int index = 0; index < wordCount; index++, wordAddress += BYTES_PER_WORD) {
+                for (int byteIndex = 0; byteIndex < BYTES_PER_WORD; byteIndex++) {
+                    int byteAddress = wordAddress + byteIndex;
+                    if (byteAddress - address >= 0 && byteAddress - endAddress < 0) {
+                        bytes[offset + byteAddress - address] = (byte) Binary.getByte(words[index], this.getByteIndex(byteIndex));
+                    }
+                }
+            }
+            remainingWords -= wordCount;
+        }
+    }
+
+    /**
+     * Store a contiguous range of bytes into memory starting at the given address, which need not be aligned,
+     * notifying listeners of the writes as {@link #storeBytes(int, byte[], int, int, boolean)} does.
+     *
+     * @param address The address of the first byte to store.
+     * @param bytes   The array containing the bytes to store.
+     * @param offset  The index in <code>bytes</code> of the first byte to store.
+     * @param length  The number of bytes to store.
+     * @throws AddressErrorException Thrown if any byte in the range is out of range or does not allow this operation,
+     *         in which case the address given by the exception is the first byte which could not be stored.
+     */
+    public void storeBytes(int address, byte[] bytes, int offset, int length) throws AddressErrorException {
+        this.storeBytes(address, bytes, offset, length, true);
+    }
+
+    /**
+     * Store a contiguous range of bytes into memory starting at the given address, which need not be aligned.
+     * May write to a memory region containing text, but only if
+     * {@link mars.settings.Settings#selfModifyingCodeEnabled} is set to true.
+     * A back-step is recorded for every word modified.
+     * <p>
+     * This is equivalent to calling {@link #storeByte(int, int, boolean)} for each byte in the range, but operates on
+     * whole blocks of words at a time wherever possible. If an address in the range is not mapped, the bytes
+     * preceding it have already been stored when the exception is thrown.
+     * <p>
+     * If notifying, listeners receive one write of a whole word for each word entirely within the range, and one
+     * write of a byte for each byte of a partially written word at either end. Nothing is done to notify for a
+     * block of words if no listener is registered to it.
+     *
+     * @param address The address of the first byte to store.
+     * @param bytes   The array containing the bytes to store.
+     * @param offset  The index in <code>bytes</code> of the first byte to store.
+     * @param length  The number of bytes to store.
+     * @param notify  Whether to notify listeners of the write operations.
+     * @throws AddressErrorException Thrown if any byte in the range is out of range or does not allow this operation,
+     *         in which case the address given by the exception is the first byte which could not be stored.
+     */
+    public void storeBytes(int address, byte[] bytes, int offset, int length, boolean notify) throws AddressErrorException {
+        if (length <= 0) {
+            return;
+        }
+        int endAddress = address + length; // Exclusive
+        int wordAddress = alignToPrevious(address, BYTES_PER_WORD);
+        int remainingWords = getWordSpan(address, length);
+        int[] words = new int[Math.min(remainingWords, DataRegion.WORDS_PER_BLOCK)];
+
+        while (remainingWords > 0) {
+            DataRegion dataRegion = this.getDataRegionForAddress(wordAddress);
+            if (dataRegion == null) {
+                if (this.getTextRegionForAddress(wordAddress) == null) {
+                    // Falls outside mapped addressing range
+                    throw new AddressErrorException("segmentation fault (address out of range)", ExceptionCause.ADDRESS_EXCEPTION_STORE, Math.max(address, wordAddress));
+                }
+                // Text is handled one word at a time so storeWord() can enforce the self-modifying code setting
+                int wordValue = this.mergeBytes(this.fetchWord(wordAddress, false), wordAddress, address, endAddress, bytes, offset);
+                this.storeWord(wordAddress, wordValue, false);
+                if (notify) {
+                    this.dispatchBulkWriteEvents(wordAddress, new int[] {wordValue}, 1, address, endAddress);
+                }
+                wordAddress += BYTES_PER_WORD;
+                remainingWords--;
+                continue;
+            }
+
+            int wordCount = getRegionWordCount(wordAddress, dataRegion.getLastAddress(), Math.min(remainingWords, words.length));
+            if (dataRegion.isReadOnly(wordAddress, wordCount * BYTES_PER_WORD)) {
+                throw new AddressErrorException("cannot write to read-only mapped memory", ExceptionCause.ADDRESS_EXCEPTION_STORE, Math.max(address, wordAddress));
+            }
+            dataRegion.fetchWords(wordAddress, words, 0, wordCount);
+            boolean backSteppingEnabled = Application.isBackSteppingEnabled();
+            for (int index = 0; index < wordCount; index++) {
+                int chunkWordAddress = wordAddress + index * BYTES_PER_WORD;
+                if (backSteppingEnabled) {
+                    Application.program.getBackStepper().addMemoryRestoreWord(chunkWordAddress, words[index]);
+                }
+                words[index] = this.mergeBytes(words[index], chunkWordAddress, address, endAddress, bytes, offset);
+            }
+            dataRegion.storeWords(wordAddress, words, 0, wordCount);
+            this.reservationTable.invalidate(wordAddress, wordCount * BYTES_PER_WORD);
+            if (notify) {
+                this.dispatchBulkWriteEvents(wordAddress, words, wordCount, address, endAddress);
+            }
+            wordAddress += wordCount * BYTES_PER_WORD;
+            remainingWords -= wordCount;
+        }
+    }
+
+    /**
+     * Notify listeners of the writes made to <code>wordCount</code> consecutive words starting at
+     * <code>wordAddress</code>, whose new values are in <code>words</code>, for the bytes within the range from
+     * <code>address</code> (inclusive) to <code>endAddress</code> (exclusive).
+     */
+    private void dispatchBulkWriteEvents(int wordAddress, int[] words, int wordCount, int address, int endAddress) {
+        if (this.getListeners(wordAddress, wordCount * BYTES_PER_WORD).isEmpty()) {
+            return;
+        }
+        for (int index = 0; index < wordCount; index++, wordAddress += BYTES_PER_WORD) {
+            if (wordAddress - address >= 0 && endAddress - (wordAddress + BYTES_PER_WORD) >= 0) {
+                this.dispatchWriteEvent(wordAddress, BYTES_PER_WORD, words[index], wordAddress, words[index]);
+                continue;
+            }
+            for (int byteIndex = 0; byteIndex < BYTES_PER_WORD; byteIndex++) {
+                int byteAddress = wordAddress + byteIndex;
+                if (byteAddress - address >= 0 && byteAddress - endAddress < 0) {
+                    int byteValue = Binary.getByte(words[index], this.getByteIndex(byteIndex));
+                    this.dispatchWriteEvent(byteAddress, 1, byteValue, wordAddress, words[index]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy a contiguous range of bytes from one location in memory to another. The ranges may overlap, in which case
+     * the result is as if the source bytes were first copied into a temporary buffer (like <code>memmove</code> in C).
+     * Listeners are not notified of reads, but are notified of writes as by
+     * {@link #storeBytes(int, byte[], int, int, boolean)}, and a back-step is recorded for every word modified.
+     *
+     * @param destination The address of the first byte to write to.
+     * @param source      The address of the first byte to read from.
+     * @param length      The number of bytes to copy.
+     * @throws AddressErrorException Thrown if any byte in either range is out of range or does not allow
+     *         the operation.
+     */
+    public void copyBytes(int destination, int source, int length) throws AddressErrorException {
+        if (length <= 0 || destination == source) {
+            return;
+        }
+        byte[] buffer = new byte[Math.min(length, BULK_CHUNK_BYTES)];
+        if (Integer.compareUnsigned(destination - source, length) < 0) {
+            // The destination overlaps the tail of the source, so copy from the end backwards
+            for (int remaining = length; remaining > 0; ) {
+                int chunkLength = Math.min(remaining, buffer.length);
+                remaining -= chunkLength;
+                this.fetchBytes(source + remaining, buffer, 0, chunkLength);
+                this.storeBytes(destination + remaining, buffer, 0, chunkLength);
+            }
+        }
+        else {
+            for (int copied = 0; copied < length; ) {
+                int chunkLength = Math.min(length - copied, buffer.length);
+                this.fetchBytes(source + copied, buffer, 0, chunkLength);
+                this.storeBytes(destination + copied, buffer, 0, chunkLength);
+                copied += chunkLength;
+            }
+        }
+    }
+
+    /**
+     * Fill a contiguous range of bytes in memory with a single value (like <code>memset</code> in C).
+     * Listeners are notified of writes as by {@link #storeBytes(int, byte[], int, int, boolean)}, and a back-step
+     * is recorded for every word modified.
+     *
+     * @param address The address of the first byte to write to.
+     * @param value   The value to fill the range with. (Only the lowest 8 bits are used.)
+     * @param length  The number of bytes to fill.
+     * @throws AddressErrorException Thrown if any byte in the range is out of range or does not allow this operation.
+     */
+    public void fillBytes(int address, int value, int length) throws AddressErrorException {
+        if (length <= 0) {
+            return;
+        }
+        byte[] buffer = new byte[Math.min(length, BULK_CHUNK_BYTES)];
+        Arrays.fill(buffer, (byte) value);
+        for (int filled = 0; filled < length; ) {
+            int chunkLength = Math.min(length - filled, buffer.length);
+            this.storeBytes(address + filled, buffer, 0, chunkLength);
+            filled += chunkLength;
+        }
+    }
+
+    /**
+     * Fetch up to <code>maxWords</code> consecutive words into <code>words</code>, stopping early at the end of
+     * the memory region containing <code>wordAddress</code>.
+     *
+     * @return The number of words fetched, which is always at least 1.
+     */
+    private int fetchWordChunk(int wordAddress, int maxWords, int[] words, int faultAddress) throws AddressErrorException {
+        DataRegion dataRegion = this.getDataRegionForAddress(wordAddress);
+        if (dataRegion != null) {
+            int wordCount = getRegionWordCount(wordAddress, dataRegion.getLastAddress(), maxWords);
+            dataRegion.fetchWords(wordAddress, words, 0, wordCount);
+            return wordCount;
+        }
+        TextRegion textRegion = this.getTextRegionForAddress(wordAddress);
+        if (textRegion != null) {
+            ProgramStatement statement = textRegion.fetchStatement(wordAddress);
+            words[0] = (statement == null) ? 0 : statement.getBinaryStatement();
+            return 1;
+        }
+        throw new AddressErrorException("segmentation fault (address out of range)", ExceptionCause.ADDRESS_EXCEPTION_FETCH, faultAddress);
+    }
+
+    /**
+     * Determine the number of words touched by the <code>length</code> bytes starting at <code>address</code>.
+     */
+    private static int getWordSpan(int address, int length) {
+        return (int) (((address & (BYTES_PER_WORD - 1)) + (long) length + BYTES_PER_WORD - 1) / BYTES_PER_WORD);
+    }
+
+    /**
+     * Determine how many of the next <code>maxWords</code> words starting at <code>wordAddress</code> lie at or
+     * before <code>regionLastAddress</code>.
+     */
+    private static int getRegionWordCount(int wordAddress, int regionLastAddress, int maxWords) {
+        long regionWords = Integer.toUnsignedLong(regionLastAddress - wordAddress) / BYTES_PER_WORD + 1;
+        return (int) Math.min(maxWords, regionWords);
+    }
+
+    /**
+     * Replace the bytes of <code>wordValue</code> (located at <code>wordAddress</code>) which fall within
+     * <code>[startAddress, endAddress)</code> with the corresponding bytes from <code>bytes</code>.
+     */
+    private int mergeBytes(int wordValue, int wordAddress, int startAddress, int endAddress, byte[] bytes, int offset) {
+        for (int byteIndex = 0; byteIndex < BYTES_PER_WORD; byteIndex++) {
+            int byteAddress = wordAddress + byteIndex;
+            if (byteAddress - startAddress >= 0 && byteAddress - endAddress < 0) {
+                wordValue = Binary.setByte(wordValue, this.getByteIndex(byteIndex), bytes[offset + byteAddress - startAddress]);
+            }
+        }
+        return wordValue;
+    }
+
+    /**
+     * Convert the offset of a byte within its word to the index used by {@link Binary#getByte(int, int)},
+     * according to the current endianness.
+     */
+    private int getByteIndex(int byteOffset) {
+        return switch (this.endianness) {
+            case BIG_ENDIAN -> BYTES_PER_WORD - 1 - byteOffset;
+            case LITTLE_ENDIAN -> byteOffset;
+        };
+    }
+
     /**
      * Search for first "null" memory value in an address range, as indicated by the return value
      * of {@link #fetchWordOrNull}.
@@ -973,6 +1423,10 @@ public class Memory {
      * In addition, the array of tables only has as many elements as is necessary to fully cover the region.
      * A base address is used as the memory offset of the first table in the array.
      * <p>
+     * Pages which are mapped (see {@link #mapPages(int, int, ByteBuffer, boolean)}) are filled the first time they
+     * are stored to. Until then, fetches read straight from the mapped buffer, so fetching never changes the tables
+     * and a page journal sees a mapped page as unallocated until it is first modified.
+     * <p>
      * Sean Clarke (05/2024): The note below is interesting, but not really relevant. I'll keep it here for now.
      * <p>
      * The SPIM simulator stores statically allocated data (i.e. data following a <code>.data</code> directive)
@@ -1000,8 +1454,63 @@ public class Memory {
             return wordOffset / WORDS_PER_TABLE;
         }
 
+        private static final int BYTES_PER_BLOCK = BYTES_PER_WORD * WORDS_PER_BLOCK;
+
+        /**
+         * A range of pages read from a buffer until each is first stored to, when it is filled from the buffer.
+         *
+         * @param firstPage The index of the first page within the region.
+         * @param pageCount The number of pages mapped.
+         * @param contents  The bytes the pages are filled from, which are never modified.
+         * @param readOnly  Whether stores to the pages are forbidden.
+         */
+        public record Mapping(int firstPage, int pageCount, ByteBuffer contents, boolean readOnly) {
+            boolean overlaps(int firstPage, int pageCount) {
+                return firstPage < this.firstPage + this.pageCount && this.firstPage < firstPage + pageCount;
+            }
+
+            int[] loadPage(int pageIndex) {
+                int[] block = new int[WORDS_PER_BLOCK];
+                int start = (pageIndex - this.firstPage) * BYTES_PER_BLOCK;
+                int available = Math.min(this.contents.limit() - start, BYTES_PER_BLOCK);
+                if (available > 0) {
+                    int wordCount = available / BYTES_PER_WORD;
+                    this.contents.slice(start, wordCount * BYTES_PER_WORD).order(this.contents.order()).asIntBuffer().get(block, 0, wordCount);
+                    // A partial word at the end of the contents is padded with zeros
+                    for (int byteOffset = 0; byteOffset < available % BYTES_PER_WORD; byteOffset++) {
+                        int byteIndex = (this.contents.order() == ByteOrder.LITTLE_ENDIAN) ? byteOffset : BYTES_PER_WORD - 1 - byteOffset;
+                        block[wordCount] = Binary.setByte(block[wordCount], byteIndex, this.contents.get(start + wordCount * BYTES_PER_WORD + byteOffset));
+                    }
+                }
+                return block;
+            }
+
+            int loadWord(int pageIndex, int wordIndex) {
+                int start = (pageIndex - this.firstPage) * BYTES_PER_BLOCK + wordIndex * BYTES_PER_WORD;
+                if (start + BYTES_PER_WORD <= this.contents.limit()) {
+                    return this.contents.getInt(start);
+                }
+                // A partial word at the end of the contents is padded with zeros
+                int word = 0;
+                for (int byteOffset = 0; start + byteOffset < this.contents.limit(); byteOffset++) {
+                    int byteIndex = (this.contents.order() == ByteOrder.LITTLE_ENDIAN) ? byteOffset : BYTES_PER_WORD - 1 - byteOffset;
+                    word = Binary.setByte(word, byteIndex, this.contents.get(start + byteOffset));
+                }
+                return word;
+            }
+        }
+
         private final int[][][] tables;
         private final int baseAddress;
+        private final int lastAddress;
+        // Replaced rather than modified, so a journal can keep the previous list; null if there are no mappings
+        private volatile List<Mapping> mappings;
+        private boolean mappingsJournaled;
+        private PageJournal journal;
+        /**
+         * One bit per page, set once the page has been given to the journal in the current interval.
+         */
+        private long[] journaledPages;
 
         /**
          * Allocate a new region of memory containing data.
@@ -1010,12 +1519,202 @@ public class Memory {
          * @param lastAddress  The highest address this region is required to contain.
          */
         public DataRegion(int firstAddress, int lastAddress) {
+            this.lastAddress = lastAddress;
             // Get the base address, which must be aligned to a table boundary
             this.baseAddress = alignToPrevious(firstAddress, BYTES_PER_TABLE);
             // Determine how many tables are needed to cover the region
             int tableCount = (lastAddress - this.baseAddress) / BYTES_PER_TABLE + 1;
             // Allocate an array which can hold that many tables
             this.tables = new int[tableCount][][];
+            this.mappings = null;
+            this.journal = null;
+            this.journaledPages = null;
+        }
+
+        private void journalPage(int tableIndex, int blockIndex) {
+            int pageIndex = tableIndex * BLOCKS_PER_TABLE + blockIndex;
+            long mask = 1L << pageIndex;
+            if ((this.journaledPages[pageIndex >>> 6] & mask) == 0) {
+                this.journaledPages[pageIndex >>> 6] |= mask;
+                int[][] table = this.tables[tableIndex];
+                int[] block = (table == null) ? null : table[blockIndex];
+                this.journal.pageModified(this, pageIndex, (block == null) ? null : block.clone());
+            }
+        }
+
+        /**
+         * Map a range of pages to a buffer, so that each page reads from the buffer instead of starting out as zeros,
+         * and is filled from it the first time it is stored to. Any current contents of the pages are discarded.
+         * The caller is responsible for ensuring that the address is page-aligned and that the range falls within
+         * this region, as no checking will be done.
+         *
+         * @param address  The address of the first page to map.
+         * @param length   The number of bytes to map, which is rounded up to a whole number of pages.
+         * @param contents The bytes to fill the pages with, ordered according to the endianness of memory.
+         *                 Bytes beyond its limit are zero.
+         * @param readOnly Whether {@link #isReadOnly(int, int)} should report the pages as read-only.
+         */
+        public synchronized void mapPages(int address, int length, ByteBuffer contents, boolean readOnly) {
+            int firstPage = (address - this.baseAddress) / BYTES_PER_BLOCK;
+            int pageCount = (int) ((length + (long) BYTES_PER_BLOCK - 1) / BYTES_PER_BLOCK);
+            List<Mapping> updated = this.discardPages(firstPage, pageCount);
+            updated.add(new Mapping(firstPage, pageCount, contents, readOnly));
+            this.mappings = List.copyOf(updated);
+        }
+
+        /**
+         * Remove any mappings overlapping a range of pages and discard the current contents of the pages,
+         * so that they are unallocated again. The caller is responsible for ensuring that the address is
+         * page-aligned and that the range falls within this region, as no checking will be done.
+         *
+         * @param address The address of the first page to unmap.
+         * @param length  The number of bytes to unmap, which is rounded up to a whole number of pages.
+         */
+        public synchronized void unmapPages(int address, int length) {
+            int firstPage = (address - this.baseAddress) / BYTES_PER_BLOCK;
+            int pageCount = (int) ((length + (long) BYTES_PER_BLOCK - 1) / BYTES_PER_BLOCK);
+            List<Mapping> updated = this.discardPages(firstPage, pageCount);
+            this.mappings = updated.isEmpty() ? null : List.copyOf(updated);
+        }
+
+        /**
+         * Discard a range of pages, journaling them and the mappings as needed.
+         *
+         * @return A modifiable copy of the mappings which do not overlap the range.
+         */
+        private List<Mapping> discardPages(int firstPage, int pageCount) {
+            if (this.journal != null && !this.mappingsJournaled) {
+                this.mappingsJournaled = true;
+                this.journal.mappingsModified(this, this.mappings);
+            }
+            List<Mapping> updated = (this.mappings == null) ? new ArrayList<>() : new ArrayList<>(this.mappings);
+            updated.removeIf(mapping -> mapping.overlaps(firstPage, pageCount));
+            for (int pageIndex = firstPage; pageIndex < firstPage + pageCount; pageIndex++) {
+                int tableIndex = pageIndex / BLOCKS_PER_TABLE;
+                int blockIndex = pageIndex % BLOCKS_PER_TABLE;
+                if (this.tables[tableIndex] != null && this.tables[tableIndex][blockIndex] != null) {
+                    if (this.journal != null) {
+                        this.journalPage(tableIndex, blockIndex);
+                    }
+                    this.tables[tableIndex][blockIndex] = null;
+                }
+            }
+            return updated;
+        }
+
+        /**
+         * Determine whether any of the given range of bytes lies in pages mapped as read-only.
+         * The caller is responsible for ensuring that the range falls within this region.
+         *
+         * @param address The address of the first byte.
+         * @param length  The number of bytes, which must be positive.
+         * @return <code>true</code> if a store to the range is not allowed.
+         */
+        public boolean isReadOnly(int address, int length) {
+            // The list is never modified once published, so no lock is needed, which matters since this is called
+            // for every store and most regions have no mappings
+            List<Mapping> mappings = this.mappings;
+            if (mappings == null) {
+                return false;
+            }
+            int firstPage = (address - this.baseAddress) / BYTES_PER_BLOCK;
+            int lastPage = (address + length - 1 - this.baseAddress) / BYTES_PER_BLOCK;
+            for (Mapping mapping : mappings) {
+                if (mapping.readOnly() && mapping.overlaps(firstPage, lastPage - firstPage + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Fill an unallocated page from the mapping containing it, if there is one, before it is stored to.
+         * Must be called while holding this region's lock.
+         */
+        private void loadMappedBlock(int tableIndex, int blockIndex) {
+            if (this.tables[tableIndex] != null && this.tables[tableIndex][blockIndex] != null) {
+                return;
+            }
+            int pageIndex = tableIndex * BLOCKS_PER_TABLE + blockIndex;
+            Mapping mapping = this.findMapping(pageIndex);
+            if (mapping != null) {
+                if (this.tables[tableIndex] == null) {
+                    this.tables[tableIndex] = new int[BLOCKS_PER_TABLE][];
+                }
+                this.tables[tableIndex][blockIndex] = mapping.loadPage(pageIndex);
+            }
+        }
+
+        /**
+         * Find the mapping containing a page.
+         *
+         * @return The mapping, or <code>null</code> if the page is not mapped.
+         */
+        private Mapping findMapping(int pageIndex) {
+            List<Mapping> mappings = this.mappings;
+            if (mappings != null) {
+                for (Mapping mapping : mappings) {
+                    if (mapping.overlaps(pageIndex, 1)) {
+                        return mapping;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Attach a journal to this region, which will be given the previous contents of each page the first time
+         * it is modified after {@link #clearPageJournal()} is called.
+         *
+         * @param journal The journal to attach, or <code>null</code> to detach the current one.
+         */
+        public synchronized void setPageJournal(PageJournal journal) {
+            this.journal = journal;
+            if (journal == null) {
+                this.journaledPages = null;
+            }
+            else if (this.journaledPages == null) {
+                this.journaledPages = new long[(this.tables.length * BLOCKS_PER_TABLE + 63) / 64];
+            }
+        }
+
+        /**
+         * Begin a new journal interval, so that every page will be journaled again the next time it is modified.
+         */
+        public synchronized void clearPageJournal() {
+            if (this.journaledPages != null) {
+                Arrays.fill(this.journaledPages, 0);
+            }
+            this.mappingsJournaled = false;
+        }
+
+        /**
+         * Replace the entire contents of a page, as previously given to the journal. The journal is not notified.
+         *
+         * @param pageIndex The index of the page within this region.
+         * @param contents  The new contents of the page, which this region takes ownership of,
+         *                  or <code>null</code> to make the page unallocated again.
+         */
+        public synchronized void restorePage(int pageIndex, int[] contents) {
+            int tableIndex = pageIndex / BLOCKS_PER_TABLE;
+            if (this.tables[tableIndex] == null) {
+                if (contents == null) {
+                    return;
+                }
+                this.tables[tableIndex] = new int[BLOCKS_PER_TABLE][];
+            }
+            this.tables[tableIndex][pageIndex % BLOCKS_PER_TABLE] = contents;
+        }
+
+        /**
+         * Replace the mappings of this region, as previously given to the journal. The journal is not notified.
+         * Pages which have already been filled are unaffected, so this is used along with
+         * {@link #restorePage(int, int[])}.
+         *
+         * @param mappings The mappings to use, or <code>null</code> for none.
+         */
+        public synchronized void restoreMappings(List<Mapping> mappings) {
+            this.mappings = mappings;
         }
 
         /**
@@ -1034,6 +1733,10 @@ public class Memory {
             int blockIndex = getBlockIndex(wordOffset);
             int tableIndex = getTableIndex(wordOffset);
 
+            if (this.journal != null) {
+                this.journalPage(tableIndex, blockIndex);
+            }
+            this.loadMappedBlock(tableIndex, blockIndex);
             // Allocate the table if necessary
             if (this.tables[tableIndex] == null) {
                 this.tables[tableIndex] = new int[BLOCKS_PER_TABLE][];
@@ -1064,14 +1767,121 @@ public class Memory {
             int tableIndex = getTableIndex(wordOffset);
 
             if (this.tables[tableIndex] == null || this.tables[tableIndex][blockIndex] == null) {
+                Mapping mapping = this.findMapping(tableIndex * BLOCKS_PER_TABLE + blockIndex);
                 // The table or block has not been allocated, so assume it is 0 by default
-                return 0;
+                return (mapping == null) ? 0 : mapping.loadWord(tableIndex * BLOCKS_PER_TABLE + blockIndex, wordIndex);
             }
             else {
                 return this.tables[tableIndex][blockIndex][wordIndex];
             }
         }
 
+        /**
+         * Pass every page which has been allocated to a visitor, in order of address. Pages which have never been
+         * accessed are zero and are skipped, as are mapped pages which have not been stored to yet.
+         *
+         * @param visitor Called with the words of each page, which must not be modified, and the address of
+         *                the first byte of the page.
+         */
+        public synchronized void forEachPage(ObjIntConsumer<int[]> visitor) {
+            for (int tableIndex = 0; tableIndex < this.tables.length; tableIndex++) {
+                int[][] table = this.tables[tableIndex];
+                if (table == null) {
+                    continue;
+                }
+                for (int blockIndex = 0; blockIndex < table.length; blockIndex++) {
+                    if (table[blockIndex] != null) {
+                        visitor.accept(table[blockIndex], this.baseAddress + tableIndex * BYTES_PER_TABLE + blockIndex * BYTES_PER_BLOCK);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Get the highest address this region was required to contain when it was allocated.
+         *
+         * @return The last address of the region.
+         */
+        public int getLastAddress() {
+            return this.lastAddress;
+        }
+
+        /**
+         * Store a sequence of consecutive words in the region starting at a given address, one block at a time.
+         * The caller is responsible for ensuring that the address is word-aligned and that all of the words
+         * fall within this region, as no checking will be done.
+         *
+         * @param address The address to store the first word at.
+         * @param words   The array containing the values to store.
+         * @param offset  The index in <code>words</code> of the first value to store.
+         * @param count   The number of words to store.
+         */
+        public synchronized void storeWords(int address, int[] words, int offset, int count) {
+            int wordOffset = (address - this.baseAddress) >>> 2;
+            while (count > 0) {
+                int wordIndex = getWordIndex(wordOffset);
+                int blockIndex = getBlockIndex(wordOffset);
+                int tableIndex = getTableIndex(wordOffset);
+                int chunkLength = Math.min(count, WORDS_PER_BLOCK - wordIndex);
+
+                if (this.journal != null) {
+                    this.journalPage(tableIndex, blockIndex);
+                }
+                this.loadMappedBlock(tableIndex, blockIndex);
+                // Allocate the table if necessary
+                if (this.tables[tableIndex] == null) {
+                    this.tables[tableIndex] = new int[BLOCKS_PER_TABLE][];
+                }
+                // Allocate the block if necessary
+                if (this.tables[tableIndex][blockIndex] == null) {
+                    this.tables[tableIndex][blockIndex] = new int[WORDS_PER_BLOCK];
+                }
+
+                System.arraycopy(words, offset, this.tables[tableIndex][blockIndex], wordIndex, chunkLength);
+                wordOffset += chunkLength;
+                offset += chunkLength;
+                count -= chunkLength;
+            }
+        }
+
+        /**
+         * Fetch a sequence of consecutive words from the region starting at a given address, one block at a time.
+         * The caller is responsible for ensuring that the address is word-aligned and that all of the words
+         * fall within this region, as no checking will be done.
+         *
+         * @param address The address of the first word to fetch.
+         * @param words   The array to store the fetched values into (words default to 0).
+         * @param offset  The index in <code>words</code> at which to store the first value.
+         * @param count   The number of words to fetch.
+         */
+        public synchronized void fetchWords(int address, int[] words, int offset, int count) {
+            int wordOffset = (address - this.baseAddress) >>> 2;
+            while (count > 0) {
+                int wordIndex = getWordIndex(wordOffset);
+                int blockIndex = getBlockIndex(wordOffset);
+                int tableIndex = getTableIndex(wordOffset);
+                int chunkLength = Math.min(count, WORDS_PER_BLOCK - wordIndex);
+
+                int[] block = (this.tables[tableIndex] == null) ? null : this.tables[tableIndex][blockIndex];
+                Mapping mapping = (block == null) ? this.findMapping(tableIndex * BLOCKS_PER_TABLE + blockIndex) : null;
+                if (block != null) {
+                    System.arraycopy(block, wordIndex, words, offset, chunkLength);
+                }
+                else if (mapping != null) {
+                    for (int index = 0; index < chunkLength; index++) {
+                        words[offset + index] = mapping.loadWord(tableIndex * BLOCKS_PER_TABLE + blockIndex, wordIndex + index);
+                    }
+                }
+                else {
+                    // The table or block has not been allocated, so assume it is 0 by default
+                    Arrays.fill(words, offset, offset + chunkLength, 0);
+                }
+                wordOffset += chunkLength;
+                offset += chunkLength;
+                count -= chunkLength;
+            }
+        }
+
         /**
          * Fetch a word from the region at a given address, or null if the word lies in a block
          * which has not been allocated before.
@@ -1091,8 +1901,9 @@ public class Memory {
             int tableIndex = getTableIndex(wordOffset);
 
             if (this.tables[tableIndex] == null || this.tables[tableIndex][blockIndex] == null) {
+                Mapping mapping = this.findMapping(tableIndex * BLOCKS_PER_TABLE + blockIndex);
                 // The table or block has not been allocated, so return null
-                return null;
+                return (mapping == null) ? null : mapping.loadWord(tableIndex * BLOCKS_PER_TABLE + blockIndex, wordIndex);
             }
             else {
                 return this.tables[tableIndex][blockIndex][wordIndex];
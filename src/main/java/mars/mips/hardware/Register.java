@@ -149,6 +149,18 @@ public class Register {
         return previousValue;
     }
 
+    /**
+     * Sets the value of the register without notifying listeners.
+     *
+     * @param value Value to set the register to.
+     * @return Previous value of the register.
+     */
+    public synchronized int setValueNoNotify(int value) {
+        int previousValue = this.value;
+        this.value = value;
+        return previousValue;
+    }
+
     /**
      * Resets the value of the register to the value it was constructed with.
      * Listeners are not notified.
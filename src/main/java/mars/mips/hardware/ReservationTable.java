@@ -0,0 +1,127 @@
+package mars.mips.hardware;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Tracks the load-linked reservations held by each hart, as used by the <code>ll</code> and <code>sc</code>
+ * instructions. Each hart may hold at most one reservation, identified by the address of the reserved word.
+ * A reservation is broken when any hart stores to the reserved word, or when the holding hart
+ * performs a successful or failed store conditional.
+ * <p>
+ * Reservations are kept in a map from each reserved word to the set of harts holding a reservation on it, as a
+ * bit mask. Harts are interleaved on the simulator thread, so the table is only contended when another thread,
+ * such as a tool, writes to memory while the program runs; every method is synchronized for that case. Stores
+ * skip the table entirely while no reservation is held, which is the common case.
+ */
+public class ReservationTable {
+    /**
+     * The maximum number of harts which can be simulated, each of which may hold one reservation.
+     */
+    public static final int MAX_HARTS = 8;
+
+    // Reserved word address -> bit mask of the harts holding a reservation on it
+    private final Map<Integer, Integer> reservations;
+    // Hart index -> reserved word address, valid only where the hart's bit is set in the map
+    private final int[] reservedWords;
+    private volatile boolean empty;
+
+    /**
+     * Create a new reservation table in which no hart holds a reservation.
+     */
+    public ReservationTable() {
+        this.reservations = new HashMap<>();
+        this.reservedWords = new int[MAX_HARTS];
+        this.empty = true;
+    }
+
+    /**
+     * Break all reservations held by all harts.
+     */
+    public synchronized void clear() {
+        this.reservations.clear();
+        this.empty = true;
+    }
+
+    /**
+     * Record a reservation on the word containing the given address for the given hart,
+     * replacing any reservation the hart already holds.
+     *
+     * @param hart    The index of the hart performing the load-linked operation.
+     * @param address The address loaded from.
+     */
+    public synchronized void reserve(int hart, int address) {
+        this.release(hart);
+        int wordAddress = Memory.alignToPrevious(address, Memory.BYTES_PER_WORD);
+        this.reservations.merge(wordAddress, 1 << hart, (harts, added) -> harts | added);
+        this.reservedWords[hart] = wordAddress;
+        this.empty = false;
+    }
+
+    /**
+     * Consume the reservation held by the given hart, determining whether a store conditional to the given address
+     * may succeed. The hart's reservation is broken regardless of the outcome.
+     *
+     * @param hart    The index of the hart performing the store conditional operation.
+     * @param address The address to be stored to.
+     * @return <code>true</code> if the hart held a reservation on the word containing <code>address</code>,
+     *         or <code>false</code> otherwise.
+     */
+    public synchronized boolean consume(int hart, int address) {
+        boolean reserved = this.isReserved(hart, this.reservedWords[hart])
+            && this.reservedWords[hart] == Memory.alignToPrevious(address, Memory.BYTES_PER_WORD);
+        this.release(hart);
+        return reserved;
+    }
+
+    /**
+     * Break the reservation held by the given hart, if any.
+     *
+     * @param hart The index of the hart whose reservation should be broken.
+     */
+    public synchronized void release(int hart) {
+        int wordAddress = this.reservedWords[hart];
+        if (this.isReserved(hart, wordAddress)) {
+            int harts = this.reservations.get(wordAddress) & ~(1 << hart);
+            if (harts == 0) {
+                this.reservations.remove(wordAddress);
+                this.empty = this.reservations.isEmpty();
+            }
+            else {
+                this.reservations.put(wordAddress, harts);
+            }
+        }
+    }
+
+    /**
+     * Break any reservations on the words overlapping a range of bytes which has just been written to.
+     *
+     * @param address The address of the first byte written.
+     * @param length  The number of bytes written.
+     */
+    public void invalidate(int address, int length) {
+        if (this.empty) {
+            // Fast path: nothing to invalidate
+            return;
+        }
+        int firstWord = Memory.alignToPrevious(address, Memory.BYTES_PER_WORD);
+        int lastWord = Memory.alignToPrevious(address + length - 1, Memory.BYTES_PER_WORD);
+        synchronized (this) {
+            // At most one reservation per hart exists, so scanning them beats looking up every word of a long range
+            Iterator<Integer> iterator = this.reservations.keySet().iterator();
+            while (iterator.hasNext()) {
+                int reserved = iterator.next();
+                if (Memory.rangesIntersect(reserved, reserved, firstWord, lastWord)) {
+                    iterator.remove();
+                }
+            }
+            this.empty = this.reservations.isEmpty();
+        }
+    }
+
+    private boolean isReserved(int hart, int wordAddress) {
+        Integer harts = this.reservations.get(wordAddress);
+        return harts != null && (harts & (1 << hart)) != 0;
+    }
+}
@@ -0,0 +1,327 @@
+package mars.mips.instructions;
+
+import mars.mips.hardware.Memory;
+
+/**
+ * Summary of the architectural behavior of a single MIPS machine instruction, decoded from its binary encoding:
+ * which registers it reads and writes, whether it accesses memory, and whether it transfers control.
+ * This is intended for analysis engines (timing models, predictors, profilers) which observe the instruction
+ * stream and need to classify every executed instruction cheaply.
+ * <p>
+ * Registers are identified by a single index space: 0-31 are the general-purpose registers,
+ * 32-63 are the floating-point registers, followed by {@link #HIGH_ORDER}, {@link #LOW_ORDER},
+ * and {@link #CONDITION_FLAGS}.
+ * <p>
+ * Instances are immutable. Use {@link #decode(int)}, which caches recent decodings so that hot loops
+ * do not allocate.
+ */
+public final class DecodedInstruction {
+    /**
+     * Index of the first floating-point register in the register index space.
+     */
+    public static final int FIRST_FLOATING_POINT = 32;
+    /**
+     * Index of the hi register in the register index space.
+     */
+    public static final int HIGH_ORDER = 64;
+    /**
+     * Index of the lo register in the register index space.
+     */
+    public static final int LOW_ORDER = 65;
+    /**
+     * Index of the Coprocessor 1 condition flags in the register index space.
+     */
+    public static final int CONDITION_FLAGS = 66;
+    /**
+     * Total number of indices in the register index space.
+     */
+    public static final int REGISTER_COUNT = 67;
+
+    /**
+     * The instruction reads from memory.
+     */
+    public static final int LOAD = 1;
+    /**
+     * The instruction writes to memory.
+     */
+    public static final int STORE = 1 << 1;
+    /**
+     * The instruction is a conditional branch.
+     */
+    public static final int BRANCH = 1 << 2;
+    /**
+     * The instruction is an unconditional jump (including calls and returns).
+     */
+    public static final int JUMP = 1 << 3;
+    /**
+     * The instruction transfers control and saves a return address (<code>jal</code>, <code>jalr</code>,
+     * <code>bgezal</code>, <code>bltzal</code>).
+     */
+    public static final int CALL = 1 << 4;
+    /**
+     * The instruction is <code>jr $ra</code>, the conventional function return.
+     */
+    public static final int RETURN = 1 << 5;
+    /**
+     * The instruction uses the multiply unit.
+     */
+    public static final int MULTIPLY = 1 << 6;
+    /**
+     * The instruction uses the divide unit.
+     */
+    public static final int DIVIDE = 1 << 7;
+    /**
+     * The instruction is a <code>syscall</code>, <code>break</code>, trap, or <code>eret</code>.
+     */
+    public static final int SYSTEM = 1 << 8;
+
+    private static final int[] NO_REGISTERS = {};
+    private static final int CACHE_SIZE = 4096;
+    private static final DecodedInstruction[] CACHE = new DecodedInstruction[CACHE_SIZE];
+
+    /**
+     * Decode a binary instruction, reusing a cached result if the same encoding was decoded recently.
+     * This method may be called from any thread.
+     *
+     * @param word The binary encoding of the instruction.
+     * @return The decoded instruction.
+     */
+    public static DecodedInstruction decode(int word) {
+        int slot = (word ^ (word >>> 13) ^ (word >>> 26)) & (CACHE_SIZE - 1);
+        DecodedInstruction cached = CACHE[slot];
+        if (cached == null || cached.word != word) {
+            // Objects are immutable with only final fields, so a benign race on the cache slot is harmless
+            cached = new DecodedInstruction(word);
+            CACHE[slot] = cached;
+        }
+        return cached;
+    }
+
+    private final int word;
+    private final int flags;
+    private final int memoryAccessSize;
+    private final int[] sources;
+    private final int[] destinations;
+
+    private DecodedInstruction(int word) {
+        // Decode into a temporary object first, so every field here can be final and safely published
+        // through the cache without synchronization
+        Decoder decoder = new Decoder(word);
+        this.word = word;
+        this.flags = decoder.flags;
+        this.memoryAccessSize = decoder.memoryAccessSize;
+        this.sources = decoder.sources;
+        this.destinations = decoder.destinations;
+    }
+
+    /**
+     * Mutable working state used while decoding an instruction word.
+     */
+    private static final class Decoder {
+        private int flags;
+        private int memoryAccessSize;
+        private int[] sources;
+        private int[] destinations;
+
+        private Decoder(int word) {
+            this.flags = 0;
+            this.memoryAccessSize = 0;
+            this.sources = NO_REGISTERS;
+            this.destinations = NO_REGISTERS;
+
+            int opcode = word >>> 26;
+            int rs = (word >>> 21) & 0x1F;
+            int rt = (word >>> 16) & 0x1F;
+            int rd = (word >>> 11) & 0x1F;
+            int funct = word & 0x3F;
+            int fs = FIRST_FLOATING_POINT + rd;
+            int ft = FIRST_FLOATING_POINT + rt;
+            int fd = FIRST_FLOATING_POINT + ((word >>> 6) & 0x1F);
+
+            switch (opcode) {
+                case 0x00 -> { // SPECIAL
+                    switch (funct) {
+                        case 0x00, 0x02, 0x03 -> this.set(0, regs(rt), regs(rd)); // sll, srl, sra
+                        case 0x01 -> this.set(0, regs(rs, CONDITION_FLAGS), regs(rd)); // movf, movt
+                        case 0x04, 0x06, 0x07, 0x0A, 0x0B -> this.set(0, regs(rs, rt), regs(rd)); // variable shifts, movz, movn
+                        case 0x08 -> this.set(JUMP | (rs == 31 ? RETURN : 0), regs(rs), NO_REGISTERS); // jr
+                        case 0x09 -> this.set(JUMP | CALL, regs(rs), regs(rd)); // jalr
+                        case 0x0C -> this.set(SYSTEM, regs(2, 4, 5, 6), regs(2)); // syscall
+                        case 0x0D -> this.set(SYSTEM, NO_REGISTERS, NO_REGISTERS); // break
+                        case 0x10 -> this.set(0, regs(HIGH_ORDER), regs(rd)); // mfhi
+                        case 0x11 -> this.set(0, regs(rs), regs(HIGH_ORDER)); // mthi
+                        case 0x12 -> this.set(0, regs(LOW_ORDER), regs(rd)); // mflo
+                        case 0x13 -> this.set(0, regs(rs), regs(LOW_ORDER)); // mtlo
+                        case 0x18, 0x19 -> this.set(MULTIPLY, regs(rs, rt), regs(HIGH_ORDER, LOW_ORDER)); // mult, multu
+                        case 0x1A, 0x1B -> this.set(DIVIDE, regs(rs, rt), regs(HIGH_ORDER, LOW_ORDER)); // div, divu
+                        case 0x30, 0x31, 0x32, 0x33, 0x34, 0x36 -> this.set(SYSTEM, regs(rs, rt), NO_REGISTERS); // traps
+                        default -> this.set(0, regs(rs, rt), regs(rd)); // ALU operations
+                    }
+                }
+                case 0x01 -> { // REGIMM
+                    switch (rt) {
+                        case 0x00, 0x01 -> this.set(BRANCH, regs(rs), NO_REGISTERS); // bltz, bgez
+                        case 0x10, 0x11 -> this.set(BRANCH | CALL, regs(rs), regs(31)); // bltzal, bgezal
+                        default -> this.set(SYSTEM, regs(rs), NO_REGISTERS); // traps
+                    }
+                }
+                case 0x02 -> this.set(JUMP, NO_REGISTERS, NO_REGISTERS); // j
+                case 0x03 -> this.set(JUMP | CALL, NO_REGISTERS, regs(31)); // jal
+                case 0x04, 0x05 -> this.set(BRANCH, regs(rs, rt), NO_REGISTERS); // beq, bne
+                case 0x06, 0x07 -> this.set(BRANCH, regs(rs), NO_REGISTERS); // blez, bgtz
+                case 0x0F -> this.set(0, NO_REGISTERS, regs(rt)); // lui
+                case 0x10 -> { // COP0
+                    if (rs == 0x00) {
+                        this.set(0, NO_REGISTERS, regs(rt)); // mfc0
+                    }
+                    else if (rs == 0x04) {
+                        this.set(0, regs(rt), NO_REGISTERS); // mtc0
+                    }
+                    else {
+                        this.set(SYSTEM | JUMP, NO_REGISTERS, NO_REGISTERS); // eret
+                    }
+                }
+                case 0x11 -> { // COP1
+                    switch (rs) {
+                        case 0x00 -> this.set(0, regs(fs), regs(rt)); // mfc1
+                        case 0x04 -> this.set(0, regs(rt), regs(fs)); // mtc1
+                        case 0x08 -> this.set(BRANCH, regs(CONDITION_FLAGS), NO_REGISTERS); // bc1f, bc1t
+                        default -> {
+                            int fr = FIRST_FLOATING_POINT + ((word >>> 11) & 0x1F);
+                            if (funct >= 0x30) {
+                                this.set(0, regs(fr, ft), regs(CONDITION_FLAGS)); // c.cond.fmt
+                            }
+                            else if (funct == 0x11) {
+                                this.set(0, regs(fr, CONDITION_FLAGS), regs(fd)); // movf.fmt, movt.fmt
+                            }
+                            else if (funct == 0x12 || funct == 0x13) {
+                                this.set(0, regs(fr, rt), regs(fd)); // movz.fmt, movn.fmt
+                            }
+                            else if (funct == 0x02) {
+                                this.set(MULTIPLY, regs(fr, ft), regs(fd)); // mul.fmt
+                            }
+                            else if (funct == 0x03) {
+                                this.set(DIVIDE, regs(fr, ft), regs(fd)); // div.fmt
+                            }
+                            else {
+                                this.set(0, regs(fr, ft), regs(fd)); // other arithmetic and conversions
+                            }
+                        }
+                    }
+                }
+                case 0x1C -> { // SPECIAL2
+                    switch (funct) {
+                        case 0x00, 0x01, 0x04, 0x05 -> this.set(MULTIPLY, regs(rs, rt, HIGH_ORDER, LOW_ORDER), regs(HIGH_ORDER, LOW_ORDER)); // madd, maddu, msub, msubu
+                        case 0x02 -> this.set(MULTIPLY, regs(rs, rt), regs(rd)); // mul
+                        default -> this.set(0, regs(rs), regs(rd)); // clz, clo
+                    }
+                }
+                case 0x20, 0x21, 0x23, 0x24, 0x25, 0x30 -> this.setMemory(LOAD, loadSize(opcode), regs(rs), regs(rt)); // lb, lh, lw, lbu, lhu, ll
+                case 0x22, 0x26 -> this.setMemory(LOAD, Memory.BYTES_PER_WORD, regs(rs, rt), regs(rt)); // lwl, lwr
+                case 0x28, 0x29, 0x2A, 0x2B, 0x2E -> this.setMemory(STORE, storeSize(opcode), regs(rs, rt), NO_REGISTERS); // sb, sh, swl, sw, swr
+                case 0x38 -> this.setMemory(STORE, Memory.BYTES_PER_WORD, regs(rs, rt), regs(rt)); // sc
+                case 0x31 -> this.setMemory(LOAD, Memory.BYTES_PER_WORD, regs(rs), regs(ft)); // lwc1
+                case 0x35 -> this.setMemory(LOAD, Memory.BYTES_PER_DOUBLEWORD, regs(rs), regs(ft, pair(ft))); // ldc1
+                case 0x39 -> this.setMemory(STORE, Memory.BYTES_PER_WORD, regs(rs, ft), NO_REGISTERS); // swc1
+                case 0x3D -> this.setMemory(STORE, Memory.BYTES_PER_DOUBLEWORD, regs(rs, ft, pair(ft)), NO_REGISTERS); // sdc1
+                default -> this.set(0, regs(rs), regs(rt)); // immediate ALU operations
+            }
+
+            // Writes to $zero are discarded, so they never create a dependency
+            if (this.destinations.length == 1 && this.destinations[0] == 0) {
+                this.destinations = NO_REGISTERS;
+            }
+        }
+
+        private void set(int flags, int[] sources, int[] destinations) {
+            this.flags = flags;
+            this.sources = sources;
+            this.destinations = destinations;
+        }
+
+        private void setMemory(int flags, int memoryAccessSize, int[] sources, int[] destinations) {
+            this.set(flags, sources, destinations);
+            this.memoryAccessSize = memoryAccessSize;
+        }
+    }
+
+    private static int[] regs(int... registers) {
+        return registers;
+    }
+
+    private static int pair(int floatingPointRegister) {
+        // The odd register of an even/odd pair, wrapping around within the floating-point registers
+        return FIRST_FLOATING_POINT + ((floatingPointRegister - FIRST_FLOATING_POINT + 1) & 0x1F);
+    }
+
+    private static int loadSize(int opcode) {
+        return switch (opcode) {
+            case 0x20, 0x24 -> 1;
+            case 0x21, 0x25 -> Memory.BYTES_PER_HALFWORD;
+            default -> Memory.BYTES_PER_WORD;
+        };
+    }
+
+    private static int storeSize(int opcode) {
+        return switch (opcode) {
+            case 0x28 -> 1;
+            case 0x29 -> Memory.BYTES_PER_HALFWORD;
+            default -> Memory.BYTES_PER_WORD;
+        };
+    }
+
+    /**
+     * Get the binary encoding this instruction was decoded from.
+     *
+     * @return The binary instruction word.
+     */
+    public int getWord() {
+        return this.word;
+    }
+
+    /**
+     * Determine whether this instruction has any of the given properties.
+     *
+     * @param mask A combination of the property constants in this class, such as {@link #LOAD} or {@link #BRANCH}.
+     * @return <code>true</code> if at least one of the properties applies, or <code>false</code> otherwise.
+     */
+    public boolean is(int mask) {
+        return (this.flags & mask) != 0;
+    }
+
+    /**
+     * Get all properties of this instruction as a bitmask.
+     *
+     * @return A combination of the property constants in this class.
+     */
+    public int getFlags() {
+        return this.flags;
+    }
+
+    /**
+     * Get the number of bytes this instruction reads from or writes to memory.
+     *
+     * @return The access size in bytes, or 0 if this instruction does not access memory.
+     */
+    public int getMemoryAccessSize() {
+        return this.memoryAccessSize;
+    }
+
+    /**
+     * Get the registers read by this instruction. The returned array must not be modified.
+     *
+     * @return The register indices read, possibly empty.
+     */
+    public int[] getSources() {
+        return this.sources;
+    }
+
+    /**
+     * Get the registers written by this instruction. The returned array must not be modified.
+     *
+     * @return The register indices written, possibly empty.
+     */
+    public int[] getDestinations() {
+        return this.destinations;
+    }
+}
@@ -298,19 +298,20 @@ public class InstructionSet {
                 throw new ProcessingException(statement, e);
             }
         }));
-        instructionList.add(new BasicInstruction("ll $t1,-100($t2)", "Load linked : Paired with Store Conditional (sc) to perform atomic read-modify-write.  Treated as equivalent to Load Word (lw) because MARS does not simulate multiple processors.", BasicInstructionFormat.I_FORMAT, "110000 ttttt fffff ssssssssssssssss",
-            // The ll (load link) command is supposed to be the front end of an atomic
+        instructionList.add(new BasicInstruction("ll $t1,-100($t2)", "Load linked : Paired with Store Conditional (sc) to perform atomic read-modify-write.  Loads $t1 from effective address and reserves that word for the current hart.", BasicInstructionFormat.I_FORMAT, "110000 ttttt fffff ssssssssssssssss",
+            // The ll (load link) command is the front end of an atomic
             // operation completed by sc (store conditional), with success or failure
-            // of the store depending on whether the memory block containing the
-            // loaded word is modified in the meantime by a different processor.
-            // Since MARS, like SPIM simulates only a single processor, the store
-            // conditional will always succeed so there is no need to do anything
-            // special here.  In that case, ll is same as lw.  And sc does the same
-            // thing as sw except in addition it writes 1 into the source register.
+            // of the store depending on whether the word containing the loaded
+            // address is modified in the meantime by any hart.  The reservation
+            // is tracked per hart by the memory's reservation table, and is broken
+            // by any store to the word.
             statement -> {
                 int[] operands = statement.getOperands();
                 try {
-                    RegisterFile.updateRegister(operands[0], Memory.getInstance().fetchWord(RegisterFile.getValue(operands[2]) + operands[1], true));
+                    int address = RegisterFile.getValue(operands[2]) + operands[1];
+                    int value = Memory.getInstance().fetchWord(address, true);
+                    Memory.getInstance().getReservationTable().reserve(Simulator.getInstance().getCurrentHartIndex(), address);
+                    RegisterFile.updateRegister(operands[0], value);
                 }
                 catch (AddressErrorException e) {
                     throw new ProcessingException(statement, e);
@@ -353,18 +354,25 @@ public class InstructionSet {
                 throw new ProcessingException(statement, e);
             }
         }));
-        instructionList.add(new BasicInstruction("sc $t1,-100($t2)", "Store conditional : Paired with Load Linked (ll) to perform atomic read-modify-write.  Stores $t1 value into effective address, then sets $t1 to 1 for success.  Always succeeds because MARS does not simulate multiple processors.", BasicInstructionFormat.I_FORMAT, "111000 ttttt fffff ssssssssssssssss",
+        instructionList.add(new BasicInstruction("sc $t1,-100($t2)", "Store conditional : Paired with Load Linked (ll) to perform atomic read-modify-write.  If the current hart still holds the reservation made by ll, stores $t1 value into effective address and sets $t1 to 1 for success; otherwise, stores nothing and sets $t1 to 0.", BasicInstructionFormat.I_FORMAT, "111000 ttttt fffff ssssssssssssssss",
             // See comments with "ll" instruction above.  "sc" is implemented
-            // like "sw", except that 1 is placed in the source register.
+            // like "sw" if the reservation is intact, and the outcome is placed in the source register.
             statement -> {
                 int[] operands = statement.getOperands();
+                int address = RegisterFile.getValue(operands[2]) + operands[1];
+                boolean success;
                 try {
-                    Memory.getInstance().storeWord(RegisterFile.getValue(operands[2]) + operands[1], RegisterFile.getValue(operands[0]), true);
+                    // Alignment is checked before the reservation, as on real hardware
+                    Memory.enforceWordAlignment(address, ExceptionCause.ADDRESS_EXCEPTION_STORE);
+                    success = Memory.getInstance().getReservationTable().consume(Simulator.getInstance().getCurrentHartIndex(), address);
+                    if (success) {
+                        Memory.getInstance().storeWord(address, RegisterFile.getValue(operands[0]), true);
+                    }
                 }
                 catch (AddressErrorException e) {
                     throw new ProcessingException(statement, e);
                 }
-                RegisterFile.updateRegister(operands[0], 1); // always succeeds
+                RegisterFile.updateRegister(operands[0], success ? 1 : 0);
             }));
         instructionList.add(new BasicInstruction("swl $t1,-100($t2)", "Store word left : Store high-order 1 to 4 bytes of $t1 into memory, starting with effective byte address and continuing through the low-order byte of its word", BasicInstructionFormat.I_FORMAT, "101010 ttttt fffff ssssssssssssssss", statement -> {
             int[] operands = statement.getOperands();
@@ -1406,6 +1414,8 @@ public class InstructionSet {
             // set EXL bit (bit 1) in Status register to 0 and set PC to EPC
             Coprocessor0.updateRegister(Coprocessor0.STATUS, Binary.clearBit(Coprocessor0.getValue(Coprocessor0.STATUS), Coprocessor0.EXCEPTION_LEVEL));
             RegisterFile.setProgramCounter(Coprocessor0.getValue(Coprocessor0.EPC));
+            // Returning from an exception breaks any load-linked reservation held by this hart
+            Memory.getInstance().getReservationTable().release(Simulator.getInstance().getCurrentHartIndex());
         }));
 
         ////////////// READ PSEUDO-INSTRUCTION SPECS FROM DATA FILE AND ADD //////////////////////
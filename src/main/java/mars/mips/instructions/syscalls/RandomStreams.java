@@ -1,5 +1,7 @@
 package mars.mips.instructions.syscalls;
 
+import mars.simulator.Simulator;
+
 import java.util.HashMap;
 import java.util.Random;
 
@@ -54,6 +56,8 @@ public class RandomStreams {
         Random stream = RANDOM_STREAMS.get(index);
         if (stream == null) {
             stream = new Random(); // create a non-seeded stream
+            // The numbers it produces depend on the host rather than the program
+            Simulator.getInstance().getInputLog().markHostDependent();
             RANDOM_STREAMS.put(index, stream);
         }
         return stream;
@@ -5,6 +5,8 @@ import mars.ProgramStatement;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.InputLog;
+import mars.simulator.Simulator;
 
 import javax.swing.*;
 
@@ -64,7 +66,8 @@ public class SyscallConfirmDialog extends AbstractSyscall {
             String message = Memory.getInstance().fetchNullTerminatedString(RegisterFile.getValue(4));
 
             // Update register $a0 with the value from showConfirmDialog
-            RegisterFile.updateRegister(4, JOptionPane.showConfirmDialog(null, message));
+            InputLog log = Simulator.getInstance().getInputLog();
+            RegisterFile.updateRegister(4, log.hasNext(InputLog.INT) ? log.nextInt() : log.recordInt(JOptionPane.showConfirmDialog(null, message)));
         }
         catch (AddressErrorException exception) {
             throw new ProcessingException(statement, exception);
@@ -0,0 +1,32 @@
+package mars.mips.instructions.syscalls;
+
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.simulator.Simulator;
+
+/**
+ * Service to stop the hart (hardware thread) executing the syscall, leaving any other harts running.
+ * The program terminates once every hart has stopped. When only one hart is being simulated,
+ * this is equivalent to {@link SyscallExit}.
+ */
+public class SyscallHartExit extends AbstractSyscall {
+    /**
+     * Build an instance of the syscall with its default service number and name.
+     */
+    @SuppressWarnings("unused")
+    public SyscallHartExit() {
+        super(76, "HartExit");
+    }
+
+    /**
+     * Performs syscall function to stop the current hart.
+     */
+    @Override
+    public void simulate(ProgramStatement statement) throws ProcessingException {
+        if (Simulator.getInstance().getHartCount() <= 1) {
+            // Empty error list indicates a clean exit
+            throw new ProcessingException();
+        }
+        Simulator.getInstance().haltCurrentHart();
+    }
+}
@@ -0,0 +1,27 @@
+package mars.mips.instructions.syscalls;
+
+import mars.ProgramStatement;
+import mars.mips.hardware.RegisterFile;
+import mars.simulator.Simulator;
+
+/**
+ * Service to obtain the index of the hart (hardware thread) executing the syscall, returned in $v0.
+ * When only one hart is being simulated, the result is always 0.
+ */
+public class SyscallHartId extends AbstractSyscall {
+    /**
+     * Build an instance of the syscall with its default service number and name.
+     */
+    @SuppressWarnings("unused")
+    public SyscallHartId() {
+        super(75, "HartId");
+    }
+
+    /**
+     * Performs syscall function to place the index of the current hart into $v0.
+     */
+    @Override
+    public void simulate(ProgramStatement statement) {
+        RegisterFile.updateRegister(2, Simulator.getInstance().getCurrentHartIndex()); // Put hart index in $v0
+    }
+}
@@ -4,6 +4,8 @@ import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.*;
 import mars.simulator.ExceptionCause;
+import mars.simulator.InputLog;
+import mars.simulator.Simulator;
 
 import javax.swing.*;
 
@@ -74,7 +76,8 @@ public class SyscallInputDialogDouble extends AbstractSyscall {
         // A null return value means that "Cancel" was chosen rather than OK.
         // An empty string returned (that is, inputValue.length() of zero)
         // means that OK was chosen but no string was input.
-        String inputValue = JOptionPane.showInputDialog(message);
+        InputLog log = Simulator.getInstance().getInputLog();
+        String inputValue = log.hasNext(InputLog.STRING) ? log.nextString() : log.recordString(JOptionPane.showInputDialog(message));
 
         try {
             Coprocessor1.setRegisterPairToDouble(0, 0.0);  // set $f0 to zero
@@ -6,6 +6,8 @@ import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Coprocessor1;
 import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.InputLog;
+import mars.simulator.Simulator;
 
 import javax.swing.*;
 
@@ -76,7 +78,8 @@ public class SyscallInputDialogFloat extends AbstractSyscall {
         // A null return value means that "Cancel" was chosen rather than OK.
         // An empty string returned (that is, inputValue.length() of zero)
         // means that OK was chosen but no string was input.
-        String inputValue = JOptionPane.showInputDialog(message);
+        InputLog log = Simulator.getInstance().getInputLog();
+        String inputValue = log.hasNext(InputLog.STRING) ? log.nextString() : log.recordString(JOptionPane.showInputDialog(message));
 
         try {
             if (inputValue == null) {
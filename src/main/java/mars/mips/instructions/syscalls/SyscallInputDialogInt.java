@@ -5,6 +5,8 @@ import mars.ProgramStatement;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.InputLog;
+import mars.simulator.Simulator;
 
 import javax.swing.*;
 
@@ -75,7 +77,8 @@ public class SyscallInputDialogInt extends AbstractSyscall {
         // A null return value means that "Cancel" was chosen rather than OK.
         // An empty string returned (that is, inputValue.length() of zero)
         // means that OK was chosen but no string was input.
-        String inputValue = JOptionPane.showInputDialog(message);
+        InputLog log = Simulator.getInstance().getInputLog();
+        String inputValue = log.hasNext(InputLog.STRING) ? log.nextString() : log.recordString(JOptionPane.showInputDialog(message));
 
         if (inputValue == null) {
             // Cancel was chosen
@@ -5,6 +5,8 @@ import mars.ProgramStatement;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.InputLog;
+import mars.simulator.Simulator;
 
 import javax.swing.*;
 
@@ -77,7 +79,8 @@ public class SyscallInputDialogString extends AbstractSyscall {
         // A null return value means that "Cancel" was chosen rather than OK.
         // An empty string returned (that is, inputString.length() of zero)
         // means that OK was chosen but no string was input.
-        String inputString = JOptionPane.showInputDialog(message);
+        InputLog log = Simulator.getInstance().getInputLog();
+        String inputString = log.hasNext(InputLog.STRING) ? log.nextString() : log.recordString(JOptionPane.showInputDialog(message));
         if (inputString == null) {
             // Cancel was chosen
             RegisterFile.updateRegister(5, -2);  // set $a1 to -2 flag
@@ -0,0 +1,46 @@
+package mars.mips.instructions.syscalls;
+
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.RegisterFile;
+import mars.simulator.ExceptionCause;
+
+/**
+ * Service to copy $a2 bytes from the address in $a1 to the address in $a0, like <code>memmove</code> in C.
+ * The ranges may overlap, in which case the result is as if the source bytes were first copied into
+ * a temporary buffer. The address in $a0 is returned in $v0.
+ */
+public class SyscallMemmove extends AbstractSyscall {
+    /**
+     * Build an instance of the syscall with its default service number and name.
+     */
+    @SuppressWarnings("unused")
+    public SyscallMemmove() {
+        super(74, "Memmove");
+    }
+
+    /**
+     * Performs syscall function to copy $a2 bytes from the address in $a1 to the address in $a0.
+     */
+    @Override
+    public void simulate(ProgramStatement statement) throws ProcessingException {
+        int destination = RegisterFile.getValue(4); // $a0: destination address
+        int source = RegisterFile.getValue(5); // $a1: source address
+        int length = RegisterFile.getValue(6); // $a2: number of bytes to copy
+
+        if (length < 0) {
+            throw new ProcessingException(statement, "Length value in $a2 cannot be negative for " + this.getName() + " (syscall " + this.getNumber() + ")", ExceptionCause.SYSCALL_EXCEPTION);
+        }
+
+        try {
+            Memory.getInstance().copyBytes(destination, source, length);
+        }
+        catch (AddressErrorException exception) {
+            throw new ProcessingException(statement, exception);
+        }
+
+        RegisterFile.updateRegister(2, destination); // Put destination address in $v0
+    }
+}
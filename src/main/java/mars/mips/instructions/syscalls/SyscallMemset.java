@@ -0,0 +1,45 @@
+package mars.mips.instructions.syscalls;
+
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.RegisterFile;
+import mars.simulator.ExceptionCause;
+
+/**
+ * Service to fill $a2 bytes starting at the address in $a0 with the low-order byte of $a1,
+ * like <code>memset</code> in C. The address in $a0 is returned in $v0.
+ */
+public class SyscallMemset extends AbstractSyscall {
+    /**
+     * Build an instance of the syscall with its default service number and name.
+     */
+    @SuppressWarnings("unused")
+    public SyscallMemset() {
+        super(71, "Memset");
+    }
+
+    /**
+     * Performs syscall function to fill $a2 bytes starting at the address in $a0 with the low-order byte of $a1.
+     */
+    @Override
+    public void simulate(ProgramStatement statement) throws ProcessingException {
+        int address = RegisterFile.getValue(4); // $a0: destination address
+        int value = RegisterFile.getValue(5); // $a1: fill value (only the low-order byte is used)
+        int length = RegisterFile.getValue(6); // $a2: number of bytes to fill
+
+        if (length < 0) {
+            throw new ProcessingException(statement, "Length value in $a2 cannot be negative for " + this.getName() + " (syscall " + this.getNumber() + ")", ExceptionCause.SYSCALL_EXCEPTION);
+        }
+
+        try {
+            Memory.getInstance().fillBytes(address, value, length);
+        }
+        catch (AddressErrorException exception) {
+            throw new ProcessingException(statement, exception);
+        }
+
+        RegisterFile.updateRegister(2, address); // Put destination address in $v0
+    }
+}
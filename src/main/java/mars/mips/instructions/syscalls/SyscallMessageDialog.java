@@ -5,6 +5,7 @@ import mars.ProgramStatement;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.Simulator;
 
 import javax.swing.*;
 
@@ -53,6 +54,11 @@ public class SyscallMessageDialog extends AbstractSyscall {
      */
     @Override
     public void simulate(ProgramStatement statement) throws ProcessingException {
+        Simulator simulator = Simulator.getInstance();
+        if (simulator.getTimeTravel().isReplaying() || simulator.getInputLog().isReplayingFile()) {
+            // Replaying input from a file never waits for the user, and dialogs were already shown when re-executing
+            return;
+        }
         // Input arguments:
         //   $a0 = address of null-terminated string that is the message to user
         //   $a1 = the type of the message to the user, which is one of:
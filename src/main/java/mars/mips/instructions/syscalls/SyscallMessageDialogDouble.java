@@ -4,6 +4,7 @@ import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.*;
 import mars.simulator.ExceptionCause;
+import mars.simulator.Simulator;
 
 import javax.swing.*;
 
@@ -52,6 +53,11 @@ public class SyscallMessageDialogDouble extends AbstractSyscall {
      */
     @Override
     public void simulate(ProgramStatement statement) throws ProcessingException {
+        Simulator simulator = Simulator.getInstance();
+        if (simulator.getTimeTravel().isReplaying() || simulator.getInputLog().isReplayingFile()) {
+            // Replaying input from a file never waits for the user, and dialogs were already shown when re-executing
+            return;
+        }
         // Input arguments:
         //   $a0 = address of null-terminated string that is an information-type message to user
         //   $f12 = double value to display in string form after the first message
@@ -6,6 +6,7 @@ import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Coprocessor1;
 import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.Simulator;
 
 import javax.swing.*;
 
@@ -54,6 +55,11 @@ public class SyscallMessageDialogFloat extends AbstractSyscall {
      */
     @Override
     public void simulate(ProgramStatement statement) throws ProcessingException {
+        Simulator simulator = Simulator.getInstance();
+        if (simulator.getTimeTravel().isReplaying() || simulator.getInputLog().isReplayingFile()) {
+            // Replaying input from a file never waits for the user, and dialogs were already shown when re-executing
+            return;
+        }
         // Input arguments:
         //   $a0 = address of null-terminated string that is an information-type message to user
         //   $f12 = float value to display in string form after the first message
@@ -5,6 +5,7 @@ import mars.ProgramStatement;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.Simulator;
 
 import javax.swing.*;
 
@@ -53,6 +54,11 @@ public class SyscallMessageDialogString extends AbstractSyscall {
      */
     @Override
     public void simulate(ProgramStatement statement) throws ProcessingException {
+        Simulator simulator = Simulator.getInstance();
+        if (simulator.getTimeTravel().isReplaying() || simulator.getInputLog().isReplayingFile()) {
+            // Replaying input from a file never waits for the user, and dialogs were already shown when re-executing
+            return;
+        }
         // Input arguments:
         //   $a0 = address of null-terminated string that is an information-type message to user
         //   $a1 = address of null-terminated string to display after the first message
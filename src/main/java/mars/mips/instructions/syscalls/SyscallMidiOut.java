@@ -3,6 +3,8 @@ package mars.mips.instructions.syscalls;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.MidiRecorder;
+import mars.simulator.Simulator;
 
 /*
 Copyright (c) 2003-2009,  Pete Sanderson and Kenneth Vollmar
@@ -62,10 +64,18 @@ public class SyscallMidiOut extends AbstractSyscall {
      * $a2=0, $a3=100.<br>
      * See MARS documentation elsewhere or www.midi.org for more information.  Note that the pitch,
      * instrument and volume value ranges 0-127 are from javax.sound.midi; actual MIDI instruments
-     * use the range 1-128.
+     * use the range 1-128.<br>
+     * When the virtual clock is enabled, the note is not played, since it would not line up with simulated time.
+     * When a {@link MidiRecorder} is set, the note is recorded at the current time of the virtual clock instead.
      */
     @Override
     public void simulate(ProgramStatement statement) throws ProcessingException {
+        Simulator simulator = Simulator.getInstance();
+        MidiRecorder recorder = simulator.getMidiRecorder();
+        if (simulator.getTimeTravel().isReplaying() || (recorder == null && simulator.getVirtualClock().isEnabled())) {
+            // Either the note was already played the first time this instruction executed, or time is simulated
+            return;
+        }
         int pitch = RegisterFile.getValue(4); // $a0
         int duration = RegisterFile.getValue(5); // $a1
         int instrument = RegisterFile.getValue(6); // $a2
@@ -84,7 +94,12 @@ public class SyscallMidiOut extends AbstractSyscall {
             volume = MidiNotePlayer.DEFAULT_VOLUME;
         }
 
-        MidiNotePlayer.playNote(pitch, duration, instrument, volume);
+        if (recorder != null) {
+            recorder.recordNote(simulator.getVirtualClock().getElapsedNanos(), pitch, duration, instrument, volume);
+        }
+        else {
+            MidiNotePlayer.playNote(pitch, duration, instrument, volume);
+        }
     }
 }
 	
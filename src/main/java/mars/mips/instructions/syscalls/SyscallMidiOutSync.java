@@ -3,6 +3,9 @@ package mars.mips.instructions.syscalls;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.MidiRecorder;
+import mars.simulator.Simulator;
+import mars.simulator.VirtualClock;
 
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
@@ -77,10 +80,24 @@ public class SyscallMidiOutSync extends AbstractSyscall {
      * $a2=0, $a3=100.<br>
      * See MARS documentation elsewhere or www.midi.org for more information.  Note that the pitch,
      * instrument and volume value ranges 0-127 are from javax.sound.midi; actual MIDI instruments
-     * use the range 1-128.
+     * use the range 1-128.<br>
+     * When the virtual clock is enabled, the note is not played, and the clock is advanced by its duration instead.
+     * When a {@link MidiRecorder} is set, the note is also recorded at the current time of the virtual clock.
      */
     @Override
     public void simulate(ProgramStatement statement) throws ProcessingException, InterruptedException {
+        Simulator simulator = Simulator.getInstance();
+        VirtualClock clock = simulator.getVirtualClock();
+        MidiRecorder recorder = simulator.getMidiRecorder();
+        if (recorder == null && clock.isEnabled()) {
+            int duration = RegisterFile.getValue(5); // $a1
+            clock.sleep((duration < 0) ? MidiNotePlayer.DEFAULT_DURATION : duration);
+            return;
+        }
+        if (recorder == null && (simulator.getTimeTravel().isReplaying() || simulator.getInputLog().isReplayingFile())) {
+            // Replaying input from a file runs at full speed, and notes were already played when re-executing
+            return;
+        }
         int pitch = RegisterFile.getValue(4); // $a0
         int duration = RegisterFile.getValue(5); // $a1
         int instrument = RegisterFile.getValue(6); // $a2
@@ -99,6 +116,15 @@ public class SyscallMidiOutSync extends AbstractSyscall {
             volume = MidiNotePlayer.DEFAULT_VOLUME;
         }
 
+        if (recorder != null) {
+            // The note is only recorded the first time this instruction executes, but time passes every time
+            if (!simulator.getTimeTravel().isReplaying()) {
+                recorder.recordNote(clock.getElapsedNanos(), pitch, duration, instrument, volume);
+            }
+            clock.sleep(duration);
+            return;
+        }
+
         try {
             // Call get() to wait until the note finishes (or not)
             MidiNotePlayer.playNote(pitch, duration, instrument, volume)
@@ -0,0 +1,55 @@
+package mars.mips.instructions.syscalls;
+
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.mips.hardware.RegisterFile;
+import mars.simulator.ExceptionCause;
+import mars.simulator.Simulator;
+
+/**
+ * Service to map part of the file with descriptor $a0 into new heap space, like <code>mmap</code> in C.
+ * $a1 specifies the offset in the file, $a2 the number of bytes to map, and $a3 whether the mapping is read-only (0)
+ * or private and writable (1). The address of the mapping, which is aligned to a page boundary, is returned in $v0,
+ * or -1 if the file could not be mapped.
+ * <p>
+ * Pages are read from the file until they are first stored to, so mapping a large file is much faster than
+ * reading it into memory, and only the parts the program uses take up space. Storing to a read-only mapping raises
+ * an exception; stores to a writable mapping are never written back to the file.
+ */
+public class SyscallMmap extends AbstractSyscall {
+    /**
+     * Build an instance of the syscall with its default service number and name.
+     */
+    @SuppressWarnings("unused")
+    public SyscallMmap() {
+        super(77, "Mmap");
+    }
+
+    /**
+     * Performs syscall function to map part of the file with descriptor $a0 into heap space, putting the address
+     * into $v0.
+     */
+    @Override
+    public void simulate(ProgramStatement statement) throws ProcessingException {
+        int descriptor = RegisterFile.getValue(4); // $a0: file descriptor
+        long offset = Integer.toUnsignedLong(RegisterFile.getValue(5)); // $a1: offset in file
+        int length = RegisterFile.getValue(6); // $a2: number of bytes to map
+        int flags = RegisterFile.getValue(7); // $a3: 0 for read-only, 1 for private writable
+
+        if (length <= 0) {
+            throw new ProcessingException(statement, "Length value in $a2 must be positive for " + this.getName() + " (syscall " + this.getNumber() + ")", ExceptionCause.SYSCALL_EXCEPTION);
+        }
+        if (flags != 0 && flags != 1) {
+            throw new ProcessingException(statement, "Invalid flags value in $a3 for " + this.getName() + " (syscall " + this.getNumber() + ")", ExceptionCause.SYSCALL_EXCEPTION);
+        }
+
+        try {
+            int address = Simulator.getInstance().getSystemIO().mapFile(descriptor, offset, length, flags == 0);
+            RegisterFile.updateRegister(2, address); // Put address into $v0
+            Simulator.getInstance().getResourceBudget().checkHeap();
+        }
+        catch (IllegalArgumentException exception) {
+            throw new ProcessingException(statement, exception.getMessage() + " (syscall " + this.getNumber() + ")", ExceptionCause.SYSCALL_EXCEPTION);
+        }
+    }
+}
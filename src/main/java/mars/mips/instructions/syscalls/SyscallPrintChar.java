@@ -51,9 +51,8 @@ public class SyscallPrintChar extends AbstractSyscall {
     @Override
     public void simulate(ProgramStatement statement) throws ProcessingException {
         // Mask off the lower byte of register $a0.
-        // Convert to a one-character string and use the string technique.
         char charValue = (char) (RegisterFile.getValue(4) & 0x000000FF);
 
-        Simulator.getInstance().getSystemIO().printString(Character.toString(charValue));
+        Simulator.getInstance().getSystemIO().printChar(charValue);
     }
 }
\ No newline at end of file
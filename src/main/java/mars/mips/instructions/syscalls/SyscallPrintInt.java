@@ -52,6 +52,6 @@ public class SyscallPrintInt extends AbstractSyscall {
     public void simulate(ProgramStatement statement) throws ProcessingException {
         int intValue = RegisterFile.getValue(4);
 
-        Simulator.getInstance().getSystemIO().printString(Integer.toString(intValue));
+        Simulator.getInstance().getSystemIO().printInt(intValue);
     }
 }
\ No newline at end of file
@@ -4,7 +4,6 @@ import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
 import mars.simulator.Simulator;
-import mars.util.Binary;
 
 /*
 Copyright (c) 2003-2009,  Pete Sanderson and Kenneth Vollmar
@@ -53,6 +52,6 @@ public class SyscallPrintIntHex extends AbstractSyscall {
     public void simulate(ProgramStatement statement) throws ProcessingException {
         int intValue = RegisterFile.getValue(4);
 
-        Simulator.getInstance().getSystemIO().printString(Binary.intToHexString(intValue));
+        Simulator.getInstance().getSystemIO().printHex(intValue);
     }
 }
\ No newline at end of file
@@ -53,6 +53,6 @@ public class SyscallPrintIntUnsigned extends AbstractSyscall {
     public void simulate(ProgramStatement statement) throws ProcessingException {
         int intValue = RegisterFile.getValue(4);
 
-        Simulator.getInstance().getSystemIO().printString(Integer.toUnsignedString(intValue));
+        Simulator.getInstance().getSystemIO().printUnsignedInt(intValue);
     }
 }
\ No newline at end of file
@@ -6,6 +6,8 @@ import mars.mips.hardware.Coprocessor1;
 import mars.mips.hardware.InvalidRegisterAccessException;
 import mars.mips.hardware.RegisterFile;
 import mars.simulator.ExceptionCause;
+import mars.simulator.InputLog;
+import mars.simulator.Simulator;
 
 import java.util.Random;
 
@@ -64,7 +66,10 @@ public class SyscallRandDouble extends AbstractSyscall {
         Random stream = RandomStreams.getStream(index);
 
         try {
-            Coprocessor1.setRegisterPairToDouble(0, stream.nextDouble());
+            // The bits are logged rather than the double so that the value is repeated exactly
+            InputLog log = Simulator.getInstance().getInputLog();
+            long bits = log.hasNext(InputLog.LONG) ? log.nextLong() : log.recordLong(Double.doubleToRawLongBits(stream.nextDouble()));
+            Coprocessor1.setRegisterPairToDouble(0, Double.longBitsToDouble(bits));
         }
         catch (InvalidRegisterAccessException exception) {
             // This should not occur because $f0 is always a valid double target
@@ -4,6 +4,8 @@ import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.Coprocessor1;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.InputLog;
+import mars.simulator.Simulator;
 
 import java.util.Random;
 
@@ -61,6 +63,9 @@ public class SyscallRandFloat extends AbstractSyscall {
         int index = RegisterFile.getValue(4);
         Random stream = RandomStreams.getStream(index);
 
-        Coprocessor1.setRegisterToFloat(0, stream.nextFloat());
+        // The bits are logged rather than the float so that the value is repeated exactly
+        InputLog log = Simulator.getInstance().getInputLog();
+        int bits = log.hasNext(InputLog.INT) ? log.nextInt() : log.recordInt(Float.floatToRawIntBits(stream.nextFloat()));
+        Coprocessor1.setRegisterToFloat(0, Float.intBitsToFloat(bits));
     }
 }
\ No newline at end of file
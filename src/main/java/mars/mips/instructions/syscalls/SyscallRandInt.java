@@ -3,6 +3,8 @@ package mars.mips.instructions.syscalls;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.InputLog;
+import mars.simulator.Simulator;
 
 import java.util.Random;
 
@@ -58,7 +60,8 @@ public class SyscallRandInt extends AbstractSyscall {
         int index = RegisterFile.getValue(4);
         Random stream = RandomStreams.getStream(index);
 
-        RegisterFile.updateRegister(4, stream.nextInt());
+        InputLog log = Simulator.getInstance().getInputLog();
+        RegisterFile.updateRegister(4, log.hasNext(InputLog.INT) ? log.nextInt() : log.recordInt(stream.nextInt()));
     }
 }
 
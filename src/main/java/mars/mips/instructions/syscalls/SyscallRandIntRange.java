@@ -4,6 +4,8 @@ import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
 import mars.simulator.ExceptionCause;
+import mars.simulator.InputLog;
+import mars.simulator.Simulator;
 
 import java.util.Random;
 
@@ -64,7 +66,8 @@ public class SyscallRandIntRange extends AbstractSyscall {
         Random stream = RandomStreams.getStream(index);
 
         try {
-            RegisterFile.updateRegister(4, stream.nextInt(RegisterFile.getValue(5)));
+            InputLog log = Simulator.getInstance().getInputLog();
+            RegisterFile.updateRegister(4, log.hasNext(InputLog.INT) ? log.nextInt() : log.recordInt(stream.nextInt(RegisterFile.getValue(5))));
         }
         catch (IllegalArgumentException exception) {
             throw new ProcessingException(statement, "upper bound of range cannot be negative (syscall " + this.getNumber() + ")", ExceptionCause.SYSCALL_EXCEPTION);
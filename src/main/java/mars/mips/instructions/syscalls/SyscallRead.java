@@ -7,6 +7,7 @@ import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
 import mars.simulator.ExceptionCause;
 import mars.simulator.Simulator;
+import mars.simulator.SystemIO;
 
 import java.nio.ByteBuffer;
 
@@ -66,19 +67,15 @@ public class SyscallRead extends AbstractSyscall {
         if (maxLength < 0) {
             throw new ProcessingException(statement, "Length value in $a2 cannot be negative for " + this.getName() + " (syscall " + this.getNumber() + ")", ExceptionCause.SYSCALL_EXCEPTION);
         }
-        ByteBuffer buffer = ByteBuffer.allocateDirect(maxLength);
+        SystemIO systemIO = Simulator.getInstance().getSystemIO();
+        ByteBuffer buffer = systemIO.getTransferBuffer(maxLength);
 
-        int readLength = Simulator.getInstance().getSystemIO().readFromFile(descriptor, buffer);
+        int readLength = systemIO.readFromFile(descriptor, buffer);
         RegisterFile.updateRegister(2, readLength); // Put return value in $v0
 
-        // Flip buffer from put-mode to get-mode
-        buffer.flip();
-
         // Copy bytes from intermediate buffer into MARS memory
         try {
-            for (int index = 0; index < readLength; index++) {
-                Memory.getInstance().storeByte(byteAddress++, buffer.get(index), true);
-            }
+            Memory.getInstance().storeBytes(byteAddress, buffer.array(), buffer.arrayOffset(), readLength, true);
         }
         catch (AddressErrorException exception) {
             throw new ProcessingException(statement, exception);
@@ -5,6 +5,7 @@ import mars.ProgramStatement;
 import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
 import mars.simulator.ExceptionCause;
+import mars.simulator.Simulator;
 
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
@@ -56,6 +57,7 @@ public class SyscallSbrk extends AbstractSyscall {
         try {
             int address = Memory.getInstance().allocateHeapSpace(numBytes);
             RegisterFile.updateRegister(2, address); // Put address into $v0
+            Simulator.getInstance().getResourceBudget().checkHeap();
         }
         catch (IllegalArgumentException exception) {
             throw new ProcessingException(statement, exception.getMessage() + " (syscall " + this.getNumber() + ")", ExceptionCause.SYSCALL_EXCEPTION);
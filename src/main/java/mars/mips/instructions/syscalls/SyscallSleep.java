@@ -3,6 +3,7 @@ package mars.mips.instructions.syscalls;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.Simulator;
 
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
@@ -48,9 +49,20 @@ public class SyscallSleep extends AbstractSyscall {
     /**
      * System call to cause the MARS Java thread to sleep for (at least) the specified number of milliseconds.
      * This timing will not be precise as the Java implementation will add some overhead.
+     * When the virtual clock is enabled, it is advanced instead and the thread does not sleep at all.
      */
     @Override
     public void simulate(ProgramStatement statement) throws ProcessingException, InterruptedException {
+        Simulator simulator = Simulator.getInstance();
+        if (simulator.getVirtualClock().isEnabled()) {
+            // Also done while re-executing, since the clock is part of the state being reconstructed
+            simulator.getVirtualClock().sleep(RegisterFile.getValue(4));
+            return;
+        }
+        if (simulator.getTimeTravel().isReplaying() || simulator.getInputLog().isReplayingFile()) {
+            // There is no need to wait while instructions are re-executed or input is replayed from a file
+            return;
+        }
         int duration = RegisterFile.getValue(4); // $a0: length of time to sleep in milliseconds
 
         Thread.sleep(duration);
@@ -0,0 +1,78 @@
+package mars.mips.instructions.syscalls;
+
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.RegisterFile;
+
+/**
+ * Service to compare the null-terminated strings starting at the addresses in $a0 and $a1,
+ * like <code>strcmp</code> in C. The difference between the first pair of differing bytes (treated as unsigned)
+ * is returned in $v0, which is negative if the first string is less than the second, positive if it is greater,
+ * and zero if the strings are equal.
+ */
+public class SyscallStrcmp extends AbstractSyscall {
+    /**
+     * Number of bytes read from memory at a time from each string.
+     */
+    private static final int CHUNK_LENGTH = 256;
+
+    /**
+     * Build an instance of the syscall with its default service number and name.
+     */
+    @SuppressWarnings("unused")
+    public SyscallStrcmp() {
+        super(73, "Strcmp");
+    }
+
+    /**
+     * Performs syscall function to compare the null-terminated strings starting at the addresses in $a0 and $a1.
+     */
+    @Override
+    public void simulate(ProgramStatement statement) throws ProcessingException {
+        int firstAddress = RegisterFile.getValue(4); // $a0: address of first string
+        int secondAddress = RegisterFile.getValue(5); // $a1: address of second string
+        byte[] firstBuffer = new byte[CHUNK_LENGTH];
+        byte[] secondBuffer = new byte[CHUNK_LENGTH];
+
+        for (int offset = 0; ; offset += CHUNK_LENGTH) {
+            AddressErrorException firstFault = null;
+            AddressErrorException secondFault = null;
+            int firstAvailable = CHUNK_LENGTH;
+            int secondAvailable = CHUNK_LENGTH;
+            // The bytes before a faulting address are still valid, so the comparison may end before reaching it
+            try {
+                Memory.getInstance().fetchBytes(firstAddress + offset, firstBuffer, 0, CHUNK_LENGTH);
+            }
+            catch (AddressErrorException exception) {
+                firstFault = exception;
+                firstAvailable = Math.max(0, Math.min(CHUNK_LENGTH, exception.getAddress() - (firstAddress + offset)));
+            }
+            try {
+                Memory.getInstance().fetchBytes(secondAddress + offset, secondBuffer, 0, CHUNK_LENGTH);
+            }
+            catch (AddressErrorException exception) {
+                secondFault = exception;
+                secondAvailable = Math.max(0, Math.min(CHUNK_LENGTH, exception.getAddress() - (secondAddress + offset)));
+            }
+
+            int available = Math.min(firstAvailable, secondAvailable);
+            for (int index = 0; index < available; index++) {
+                int firstByte = firstBuffer[index] & 0xFF;
+                int secondByte = secondBuffer[index] & 0xFF;
+                if (firstByte != secondByte || firstByte == 0) {
+                    RegisterFile.updateRegister(2, firstByte - secondByte); // Put result in $v0
+                    return;
+                }
+            }
+            // Report whichever fault would have been reached first by a byte-by-byte comparison
+            if (firstFault != null && firstAvailable <= secondAvailable) {
+                throw new ProcessingException(statement, firstFault);
+            }
+            if (secondFault != null) {
+                throw new ProcessingException(statement, secondFault);
+            }
+        }
+    }
+}
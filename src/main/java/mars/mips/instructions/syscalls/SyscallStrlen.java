@@ -0,0 +1,58 @@
+package mars.mips.instructions.syscalls;
+
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.RegisterFile;
+
+/**
+ * Service to compute the length of the null-terminated string starting at the address in $a0,
+ * like <code>strlen</code> in C. The length, excluding the null terminator, is returned in $v0.
+ */
+public class SyscallStrlen extends AbstractSyscall {
+    /**
+     * Number of bytes read from memory at a time while searching for the null terminator.
+     */
+    private static final int CHUNK_LENGTH = 256;
+
+    /**
+     * Build an instance of the syscall with its default service number and name.
+     */
+    @SuppressWarnings("unused")
+    public SyscallStrlen() {
+        super(72, "Strlen");
+    }
+
+    /**
+     * Performs syscall function to compute the length of the null-terminated string starting at the address in $a0.
+     */
+    @Override
+    public void simulate(ProgramStatement statement) throws ProcessingException {
+        int address = RegisterFile.getValue(4); // $a0: address of string
+        byte[] buffer = new byte[CHUNK_LENGTH];
+
+        for (int length = 0; ; length += CHUNK_LENGTH) {
+            int available = CHUNK_LENGTH;
+            AddressErrorException fault = null;
+            try {
+                Memory.getInstance().fetchBytes(address + length, buffer, 0, CHUNK_LENGTH);
+            }
+            catch (AddressErrorException exception) {
+                // The bytes before the faulting address are still valid, and the terminator may be among them
+                fault = exception;
+                available = Math.max(0, Math.min(CHUNK_LENGTH, exception.getAddress() - (address + length)));
+            }
+
+            for (int index = 0; index < available; index++) {
+                if (buffer[index] == 0) {
+                    RegisterFile.updateRegister(2, length + index); // Put length in $v0
+                    return;
+                }
+            }
+            if (fault != null) {
+                throw new ProcessingException(statement, fault);
+            }
+        }
+    }
+}
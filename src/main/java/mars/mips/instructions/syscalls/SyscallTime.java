@@ -3,6 +3,8 @@ package mars.mips.instructions.syscalls;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.InputLog;
+import mars.simulator.Simulator;
 import mars.util.Binary;
 
 import java.util.Date;
@@ -49,11 +51,23 @@ public class SyscallTime extends AbstractSyscall {
 
     /**
      * Performs syscall function to place current system time into $a0 (low order 32 bits)
-     * and $a1 (high order 32 bits).
+     * and $a1 (high order 32 bits). When the virtual clock is enabled, its simulated time is used instead.
      */
     @Override
     public void simulate(ProgramStatement statement) throws ProcessingException {
-        long value = new Date().getTime();
+        Simulator simulator = Simulator.getInstance();
+        InputLog log = simulator.getInputLog();
+        long value;
+        if (log.hasNext(InputLog.LONG)) {
+            value = log.nextLong();
+        }
+        else if (simulator.getVirtualClock().isEnabled()) {
+            value = log.recordLong(simulator.getVirtualClock().currentTimeMillis());
+        }
+        else {
+            log.markHostDependent();
+            value = log.recordLong(new Date().getTime());
+        }
         RegisterFile.updateRegister(4, Binary.lowOrderLongToInt(value)); // $a0
         RegisterFile.updateRegister(5, Binary.highOrderLongToInt(value)); // $a1
     }
@@ -6,6 +6,7 @@ import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
 import mars.mips.hardware.RegisterFile;
 import mars.simulator.Simulator;
+import mars.simulator.SystemIO;
 
 import java.nio.ByteBuffer;
 
@@ -65,25 +66,18 @@ public class SyscallWrite extends AbstractSyscall {
         if (maxLength < 0) {
             throw new ProcessingException(statement, "Length value in $a2 cannot be negative for " + this.getName() + " (syscall " + this.getNumber() + ")");
         }
-        ByteBuffer buffer = ByteBuffer.allocateDirect(maxLength + 1); // Leave room for a possible null terminator
+        SystemIO systemIO = Simulator.getInstance().getSystemIO();
+        ByteBuffer buffer = systemIO.getTransferBuffer(maxLength);
 
         try {
             // Stop at requested length, with no special treatment of null bytes
-            for (int index = 0; index < maxLength; index++, byteAddress++) {
-                buffer.put((byte) Memory.getInstance().fetchByte(byteAddress, false));
-            }
-            // Add null terminator
-            // Probably not needed? - CW
-            // buffer.put((byte) 0);
+            Memory.getInstance().fetchBytes(byteAddress, buffer.array(), buffer.arrayOffset(), maxLength);
         }
         catch (AddressErrorException exception) {
             throw new ProcessingException(statement, exception);
         }
 
-        // Flip buffer from put-mode to get-mode
-        buffer.flip();
-
-        int writtenLength = Simulator.getInstance().getSystemIO().writeToFile(descriptor, buffer);
+        int writtenLength = systemIO.writeToFile(descriptor, buffer);
         RegisterFile.updateRegister(2, writtenLength); // Put return value in $v0
     }
 }
\ No newline at end of file
@@ -294,6 +294,16 @@ public class Settings {
         false,
         false
     );
+    /**
+     * Flag to control whether periodic snapshots of the simulated machine are taken during execution,
+     * allowing the program to be moved back to any earlier instruction.
+     */
+    public final BooleanSetting timeTravelEnabled = new BooleanSetting(
+        this,
+        "TimeTravel",
+        false,
+        false
+    );
 
     public final BooleanSetting[] booleanSettings = {
         this.extendedAssemblerEnabled,
@@ -315,6 +325,7 @@ public class Settings {
         this.autoIndentEnabled,
         this.selfModifyingCodeEnabled,
         this.useBigEndian,
+        this.timeTravelEnabled,
     };
 
     // INTEGER SETTINGS
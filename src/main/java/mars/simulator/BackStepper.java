@@ -1,10 +1,19 @@
 package mars.simulator;
 
 import mars.Application;
-import mars.ProgramStatement;
 import mars.mips.hardware.*;
 import mars.mips.instructions.Instruction;
 
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
 
@@ -40,10 +49,6 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  * @version February 2006
  */
 public class BackStepper {
-    // Flag to mark BackStep object as prepresenting specific situation: user manipulates
-    // memory/register value via GUI after assembling program but before running it.
-    private static final int NOT_PC_VALUE = -1;
-
     private boolean isEnabled;
     private final BackStepStack backSteps;
 
@@ -61,7 +66,16 @@ public class BackStepper {
      */
     public BackStepper() {
         isEnabled = true;
-        backSteps = new BackStepStack(Application.MAXIMUM_BACKSTEPS);
+        backSteps = new BackStepStack(Application.MAXIMUM_BACKSTEPS, Application.MAXIMUM_BACKSTEP_SPILL_BYTES);
+    }
+
+    /**
+     * Release the temporary file holding older steps, if one was created. The history is discarded,
+     * and this BackStepper should not be used afterward.
+     */
+    public void dispose() {
+        isEnabled = false;
+        backSteps.dispose();
     }
 
     /**
@@ -100,7 +114,7 @@ public class BackStepper {
      */
     // Added 25 June 2007
     public boolean isInDelaySlot() {
-        return !isEmpty() && backSteps.peek().isInDelaySlot;
+        return !isEmpty() && backSteps.peekIsInDelaySlot();
     }
 
     /**
@@ -115,24 +129,30 @@ public class BackStepper {
     // Use a do-while loop based on the backstep's program statement reference.
     public void backStep() {
         if (isEnabled && !backSteps.isEmpty()) {
-            ProgramStatement statement = backSteps.peek().statement;
+            int programCounter = backSteps.peekProgramCounter();
+            // The statement is not stored with each step, so whether the program counter referred to an actual
+            // instruction (as opposed to a GUI edit before the program started) is determined on demand
+            boolean restoreProgramCounter = hasStatement(programCounter);
             isEnabled = false; // MUST DO THIS SO METHOD CALL IN SWITCH WILL NOT RESULT IN NEW ACTION ON STACK!
             do {
-                BackStep step = backSteps.pop();
-                if (step.programCounter != NOT_PC_VALUE) {
-                    RegisterFile.setProgramCounter(step.programCounter);
+                int step = backSteps.pop();
+                int param1 = backSteps.param1s[step];
+                int param2 = backSteps.param2s[step];
+                if (restoreProgramCounter) {
+                    RegisterFile.setProgramCounter(programCounter);
                 }
                 try {
-                    switch (step.action) {
-                        case MEMORY_RESTORE_WORD -> Memory.getInstance().storeWord(step.param1, step.param2, true);
-                        case MEMORY_RESTORE_HALF -> Memory.getInstance().storeHalfword(step.param1, step.param2, true);
-                        case MEMORY_RESTORE_BYTE -> Memory.getInstance().storeByte(step.param1, step.param2, true);
-                        case REGISTER_RESTORE -> RegisterFile.updateRegister(step.param1, step.param2);
-                        case PC_RESTORE -> RegisterFile.setProgramCounter(step.param1);
-                        case COPROC0_REGISTER_RESTORE -> Coprocessor0.updateRegister(step.param1, step.param2);
-                        case COPROC1_REGISTER_RESTORE -> Coprocessor1.updateRegister(step.param1, step.param2);
-                        case COPROC1_CONDITION_CLEAR -> Coprocessor1.clearConditionFlag(step.param1);
-                        case COPROC1_CONDITION_SET -> Coprocessor1.setConditionFlag(step.param1);
+                    switch (backSteps.actions[step]) {
+                        case MEMORY_RESTORE_WORD -> Memory.getInstance().storeWord(param1, param2, true);
+                        case MEMORY_RESTORE_HALF -> Memory.getInstance().storeHalfword(param1, param2, true);
+                        case MEMORY_RESTORE_BYTE -> Memory.getInstance().storeByte(param1, param2, true);
+                        case REGISTER_RESTORE -> RegisterFile.updateRegister(param1, param2);
+                        case PC_RESTORE -> RegisterFile.setProgramCounter(param1);
+                        case COPROC0_REGISTER_RESTORE -> Coprocessor0.updateRegister(param1, param2);
+                        case COPROC1_REGISTER_RESTORE -> Coprocessor1.updateRegister(param1, param2);
+                        case COPROC1_CONDITION_CLEAR -> Coprocessor1.clearConditionFlag(param1);
+                        case COPROC1_CONDITION_SET -> Coprocessor1.setConditionFlag(param1);
+                        case MAPPING_REMOVE -> Memory.getInstance().unmapHeapSpace(param1, param2);
                         case DO_NOTHING -> {}
                     }
                 }
@@ -141,11 +161,26 @@ public class BackStepper {
                     throw new RuntimeException("accessed invalid memory address while backstepping");
                 }
             }
-            while (!backSteps.isEmpty() && statement == backSteps.peek().statement);
+            while (!backSteps.isEmpty() && programCounter == backSteps.peekProgramCounter());
             isEnabled = true;  // RESET IT (was disabled at top of loop -- see comment)
         }
     }
 
+    /**
+     * Determine whether an instruction exists at the given address, without notifying observers.
+     * The only situation in which it does not so far: user modifies memory or register contents through
+     * direct manipulation on the GUI, after assembling the program but before starting to run it
+     * (or after backstepping all the way to the start). The action will not be associated with
+     * any instruction, so the program counter should not be changed when it is undone.
+     */
+    private static boolean hasStatement(int programCounter) {
+        try {
+            return Memory.getInstance().fetchStatement(programCounter, false) != null;
+        }
+        catch (AddressErrorException exception) {
+            return false;
+        }
+    }
 
     /**
      * Convenience method called below to get program counter value.  If it needs to be
@@ -156,6 +191,15 @@ public class BackStepper {
         return RegisterFile.getProgramCounter() - Instruction.BYTES_PER_INSTRUCTION;
     }
 
+    /**
+     * Determine whether memory is being written by a thread other than the simulator thread while the program
+     * is running, such as by the keyboard of the MMIO simulator tool. Such writes are input from outside the
+     * program, so they are not undone, which also keeps the stack to a single producer.
+     */
+    private static boolean isExternalWrite() {
+        return !(Thread.currentThread() instanceof SimulatorThread) && Simulator.getInstance().isRunning();
+    }
+
     /**
      * Add a new "back step" (the undo action) to the stack. The action here
      * is to restore a memory word value.
@@ -164,7 +208,10 @@ public class BackStepper {
      * @param value   The "restore" value to be stored there.
      */
     public void addMemoryRestoreWord(int address, int value) {
-        backSteps.push(BackStepAction.MEMORY_RESTORE_WORD, pc(), address, value);
+        if (isExternalWrite()) {
+            return;
+        }
+        backSteps.push(MEMORY_RESTORE_WORD, pc(), address, value);
     }
 
     /**
@@ -175,7 +222,10 @@ public class BackStepper {
      * @param value   The "restore" value to be stored there, in low order half.
      */
     public void addMemoryRestoreHalf(int address, int value) {
-        backSteps.push(BackStepAction.MEMORY_RESTORE_HALF, pc(), address, value);
+        if (isExternalWrite()) {
+            return;
+        }
+        backSteps.push(MEMORY_RESTORE_HALF, pc(), address, value);
     }
 
     /**
@@ -186,7 +236,10 @@ public class BackStepper {
      * @param value   The "restore" value to be stored there, in low order byte.
      */
     public void addMemoryRestoreByte(int address, int value) {
-        backSteps.push(BackStepAction.MEMORY_RESTORE_BYTE, pc(), address, value);
+        if (isExternalWrite()) {
+            return;
+        }
+        backSteps.push(MEMORY_RESTORE_BYTE, pc(), address, value);
     }
 
     /**
@@ -197,7 +250,7 @@ public class BackStepper {
      * @param value    The "restore" value to be stored there.
      */
     public void addRegisterFileRestore(int register, int value) {
-        backSteps.push(BackStepAction.REGISTER_RESTORE, pc(), register, value);
+        backSteps.push(REGISTER_RESTORE, pc(), register, value);
     }
 
     /**
@@ -211,7 +264,7 @@ public class BackStepper {
         value -= Instruction.BYTES_PER_INSTRUCTION;
         // Use "value" insead of "pc()" for second arg because RegisterFile.getProgramCounter()
         // returns branch target address at this point.
-        backSteps.push(BackStepAction.PC_RESTORE, value, value);
+        backSteps.push(PC_RESTORE, value, value);
     }
 
     /**
@@ -222,7 +275,7 @@ public class BackStepper {
      * @param value    The "restore" value to be stored there.
      */
     public void addCoprocessor0Restore(int register, int value) {
-        backSteps.push(BackStepAction.COPROC0_REGISTER_RESTORE, pc(), register, value);
+        backSteps.push(COPROC0_REGISTER_RESTORE, pc(), register, value);
     }
 
     /**
@@ -233,7 +286,7 @@ public class BackStepper {
      * @param value    The "restore" value to be stored there.
      */
     public void addCoprocessor1Restore(int register, int value) {
-        backSteps.push(BackStepAction.COPROC1_REGISTER_RESTORE, pc(), register, value);
+        backSteps.push(COPROC1_REGISTER_RESTORE, pc(), register, value);
     }
 
     /**
@@ -243,7 +296,7 @@ public class BackStepper {
      * @param flag The condition flag number.
      */
     public void addConditionFlagSet(int flag) {
-        backSteps.push(BackStepAction.COPROC1_CONDITION_SET, pc(), flag);
+        backSteps.push(COPROC1_CONDITION_SET, pc(), flag);
     }
 
     /**
@@ -253,7 +306,18 @@ public class BackStepper {
      * @param flag The condition flag number.
      */
     public void addConditionFlagClear(int flag) {
-        backSteps.push(BackStepAction.COPROC1_CONDITION_CLEAR, pc(), flag);
+        backSteps.push(COPROC1_CONDITION_CLEAR, pc(), flag);
+    }
+
+    /**
+     * Add a new "back step" (the undo action) to the stack.  The action here
+     * is to remove a mapping made by {@link Memory#mapHeapSpace(java.nio.ByteBuffer, int, boolean)}.
+     *
+     * @param address The address of the mapped space.
+     * @param length  The number of bytes mapped.
+     */
+    public void addMappingRemove(int address, int length) {
+        backSteps.push(MAPPING_REMOVE, pc(), address, length);
     }
 
     /**
@@ -265,155 +329,523 @@ public class BackStepper {
      * @param programCounter The program counter to check against the top of the stack.
      */
     public void addDoNothing(int programCounter) {
-        if (backSteps.isEmpty() || backSteps.peek().programCounter != programCounter) {
-            backSteps.push(BackStepAction.DO_NOTHING, programCounter);
+        if (backSteps.isEmpty() || backSteps.peekProgramCounter() != programCounter) {
+            backSteps.push(DO_NOTHING, programCounter);
         }
     }
 
-    /**
-     * The types of "undo" actions.
-     */
-    private enum BackStepAction {
-        MEMORY_RESTORE_WORD,
-        MEMORY_RESTORE_HALF,
-        MEMORY_RESTORE_BYTE,
-        REGISTER_RESTORE,
-        PC_RESTORE,
-        COPROC0_REGISTER_RESTORE,
-        COPROC1_REGISTER_RESTORE,
-        COPROC1_CONDITION_CLEAR,
-        COPROC1_CONDITION_SET,
-        DO_NOTHING,
-    }
+    // The types of "undo" actions, stored as bytes in the stack.
+    private static final byte MEMORY_RESTORE_WORD = 0;
+    private static final byte MEMORY_RESTORE_HALF = 1;
+    private static final byte MEMORY_RESTORE_BYTE = 2;
+    private static final byte REGISTER_RESTORE = 3;
+    private static final byte PC_RESTORE = 4;
+    private static final byte COPROC0_REGISTER_RESTORE = 5;
+    private static final byte COPROC1_REGISTER_RESTORE = 6;
+    private static final byte COPROC1_CONDITION_CLEAR = 7;
+    private static final byte COPROC1_CONDITION_SET = 8;
+    private static final byte DO_NOTHING = 9;
+    private static final byte MAPPING_REMOVE = 10;
 
     /**
-     * Represents a "back step" (undo action) on the stack.
+     * Special purpose stack class for backstepping.  You've heard of circular queues
+     * implemented with an array, right?  This is a circular stack!  When full, the
+     * oldest half of the items is compressed and spilled to a temporary file (see {@link SpillFile}),
+     * or discarded if spilling is disabled, making room for new items.  When the stack is emptied by
+     * popping, the most recently spilled items are read back in.  All operations other than
+     * spilling and reloading are constant time, and those take time proportional to the
+     * stack capacity, regardless of how much history has been spilled.
+     * <p>
+     * Each field of a "back step" (undo action) lives in its own primitive array, indexed by
+     * stack slot, so pushing never creates or touches an object, and the whole stack is a handful
+     * of allocations made upon successful assembly or reset.  The program statement is not stored;
+     * it is looked up from the program counter on demand, which only happens when actually backstepping.
+     * <p>
+     * The stack is lock-free and relies on a single producer at any given time: steps are pushed by the
+     * simulation thread while running, or by the GUI thread (direct edits, the back-step button) while the
+     * simulator is stopped.  Memory writes made by other threads while the program runs, such as those of
+     * the MMIO simulator tool, are not recorded, which is what keeps it that way.  The slot contents are
+     * written before the size is published with release semantics, so a thread which observes the new size
+     * with acquire semantics also observes the contents, without the cost of a full fence on every push.
      */
-    private static class BackStep {
-        private BackStepAction action; // what "undo" action to perform
-        private int programCounter; // program counter value when original step occurred
-        private int param1; // optional first parameter required by that action
-        private int param2; // optional second parameter required by that action
-        private ProgramStatement statement; // statement whose action is being "undone" here
-        private boolean isInDelaySlot; // true if instruction executed in "delay slot" (delayed branching enabled)
+    private static class BackStepStack {
+        // Flag set in the flags array if instruction executed in "delay slot" (delayed branching enabled)
+        private static final byte IN_DELAY_SLOT = 1;
+        // Largest possible encoding of one step: action/flags byte plus three 5-byte varints
+        private static final int MAX_ENCODED_STEP_BYTES = 16;
 
-        /**
-         * It is critical that BackStep object get its values by calling this method
-         * rather than assigning to individual members, because of the technique used
-         * to set its statement member (and possibly programCounter).
-         */
-        private void assign(BackStepAction action, int programCounter, int param1, int param2) {
-            this.action = action;
-            this.programCounter = programCounter;
-            this.param1 = param1;
-            this.param2 = param2;
+        private static final VarHandle SIZE;
+
+        static {
             try {
-                // Client does not have direct access to program statement, and rather than making all
-                // of them go through the methods below to obtain it, we will do it here.
-                // Want the program statement but do not want observers notified.
-                this.statement = Memory.getInstance().fetchStatement(programCounter, false);
+                SIZE = MethodHandles.lookup().findVarHandle(BackStepStack.class, "size", int.class);
             }
-            catch (AddressErrorException exception) {
-                // The only situation causing this so far: user modifies memory or register
-                // contents through direct manipulation on the GUI, after assembling the program but
-                // before starting to run it (or after backstepping all the way to the start).
-                // The action will not be associated with any instruction, but will be carried out
-                // when popped.
-                this.statement = null;
-                this.programCounter = NOT_PC_VALUE; // Backstep method above will see this as flag to not set PC
+            catch (ReflectiveOperationException exception) {
+                throw new ExceptionInInitializerError(exception);
             }
-            this.isInDelaySlot = Simulator.getInstance().isInDelaySlot(); // ADDED 25 June 2007
         }
-    }
 
-    /**
-     * Special purpose stack class for backstepping.  You've heard of circular queues
-     * implemented with an array, right?  This is a circular stack!  When full, the
-     * newly-pushed item overwrites the oldest item, with circular top!  All operations
-     * are constant time.  It's synchronized too, to be safe (is used by both the
-     * simulation thread and the GUI thread for the back-step button).
-     * Upon construction, it is filled with newly-created empty BackStep objects which
-     * will exist for the life of the stack.  Push does not create a BackStep object
-     * but instead overwrites the contents of the existing one.  Thus during MIPS
-     * program (simulated) execution, BackStep objects are never created or junked
-     * regardless of how many steps are executed.  This will speed things up a bit
-     * and make life easier for the garbage collector.
-     */
-    private static class BackStepStack {
         private final int capacity;
         private int size;
         private int top;
-        private final BackStep[] stack;
-
-        /**
-         * Stack is created upon successful assembly or reset.  The one-time overhead of
-         * creating all the BackStep objects will not be noticed by the user, and enhances
-         * runtime performance by not having to create or recycle them during MIPS
-         * program execution.
-         */
-        private BackStepStack(int capacity) {
+        private final byte[] actions; // what "undo" action to perform
+        private final int[] programCounters; // program counter value when original step occurred
+        private final int[] param1s; // optional first parameter required by that action
+        private final int[] param2s; // optional second parameter required by that action
+        private final byte[] flags;
+        private final int segmentSize; // number of steps spilled or discarded at once
+        private SpillFile spillFile; // null if spilling is disabled
+
+        private BackStepStack(int capacity, long spillLimit) {
             this.capacity = capacity;
             this.size = 0;
             this.top = -1;
-            this.stack = new BackStep[capacity];
-            for (int i = 0; i < capacity; i++) {
-                this.stack[i] = new BackStep();
+            this.actions = new byte[capacity];
+            this.programCounters = new int[capacity];
+            this.param1s = new int[capacity];
+            this.param2s = new int[capacity];
+            this.flags = new byte[capacity];
+            this.segmentSize = Math.max(1, capacity / 2);
+            long maxSegmentBytes = (long) this.segmentSize * MAX_ENCODED_STEP_BYTES;
+            this.spillFile = (spillLimit >= maxSegmentBytes) ? new SpillFile(spillLimit, (int) maxSegmentBytes) : null;
+        }
+
+        private void dispose() {
+            if (spillFile != null) {
+                spillFile.close();
+                spillFile = null;
             }
         }
 
-        private synchronized boolean isEmpty() {
-            return size == 0;
+        private int getSize() {
+            return (int) SIZE.getAcquire(this);
         }
 
-        private synchronized void push(BackStepAction action, int programCounter, int param1, int param2) {
-            if (size == 0) {
-                top = 0;
-                size++;
-            }
-            else if (size < capacity) {
-                top = (top + 1) % capacity;
-                size++;
-            }
-            else {
-                // size == capacity.  The top moves up one, replacing oldest entry (goodbye!)
-                top = (top + 1) % capacity;
+        private boolean isEmpty() {
+            return getSize() == 0 && (spillFile == null || spillFile.isEmpty());
+        }
+
+        private void push(byte action, int programCounter, int param1, int param2) {
+            if (size == capacity) {
+                // Make room by spilling or discarding the oldest items (goodbye!)
+                if (spillFile != null) {
+                    spillOldest();
+                }
+                else {
+                    size = capacity - segmentSize;
+                }
             }
-            // We'll re-use existing objects rather than create/discard each time.
-            // Must use assign() method rather than series of assignment statements!
-            stack[top].assign(action, programCounter, param1, param2);
+            int newTop = (top + 1 == capacity) ? 0 : top + 1;
+            actions[newTop] = action;
+            programCounters[newTop] = programCounter;
+            param1s[newTop] = param1;
+            param2s[newTop] = param2;
+            flags[newTop] = Simulator.getInstance().isInDelaySlot() ? IN_DELAY_SLOT : 0; // ADDED 25 June 2007
+            top = newTop;
+            // Publish the size after the slot contents, so a thread which observes it also observes them
+            SIZE.setRelease(this, size + 1);
         }
 
-        private synchronized void push(BackStepAction action, int programCounter, int param1) {
+        private void push(byte action, int programCounter, int param1) {
             push(action, programCounter, param1, 0);
         }
 
-        private synchronized void push(BackStepAction action, int programCounter) {
+        private void push(byte action, int programCounter) {
             push(action, programCounter, 0, 0);
         }
 
         /**
          * NO PROTECTION.  This class is used only within this file so there is no excuse
          * for trying to pop from empty stack.
+         *
+         * @return The slot index of the popped step, which remains valid until the next push.
          */
-        private synchronized BackStep pop() {
-            BackStep bs;
-            bs = stack[top];
-            if (size == 1) {
-                top = -1;
-            }
-            else {
-                top = (top + capacity - 1) % capacity;
-            }
-            size--;
-            return bs;
+        private int pop() {
+            ensureLoaded();
+            int newSize = size - 1;
+            int popped = top;
+            top = (popped == 0) ? capacity - 1 : popped - 1;
+            SIZE.setRelease(this, newSize);
+            return popped;
         }
 
         /**
          * NO PROTECTION.  This class is used only within this file so there is no excuse
          * for trying to peek from empty stack.
          */
-        private synchronized BackStep peek() {
-            return stack[top];
+        private int peekProgramCounter() {
+            ensureLoaded();
+            return programCounters[top];
+        }
+
+        private boolean peekIsInDelaySlot() {
+            ensureLoaded();
+            return getSize() > 0 && (flags[top] & IN_DELAY_SLOT) != 0;
+        }
+
+        /**
+         * Compress the oldest segment of the stack into the spill file. Program counters and first parameters
+         * (usually addresses) are stored as zigzag varint deltas from the previous step, since consecutive steps
+         * tend to have nearby values; second parameters (usually old values) are stored as zigzag varints.
+         */
+        private void spillOldest() {
+            ByteBuffer buffer = spillFile.takeBuffer();
+            if (buffer == null) {
+                disableSpilling("save older history to disk", "only the most recent " + capacity + " steps can be undone");
+                size = size - segmentSize;
+                return;
+            }
+            int slot = top - size + 1;
+            if (slot < 0) {
+                slot += capacity;
+            }
+            int previousProgramCounter = 0;
+            int previousParam1 = 0;
+            for (int count = 0; count < segmentSize; count++) {
+                buffer.put((byte) (actions[slot] | (flags[slot] << 4)));
+                putVarint(buffer, zigzag(programCounters[slot] - previousProgramCounter));
+                putVarint(buffer, zigzag(param1s[slot] - previousParam1));
+                putVarint(buffer, zigzag(param2s[slot]));
+                previousProgramCounter = programCounters[slot];
+                previousParam1 = param1s[slot];
+                slot = (slot + 1 == capacity) ? 0 : slot + 1;
+            }
+            buffer.flip();
+            if (!spillFile.append(buffer, segmentSize)) {
+                disableSpilling("save older history to disk", "only the most recent " + capacity + " steps can be undone");
+            }
+            size = size - segmentSize;
+        }
+
+        /**
+         * If the stack is empty but older steps were spilled, read the most recent segment back in.
+         */
+        private void ensureLoaded() {
+            if (size > 0 || spillFile == null) {
+                return;
+            }
+            int count = spillFile.removeNewest();
+            if (count <= 0) {
+                if (count < 0) {
+                    disableSpilling("restore older history from disk", "no earlier steps can be undone");
+                }
+                return;
+            }
+            ByteBuffer buffer = spillFile.getReadBuffer();
+            int previousProgramCounter = 0;
+            int previousParam1 = 0;
+            for (int slot = 0; slot < count; slot++) {
+                byte actionAndFlags = buffer.get();
+                actions[slot] = (byte) (actionAndFlags & 0xF);
+                flags[slot] = (byte) (actionAndFlags >>> 4);
+                previousProgramCounter += unzigzag(getVarint(buffer));
+                previousParam1 += unzigzag(getVarint(buffer));
+                programCounters[slot] = previousProgramCounter;
+                param1s[slot] = previousParam1;
+                param2s[slot] = unzigzag(getVarint(buffer));
+            }
+            top = count - 1;
+            size = count;
+        }
+
+        /**
+         * Stop using the spill file after an I/O error, falling back to keeping only in-memory history,
+         * and tell the user in the Messages pane.
+         */
+        private void disableSpilling(String action, String consequence) {
+            IOException error = spillFile.getError();
+            spillFile.close();
+            spillFile = null;
+            if (Application.getGUI() != null) {
+                Application.getGUI().getMessagesPane().getMessages().writeOutput(
+                    "Back-stepping: unable to " + action + " (" + error + "); " + consequence + ".\n");
+            }
+        }
+
+        private static int zigzag(int value) {
+            return (value << 1) ^ (value >> 31);
+        }
+
+        private static int unzigzag(int value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private static void putVarint(ByteBuffer buffer, int value) {
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        private static int getVarint(ByteBuffer buffer) {
+            int value = 0;
+            int shift = 0;
+            byte next;
+            do {
+                next = buffer.get();
+                value |= (next & 0x7F) << shift;
+                shift += 7;
+            }
+            while (next < 0);
+            return value;
+        }
+    }
+
+    /**
+     * Temporary file holding compressed segments of back-step history which no longer fit in memory.
+     * Segments are only ever appended (when the in-memory stack fills up) or removed from the newest end
+     * (when backstepping empties it), so the file is used as a stack.  To keep disk use bounded, the file
+     * is treated as a circular log of fixed maximum length: when a new segment does not fit, the oldest
+     * segments are dropped and their space is reused.
+     * <p>
+     * The file is created on first use, so runs which never exceed the in-memory limit never touch the disk.
+     * Segments are written by a separate daemon thread, so the simulator only spends the time to encode a segment
+     * into one of two buffers, and only waits for the disk if it fills both buffers before the first is written.
+     * Reading a segment back first waits for any pending writes, which only happens while backstepping.
+     */
+    private static class SpillFile {
+        private record Segment(long position, int length, int count) {}
+
+        private record Write(ByteBuffer data, long position) {}
+
+        private static final int WRITE_BUFFER_COUNT = 2;
+
+        private final long limit;
+        private final ArrayDeque<Segment> segments; // oldest first, only used by the thread owning the stack
+        private final ByteBuffer readBuffer;
+        // The following are guarded by this object's lock
+        private final ArrayDeque<ByteBuffer> freeBuffers;
+        private final ArrayDeque<Write> pendingWrites; // the first is being written while the writer is busy
+        private IOException error;
+        private boolean closed;
+        private Thread writerThread;
+        // Only used by the writer thread, or after waiting for the pending writes to finish
+        private FileChannel channel;
+        private long writePosition;
+
+        private SpillFile(long limit, int maxSegmentBytes) {
+            this.limit = limit;
+            this.segments = new ArrayDeque<>();
+            this.readBuffer = ByteBuffer.allocate(maxSegmentBytes);
+            this.freeBuffers = new ArrayDeque<>(WRITE_BUFFER_COUNT);
+            for (int count = 0; count < WRITE_BUFFER_COUNT; count++) {
+                this.freeBuffers.addLast(ByteBuffer.allocate(maxSegmentBytes));
+            }
+            this.pendingWrites = new ArrayDeque<>(WRITE_BUFFER_COUNT);
+            this.error = null;
+            this.closed = false;
+            this.writerThread = null;
+            this.channel = null;
+            this.writePosition = 0;
+        }
+
+        /**
+         * Get an empty buffer to encode a segment into, waiting for a write to finish if none are free.
+         *
+         * @return The buffer, or null if an I/O error occurred.
+         */
+        private synchronized ByteBuffer takeBuffer() {
+            while (freeBuffers.isEmpty() && error == null) {
+                if (!waitForWriter()) {
+                    return null;
+                }
+            }
+            return (error == null) ? freeBuffers.removeFirst().clear() : null;
+        }
+
+        /**
+         * Get the error which caused the file to stop being used.
+         *
+         * @return The first I/O error which occurred, or null if none has.
+         */
+        private synchronized IOException getError() {
+            return error;
+        }
+
+        private boolean isEmpty() {
+            return segments.isEmpty();
+        }
+
+        /**
+         * Queue a segment to be written to the file, dropping the oldest segments as needed to stay within the limit.
+         *
+         * @param data  A buffer from {@link #takeBuffer()} containing the encoded segment, which the writer thread
+         *              returns to the free buffers once written.
+         * @param count The number of steps in the segment.
+         * @return false if an I/O error occurred.
+         */
+        private boolean append(ByteBuffer data, int count) {
+            int length = data.remaining();
+            long position = writePosition;
+            if (position + length > limit) {
+                // Wrap around; everything between the old write position and the end of the file is older
+                // than anything at the start, so it goes first
+                position = 0;
+                while (!segments.isEmpty() && segments.peekFirst().position() >= writePosition) {
+                    segments.removeFirst();
+                }
+            }
+            while (!segments.isEmpty() && segments.peekFirst().position() >= position && segments.peekFirst().position() < position + length) {
+                segments.removeFirst();
+            }
+            synchronized (this) {
+                if (error != null) {
+                    return false;
+                }
+                if (writerThread == null) {
+                    writerThread = new Thread(this::drain, "Back-step history writer");
+                    writerThread.setDaemon(true);
+                    writerThread.start();
+                }
+                pendingWrites.addLast(new Write(data, position));
+                notifyAll();
+            }
+            segments.addLast(new Segment(position, length, count));
+            writePosition = position + length;
+            return true;
+        }
+
+        /**
+         * Get the buffer which {@link #removeNewest()} reads segments into.
+         */
+        private ByteBuffer getReadBuffer() {
+            return readBuffer;
+        }
+
+        /**
+         * Read the newest segment into the read buffer, ready to be decoded, and remove it from the file.
+         *
+         * @return The number of steps in the segment, 0 if there are none, or -1 if an I/O error occurred.
+         */
+        private int removeNewest() {
+            Segment segment = segments.pollLast();
+            if (segment == null) {
+                return 0;
+            }
+            synchronized (this) {
+                while (!pendingWrites.isEmpty() && error == null) {
+                    if (!waitForWriter()) {
+                        return -1;
+                    }
+                }
+                if (error != null) {
+                    return -1;
+                }
+            }
+            readBuffer.clear();
+            readBuffer.limit(segment.length());
+            try {
+                long filePosition = segment.position();
+                while (readBuffer.hasRemaining()) {
+                    int read = channel.read(readBuffer, filePosition);
+                    if (read < 0) {
+                        throw new IOException("unexpected end of file");
+                    }
+                    filePosition += read;
+                }
+            }
+            catch (IOException exception) {
+                synchronized (this) {
+                    error = exception;
+                }
+                return -1;
+            }
+            readBuffer.flip();
+            writePosition = segment.position();
+            return segment.count();
+        }
+
+        /**
+         * Wait to be notified by the writer thread. Must be called while holding this object's lock.
+         *
+         * @return false if the wait was interrupted, in which case the file should no longer be used.
+         */
+        private boolean waitForWriter() {
+            try {
+                wait();
+                return true;
+            }
+            catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                error = new IOException("interrupted while waiting for back-step history to be written");
+                return false;
+            }
+        }
+
+        /**
+         * Write queued segments until the file is closed. Runs on the writer thread.
+         */
+        private void drain() {
+            while (true) {
+                Write write;
+                synchronized (this) {
+                    while (pendingWrites.isEmpty() && !closed) {
+                        try {
+                            wait();
+                        }
+                        catch (InterruptedException exception) {
+                            return;
+                        }
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    write = pendingWrites.peekFirst();
+                }
+                IOException failure = null;
+                try {
+                    if (channel == null) {
+                        Path path = Files.createTempFile("mars-backsteps", ".bin");
+                        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+                    }
+                    ByteBuffer data = write.data();
+                    long filePosition = write.position();
+                    while (data.hasRemaining()) {
+                        filePosition += channel.write(data, filePosition);
+                    }
+                }
+                catch (IOException exception) {
+                    failure = exception;
+                }
+                synchronized (this) {
+                    pendingWrites.removeFirst();
+                    freeBuffers.addLast(write.data());
+                    if (failure != null && error == null) {
+                        // Later segments are still written, but will never be read back
+                        error = failure;
+                    }
+                    notifyAll();
+                }
+            }
+        }
+
+        private void close() {
+            segments.clear();
+            Thread writer;
+            synchronized (this) {
+                closed = true;
+                writer = writerThread;
+                notifyAll();
+            }
+            if (writer != null) {
+                // At most the write in progress is finished; the rest are dropped
+                try {
+                    writer.join();
+                }
+                catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (channel != null) {
+                try {
+                    channel.close();
+                }
+                catch (IOException ignored) {
+                    // Nothing useful to do about it
+                }
+                channel = null;
+            }
         }
     }
-}
\ No newline at end of file
+}
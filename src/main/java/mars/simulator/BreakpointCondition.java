@@ -0,0 +1,362 @@
+package mars.simulator;
+
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.Register;
+import mars.mips.hardware.RegisterFile;
+
+import java.util.Locale;
+
+/**
+ * A condition attached to a breakpoint, so that the simulator only pauses at the breakpoint when the condition
+ * holds. Conditions are written as C-style integer expressions, for example
+ * <code>$t0 == 5 &amp;&amp; mem[$sp + 4] &gt; 100</code> or <code>hits &gt;= 1000</code>.
+ * <p>
+ * The expression is parsed once into a tree of small evaluator lambdas, each of which reads its operands directly
+ * (registers are resolved to their {@link Register} objects ahead of time), so evaluating a condition costs
+ * about as much as a few instructions. It is only evaluated when the breakpoint address is reached.
+ * <p>
+ * Operands are 32-bit integers:
+ * <ul>
+ * <li>Decimal, hexadecimal (<code>0x</code>), and character (<code>'a'</code>) literals.
+ * <li>Registers by name or number, such as <code>$t0</code>, <code>$8</code>, or <code>$f2</code> (raw bits),
+ *     along with <code>pc</code>, <code>hi</code>, and <code>lo</code>.
+ * <li><code>mem[<i>address</i>]</code>, <code>memh[<i>address</i>]</code>, and <code>memb[<i>address</i>]</code>
+ *     for a word, zero-extended halfword, and zero-extended byte in memory.
+ * <li><code>hits</code> for the number of times the breakpoint has been reached, including this time.
+ * </ul>
+ * Operators have the same meaning and precedence as in C: unary <code>- ! ~</code>, then
+ * <code>* / %</code>, <code>+ -</code>, <code>&lt;&lt; &gt;&gt; &gt;&gt;&gt;</code> (arithmetic and logical shift),
+ * signed comparisons <code>&lt; &lt;= &gt; &gt;=</code>, <code>== !=</code>, <code>&amp;</code>, <code>^</code>,
+ * <code>|</code>, <code>&amp;&amp;</code>, and <code>||</code>. Comparisons and logical operators produce 1 or 0,
+ * and the condition holds if the result is nonzero. If the expression cannot be evaluated (for example, because
+ * it reads an invalid address or divides by zero), the condition is considered to hold so the problem is noticed.
+ */
+public class BreakpointCondition {
+    @FunctionalInterface
+    private interface Expression {
+        int evaluate() throws AddressErrorException;
+    }
+
+    @FunctionalInterface
+    private interface BinaryOperator {
+        Expression combine(Expression left, Expression right);
+    }
+
+    private final String source;
+    private final Expression expression;
+    private long hitCount;
+
+    private BreakpointCondition(String source) {
+        this.source = source.strip();
+        this.hitCount = 0;
+        Parser parser = new Parser(source);
+        this.expression = parser.parseExpression();
+        parser.skipWhitespace();
+        if (parser.position < source.length()) {
+            throw parser.error("unexpected \"" + source.substring(parser.position) + "\"");
+        }
+    }
+
+    /**
+     * Parse and compile a condition.
+     *
+     * @param source The text of the condition.
+     * @return The compiled condition.
+     * @throws IllegalArgumentException Thrown if the condition is not a valid expression.
+     */
+    public static BreakpointCondition parse(String source) {
+        return new BreakpointCondition(source);
+    }
+
+    /**
+     * Get the text of the condition.
+     *
+     * @return The condition as written.
+     */
+    public String getSource() {
+        return this.source;
+    }
+
+    /**
+     * Get the number of times the breakpoint has been reached since the hit count was last reset.
+     *
+     * @return The hit count.
+     */
+    public long getHitCount() {
+        return this.hitCount;
+    }
+
+    /**
+     * Reset the hit count to zero, which is done whenever the simulator is reset.
+     */
+    public void resetHitCount() {
+        this.hitCount = 0;
+    }
+
+    /**
+     * Set the hit count, such as when {@link TimeTravel} restores the count saved with a snapshot.
+     *
+     * @param hitCount The number of times the breakpoint has been reached.
+     */
+    void setHitCount(long hitCount) {
+        this.hitCount = hitCount;
+    }
+
+    /**
+     * Count a hit of the breakpoint, then evaluate the condition.
+     *
+     * @return <code>true</code> if the simulator should pause at the breakpoint.
+     */
+    public boolean hit() {
+        this.hitCount++;
+        return this.isSatisfied();
+    }
+
+    /**
+     * Evaluate the condition without counting a hit.
+     *
+     * @return <code>true</code> if the condition holds.
+     */
+    public boolean isSatisfied() {
+        try {
+            return this.expression.evaluate() != 0;
+        }
+        catch (AddressErrorException | ArithmeticException exception) {
+            return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.source;
+    }
+
+    private static Expression toBoolean(boolean value) {
+        return value ? () -> 1 : () -> 0;
+    }
+
+    /**
+     * Recursive descent parser which builds the evaluator tree as it goes.
+     */
+    private class Parser {
+        // Binary operators from lowest to highest precedence, longest first within each level
+        private static final String[][] OPERATORS = {
+            { "||" },
+            { "&&" },
+            { "|" },
+            { "^" },
+            { "&" },
+            { "==", "!=" },
+            { "<=", ">=", "<", ">" },
+            { ">>>", "<<", ">>" },
+            { "+", "-" },
+            { "*", "/", "%" },
+        };
+
+        private final String source;
+        private int position;
+
+        private Parser(String source) {
+            this.source = source;
+            this.position = 0;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at column " + (this.position + 1));
+        }
+
+        private void skipWhitespace() {
+            while (this.position < this.source.length() && Character.isWhitespace(this.source.charAt(this.position))) {
+                this.position++;
+            }
+        }
+
+        private Expression parseExpression() {
+            return this.parseBinary(0);
+        }
+
+        private Expression parseBinary(int level) {
+            if (level == OPERATORS.length) {
+                return this.parseUnary();
+            }
+            Expression left = this.parseBinary(level + 1);
+            while (true) {
+                String operator = this.matchOperator(OPERATORS[level]);
+                if (operator == null) {
+                    return left;
+                }
+                Expression right = this.parseBinary(level + 1);
+                left = getOperator(operator).combine(left, right);
+            }
+        }
+
+        private String matchOperator(String[] operators) {
+            this.skipWhitespace();
+            for (String operator : operators) {
+                if (this.source.startsWith(operator, this.position)) {
+                    // Make sure a shorter operator is not the prefix of a different, longer one (e.g. & of &&)
+                    int end = this.position + operator.length();
+                    if (operator.length() == 1 && end < this.source.length()) {
+                        char next = this.source.charAt(end);
+                        if ((next == operator.charAt(0) && "&|".indexOf(next) >= 0) || (next == '=' && "<>".indexOf(operator.charAt(0)) < 0)) {
+                            continue;
+                        }
+                    }
+                    this.position = end;
+                    return operator;
+                }
+            }
+            return null;
+        }
+
+        private Expression parseUnary() {
+            this.skipWhitespace();
+            if (this.position < this.source.length()) {
+                char operator = this.source.charAt(this.position);
+                if (operator == '-' || operator == '~' || (operator == '!' && !this.source.startsWith("!=", this.position))) {
+                    this.position++;
+                    Expression operand = this.parseUnary();
+                    return switch (operator) {
+                        case '-' -> () -> -operand.evaluate();
+                        case '~' -> () -> ~operand.evaluate();
+                        default -> () -> (operand.evaluate() == 0) ? 1 : 0;
+                    };
+                }
+            }
+            return this.parsePrimary();
+        }
+
+        private Expression parsePrimary() {
+            this.skipWhitespace();
+            if (this.position >= this.source.length()) {
+                throw this.error("expected an operand");
+            }
+            char first = this.source.charAt(this.position);
+            if (first == '(') {
+                this.position++;
+                Expression inner = this.parseExpression();
+                this.expect(')');
+                return inner;
+            }
+            if (first == '\'') {
+                if (this.position + 2 >= this.source.length() || this.source.charAt(this.position + 2) != '\'') {
+                    throw this.error("invalid character literal");
+                }
+                int value = this.source.charAt(this.position + 1);
+                this.position += 3;
+                return () -> value;
+            }
+            if (Character.isDigit(first)) {
+                String token = this.readToken();
+                long value;
+                try {
+                    value = Long.decode(token);
+                }
+                catch (NumberFormatException exception) {
+                    throw this.error("invalid number \"" + token + "\"");
+                }
+                if (value < Integer.MIN_VALUE || value > 0xFFFFFFFFL) {
+                    throw this.error("number out of range \"" + token + "\"");
+                }
+                int intValue = (int) value;
+                return () -> intValue;
+            }
+            if (first == '$') {
+                String token = this.readToken();
+                Register register = RegisterFile.getUserRegister(token);
+                if (register == null) {
+                    register = Coprocessor1.getRegister(token);
+                }
+                if (register == null) {
+                    register = this.getSpecialRegister(token.substring(1));
+                }
+                if (register == null) {
+                    throw this.error("unknown register \"" + token + "\"");
+                }
+                Register operand = register;
+                return operand::getValue;
+            }
+            if (Character.isLetter(first)) {
+                int start = this.position;
+                String name = this.readToken().toLowerCase(Locale.ROOT);
+                switch (name) {
+                    case "hits" -> {
+                        return () -> (int) BreakpointCondition.this.hitCount;
+                    }
+                    case "mem", "memh", "memb" -> {
+                        this.expect('[');
+                        Expression address = this.parseExpression();
+                        this.expect(']');
+                        return switch (name) {
+                            case "mem" -> () -> Memory.getInstance().fetchWord(address.evaluate(), false);
+                            case "memh" -> () -> Memory.getInstance().fetchHalfword(address.evaluate(), false);
+                            default -> () -> Memory.getInstance().fetchByte(address.evaluate(), false);
+                        };
+                    }
+                    default -> {
+                        Register register = this.getSpecialRegister(name);
+                        if (register == null) {
+                            this.position = start;
+                            throw this.error("unknown name \"" + name + "\"");
+                        }
+                        return register::getValue;
+                    }
+                }
+            }
+            throw this.error("unexpected \"" + first + "\"");
+        }
+
+        private Register getSpecialRegister(String name) {
+            return switch (name.toLowerCase(Locale.ROOT)) {
+                case "pc" -> RegisterFile.getProgramCounterRegister();
+                case "hi" -> RegisterFile.getHighOrderRegister();
+                case "lo" -> RegisterFile.getLowOrderRegister();
+                default -> null;
+            };
+        }
+
+        private String readToken() {
+            int start = this.position;
+            this.position++;
+            while (this.position < this.source.length() && Character.isLetterOrDigit(this.source.charAt(this.position))) {
+                this.position++;
+            }
+            return this.source.substring(start, this.position);
+        }
+
+        private void expect(char expected) {
+            this.skipWhitespace();
+            if (this.position >= this.source.length() || this.source.charAt(this.position) != expected) {
+                throw this.error("expected '" + expected + "'");
+            }
+            this.position++;
+        }
+    }
+
+    private static BinaryOperator getOperator(String operator) {
+        return switch (operator) {
+            case "||" -> (left, right) -> () -> (left.evaluate() != 0 || right.evaluate() != 0) ? 1 : 0;
+            case "&&" -> (left, right) -> () -> (left.evaluate() != 0 && right.evaluate() != 0) ? 1 : 0;
+            case "|" -> (left, right) -> () -> left.evaluate() | right.evaluate();
+            case "^" -> (left, right) -> () -> left.evaluate() ^ right.evaluate();
+            case "&" -> (left, right) -> () -> left.evaluate() & right.evaluate();
+            case "==" -> (left, right) -> () -> (left.evaluate() == right.evaluate()) ? 1 : 0;
+            case "!=" -> (left, right) -> () -> (left.evaluate() != right.evaluate()) ? 1 : 0;
+            case "<" -> (left, right) -> () -> (left.evaluate() < right.evaluate()) ? 1 : 0;
+            case "<=" -> (left, right) -> () -> (left.evaluate() <= right.evaluate()) ? 1 : 0;
+            case ">" -> (left, right) -> () -> (left.evaluate() > right.evaluate()) ? 1 : 0;
+            case ">=" -> (left, right) -> () -> (left.evaluate() >= right.evaluate()) ? 1 : 0;
+            case "<<" -> (left, right) -> () -> left.evaluate() << right.evaluate();
+            case ">>" -> (left, right) -> () -> left.evaluate() >> right.evaluate();
+            case ">>>" -> (left, right) -> () -> left.evaluate() >>> right.evaluate();
+            case "+" -> (left, right) -> () -> left.evaluate() + right.evaluate();
+            case "-" -> (left, right) -> () -> left.evaluate() - right.evaluate();
+            case "*" -> (left, right) -> () -> left.evaluate() * right.evaluate();
+            case "/" -> (left, right) -> () -> left.evaluate() / right.evaluate();
+            case "%" -> (left, right) -> () -> left.evaluate() % right.evaluate();
+            default -> throw new IllegalArgumentException("unknown operator " + operator);
+        };
+    }
+}
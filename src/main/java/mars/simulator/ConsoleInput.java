@@ -0,0 +1,287 @@
+package mars.simulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Source of console input for a program simulated without the GUI console, shared by the line-oriented input
+ * syscalls and reads from file descriptor 0 so that neither can take bytes meant for the other. Input is either
+ * streamed from the standard input of MARS or preloaded in its entirety from a file or byte array, such as when
+ * grading a program against fixed input.
+ * <p>
+ * Bytes are decoded using the platform's default charset. Integers are parsed directly from the buffered bytes,
+ * so reading them does not allocate.
+ */
+public class ConsoleInput implements ReadableByteChannel {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Longest byte sequence considered when decoding a single character
+    private static final int MAX_BYTES_PER_CHARACTER = 8;
+
+    private final InputStream stream;
+    private final Charset charset;
+    private final CharsetDecoder decoder;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    // Holds the start of a line which continues past the end of the buffer
+    private byte[] lineBuffer;
+
+    /**
+     * Create a source which streams input as it becomes available.
+     *
+     * @param stream The stream to read, such as {@link System#in}.
+     */
+    public ConsoleInput(InputStream stream) {
+        this.stream = stream;
+        this.charset = Charset.defaultCharset();
+        this.decoder = this.charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.buffer = new byte[BUFFER_SIZE];
+        this.position = 0;
+        this.limit = 0;
+        this.lineBuffer = new byte[0];
+    }
+
+    /**
+     * Create a source which provides the given bytes and then reaches the end of input.
+     *
+     * @param data The complete input, which is used directly rather than copied.
+     */
+    public ConsoleInput(byte[] data) {
+        this.stream = null;
+        this.charset = Charset.defaultCharset();
+        this.decoder = this.charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.buffer = data;
+        this.position = 0;
+        this.limit = data.length;
+        this.lineBuffer = new byte[0];
+    }
+
+    /**
+     * Read the next line of input.
+     *
+     * @return The line, without its terminator (<code>\n</code> or <code>\r\n</code>), or <code>null</code>
+     *         if the end of input has been reached.
+     */
+    public String readLine() {
+        int lineLength = 0;
+        while (true) {
+            for (int index = this.position; index < this.limit; index++) {
+                if (this.buffer[index] == '\n') {
+                    String line;
+                    if (lineLength == 0) {
+                        line = this.decodeLine(this.buffer, this.position, index - this.position);
+                    }
+                    else {
+                        lineLength = this.appendToLine(lineLength, index);
+                        line = this.decodeLine(this.lineBuffer, 0, lineLength);
+                    }
+                    this.position = index + 1;
+                    return line;
+                }
+            }
+            lineLength = this.appendToLine(lineLength, this.limit);
+            this.position = this.limit;
+            if (!this.fill()) {
+                return (lineLength == 0) ? null : this.decodeLine(this.lineBuffer, 0, lineLength);
+            }
+        }
+    }
+
+    /**
+     * Read the next line of input as a signed decimal integer, which may be surrounded by whitespace.
+     * The entire line is consumed even if it is invalid.
+     *
+     * @return The value of the integer.
+     * @throws NumberFormatException Thrown if the line is not a valid integer or the end of input has been reached.
+     */
+    public int readInt() {
+        int current = this.read();
+        if (current < 0) {
+            throw new NumberFormatException("end of input");
+        }
+        while (isLineSpace(current)) {
+            current = this.read();
+        }
+        boolean negative = (current == '-');
+        if (negative || current == '+') {
+            current = this.read();
+        }
+        // Accumulate the negated value, which has the larger range
+        long value = 0;
+        int digitCount = 0;
+        boolean valid = true;
+        while (current >= '0' && current <= '9') {
+            value = value * 10 - (current - '0');
+            if (value < Integer.MIN_VALUE) {
+                valid = false;
+                value = 0;
+            }
+            digitCount++;
+            current = this.read();
+        }
+        while (isLineSpace(current)) {
+            current = this.read();
+        }
+        // Anything else on the line makes it invalid, but the rest of the line is still consumed
+        while (current >= 0 && current != '\n') {
+            valid = false;
+            current = this.read();
+        }
+        if (!valid || digitCount == 0 || (!negative && value == Integer.MIN_VALUE)) {
+            throw new NumberFormatException("invalid integer input");
+        }
+        return (int) (negative ? value : -value);
+    }
+
+    /**
+     * Read the next character of input. If the character ends its line, the line terminator is consumed with it,
+     * so a character typed on a line of its own behaves as one line of input.
+     * When streaming, the terminator is only consumed if it has already arrived.
+     *
+     * @return The character read, or -1 if the end of input has been reached.
+     */
+    public int readChar() {
+        int current = this.read();
+        if (current < 0) {
+            return -1;
+        }
+        int character = (current >= 0x80) ? this.decodeCharacter(current) : current;
+        if (character != '\n') {
+            if (this.position < this.limit && this.buffer[this.position] == '\r') {
+                if (this.position + 1 < this.limit && this.buffer[this.position + 1] == '\n') {
+                    this.position += 2;
+                }
+            }
+            else if (this.position < this.limit && this.buffer[this.position] == '\n') {
+                this.position++;
+            }
+        }
+        return character;
+    }
+
+    /**
+     * Read bytes as a read from file descriptor 0 would. If no input is buffered, this waits for more to arrive.
+     *
+     * @param destination The buffer to read bytes into.
+     * @return The number of bytes read, or -1 if the end of input has been reached.
+     */
+    @Override
+    public int read(ByteBuffer destination) {
+        if (!destination.hasRemaining()) {
+            return 0;
+        }
+        if (this.position == this.limit && !this.fill()) {
+            return -1;
+        }
+        int count = Math.min(destination.remaining(), this.limit - this.position);
+        destination.put(this.buffer, this.position, count);
+        this.position += count;
+        return count;
+    }
+
+    /**
+     * The console input stays open for the whole simulation.
+     *
+     * @return Always <code>true</code>.
+     */
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    /**
+     * Does nothing, since the underlying stream is shared with the rest of MARS.
+     */
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+
+    private static boolean isLineSpace(int current) {
+        return current == ' ' || current == '\t' || current == '\r' || current == 0x0B || current == '\f';
+    }
+
+    private int read() {
+        if (this.position == this.limit && !this.fill()) {
+            return -1;
+        }
+        return this.buffer[this.position++] & 0xFF;
+    }
+
+    private boolean fill() {
+        if (this.stream == null) {
+            return false;
+        }
+        int count;
+        try {
+            count = this.stream.read(this.buffer, 0, this.buffer.length);
+        }
+        catch (IOException exception) {
+            // Treated as the end of input, as BufferedReader would be by the input syscalls
+            count = -1;
+        }
+        this.position = 0;
+        this.limit = Math.max(count, 0);
+        return count > 0;
+    }
+
+    /**
+     * Decode a character beginning with a byte which is not ASCII, taking as many of the buffered bytes after it as
+     * the charset needs. When streaming, only bytes which have already arrived are used.
+     *
+     * @param first The first byte, which has already been consumed.
+     * @return The decoded character, or the replacement character if the bytes are not a valid sequence.
+     */
+    private int decodeCharacter(int first) {
+        CharsetDecoder decoder = this.decoder.reset();
+        ByteBuffer bytes = ByteBuffer.allocate(MAX_BYTES_PER_CHARACTER);
+        // Room for one character, so that the decoder stops there, unless it is a surrogate pair
+        CharBuffer characters = CharBuffer.allocate(2).limit(1);
+        bytes.put((byte) first);
+        while (true) {
+            bytes.flip();
+            boolean complete = bytes.limit() == bytes.capacity() || this.position == this.limit;
+            if (decoder.decode(bytes, characters, complete).isOverflow() && characters.position() == 0) {
+                characters.limit(2);
+                decoder.decode(bytes, characters, complete);
+            }
+            if (characters.position() > 0 || complete) {
+                if (characters.position() == 0) {
+                    decoder.flush(characters);
+                }
+                // Give back any bytes after the character which the decoder did not need
+                this.position -= bytes.remaining();
+                return (characters.position() > 0) ? characters.get(0) : 0xFFFD;
+            }
+            bytes.compact();
+            bytes.put(this.buffer[this.position++]);
+        }
+    }
+
+    private int appendToLine(int lineLength, int end) {
+        int count = end - this.position;
+        if (lineLength + count > this.lineBuffer.length) {
+            this.lineBuffer = Arrays.copyOf(this.lineBuffer, Math.max(lineLength + count, this.lineBuffer.length * 2));
+        }
+        System.arraycopy(this.buffer, this.position, this.lineBuffer, lineLength, count);
+        return lineLength + count;
+    }
+
+    private String decodeLine(byte[] bytes, int offset, int length) {
+        if (length > 0 && bytes[offset + length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, offset, length, this.charset);
+    }
+}
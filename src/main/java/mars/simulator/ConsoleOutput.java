@@ -0,0 +1,320 @@
+package mars.simulator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Byte-oriented sink for the standard output or standard error of a program simulated from the command line.
+ * Both the print syscalls and writes to the corresponding file descriptor go through the same sink, so output
+ * appears in the order the program produced it.
+ * <p>
+ * Output is collected in a reusable buffer and only passed to the underlying stream when the buffer fills or
+ * {@link #flush()} is called. {@link SystemIO} flushes it whenever the program waits for console input and whenever
+ * the simulator pauses or finishes. Integers are formatted directly into the buffer, so printing them does not
+ * allocate, and strings of ASCII characters are copied without going through a charset encoder.
+ */
+public class ConsoleOutput implements WritableByteChannel {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] HEX_DIGITS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+    // Longest formatted value: 32 binary digits
+    private static final int MAX_NUMBER_LENGTH = Integer.SIZE;
+    // Most decimal digits in a 32-bit magnitude, which leaves room for a sign within MAX_NUMBER_LENGTH
+    private static final int MAX_DECIMAL_DIGITS = 10;
+
+    private final OutputStream target;
+    private final Charset charset;
+    private final boolean autoFlush;
+    private final byte[] buffer;
+    private int length;
+    // Bytes passed to the underlying stream so far
+    private long writtenCount;
+    private OutputComparator comparator;
+    // Bytes in the buffer before this index have already been compared
+    private int comparedLength;
+
+    /**
+     * Create a new sink.
+     *
+     * @param target    The stream to pass output to, such as {@link System#out}.
+     * @param autoFlush Whether to flush after every call, as is conventional for standard error.
+     */
+    public ConsoleOutput(OutputStream target, boolean autoFlush) {
+        this.target = target;
+        this.charset = Charset.defaultCharset();
+        this.autoFlush = autoFlush;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.length = 0;
+        this.writtenCount = 0;
+        this.comparator = null;
+        this.comparedLength = 0;
+    }
+
+    /**
+     * Get the number of bytes printed or written so far, including those still buffered.
+     *
+     * @return The total number of bytes of output.
+     */
+    public long getByteCount() {
+        return this.writtenCount + this.length;
+    }
+
+    /**
+     * Set the comparator to pass everything printed to, which sees the output at the end of every call regardless
+     * of when it is passed to the underlying stream.
+     *
+     * @param comparator The comparator, or <code>null</code> to compare nothing.
+     */
+    public void setComparator(OutputComparator comparator) {
+        this.compareBuffered();
+        this.comparator = comparator;
+    }
+
+    /**
+     * Get the number of bytes a string takes up once encoded by {@link #print(String)}, without printing it.
+     *
+     * @param string The string to measure.
+     * @return The length of the encoded string in bytes.
+     */
+    public int getEncodedLength(String string) {
+        int count = string.length();
+        for (int index = 0; index < count; index++) {
+            if (string.charAt(index) >= 0x80) {
+                return index + string.substring(index).getBytes(this.charset).length;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Print a string, encoded using the platform's default charset.
+     *
+     * @param string The string to print.
+     */
+    public void print(String string) {
+        int count = string.length();
+        for (int index = 0; index < count; index++) {
+            char character = string.charAt(index);
+            if (character >= 0x80) {
+                // Encode everything from the first non-ASCII character on
+                byte[] encoded = string.substring(index).getBytes(this.charset);
+                this.write(encoded, 0, encoded.length);
+                return;
+            }
+            if (this.length == this.buffer.length) {
+                this.writeBuffer();
+            }
+            this.buffer[this.length++] = (byte) character;
+        }
+        this.endCall();
+    }
+
+    /**
+     * Print a character, encoded using the platform's default charset if it is not ASCII.
+     *
+     * @param character The character to print.
+     */
+    public void printChar(char character) {
+        if (character >= 0x80) {
+            this.print(String.valueOf(character));
+            return;
+        }
+        this.reserve(1);
+        this.buffer[this.length++] = (byte) character;
+        this.endCall();
+    }
+
+    /**
+     * Print a signed integer in decimal.
+     *
+     * @param value The value to print.
+     */
+    public void printInt(int value) {
+        this.reserve(MAX_NUMBER_LENGTH);
+        if (value < 0) {
+            this.buffer[this.length++] = '-';
+        }
+        // Widen before taking the magnitude so that the minimum integer does not overflow
+        this.appendDigits(Math.abs((long) value));
+        this.endCall();
+    }
+
+    /**
+     * Print an unsigned integer in decimal.
+     *
+     * @param value The value to print, treated as unsigned.
+     */
+    public void printUnsignedInt(int value) {
+        this.reserve(MAX_NUMBER_LENGTH);
+        this.appendDigits(Integer.toUnsignedLong(value));
+        this.endCall();
+    }
+
+    /**
+     * Print an integer as <code>0x</code> followed by 8 hexadecimal digits, as {@link mars.util.Binary#intToHexString(int)}.
+     *
+     * @param value The value to print.
+     */
+    public void printHex(int value) {
+        this.reserve(MAX_NUMBER_LENGTH);
+        this.buffer[this.length++] = '0';
+        this.buffer[this.length++] = 'x';
+        for (int shift = Integer.SIZE - 4; shift >= 0; shift -= 4) {
+            this.buffer[this.length++] = HEX_DIGITS[(value >>> shift) & 0xF];
+        }
+        this.endCall();
+    }
+
+    /**
+     * Print an integer as 32 binary digits, as {@link mars.util.Binary#intToBinaryString(int)}.
+     *
+     * @param value The value to print.
+     */
+    public void printBinary(int value) {
+        this.reserve(MAX_NUMBER_LENGTH);
+        for (int shift = Integer.SIZE - 1; shift >= 0; shift--) {
+            this.buffer[this.length++] = (byte) ('0' + ((value >>> shift) & 1));
+        }
+        this.endCall();
+    }
+
+    /**
+     * Write raw bytes.
+     *
+     * @param data   The array containing the bytes.
+     * @param offset The index of the first byte to write.
+     * @param count  The number of bytes to write.
+     */
+    public void write(byte[] data, int offset, int count) {
+        if (count > this.buffer.length - this.length) {
+            this.writeBuffer();
+            if (count > this.buffer.length) {
+                // Too large to be worth copying
+                if (this.comparator != null) {
+                    this.comparator.compare(data, offset, count);
+                }
+                this.writeTarget(data, offset, count);
+                this.writtenCount += count;
+                this.endCall();
+                return;
+            }
+        }
+        System.arraycopy(data, offset, this.buffer, this.length, count);
+        this.length += count;
+        this.endCall();
+    }
+
+    /**
+     * Write the bytes remaining in a buffer, as a write to the file descriptor would.
+     *
+     * @param source The bytes to write.
+     * @return The number of bytes written, which is always all of them.
+     */
+    @Override
+    public int write(ByteBuffer source) {
+        int count = source.remaining();
+        if (source.hasArray()) {
+            this.write(source.array(), source.arrayOffset() + source.position(), count);
+            source.position(source.limit());
+        }
+        else {
+            while (source.hasRemaining()) {
+                if (this.length == this.buffer.length) {
+                    this.writeBuffer();
+                }
+                int chunk = Math.min(source.remaining(), this.buffer.length - this.length);
+                source.get(this.buffer, this.length, chunk);
+                this.length += chunk;
+            }
+            this.endCall();
+        }
+        return count;
+    }
+
+    /**
+     * Pass everything buffered so far to the underlying stream and flush it.
+     */
+    public void flush() {
+        this.writeBuffer();
+        try {
+            this.target.flush();
+        }
+        catch (IOException exception) {
+            // Console output errors are ignored, as with System.out
+        }
+    }
+
+    /**
+     * The standard streams stay open for the whole simulation.
+     *
+     * @return Always <code>true</code>.
+     */
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    /**
+     * Flush the sink. The underlying stream is not closed.
+     */
+    @Override
+    public void close() {
+        this.flush();
+    }
+
+    private void appendDigits(long magnitude) {
+        // Digits are produced backward, so they are placed at the end of the reserved space and then moved down
+        int end = this.length + MAX_DECIMAL_DIGITS;
+        int start = end;
+        do {
+            this.buffer[--start] = (byte) ('0' + (int) (magnitude % 10));
+            magnitude /= 10;
+        }
+        while (magnitude != 0);
+        System.arraycopy(this.buffer, start, this.buffer, this.length, end - start);
+        this.length += end - start;
+    }
+
+    private void reserve(int count) {
+        if (this.buffer.length - this.length < count) {
+            this.writeBuffer();
+        }
+    }
+
+    private void endCall() {
+        this.compareBuffered();
+        if (this.autoFlush) {
+            this.flush();
+        }
+    }
+
+    private void writeBuffer() {
+        if (this.length > 0) {
+            this.compareBuffered();
+            this.writeTarget(this.buffer, 0, this.length);
+            this.writtenCount += this.length;
+            this.length = 0;
+            this.comparedLength = 0;
+        }
+    }
+
+    private void compareBuffered() {
+        if (this.length > this.comparedLength) {
+            if (this.comparator != null) {
+                this.comparator.compare(this.buffer, this.comparedLength, this.length - this.comparedLength);
+            }
+            this.comparedLength = this.length;
+        }
+    }
+
+    private void writeTarget(byte[] data, int offset, int count) {
+        try {
+            this.target.write(data, offset, count);
+        }
+        catch (IOException exception) {
+            // Console output errors are ignored, as with System.out
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package mars.simulator;
+
+import mars.mips.instructions.DecodedInstruction;
+
+/**
+ * This interface is used to observe every instruction executed by the simulator, for analysis engines such as
+ * timing models, cache models, and branch predictors. It can be attached to the {@link Simulator} via
+ * {@link Simulator#addExecutionListener(ExecutionListener)}.
+ * <p>
+ * Callbacks always run on the simulator thread, in the middle of the main simulation loop, so implementations
+ * should be fast and must not block. Instructions which terminate with an exception (including the exit syscall)
+ * are not reported.
+ */
+public interface ExecutionListener {
+    /**
+     * Called after the simulator has successfully executed an instruction.
+     *
+     * @param address       The address of the instruction which was executed.
+     * @param instruction   The decoded form of the instruction.
+     * @param memoryAddress The effective address of the memory access performed by the instruction, computed before
+     *                      the instruction executed, or 0 if the instruction does not access memory
+     *                      (see {@link DecodedInstruction#getMemoryAccessSize()}).
+     * @param nextAddress   The address of the next instruction in program order, taking into account any branch or
+     *                      jump performed by the instruction, even if the jump is delayed.
+     */
+    void instructionExecuted(int address, DecodedInstruction instruction, int memoryAddress, int nextAddress);
+}
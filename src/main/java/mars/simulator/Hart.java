@@ -0,0 +1,137 @@
+package mars.simulator;
+
+import mars.mips.hardware.Coprocessor0;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.Register;
+import mars.mips.hardware.RegisterFile;
+
+/**
+ * The saved architectural state of one hardware thread ("hart") when multiple harts are being simulated.
+ * <p>
+ * {@link RegisterFile}, {@link Coprocessor0}, and {@link Coprocessor1} always hold the state of the hart which
+ * is currently executing. When the simulator switches to another hart, the state of the outgoing hart is saved
+ * into its <code>Hart</code> object with {@link #save()}, and the state of the incoming hart is loaded with
+ * {@link #restore()}. Memory is shared between all harts.
+ * <p>
+ * When the state of a hart is restored, listeners are notified of a write to every register whose value differs
+ * from that of the outgoing hart, so that register views and tools observing a register keep showing the values
+ * of the hart which is currently executing.
+ */
+public class Hart {
+    private final int index;
+    private final int[] generalRegisters;
+    private final int[] coprocessor0Registers;
+    private final int[] coprocessor1Registers;
+    private int programCounter;
+    private int highOrder;
+    private int lowOrder;
+    private int conditionFlags;
+    private Integer delayedJumpAddress;
+    private boolean halted;
+
+    /**
+     * Create the saved state for a hart, initialized to zero.
+     *
+     * @param index The index of the hart, starting from 0.
+     */
+    public Hart(int index) {
+        this.index = index;
+        this.generalRegisters = new int[RegisterFile.getRegisters().length];
+        this.coprocessor0Registers = new int[Coprocessor0.getRegisters().length];
+        this.coprocessor1Registers = new int[Coprocessor1.getRegisters().length];
+        this.delayedJumpAddress = null;
+        this.halted = false;
+    }
+
+    /**
+     * Get the index of this hart, which is the value returned to the program by the <code>HartId</code> syscall.
+     *
+     * @return The hart index, starting from 0.
+     */
+    public int getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Determine whether this hart has stopped executing instructions.
+     *
+     * @return <code>true</code> if the hart has halted, or <code>false</code> if it is still runnable.
+     */
+    public boolean isHalted() {
+        return this.halted;
+    }
+
+    /**
+     * Mark this hart as halted, meaning it will no longer be scheduled.
+     */
+    public void halt() {
+        this.halted = true;
+    }
+
+    /**
+     * Get the program counter this hart will resume execution at.
+     *
+     * @return The saved program counter value.
+     */
+    public int getProgramCounter() {
+        return this.programCounter;
+    }
+
+    /**
+     * Copy the current contents of the register files, along with any pending delayed jump,
+     * into this hart's saved state.
+     */
+    public void save() {
+        saveRegisters(RegisterFile.getRegisters(), this.generalRegisters);
+        saveRegisters(Coprocessor0.getRegisters(), this.coprocessor0Registers);
+        saveRegisters(Coprocessor1.getRegisters(), this.coprocessor1Registers);
+        this.programCounter = RegisterFile.getProgramCounterRegister().getValueNoNotify();
+        this.highOrder = RegisterFile.getHighOrderRegister().getValueNoNotify();
+        this.lowOrder = RegisterFile.getLowOrderRegister().getValueNoNotify();
+        this.conditionFlags = Coprocessor1.getConditionFlagsRegister().getValueNoNotify();
+        this.delayedJumpAddress = Simulator.getInstance().getDelayedJumpAddress();
+    }
+
+    /**
+     * Replace the current contents of the register files, along with any pending delayed jump,
+     * with this hart's saved state. Listeners are notified of each register whose value changes.
+     */
+    public void restore() {
+        restoreRegisters(RegisterFile.getRegisters(), this.generalRegisters);
+        restoreRegisters(Coprocessor0.getRegisters(), this.coprocessor0Registers);
+        restoreRegisters(Coprocessor1.getRegisters(), this.coprocessor1Registers);
+        restoreRegister(RegisterFile.getProgramCounterRegister(), this.programCounter);
+        restoreRegister(RegisterFile.getHighOrderRegister(), this.highOrder);
+        restoreRegister(RegisterFile.getLowOrderRegister(), this.lowOrder);
+        restoreRegister(Coprocessor1.getConditionFlagsRegister(), this.conditionFlags);
+        Simulator.getInstance().setDelayedJumpAddress(this.delayedJumpAddress);
+    }
+
+    /**
+     * Overwrite a single general-purpose register in this hart's saved state.
+     *
+     * @param number The register number (0-31).
+     * @param value  The new value of the register.
+     */
+    public void setGeneralRegister(int number, int value) {
+        this.generalRegisters[number] = value;
+    }
+
+    private static void saveRegisters(Register[] registers, int[] values) {
+        for (int index = 0; index < values.length; index++) {
+            values[index] = registers[index].getValueNoNotify();
+        }
+    }
+
+    private static void restoreRegisters(Register[] registers, int[] values) {
+        for (int index = 0; index < values.length; index++) {
+            restoreRegister(registers[index], values[index]);
+        }
+    }
+
+    private static void restoreRegister(Register register, int value) {
+        if (register.getValueNoNotify() != value) {
+            register.setValue(value);
+        }
+    }
+}
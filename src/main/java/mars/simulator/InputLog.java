@@ -0,0 +1,652 @@
+package mars.simulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An ordered log of every non-deterministic value a program receives from outside the simulated machine:
+ * console and file input, random numbers, the time of day, dialog responses, and the results of file operations.
+ * Recording these values is what allows execution to be repeated exactly, such as when {@link TimeTravel}
+ * re-executes instructions after restoring a snapshot.
+ * <p>
+ * The log is a compact byte sequence with a read position. While the position is before the end of the log,
+ * the simulator is replaying: each value is read back from the log instead of being obtained again. Once the
+ * position reaches the end, values are obtained live and appended. Callers follow the pattern
+ * <pre>
+ * int value = log.hasNext(InputLog.INT) ? log.nextInt() : log.recordInt(obtainValue());
+ * </pre>
+ * If the program asks for a different kind of value than the log holds next, execution has diverged from the
+ * recording (for instance, because a register was edited), so the rest of the log is discarded when the live
+ * value is recorded.
+ * <p>
+ * Values are only kept in memory while recording is enabled; otherwise, the <code>record</code> methods simply
+ * return their argument.
+ * <p>
+ * The log can also be streamed to a file as it is recorded (see {@link #startRecordingFile(Path)}), and a file
+ * recorded this way can be loaded to replay a run exactly (see {@link #startReplayingFile(Path)}), such as to
+ * reproduce a failure which depends on random numbers or the timing of keyboard input. Files consist of an
+ * 8-byte header followed by the records, and are written through a direct buffer which is flushed whenever it
+ * fills and after each run of the simulator.
+ */
+public class InputLog {
+    /**
+     * Record kind for an integer, such as a random number or the result of a file operation.
+     */
+    public static final byte INT = 1;
+    /**
+     * Record kind for a long integer, such as the time of day.
+     */
+    public static final byte LONG = 2;
+    /**
+     * Record kind for a string (possibly <code>null</code>), such as a line of console input or a dialog response.
+     */
+    public static final byte STRING = 3;
+    /**
+     * Record kind for a sequence of bytes along with a count, such as the result of reading from a file.
+     */
+    public static final byte BYTES = 4;
+    /**
+     * Record kind for a word written to memory-mapped I/O from outside the simulator thread, such as by the
+     * keyboard of the MMIO simulator tool, along with the instruction count at which it was written.
+     */
+    public static final byte STORE = 5;
+
+    /**
+     * A word written to memory-mapped I/O from outside the simulator thread.
+     *
+     * @param instructionCount The number of instructions executed before the word was written.
+     * @param address          The address of the word.
+     * @param value            The value of the word.
+     */
+    public record Store(long instructionCount, int address, int value) {}
+
+    private static final byte[] FILE_HEADER = { 'M', 'A', 'R', 'S', 'L', 'O', 'G', 1 };
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
+    private byte[] data;
+    private int length;
+    private int position;
+    private boolean recording;
+    private Runnable divergenceHandler;
+    private boolean hostDependent;
+
+    // Streaming to a file: records before recordStart have been copied to the buffer, and discardedBytes counts
+    // those which have also been removed from memory because recording is disabled
+    private FileChannel recordChannel;
+    private ByteBuffer recordBuffer;
+    private int recordStart;
+    private long discardedBytes;
+    private IOException recordError;
+    private byte[] replayData;
+
+    /**
+     * Create a new, empty log which is not recording.
+     */
+    public InputLog() {
+        this.data = new byte[256];
+        this.length = 0;
+        this.position = 0;
+        this.recording = false;
+        this.divergenceHandler = null;
+        this.hostDependent = false;
+    }
+
+    /**
+     * Determine whether values passed to the <code>record</code> methods are being kept.
+     *
+     * @return <code>true</code> if recording is enabled, or <code>false</code> otherwise.
+     */
+    public boolean isRecording() {
+        return this.recording;
+    }
+
+    /**
+     * Enable or disable keeping recorded values. Values already in the log are unaffected.
+     *
+     * @param recording <code>true</code> to keep values passed to the <code>record</code> methods.
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Set the action to run when a live value is recorded while unread values remain,
+     * which causes those values to be discarded.
+     *
+     * @param divergenceHandler The action to run, or <code>null</code> for none.
+     */
+    public void setDivergenceHandler(Runnable divergenceHandler) {
+        this.divergenceHandler = divergenceHandler;
+    }
+
+    /**
+     * Note that the program has observed something about the host which is not part of its input, such as the time,
+     * an unseeded random number, or a host file, so running it again with the same input may not give the same result.
+     */
+    public void markHostDependent() {
+        this.hostDependent = true;
+    }
+
+    /**
+     * Determine whether the program has observed the host since the log was last cleared.
+     *
+     * @return <code>true</code> if {@link #markHostDependent()} has been called, or <code>false</code> otherwise.
+     */
+    public boolean isHostDependent() {
+        return this.hostDependent;
+    }
+
+    /**
+     * Discard every value in the log. If a file is being recorded, it starts over; if a file is being replayed,
+     * the replay starts over from the beginning.
+     */
+    public void clear() {
+        this.hostDependent = false;
+        this.length = 0;
+        this.position = 0;
+        this.recordStart = 0;
+        this.discardedBytes = 0;
+        if (this.recordChannel != null) {
+            this.recordBuffer.clear();
+            this.truncateRecordFile(0);
+        }
+        if (this.replayData != null) {
+            this.ensureCapacity(this.replayData.length);
+            System.arraycopy(this.replayData, 0, this.data, 0, this.replayData.length);
+            this.length = this.replayData.length;
+        }
+    }
+
+    /**
+     * Begin streaming the log to a file, starting with any values already in the log.
+     * Values are streamed whether or not recording in memory is enabled.
+     *
+     * @param path The file to write, which is replaced if it exists.
+     * @throws IOException Thrown if the file cannot be opened.
+     */
+    public void startRecordingFile(Path path) throws IOException {
+        this.stopRecordingFile();
+        this.recordChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.recordBuffer = ByteBuffer.allocateDirect(FILE_BUFFER_SIZE);
+        this.recordBuffer.put(FILE_HEADER);
+        this.recordStart = 0;
+        this.discardedBytes = 0;
+        this.recordError = null;
+    }
+
+    /**
+     * Stop streaming the log to a file, writing anything remaining and closing the file. Does nothing if no file is
+     * being recorded.
+     *
+     * @throws IOException Thrown if writing to the file failed at any point while it was being recorded.
+     */
+    public void stopRecordingFile() throws IOException {
+        if (this.recordChannel == null) {
+            return;
+        }
+        this.flush();
+        try {
+            this.recordChannel.close();
+        }
+        catch (IOException exception) {
+            this.recordError = exception;
+        }
+        this.recordChannel = null;
+        this.recordBuffer = null;
+        IOException error = this.recordError;
+        this.recordError = null;
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Determine whether the log is being streamed to a file.
+     *
+     * @return <code>true</code> if a file is being recorded, or <code>false</code> otherwise.
+     */
+    public boolean isRecordingFile() {
+        return this.recordChannel != null;
+    }
+
+    /**
+     * Write everything logged so far to the file being recorded, if any. This is called after each run of the
+     * simulator. Errors are reported by {@link #stopRecordingFile()}.
+     */
+    public void flush() {
+        if (this.recordChannel == null) {
+            return;
+        }
+        this.copyToRecordBuffer();
+        this.writeRecordBuffer();
+    }
+
+    /**
+     * Replace the contents of the log with a file written by {@link #startRecordingFile(Path)}, so that the values
+     * it contains are replayed from the beginning. The file is replayed again each time the log is cleared,
+     * until {@link #stopReplayingFile()} is called.
+     *
+     * @param path The file to read.
+     * @throws IOException Thrown if the file cannot be read or is not an input log.
+     */
+    public void startReplayingFile(Path path) throws IOException {
+        byte[] contents;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < FILE_HEADER.length || size - FILE_HEADER.length > Integer.MAX_VALUE - 8) {
+                throw new IOException(path + " is not an input log");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until the whole file is in the buffer
+            }
+            contents = buffer.array();
+        }
+        if (!Arrays.equals(contents, 0, FILE_HEADER.length, FILE_HEADER, 0, FILE_HEADER.length)) {
+            throw new IOException(path + " is not an input log");
+        }
+        this.replayData = Arrays.copyOfRange(contents, FILE_HEADER.length, contents.length);
+        this.clear();
+    }
+
+    /**
+     * Stop replaying a file loaded by {@link #startReplayingFile(Path)}. Values from the file which have yet to be
+     * read are discarded, and subsequent values are obtained live.
+     */
+    public void stopReplayingFile() {
+        this.replayData = null;
+        this.length = this.position;
+    }
+
+    /**
+     * Determine whether values are being replayed from a file, i.e. whether a file was loaded using
+     * {@link #startReplayingFile(Path)} and values remain to be read from it. Waiting for the user or for real time
+     * to pass can be skipped while this is the case, since everything the program observes comes from the log.
+     *
+     * @return <code>true</code> if values from a file remain to be read, or <code>false</code> otherwise.
+     */
+    public boolean isReplayingFile() {
+        return this.replayData != null && this.position < this.length;
+    }
+
+    /**
+     * Get the current read position, which can later be passed to {@link #setPosition(int)} to replay the log
+     * from this point.
+     *
+     * @return The offset of the next record, in bytes.
+     */
+    public int getPosition() {
+        return this.position;
+    }
+
+    /**
+     * Move the read position to a value previously returned by {@link #getPosition()}.
+     *
+     * @param position The offset of the next record to read, in bytes.
+     */
+    public void setPosition(int position) {
+        if (position < 0 || position > this.length) {
+            throw new IllegalArgumentException("position out of range: " + position);
+        }
+        this.position = position;
+    }
+
+    /**
+     * Discard the records before a position previously returned by {@link #getPosition()}, which will never be
+     * read again, moving the rest to the start of the log. Positions obtained earlier must be reduced by the same
+     * amount. If a file is being recorded, the discarded records are written to it first.
+     *
+     * @param position The offset of the first record to keep, which must not be after the read position.
+     */
+    public void discardBefore(int position) {
+        if (position < 0 || position > this.position) {
+            throw new IllegalArgumentException("position out of range: " + position);
+        }
+        if (position == 0) {
+            return;
+        }
+        if (this.recordChannel != null) {
+            this.copyToRecordBuffer();
+            this.recordStart -= position;
+            this.discardedBytes += position;
+        }
+        System.arraycopy(this.data, position, this.data, 0, this.length - position);
+        this.length -= position;
+        this.position -= position;
+    }
+
+    /**
+     * Get the size of the log.
+     *
+     * @return The total length of all records, in bytes.
+     */
+    public int getLength() {
+        return this.length;
+    }
+
+    /**
+     * Determine whether the log is replaying, i.e. whether there are records after the read position.
+     *
+     * @return <code>true</code> if there are records left to read, or <code>false</code> otherwise.
+     */
+    public boolean isReplaying() {
+        return this.position < this.length;
+    }
+
+    /**
+     * Determine whether the next record in the log is of the given kind.
+     *
+     * @param kind The kind of record expected, such as {@link #INT}.
+     * @return <code>true</code> if the next record exists and is of that kind, or <code>false</code> otherwise.
+     */
+    public boolean hasNext(byte kind) {
+        return this.position < this.length && this.data[this.position] == kind;
+    }
+
+    /**
+     * Read the next record, which must be of kind {@link #INT}.
+     *
+     * @return The recorded value.
+     */
+    public int nextInt() {
+        this.expect(INT);
+        return (int) this.readSignedVarLong();
+    }
+
+    /**
+     * Read the next record, which must be of kind {@link #LONG}.
+     *
+     * @return The recorded value.
+     */
+    public long nextLong() {
+        this.expect(LONG);
+        return this.readSignedVarLong();
+    }
+
+    /**
+     * Read the next record, which must be of kind {@link #STRING}.
+     *
+     * @return The recorded value, which may be <code>null</code>.
+     */
+    public String nextString() {
+        this.expect(STRING);
+        int size = (int) this.readVarLong();
+        if (size == 0) {
+            return null;
+        }
+        String value = new String(this.data, this.position, size - 1, StandardCharsets.UTF_8);
+        this.position += size - 1;
+        return value;
+    }
+
+    /**
+     * Read the next record, which must be of kind {@link #BYTES}, putting the recorded bytes into a buffer.
+     *
+     * @param buffer The buffer to put the bytes into, which must have room for all of them.
+     * @return The recorded count, which may be negative to indicate an error.
+     */
+    public int nextBytes(ByteBuffer buffer) {
+        this.expect(BYTES);
+        int count = (int) this.readSignedVarLong();
+        if (count > 0) {
+            buffer.put(this.data, this.position, count);
+            this.position += count;
+        }
+        return count;
+    }
+
+    /**
+     * Get the instruction count of the next record, if it is of kind {@link #STORE}.
+     *
+     * @return The instruction count at which the store was made, or {@link Long#MAX_VALUE} if the next record
+     *         is not a store.
+     */
+    public long getNextStoreCount() {
+        if (!this.hasNext(STORE)) {
+            return Long.MAX_VALUE;
+        }
+        int start = this.position++;
+        long count = this.readVarLong();
+        this.position = start;
+        return count;
+    }
+
+    /**
+     * Read the next record, which must be of kind {@link #STORE}.
+     *
+     * @return The recorded store.
+     */
+    public Store nextStore() {
+        this.expect(STORE);
+        long count = this.readVarLong();
+        int address = (int) this.readSignedVarLong();
+        int value = (int) this.readSignedVarLong();
+        return new Store(count, address, value);
+    }
+
+    /**
+     * Append an integer to the log if recording.
+     *
+     * @param value The value obtained live.
+     * @return The value, for convenience.
+     */
+    public int recordInt(int value) {
+        if (this.startRecord(INT, 5)) {
+            this.writeSignedVarLong(value);
+            this.endRecord();
+        }
+        return value;
+    }
+
+    /**
+     * Append a long integer to the log if recording.
+     *
+     * @param value The value obtained live.
+     * @return The value, for convenience.
+     */
+    public long recordLong(long value) {
+        if (this.startRecord(LONG, 10)) {
+            this.writeSignedVarLong(value);
+            this.endRecord();
+        }
+        return value;
+    }
+
+    /**
+     * Append a string to the log if recording.
+     *
+     * @param value The value obtained live, which may be <code>null</code>.
+     * @return The value, for convenience.
+     */
+    public String recordString(String value) {
+        byte[] bytes = (value == null) ? null : value.getBytes(StandardCharsets.UTF_8);
+        if (this.startRecord(STRING, 5 + ((bytes == null) ? 0 : bytes.length))) {
+            if (bytes == null) {
+                this.writeVarLong(0);
+            }
+            else {
+                this.writeVarLong(bytes.length + 1L);
+                System.arraycopy(bytes, 0, this.data, this.length, bytes.length);
+                this.length += bytes.length;
+                this.position = this.length;
+            }
+            this.endRecord();
+        }
+        return value;
+    }
+
+    /**
+     * Append a count and the corresponding bytes of a buffer to the log if recording.
+     * The position of the buffer is not changed.
+     *
+     * @param count  The count obtained live, which may be negative to indicate an error.
+     * @param buffer The buffer holding the bytes.
+     * @param start  The index in the buffer of the first byte.
+     * @return The count, for convenience.
+     */
+    public int recordBytes(int count, ByteBuffer buffer, int start) {
+        if (this.startRecord(BYTES, 5 + Math.max(count, 0))) {
+            this.writeSignedVarLong(count);
+            if (count > 0) {
+                buffer.get(start, this.data, this.length, count);
+                this.length += count;
+                this.position = this.length;
+            }
+            this.endRecord();
+        }
+        return count;
+    }
+
+    /**
+     * Append a word written to memory-mapped I/O from outside the simulator thread to the log if recording.
+     *
+     * @param instructionCount The number of instructions executed before the word was written.
+     * @param address          The address of the word.
+     * @param value            The value of the word.
+     */
+    public void recordStore(long instructionCount, int address, int value) {
+        if (this.startRecord(STORE, 20)) {
+            this.writeVarLong(instructionCount);
+            this.writeSignedVarLong(address);
+            this.writeSignedVarLong(value);
+            this.endRecord();
+        }
+    }
+
+    private void expect(byte kind) {
+        if (!this.hasNext(kind)) {
+            throw new IllegalStateException("input log does not contain the expected value");
+        }
+        this.position++;
+    }
+
+    private boolean startRecord(byte kind, int maxSize) {
+        if (this.position < this.length) {
+            // Execution has diverged from the recording, so the rest of it no longer applies
+            this.length = this.position;
+            if (this.recordStart > this.length) {
+                // Part of what no longer applies has already been streamed, so take it back out of the file
+                this.writeRecordBuffer();
+                this.truncateRecordFile(this.discardedBytes + this.length);
+                this.recordStart = this.length;
+            }
+            if (this.divergenceHandler != null) {
+                this.divergenceHandler.run();
+            }
+        }
+        if (!this.recording && this.recordChannel == null) {
+            return false;
+        }
+        this.ensureCapacity(this.length + 1 + maxSize);
+        this.data[this.length++] = kind;
+        this.position = this.length;
+        return true;
+    }
+
+    private void endRecord() {
+        if (this.recordChannel != null) {
+            this.copyToRecordBuffer();
+            if (!this.recording) {
+                // The values are only needed in the file
+                this.discardedBytes += this.length;
+                this.length = 0;
+                this.position = 0;
+                this.recordStart = 0;
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > this.data.length) {
+            this.data = Arrays.copyOf(this.data, Math.max(this.data.length * 2, capacity));
+        }
+    }
+
+    private void copyToRecordBuffer() {
+        // Values which have been replayed belong in the file as well, so copy everything before the read position
+        while (this.recordStart < this.position) {
+            int count = Math.min(this.recordBuffer.remaining(), this.position - this.recordStart);
+            this.recordBuffer.put(this.data, this.recordStart, count);
+            this.recordStart += count;
+            if (!this.recordBuffer.hasRemaining()) {
+                this.writeRecordBuffer();
+            }
+        }
+    }
+
+    private void writeRecordBuffer() {
+        if (this.recordChannel == null) {
+            return;
+        }
+        this.recordBuffer.flip();
+        try {
+            while (this.recordBuffer.hasRemaining()) {
+                this.recordChannel.write(this.recordBuffer);
+            }
+        }
+        catch (IOException exception) {
+            this.recordError = exception;
+        }
+        this.recordBuffer.clear();
+    }
+
+    private void truncateRecordFile(long recordBytes) {
+        if (this.recordChannel == null) {
+            return;
+        }
+        try {
+            long size = FILE_HEADER.length + recordBytes;
+            if (size == FILE_HEADER.length) {
+                // Nothing but the header remains, which may not have been written yet
+                this.recordChannel.truncate(0);
+                this.recordChannel.position(0);
+                this.recordBuffer.clear();
+                this.recordBuffer.put(FILE_HEADER);
+            }
+            else {
+                this.recordChannel.truncate(size);
+                this.recordChannel.position(size);
+            }
+        }
+        catch (IOException exception) {
+            this.recordError = exception;
+        }
+    }
+
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            this.data[this.length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        this.data[this.length++] = (byte) value;
+        this.position = this.length;
+    }
+
+    private void writeSignedVarLong(long value) {
+        // Zigzag encoding keeps small negative values short
+        this.writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    private long readVarLong() {
+        long value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = this.data[this.position++];
+            value |= (long) (current & 0x7F) << shift;
+            shift += 7;
+        }
+        while (current < 0);
+        return value;
+    }
+
+    private long readSignedVarLong() {
+        long value = this.readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,200 @@
+package mars.simulator;
+
+import javax.sound.midi.*;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Recorder of the notes played by the MIDI syscalls, which takes the place of the synthesizer so that programs which
+ * play music can run where there is no audio device, and their music can be checked afterward. Installed with
+ * {@link Simulator#setMidiRecorder(MidiRecorder)}, in which case the syscalls record each note at the current time of
+ * the {@link VirtualClock} instead of playing it, and the synchronous syscall advances the clock by the length of
+ * the note instead of waiting. The clock should therefore be enabled as well.
+ * <p>
+ * The notes are saved as either a standard MIDI file with one track, in which one tick is one millisecond, or as
+ * text with one note per line.
+ */
+public class MidiRecorder {
+    /**
+     * A note played by the program.
+     *
+     * @param time       The simulated time at which the note started, in milliseconds since the program started.
+     * @param pitch      The pitch in semitones, from 0 to 127, where 60 is middle C.
+     * @param duration   The length of the note in milliseconds.
+     * @param instrument The General MIDI instrument (patch), from 0 to 127.
+     * @param volume     The velocity of the note, from 0 to 127.
+     */
+    public record Note(long time, int pitch, int duration, int instrument, int volume) {}
+
+    /**
+     * Formats in which the notes can be saved.
+     */
+    public enum Format {
+        /**
+         * A standard MIDI file of type 0.
+         */
+        MIDI,
+        /**
+         * Text with one line per note, giving the fields of {@link Note} separated by spaces.
+         */
+        TEXT,
+    }
+
+    // With the default tempo of 120 quarter notes per minute, 500 ticks per quarter note makes a tick one millisecond
+    private static final int TICKS_PER_QUARTER_NOTE = 500;
+    private static final int MICROSECONDS_PER_QUARTER_NOTE = 500_000;
+    private static final int TEMPO_META_TYPE = 0x51;
+    private static final int CHANNEL = 0;
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    private final Path path;
+    private Format format;
+    private final List<Note> notes;
+
+    /**
+     * Create a recorder which has not recorded any notes.
+     *
+     * @param path The file to save the notes to.
+     */
+    public MidiRecorder(Path path) {
+        this.path = path;
+        this.format = Format.MIDI;
+        this.notes = new ArrayList<>();
+    }
+
+    /**
+     * Apply options given as a comma-separated list. The only valid item is <code>format=midi|text</code>,
+     * which selects the format to save the notes in.
+     *
+     * @param options The options to apply.
+     * @throws IllegalArgumentException Thrown if an item is unrecognized or its value is invalid.
+     */
+    public void configure(String options) {
+        for (String option : options.split(",")) {
+            option = option.strip();
+            if (option.isEmpty()) {
+                continue;
+            }
+            int separator = option.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("expected <key>=<value>: " + option);
+            }
+            String key = option.substring(0, separator).strip().toLowerCase(Locale.ROOT);
+            String value = option.substring(separator + 1).strip().toLowerCase(Locale.ROOT);
+            if (!key.equals("format")) {
+                throw new IllegalArgumentException("unrecognized option: " + option);
+            }
+            this.format = switch (value) {
+                case "midi" -> Format.MIDI;
+                case "text" -> Format.TEXT;
+                default -> throw new IllegalArgumentException("unrecognized format: " + option);
+            };
+        }
+    }
+
+    /**
+     * Get the file the notes are saved to.
+     *
+     * @return The path given when the recorder was created.
+     */
+    public Path getPath() {
+        return this.path;
+    }
+
+    /**
+     * Set the format to save the notes in.
+     *
+     * @param format The format, which is {@link Format#MIDI} unless set otherwise.
+     */
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+
+    /**
+     * Record a note. The arguments must already be within their valid ranges.
+     *
+     * @param elapsedNanos The simulated time at which the note starts, as given by
+     *                     {@link VirtualClock#getElapsedNanos()}.
+     * @param pitch        The pitch in semitones, from 0 to 127.
+     * @param duration     The length of the note in milliseconds.
+     * @param instrument   The General MIDI instrument, from 0 to 127.
+     * @param volume       The velocity of the note, from 0 to 127.
+     */
+    public synchronized void recordNote(long elapsedNanos, int pitch, int duration, int instrument, int volume) {
+        this.notes.add(new Note(elapsedNanos / NANOS_PER_MILLI, pitch, duration, instrument, volume));
+    }
+
+    /**
+     * Get the notes recorded since the last reset.
+     *
+     * @return The notes in the order they were played, which cannot be modified.
+     */
+    public synchronized List<Note> getNotes() {
+        return Collections.unmodifiableList(new ArrayList<>(this.notes));
+    }
+
+    /**
+     * Forget the notes recorded. This is called by {@link Simulator#reset()}.
+     */
+    public synchronized void reset() {
+        this.notes.clear();
+    }
+
+    /**
+     * Save the notes recorded to the file, replacing it if it exists.
+     *
+     * @return The number of notes saved.
+     * @throws IOException Thrown if the file cannot be written.
+     */
+    public synchronized int save() throws IOException {
+        if (this.format == Format.TEXT) {
+            try (BufferedWriter writer = Files.newBufferedWriter(this.path)) {
+                writer.write("# time(ms) pitch duration(ms) instrument volume");
+                writer.newLine();
+                for (Note note : this.notes) {
+                    writer.write(note.time() + " " + note.pitch() + " " + note.duration() + " " + note.instrument() + " " + note.volume());
+                    writer.newLine();
+                }
+            }
+        }
+        else {
+            try {
+                MidiSystem.write(this.createSequence(), 0, this.path.toFile());
+            }
+            catch (InvalidMidiDataException exception) {
+                // Only valid messages are created, as arguments are checked by the syscalls
+                throw new IOException(exception);
+            }
+        }
+        return this.notes.size();
+    }
+
+    private Sequence createSequence() throws InvalidMidiDataException {
+        Sequence sequence = new Sequence(Sequence.PPQ, TICKS_PER_QUARTER_NOTE);
+        Track track = sequence.createTrack();
+        byte[] tempo = {
+            (byte) (MICROSECONDS_PER_QUARTER_NOTE >> 16),
+            (byte) (MICROSECONDS_PER_QUARTER_NOTE >> 8),
+            (byte) MICROSECONDS_PER_QUARTER_NOTE,
+        };
+        track.add(new MidiEvent(new MetaMessage(TEMPO_META_TYPE, tempo, tempo.length), 0));
+        // Like the synthesizer, every note is played on one channel, which changes instrument when a note needs it to
+        int instrument = -1;
+        for (Note note : this.notes) {
+            if (note.instrument() != instrument) {
+                instrument = note.instrument();
+                track.add(new MidiEvent(new ShortMessage(ShortMessage.PROGRAM_CHANGE, CHANNEL, instrument, 0), note.time()));
+            }
+            // Events at the same tick stay in the order they are added, so an earlier note ends before a new one starts
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, CHANNEL, note.pitch(), note.volume()), note.time()));
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, CHANNEL, note.pitch(), 0), note.time() + note.duration()));
+        }
+        return sequence;
+    }
+}
@@ -0,0 +1,181 @@
+package mars.simulator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compares the standard output of a program against the output it is expected to produce, as the output is
+ * produced, so that a program which has gone wrong can be stopped at the first incorrect byte rather than being left
+ * to run to its step limit. Output past the end of the expected output also counts as a mismatch.
+ * <p>
+ * Installed with {@link SystemIO#setOutputComparator(OutputComparator)}, which compares everything written to
+ * standard output by both the print syscalls and file descriptor 1.
+ */
+public class OutputComparator {
+    // Number of bytes of context shown on either side of a mismatch
+    private static final int CONTEXT_LENGTH = 24;
+
+    private final byte[] expected;
+    private Runnable mismatchHandler;
+    private long position;
+    private boolean mismatched;
+    private byte[] actualContext;
+
+    /**
+     * Create a comparator for the given expected output.
+     *
+     * @param expected The complete output the program should produce, which is used directly rather than copied.
+     */
+    public OutputComparator(byte[] expected) {
+        this.expected = expected;
+        this.mismatchHandler = null;
+        this.reset();
+    }
+
+    /**
+     * Set the action to take when the first mismatch is found, such as stopping the simulator.
+     * It is called on the thread which wrote the output.
+     *
+     * @param mismatchHandler The action to take, or <code>null</code> to take none.
+     */
+    public void setMismatchHandler(Runnable mismatchHandler) {
+        this.mismatchHandler = mismatchHandler;
+    }
+
+    /**
+     * Start comparing from the beginning of the expected output again. This is called by
+     * {@link SystemIO#resetFiles()}.
+     */
+    public void reset() {
+        this.position = 0;
+        this.mismatched = false;
+        this.actualContext = null;
+    }
+
+    /**
+     * Compare the next bytes of output. Once a mismatch has been found, further output is ignored.
+     *
+     * @param data   The array containing the output.
+     * @param offset The index of the first byte of output.
+     * @param count  The number of bytes of output.
+     * @return <code>true</code> if all output so far matches, or <code>false</code> if a mismatch has been found.
+     */
+    public boolean compare(byte[] data, int offset, int count) {
+        if (this.mismatched) {
+            return false;
+        }
+        int available = (int) Math.min(count, this.expected.length - this.position);
+        int mismatch = Arrays.mismatch(data, offset, offset + available, this.expected, (int) this.position, (int) this.position + available);
+        if (mismatch < 0) {
+            if (available == count) {
+                this.position += count;
+                return true;
+            }
+            // Everything expected has been produced, and then more
+            mismatch = available;
+        }
+        this.position += mismatch;
+        this.mismatched = true;
+        this.actualContext = Arrays.copyOfRange(data, offset + mismatch, offset + Math.min(count, mismatch + CONTEXT_LENGTH));
+        if (this.mismatchHandler != null) {
+            this.mismatchHandler.run();
+        }
+        return false;
+    }
+
+    /**
+     * Determine whether a mismatch has been found.
+     *
+     * @return <code>true</code> if the output has differed from the expected output.
+     */
+    public boolean isMismatched() {
+        return this.mismatched;
+    }
+
+    /**
+     * Determine whether the output so far is exactly the expected output.
+     *
+     * @return <code>true</code> if there has been no mismatch and all of the expected output has been produced.
+     */
+    public boolean isComplete() {
+        return !this.mismatched && this.position == this.expected.length;
+    }
+
+    /**
+     * Get the offset of the first mismatched byte, or the amount of output which matched if there is no mismatch.
+     *
+     * @return The number of bytes of output which matched.
+     */
+    public long getPosition() {
+        return this.position;
+    }
+
+    /**
+     * Get the expected output.
+     *
+     * @return The array given when the comparator was created, which must not be modified.
+     */
+    public byte[] getExpectedOutput() {
+        return this.expected;
+    }
+
+    /**
+     * Get the length of the expected output.
+     *
+     * @return The expected number of bytes of output.
+     */
+    public int getExpectedLength() {
+        return this.expected.length;
+    }
+
+    /**
+     * Describe the first mismatch, or how much output is missing if there was no mismatch, as several lines of text
+     * showing the expected and actual output around the position. Nonprinting characters are shown as escapes.
+     *
+     * @return The description, or <code>null</code> if the output is complete.
+     */
+    public String describeMismatch() {
+        if (this.isComplete()) {
+            return null;
+        }
+        int position = (int) this.position;
+        int start = Math.max(0, position - CONTEXT_LENGTH);
+        // Output before the position matched, so it is taken from the expected output
+        String before = "\"" + escape(this.expected, start, position) + "\"";
+        String expectedAfter = (position < this.expected.length)
+            ? "\"" + escape(this.expected, position, Math.min(this.expected.length, position + CONTEXT_LENGTH)) + "\""
+            : "<end of output>";
+        String actualAfter = (this.actualContext != null)
+            ? "\"" + escape(this.actualContext, 0, this.actualContext.length) + "\""
+            : "<end of output>";
+        String heading = this.mismatched
+            ? "Output differs from expected output at byte " + position
+            : "Output ended at byte " + position + " of " + this.expected.length + " expected";
+        return heading + ":\n"
+            + "  preceded by: " + before + "\n"
+            + "  expected:    " + expectedAfter + "\n"
+            + "  actual:      " + actualAfter;
+    }
+
+    private static String escape(byte[] data, int start, int end) {
+        StringBuilder builder = new StringBuilder();
+        for (char character : new String(data, start, end - start, StandardCharsets.ISO_8859_1).toCharArray()) {
+            switch (character) {
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                case '\\' -> builder.append("\\\\");
+                case '"' -> builder.append("\\\"");
+                default -> {
+                    if (character < 0x20 || character >= 0x7F) {
+                        builder.append(String.format("\\x%02x", (int) character));
+                    }
+                    else {
+                        builder.append(character);
+                    }
+                }
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,308 @@
+package mars.simulator;
+
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.MemoryConfigurations;
+
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits on the resources a program may use, in addition to the step limit given when it is run. When a limit is
+ * exceeded, the program is terminated with the corresponding {@link SimulatorFinishEvent.Reason}:
+ * <ul>
+ * <li>Wall-clock time spent running, which is enforced by a timer that stops the simulator the same way the Stop
+ *     action does, so it costs nothing per instruction.
+ * <li>Bytes written to standard output, standard error, and files, checked by {@link SystemIO} whenever the program
+ *     writes. Output to the GUI console is not counted.
+ * <li>Growth of the heap through the <code>sbrk</code> and <code>mmap</code> syscalls.
+ * <li>Files open at once, checked when the program opens a file.
+ * </ul>
+ * Every limit is initially unlimited.
+ */
+public class ResourceBudget {
+    /**
+     * Value of a limit which is never exceeded.
+     */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    private static ScheduledExecutorService timer = null;
+
+    private final Simulator simulator;
+    private long timeLimit;
+    private long outputLimit;
+    private long heapLimit;
+    private long openFileLimit;
+
+    private long elapsedMillis;
+    private long runStartNanos;
+    private ScheduledFuture<?> timeout;
+    // Whether the program is running, so a timeout which fires just as it stops is ignored
+    private boolean running;
+    private SimulatorFinishEvent.Reason exceededReason;
+
+    /**
+     * Create the resource budget for a simulator, with no limits.
+     *
+     * @param simulator The simulator to terminate when a limit is exceeded.
+     */
+    public ResourceBudget(Simulator simulator) {
+        this.simulator = simulator;
+        this.timeLimit = UNLIMITED;
+        this.outputLimit = UNLIMITED;
+        this.heapLimit = UNLIMITED;
+        this.openFileLimit = UNLIMITED;
+        this.timeout = null;
+        this.running = false;
+        this.reset();
+    }
+
+    /**
+     * Apply limits given as a comma-separated list. Valid items are:
+     * <ul>
+     * <li><code>time=&lt;ms&gt;</code> -- the wall-clock time the program may run for, in milliseconds.
+     * <li><code>output=&lt;bytes&gt;</code> -- the total number of bytes the program may write.
+     * <li><code>heap=&lt;bytes&gt;</code> -- the number of bytes the heap may grow by.
+     * <li><code>files=&lt;n&gt;</code> -- the number of files the program may have open at once, not counting the
+     *     standard streams.
+     * </ul>
+     *
+     * @param options The limits to apply.
+     * @throws IllegalArgumentException Thrown if an item is unrecognized or its value is invalid.
+     */
+    public void configure(String options) {
+        for (String option : options.split(",")) {
+            option = option.strip();
+            if (option.isEmpty()) {
+                continue;
+            }
+            int separator = option.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("expected <key>=<value>: " + option);
+            }
+            String key = option.substring(0, separator).strip().toLowerCase(Locale.ROOT);
+            long value;
+            try {
+                value = Long.parseLong(option.substring(separator + 1).strip());
+            }
+            catch (NumberFormatException exception) {
+                throw new IllegalArgumentException("invalid number: " + option);
+            }
+            if (value < 0) {
+                throw new IllegalArgumentException("negative limit: " + option);
+            }
+            switch (key) {
+                case "time" -> this.timeLimit = value;
+                case "output" -> this.outputLimit = value;
+                case "heap" -> this.heapLimit = value;
+                case "files" -> this.openFileLimit = value;
+                default -> throw new IllegalArgumentException("unrecognized option: " + option);
+            }
+        }
+    }
+
+    /**
+     * Get the wall-clock time the program may spend running, in milliseconds.
+     *
+     * @return The limit, or {@link #UNLIMITED}.
+     */
+    public long getTimeLimit() {
+        return this.timeLimit;
+    }
+
+    /**
+     * Set the wall-clock time the program may spend running. Time spent paused is not counted.
+     *
+     * @param timeLimit The limit in milliseconds, or {@link #UNLIMITED}.
+     */
+    public void setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * Get the total number of bytes the program may write.
+     *
+     * @return The limit, or {@link #UNLIMITED}.
+     */
+    public long getOutputLimit() {
+        return this.outputLimit;
+    }
+
+    /**
+     * Set the total number of bytes the program may write to standard output, standard error, and files.
+     *
+     * @param outputLimit The limit in bytes, or {@link #UNLIMITED}.
+     */
+    public void setOutputLimit(long outputLimit) {
+        this.outputLimit = outputLimit;
+    }
+
+    /**
+     * Get the number of bytes the heap may grow by.
+     *
+     * @return The limit, or {@link #UNLIMITED}.
+     */
+    public long getHeapLimit() {
+        return this.heapLimit;
+    }
+
+    /**
+     * Set the number of bytes the heap may grow by.
+     *
+     * @param heapLimit The limit in bytes, or {@link #UNLIMITED}.
+     */
+    public void setHeapLimit(long heapLimit) {
+        this.heapLimit = heapLimit;
+    }
+
+    /**
+     * Get the number of files the program may have open at once.
+     *
+     * @return The limit, or {@link #UNLIMITED}.
+     */
+    public long getOpenFileLimit() {
+        return this.openFileLimit;
+    }
+
+    /**
+     * Set the number of files the program may have open at once, not counting the standard streams.
+     *
+     * @param openFileLimit The limit, or {@link #UNLIMITED}.
+     */
+    public void setOpenFileLimit(long openFileLimit) {
+        this.openFileLimit = openFileLimit;
+    }
+
+    /**
+     * Get the limit which terminated the program, if any.
+     *
+     * @return The reason the program was terminated, or <code>null</code> if no limit has been exceeded since the
+     *         last reset.
+     */
+    public SimulatorFinishEvent.Reason getExceededReason() {
+        return this.exceededReason;
+    }
+
+    /**
+     * Describe the limit which terminated the program, if any.
+     *
+     * @return A description such as "output limit of 1024 bytes exceeded", or <code>null</code> if no limit has
+     *         been exceeded since the last reset.
+     */
+    public String describeExceeded() {
+        if (this.exceededReason == null) {
+            return null;
+        }
+        return switch (this.exceededReason) {
+            case TIME_LIMIT_EXCEEDED -> "time limit of " + this.timeLimit + " ms exceeded";
+            case OUTPUT_LIMIT_EXCEEDED -> "output limit of " + this.outputLimit + " bytes exceeded";
+            case HEAP_LIMIT_EXCEEDED -> "heap limit of " + this.heapLimit + " bytes exceeded";
+            case OPEN_FILE_LIMIT_EXCEEDED -> "limit of " + this.openFileLimit + " open files exceeded";
+            default -> this.exceededReason.toString();
+        };
+    }
+
+    /**
+     * Forget any limit exceeded and the time spent running. This is called by {@link Simulator#reset()}.
+     */
+    public void reset() {
+        this.elapsedMillis = 0;
+        this.exceededReason = null;
+    }
+
+    /**
+     * Check whether writing more bytes would exceed the output limit, and terminate the program if so.
+     *
+     * @param totalBytes The total number of bytes the program will have written, including those about to be.
+     * @return <code>true</code> if the bytes may be written, or <code>false</code> if the limit has been exceeded.
+     */
+    public boolean checkOutput(long totalBytes) {
+        if (totalBytes > this.outputLimit) {
+            this.exceed(SimulatorFinishEvent.Reason.OUTPUT_LIMIT_EXCEEDED);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check whether the heap has grown past the heap limit, and terminate the program if so.
+     * This is called after the heap grows.
+     *
+     * @return <code>true</code> if the heap is within the limit, or <code>false</code> if the limit has been exceeded.
+     */
+    public boolean checkHeap() {
+        if (this.heapLimit == UNLIMITED) {
+            return true;
+        }
+        Memory memory = Memory.getInstance();
+        long growth = Integer.toUnsignedLong(memory.getNextHeapAddress()) - Integer.toUnsignedLong(memory.getAddress(MemoryConfigurations.DYNAMIC_LOW));
+        if (growth > this.heapLimit) {
+            this.exceed(SimulatorFinishEvent.Reason.HEAP_LIMIT_EXCEEDED);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check whether opening another file would exceed the open file limit, and terminate the program if so.
+     *
+     * @param openFileCount The number of files currently open, not counting the standard streams.
+     * @return <code>true</code> if another file may be opened, or <code>false</code> if the limit has been exceeded.
+     */
+    public boolean checkOpenFiles(int openFileCount) {
+        if (openFileCount >= this.openFileLimit) {
+            this.exceed(SimulatorFinishEvent.Reason.OPEN_FILE_LIMIT_EXCEEDED);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Called on the simulator thread when the program starts or resumes running, to start the wall-clock timer.
+     */
+    synchronized void simulationStarting() {
+        this.running = true;
+        if (this.timeLimit == UNLIMITED) {
+            return;
+        }
+        this.runStartNanos = System.nanoTime();
+        long remaining = Math.max(0, this.timeLimit - this.elapsedMillis);
+        this.timeout = getTimer().schedule(() -> this.exceed(SimulatorFinishEvent.Reason.TIME_LIMIT_EXCEEDED), remaining, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Called on the simulator thread when the program stops running for any reason, to stop the wall-clock timer.
+     * This is called before the pause or finish event is dispatched, and may be called more than once.
+     */
+    synchronized void simulationStopped() {
+        this.running = false;
+        if (this.timeout != null) {
+            this.timeout.cancel(false);
+            this.timeout = null;
+            this.elapsedMillis += (System.nanoTime() - this.runStartNanos) / 1_000_000;
+        }
+    }
+
+    private synchronized void exceed(SimulatorFinishEvent.Reason reason) {
+        // Only the first limit exceeded is reported, even if the program does more before it stops, and a timeout
+        // which fires after the program stopped on its own is ignored
+        if (this.exceededReason == null && this.running) {
+            this.exceededReason = reason;
+            this.simulator.terminate(reason);
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            // A daemon thread, so a pending timeout never keeps MARS from exiting
+            timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "MARS time limit");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return timer;
+    }
+}
@@ -0,0 +1,456 @@
+package mars.simulator;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cache of the results of running programs, kept as one file per result in a directory on the local disk so that
+ * running the same program with the same input again can skip the simulation. Results are addressed by a key
+ * computed with a {@link KeyBuilder} from everything which determines the result: the assembled program, the initial
+ * contents of memory and registers, the settings which affect execution, and the input.
+ * <p>
+ * Entries which have not been used for longer than the age limit are removed whenever a result is stored, followed by
+ * the least recently used entries until the total size is within the size limit. Several processes may share the
+ * same directory, since entries are written to a temporary file and then renamed into place.
+ */
+public class ResultCache {
+    /**
+     * Default limit on the total size of the entries, 256 MiB.
+     */
+    public static final long DEFAULT_SIZE_LIMIT = 256L << 20;
+    /**
+     * Default number of days an entry is kept after it was last used.
+     */
+    public static final long DEFAULT_AGE_LIMIT_DAYS = 7;
+
+    private static final int FILE_HEADER = 0x4D524331; // "MRC1"
+    private static final String ENTRY_SUFFIX = ".result";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /**
+     * The result of running a program.
+     *
+     * @param reason           Why the simulator stopped, or <code>null</code> if it did not report a reason.
+     * @param instructionCount The number of instructions executed.
+     * @param exitCode         The exit code MARS returned.
+     * @param standardOutput   Everything written to standard output while the program ran.
+     * @param standardError    Everything written to standard error while the program ran.
+     */
+    public record Result(SimulatorFinishEvent.Reason reason, long instructionCount, int exitCode, byte[] standardOutput, byte[] standardError) {}
+
+    /**
+     * Builder of a cache key from a sequence of values. Each value is hashed along with its length where the length
+     * can vary, so different sequences of values cannot produce the same key by running together.
+     */
+    public static class KeyBuilder {
+        private final MessageDigest digest;
+        private ByteBuffer scratch;
+
+        /**
+         * Create a builder which has not been given any values.
+         */
+        public KeyBuilder() {
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            }
+            catch (NoSuchAlgorithmException exception) {
+                // Every Java platform is required to support SHA-256
+                throw new IllegalStateException(exception);
+            }
+            this.scratch = ByteBuffer.allocate(Long.BYTES);
+        }
+
+        /**
+         * Add an integer to the key.
+         *
+         * @param value The value to add.
+         * @return This builder, for chaining.
+         */
+        public KeyBuilder add(int value) {
+            this.digest.update(this.scratch.clear().putInt(value).flip());
+            return this;
+        }
+
+        /**
+         * Add a long integer to the key.
+         *
+         * @param value The value to add.
+         * @return This builder, for chaining.
+         */
+        public KeyBuilder add(long value) {
+            this.digest.update(this.scratch.clear().putLong(value).flip());
+            return this;
+        }
+
+        /**
+         * Add a boolean to the key.
+         *
+         * @param value The value to add.
+         * @return This builder, for chaining.
+         */
+        public KeyBuilder add(boolean value) {
+            this.digest.update((byte) (value ? 1 : 0));
+            return this;
+        }
+
+        /**
+         * Add an array of bytes to the key.
+         *
+         * @param value The bytes to add, which may be <code>null</code>.
+         * @return This builder, for chaining.
+         */
+        public KeyBuilder add(byte[] value) {
+            if (value == null) {
+                return this.add(-1);
+            }
+            this.add(value.length);
+            this.digest.update(value);
+            return this;
+        }
+
+        /**
+         * Add a string to the key.
+         *
+         * @param value The string to add, which may be <code>null</code>.
+         * @return This builder, for chaining.
+         */
+        public KeyBuilder add(String value) {
+            return this.add((value == null) ? null : value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Add an array of words, such as a page of memory, to the key.
+         *
+         * @param words The words to add.
+         * @return This builder, for chaining.
+         */
+        public KeyBuilder add(int[] words) {
+            this.add(words.length);
+            if (this.scratch.capacity() < words.length * Integer.BYTES) {
+                this.scratch = ByteBuffer.allocate(words.length * Integer.BYTES);
+            }
+            this.scratch.clear().asIntBuffer().put(words);
+            this.digest.update(this.scratch.limit(words.length * Integer.BYTES));
+            return this;
+        }
+
+        /**
+         * Finish the key. The builder must not be used afterward.
+         *
+         * @return The key, as a string of hexadecimal digits which can be used as a file name.
+         */
+        public String build() {
+            return HexFormat.of().formatHex(this.digest.digest());
+        }
+    }
+
+    /**
+     * Redirection of {@link System#out} and {@link System#err} which keeps a copy of everything written to them,
+     * while still passing it on, so that the output of a run can be stored as its result.
+     */
+    public static class OutputCapture {
+        private final PrintStream originalOutput;
+        private final PrintStream originalError;
+        private final ByteArrayOutputStream standardOutput;
+        private final ByteArrayOutputStream standardError;
+
+        /**
+         * Begin capturing by replacing {@link System#out} and {@link System#err}. Output through references to the
+         * original streams taken beforehand is not captured, so {@link SystemIO#resetFiles()} must be called
+         * afterward for the program's output to be captured.
+         */
+        public OutputCapture() {
+            this.originalOutput = System.out;
+            this.originalError = System.err;
+            this.standardOutput = new ByteArrayOutputStream();
+            this.standardError = new ByteArrayOutputStream();
+            System.setOut(copyingStream(this.originalOutput, this.standardOutput));
+            System.setErr(copyingStream(this.originalError, this.standardError));
+        }
+
+        /**
+         * Stop capturing by restoring the original {@link System#out} and {@link System#err}.
+         */
+        public void stop() {
+            System.out.flush();
+            System.err.flush();
+            System.setOut(this.originalOutput);
+            System.setErr(this.originalError);
+        }
+
+        /**
+         * Get everything written to standard output while capturing.
+         *
+         * @return A copy of the output.
+         */
+        public byte[] getStandardOutput() {
+            return this.standardOutput.toByteArray();
+        }
+
+        /**
+         * Get everything written to standard error while capturing.
+         *
+         * @return A copy of the output.
+         */
+        public byte[] getStandardError() {
+            return this.standardError.toByteArray();
+        }
+
+        private static PrintStream copyingStream(PrintStream target, ByteArrayOutputStream copy) {
+            return new PrintStream(new OutputStream() {
+                @Override
+                public void write(int value) {
+                    target.write(value);
+                    copy.write(value);
+                }
+
+                @Override
+                public void write(byte[] data, int offset, int length) {
+                    target.write(data, offset, length);
+                    copy.write(data, offset, length);
+                }
+
+                @Override
+                public void flush() {
+                    target.flush();
+                }
+            }, true);
+        }
+    }
+
+    private final Path directory;
+    private long sizeLimit;
+    private long ageLimitMillis;
+
+    /**
+     * Create a cache which keeps its entries in the given directory, with the default limits.
+     * The directory is created when the first result is stored.
+     *
+     * @param directory The directory holding the entries.
+     */
+    public ResultCache(Path directory) {
+        this.directory = directory;
+        this.sizeLimit = DEFAULT_SIZE_LIMIT;
+        this.ageLimitMillis = TimeUnit.DAYS.toMillis(DEFAULT_AGE_LIMIT_DAYS);
+    }
+
+    /**
+     * Apply options given as a comma-separated list. Valid items are:
+     * <ul>
+     * <li><code>size=&lt;bytes&gt;</code> -- the total size the entries may take up.
+     * <li><code>age=&lt;days&gt;</code> -- the number of days an entry is kept after it was last used.
+     * </ul>
+     *
+     * @param options The options to apply.
+     * @throws IllegalArgumentException Thrown if an item is unrecognized or its value is invalid.
+     */
+    public void configure(String options) {
+        for (String option : options.split(",")) {
+            option = option.strip();
+            if (option.isEmpty()) {
+                continue;
+            }
+            int separator = option.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("expected <key>=<value>: " + option);
+            }
+            String key = option.substring(0, separator).strip().toLowerCase(Locale.ROOT);
+            long value;
+            try {
+                value = Long.parseLong(option.substring(separator + 1).strip());
+            }
+            catch (NumberFormatException exception) {
+                throw new IllegalArgumentException("invalid number: " + option);
+            }
+            if (value < 0) {
+                throw new IllegalArgumentException("negative limit: " + option);
+            }
+            switch (key) {
+                case "size" -> this.setSizeLimit(value);
+                case "age" -> this.setAgeLimit(value, TimeUnit.DAYS);
+                default -> throw new IllegalArgumentException("unrecognized option: " + option);
+            }
+        }
+    }
+
+    /**
+     * Get the directory holding the entries.
+     *
+     * @return The directory given when the cache was created.
+     */
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Set the total size the entries may take up.
+     *
+     * @param sizeLimit The limit in bytes.
+     */
+    public void setSizeLimit(long sizeLimit) {
+        this.sizeLimit = sizeLimit;
+    }
+
+    /**
+     * Set how long an entry is kept after it was last used.
+     *
+     * @param ageLimit The length of time.
+     * @param unit     The unit of <code>ageLimit</code>.
+     */
+    public void setAgeLimit(long ageLimit, TimeUnit unit) {
+        this.ageLimitMillis = unit.toMillis(ageLimit);
+    }
+
+    /**
+     * Look up the result stored for a key, and mark the entry as used.
+     *
+     * @param key The key built for the run.
+     * @return The result, or <code>null</code> if there is no entry for the key or it cannot be read.
+     */
+    public Result lookup(String key) {
+        Path entry = this.directory.resolve(key + ENTRY_SUFFIX);
+        Result result;
+        try (SeekableByteChannel channel = Files.newByteChannel(entry)) {
+            long entrySize = channel.size();
+            DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            if (input.readInt() != FILE_HEADER) {
+                return null;
+            }
+            String reasonName = input.readUTF();
+            SimulatorFinishEvent.Reason reason = reasonName.isEmpty() ? null : SimulatorFinishEvent.Reason.valueOf(reasonName);
+            long instructionCount = input.readLong();
+            int exitCode = input.readInt();
+            byte[] standardOutput = readBytes(input, entrySize);
+            byte[] standardError = readBytes(input, entrySize);
+            result = new Result(reason, instructionCount, exitCode, standardOutput, standardError);
+        }
+        catch (IOException | IllegalArgumentException exception) {
+            // Missing, truncated, and unrecognized entries are all misses
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        catch (IOException exception) {
+            // The entry may have just been evicted by another process, which does not affect the result
+        }
+        return result;
+    }
+
+    /**
+     * Read a byte array preceded by its length, checking the length first so that a corrupt entry cannot cause
+     * a huge allocation.
+     *
+     * @param input     The stream to read from.
+     * @param entrySize The size of the whole entry, which the array cannot be longer than.
+     * @return The bytes read.
+     * @throws IOException Thrown if the length is invalid or the entry ends before the bytes do.
+     */
+    private static byte[] readBytes(DataInputStream input, long entrySize) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > entrySize) {
+            throw new IOException("invalid length in result cache entry: " + length);
+        }
+        byte[] bytes = input.readNBytes(length);
+        if (bytes.length != length) {
+            throw new EOFException();
+        }
+        return bytes;
+    }
+
+    /**
+     * Store the result for a key, replacing any result already stored, then evict entries which are over the limits.
+     *
+     * @param key    The key built for the run.
+     * @param result The result of the run.
+     * @throws IOException Thrown if the entry cannot be written.
+     */
+    public void store(String key, Result result) throws IOException {
+        Files.createDirectories(this.directory);
+        Path temporary = Files.createTempFile(this.directory, key, TEMPORARY_SUFFIX);
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                output.writeInt(FILE_HEADER);
+                output.writeUTF((result.reason() == null) ? "" : result.reason().name());
+                output.writeLong(result.instructionCount());
+                output.writeInt(result.exitCode());
+                output.writeInt(result.standardOutput().length);
+                output.write(result.standardOutput());
+                output.writeInt(result.standardError().length);
+                output.write(result.standardError());
+            }
+            Path entry = this.directory.resolve(key + ENTRY_SUFFIX);
+            try {
+                Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException exception) {
+                Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temporary);
+        }
+        this.evict();
+    }
+
+    /**
+     * Remove entries which have not been used within the age limit, then the least recently used entries until the
+     * total size is within the size limit. Temporary files left behind by interrupted writes are removed once they
+     * are older than the age limit.
+     *
+     * @throws IOException Thrown if the directory cannot be listed.
+     */
+    public void evict() throws IOException {
+        record Entry(Path path, long lastUsed, long size) {}
+
+        long oldestKept = System.currentTimeMillis() - this.ageLimitMillis;
+        List<Entry> entries = new ArrayList<>();
+        try (Stream<Path> files = Files.list(this.directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                boolean temporary = name.endsWith(TEMPORARY_SUFFIX);
+                if (!temporary && !name.endsWith(ENTRY_SUFFIX)) {
+                    continue;
+                }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                }
+                catch (IOException exception) {
+                    // Removed by another process in the meantime
+                    continue;
+                }
+                long lastUsed = attributes.lastModifiedTime().toMillis();
+                if (lastUsed < oldestKept) {
+                    Files.deleteIfExists(file);
+                }
+                else if (!temporary) {
+                    entries.add(new Entry(file, lastUsed, attributes.size()));
+                }
+            }
+        }
+        entries.sort(Comparator.comparingLong(Entry::lastUsed).reversed());
+        long totalSize = 0;
+        for (Entry entry : entries) {
+            totalSize += entry.size();
+            if (totalSize > this.sizeLimit) {
+                Files.deleteIfExists(entry.path());
+            }
+        }
+    }
+}
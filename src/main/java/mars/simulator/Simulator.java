@@ -4,10 +4,17 @@ import mars.*;
 import mars.mips.hardware.Coprocessor0;
 import mars.mips.hardware.Coprocessor1;
 import mars.mips.hardware.RegisterFile;
+import mars.mips.hardware.ReservationTable;
+import mars.simulator.profile.CallGraphProfiler;
+import mars.simulator.profile.ExecutionProfiler;
 
 import javax.swing.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /*
 Copyright (c) 2003-2010,  Pete Sanderson and Kenneth Vollmar
@@ -47,7 +54,23 @@ public class Simulator {
 
     private final List<SimulatorListener> guiListeners;
     private final List<SimulatorListener> threadListeners;
+    /**
+     * Copy-on-write array, so the simulator thread can iterate without locking.
+     */
+    private volatile ExecutionListener[] executionListeners;
     private final SystemIO systemIO;
+    private final InputLog inputLog;
+    private final TimeTravel timeTravel;
+    private final VirtualClock virtualClock;
+    private final ResourceBudget resourceBudget;
+    private long instructionCount;
+    /**
+     * Conditions attached to breakpoints, keyed by instruction address.
+     */
+    private final Map<Integer, BreakpointCondition> breakpointConditions;
+    private ExecutionProfiler profiler;
+    private CallGraphProfiler callGraphProfiler;
+    private MidiRecorder midiRecorder;
     private Integer delayedJumpAddress;
     /**
      * Others can set this to indicate an external interrupt.
@@ -56,9 +79,25 @@ public class Simulator {
      */
     private volatile Integer externalInterruptDevice;
 
-    private SimulatorThread thread;
+    private volatile SimulatorThread thread;
+    private volatile Thread travelThread;
     private boolean hasQueuedStepEvent;
 
+    /**
+     * Number of bytes of stack space separating the initial stack pointers of consecutive harts.
+     */
+    public static final int HART_STACK_BYTES = 64 * 1024;
+
+    private int hartCount;
+    private int hartQuantum;
+    /**
+     * Saved state of every hart, or null if harts have not been set up since the last reset.
+     */
+    private Hart[] harts;
+    private int currentHartIndex;
+    // Number of instructions the current hart has been scheduled for since it was switched to
+    private int hartQuantumUsed;
+
     /**
      * Returns the singleton instance of the MIPS simulator.
      *
@@ -74,11 +113,26 @@ public class Simulator {
     private Simulator() {
         this.guiListeners = new ArrayList<>();
         this.threadListeners = new ArrayList<>();
+        this.executionListeners = new ExecutionListener[0];
         this.systemIO = new SystemIO();
+        this.inputLog = new InputLog();
+        this.timeTravel = new TimeTravel(this, this.inputLog);
+        this.virtualClock = new VirtualClock();
+        this.resourceBudget = new ResourceBudget(this);
+        this.instructionCount = 0;
+        this.breakpointConditions = new ConcurrentHashMap<>();
+        this.profiler = null;
+        this.callGraphProfiler = null;
+        this.midiRecorder = null;
         this.delayedJumpAddress = null;
         this.externalInterruptDevice = null;
         this.thread = null;
         this.hasQueuedStepEvent = false;
+        this.hartCount = 1;
+        this.hartQuantum = 1;
+        this.harts = null;
+        this.currentHartIndex = 0;
+        this.hartQuantumUsed = 0;
     }
 
     /**
@@ -90,13 +144,345 @@ public class Simulator {
         return this.systemIO;
     }
 
+    /**
+     * Obtain the log of non-deterministic values received by the program, which syscalls consult so that
+     * execution can be repeated exactly.
+     *
+     * @return The input log.
+     */
+    public InputLog getInputLog() {
+        return this.inputLog;
+    }
+
+    /**
+     * Obtain the controller used to move execution backward through snapshots and re-execution.
+     *
+     * @return The time travel controller.
+     */
+    public TimeTravel getTimeTravel() {
+        return this.timeTravel;
+    }
+
+    /**
+     * Obtain the simulated clock which the time and sleep syscalls use in place of the host clock when enabled.
+     *
+     * @return The virtual clock.
+     */
+    public VirtualClock getVirtualClock() {
+        return this.virtualClock;
+    }
+
+    /**
+     * Obtain the limits on the wall-clock time, output, heap, and open files the program may use.
+     *
+     * @return The resource budget.
+     */
+    public ResourceBudget getResourceBudget() {
+        return this.resourceBudget;
+    }
+
+    /**
+     * Get the number of instructions executed since the program was last reset. Instructions re-executed by
+     * {@link TimeTravel} are not counted again.
+     *
+     * @return The number of instructions executed.
+     */
+    public long getInstructionCount() {
+        return this.instructionCount;
+    }
+
+    /**
+     * Called on the simulator thread, while holding {@link Application#MEMORY_AND_REGISTERS_LOCK},
+     * once an instruction has completed for the first time.
+     */
+    void instructionCompleted() {
+        this.instructionCount++;
+    }
+
+    /**
+     * Get the profiler which counts every instruction executed, if any.
+     *
+     * @return The profiler, or <code>null</code> if profiling is disabled.
+     */
+    public ExecutionProfiler getProfiler() {
+        return this.profiler;
+    }
+
+    /**
+     * Set the profiler which counts every instruction executed. Unlike an {@link ExecutionListener}, the profiler
+     * is called directly by the simulator thread without decoding the instruction. Takes effect the next time the
+     * simulator runs, and instructions re-executed by {@link TimeTravel} are not counted again.
+     *
+     * @param profiler The profiler, or <code>null</code> to disable profiling.
+     */
+    public void setProfiler(ExecutionProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Get the profiler which tracks function calls and returns, if any.
+     *
+     * @return The call graph profiler, or <code>null</code> if call graph profiling is disabled.
+     */
+    public CallGraphProfiler getCallGraphProfiler() {
+        return this.callGraphProfiler;
+    }
+
+    /**
+     * Set the profiler which tracks function calls and returns. Like the {@link #setProfiler(ExecutionProfiler)
+     * execution profiler}, it is called directly by the simulator thread, takes effect the next time the simulator
+     * runs, and does not see instructions re-executed by {@link TimeTravel}. Its counts are discarded whenever the
+     * simulator is {@link #reset() reset}.
+     *
+     * @param callGraphProfiler The call graph profiler, or <code>null</code> to disable call graph profiling.
+     */
+    public void setCallGraphProfiler(CallGraphProfiler callGraphProfiler) {
+        this.callGraphProfiler = callGraphProfiler;
+    }
+
+    /**
+     * Get the recorder which the MIDI syscalls give notes to instead of playing them, if any.
+     *
+     * @return The recorder, or <code>null</code> if notes are played.
+     */
+    public MidiRecorder getMidiRecorder() {
+        return this.midiRecorder;
+    }
+
+    /**
+     * Set the recorder which the MIDI syscalls give notes to instead of playing them. Its notes are discarded
+     * whenever the simulator is {@link #reset() reset}.
+     *
+     * @param midiRecorder The recorder, or <code>null</code> to play notes.
+     */
+    public void setMidiRecorder(MidiRecorder midiRecorder) {
+        this.midiRecorder = midiRecorder;
+    }
+
+    /**
+     * Get the condition attached to the breakpoint at a given address, if any.
+     *
+     * @param address The address of the instruction.
+     * @return The condition, or <code>null</code> if the breakpoint there is unconditional.
+     */
+    public BreakpointCondition getBreakpointCondition(int address) {
+        return this.breakpointConditions.get(address);
+    }
+
+    /**
+     * Attach a condition to the breakpoint at a given address, so the simulator only pauses there when the
+     * condition holds. The condition has no effect unless the address is also passed as a breakpoint
+     * when the program is simulated.
+     *
+     * @param address   The address of the instruction.
+     * @param condition The condition, or <code>null</code> to make the breakpoint unconditional.
+     */
+    public void setBreakpointCondition(int address, BreakpointCondition condition) {
+        if (condition == null) {
+            this.breakpointConditions.remove(address);
+        }
+        else {
+            this.breakpointConditions.put(address, condition);
+        }
+    }
+
+    /**
+     * Remove all breakpoint conditions, making every breakpoint unconditional.
+     */
+    public void clearBreakpointConditions() {
+        this.breakpointConditions.clear();
+    }
+
+    /**
+     * Get the hit counts of all breakpoints with conditions, so that {@link TimeTravel} can save them.
+     *
+     * @return The hit count of each condition, keyed by the address of its breakpoint.
+     */
+    Map<Integer, Long> getBreakpointHitCounts() {
+        Map<Integer, Long> hitCounts = new HashMap<>();
+        this.breakpointConditions.forEach((address, condition) -> hitCounts.put(address, condition.getHitCount()));
+        return hitCounts;
+    }
+
+    /**
+     * Restore the hit counts saved by {@link #getBreakpointHitCounts()}. Conditions attached since then start
+     * over from zero.
+     *
+     * @param hitCounts The hit count of each condition, keyed by the address of its breakpoint.
+     */
+    void setBreakpointHitCounts(Map<Integer, Long> hitCounts) {
+        this.breakpointConditions.forEach((address, condition) -> condition.setHitCount(hitCounts.getOrDefault(address, 0L)));
+    }
+
+    /**
+     * Determine whether the simulator should stop at a breakpoint which has just been reached.
+     *
+     * @param address     The address of the breakpoint.
+     * @param countingHit Whether to count this as a hit of the breakpoint before evaluating its condition.
+     * @return <code>true</code> if the breakpoint is unconditional or its condition holds.
+     */
+    boolean isBreakpointTriggered(int address, boolean countingHit) {
+        BreakpointCondition condition = this.breakpointConditions.get(address);
+        if (condition == null) {
+            return true;
+        }
+        return countingHit ? condition.hit() : condition.isSatisfied();
+    }
+
     public void reset() {
         RegisterFile.reset();
         Coprocessor1.reset();
         Coprocessor0.reset();
         this.systemIO.resetFiles();
+        this.timeTravel.reset();
+        this.virtualClock.reset();
+        this.resourceBudget.reset();
+        this.instructionCount = 0;
+        this.breakpointConditions.values().forEach(BreakpointCondition::resetHitCount);
+        if (this.callGraphProfiler != null) {
+            // The shadow call stack no longer reflects the program once it starts over
+            this.callGraphProfiler.reset();
+        }
+        if (this.midiRecorder != null) {
+            this.midiRecorder.reset();
+        }
         this.delayedJumpAddress = null;
         this.externalInterruptDevice = null;
+        this.harts = null;
+        this.currentHartIndex = 0;
+        this.hartQuantumUsed = 0;
+    }
+
+    /**
+     * Get the number of harts (hardware threads) which will share memory during simulation.
+     *
+     * @return The number of harts, which is 1 unless set otherwise.
+     */
+    public int getHartCount() {
+        return this.hartCount;
+    }
+
+    /**
+     * Set the number of harts (hardware threads) which will share memory during simulation.
+     * Harts are interleaved deterministically in round-robin order on the simulator thread, each running
+     * {@link #getHartQuantum()} instructions before the next hart is scheduled.
+     * Takes effect the next time the simulator is reset.
+     * <p>
+     * All harts start at the same program counter with the same register contents, except that the stack pointer
+     * of hart <i>n</i> is lowered by <i>n</i> &times; {@link #HART_STACK_BYTES}. A program can obtain the index of
+     * the hart it is running on with the <code>HartId</code> syscall.
+     *
+     * @param hartCount The number of harts, from 1 to {@link ReservationTable#MAX_HARTS}.
+     * @throws IllegalArgumentException Thrown if the number of harts is out of range.
+     */
+    public void setHartCount(int hartCount) {
+        if (hartCount < 1 || hartCount > ReservationTable.MAX_HARTS) {
+            throw new IllegalArgumentException("number of harts must be between 1 and " + ReservationTable.MAX_HARTS);
+        }
+        this.hartCount = hartCount;
+    }
+
+    /**
+     * Get the number of instructions each hart executes before the next hart is scheduled.
+     *
+     * @return The scheduling quantum, in instructions.
+     */
+    public int getHartQuantum() {
+        return this.hartQuantum;
+    }
+
+    /**
+     * Set the number of instructions each hart executes before the next hart is scheduled.
+     *
+     * @param hartQuantum The scheduling quantum, in instructions. Must be positive.
+     * @throws IllegalArgumentException Thrown if the quantum is not positive.
+     */
+    public void setHartQuantum(int hartQuantum) {
+        if (hartQuantum < 1) {
+            throw new IllegalArgumentException("hart quantum must be positive");
+        }
+        this.hartQuantum = hartQuantum;
+    }
+
+    /**
+     * Get the index of the hart whose state is currently loaded into the register files.
+     *
+     * @return The current hart index, which is always 0 when only one hart is being simulated.
+     */
+    public int getCurrentHartIndex() {
+        return this.currentHartIndex;
+    }
+
+    /**
+     * Set up the saved state of every hart from the current register contents, if this has not been done
+     * since the last reset. Called by the simulator thread before execution begins.
+     */
+    void initializeHarts() {
+        if (this.hartCount <= 1 || this.harts != null) {
+            return;
+        }
+        this.harts = new Hart[this.hartCount];
+        int stackPointer = RegisterFile.getRegisters()[RegisterFile.STACK_POINTER].getValueNoNotify();
+        for (int index = 0; index < this.hartCount; index++) {
+            this.harts[index] = new Hart(index);
+            this.harts[index].save();
+            this.harts[index].setGeneralRegister(RegisterFile.STACK_POINTER, stackPointer - index * HART_STACK_BYTES);
+        }
+        this.currentHartIndex = 0;
+        this.hartQuantumUsed = 0;
+    }
+
+    /**
+     * Stop scheduling the current hart. If only one hart is being simulated, this has no effect.
+     */
+    public void haltCurrentHart() {
+        if (this.harts != null) {
+            this.harts[this.currentHartIndex].halt();
+        }
+    }
+
+    /**
+     * Called on the simulator thread before each instruction is fetched when multiple harts are being simulated.
+     * If the current hart has halted or used up its quantum, the next runnable hart is switched to in round-robin
+     * order. The quantum is counted here rather than by the simulator thread, so it carries over between runs
+     * and single steps.
+     *
+     * @return <code>true</code> if a runnable hart is loaded, or <code>false</code> if all harts have halted.
+     */
+    boolean scheduleHart() {
+        if (this.harts == null) {
+            return true;
+        }
+        if (this.harts[this.currentHartIndex].isHalted() || this.hartQuantumUsed >= this.hartQuantum) {
+            this.hartQuantumUsed = 0;
+            if (!this.switchToNextHart()) {
+                return false;
+            }
+        }
+        this.hartQuantumUsed++;
+        return true;
+    }
+
+    /**
+     * Save the state of the current hart and load the state of the next runnable hart in round-robin order,
+     * which may be the current hart itself if no others are runnable.
+     *
+     * @return <code>true</code> if a runnable hart was found, or <code>false</code> if all harts have halted.
+     */
+    private boolean switchToNextHart() {
+        if (this.harts == null) {
+            return true;
+        }
+        this.harts[this.currentHartIndex].save();
+        for (int offset = 1; offset <= this.harts.length; offset++) {
+            int index = (this.currentHartIndex + offset) % this.harts.length;
+            if (!this.harts[index].isHalted()) {
+                this.currentHartIndex = index;
+                this.harts[index].restore();
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -146,6 +532,15 @@ public class Simulator {
         this.delayedJumpAddress = null;
     }
 
+    /**
+     * Replace the delayed jump address when switching between harts.
+     *
+     * @param delayedJumpAddress The pending jump target of the incoming hart, or null if there is none.
+     */
+    void setDelayedJumpAddress(Integer delayedJumpAddress) {
+        this.delayedJumpAddress = delayedJumpAddress;
+    }
+
     /**
      * Get the identifier of the memory-mapped I/O device which flagged an external interrupt, if any.
      * Once this method is called, the external interrupt flag is reset.
@@ -210,6 +605,51 @@ public class Simulator {
         this.threadListeners.remove(listener);
     }
 
+    /**
+     * Add an {@link ExecutionListener} which will be notified of every instruction executed. Listeners added while
+     * the simulator is running take effect the next time the simulator is started.
+     *
+     * @param listener The listener to add.
+     */
+    public synchronized void addExecutionListener(ExecutionListener listener) {
+        if (!Arrays.asList(this.executionListeners).contains(listener)) {
+            ExecutionListener[] listeners = Arrays.copyOf(this.executionListeners, this.executionListeners.length + 1);
+            listeners[listeners.length - 1] = listener;
+            this.executionListeners = listeners;
+        }
+    }
+
+    /**
+     * Remove an {@link ExecutionListener} which was added via {@link #addExecutionListener(ExecutionListener)}.
+     *
+     * @param listener The listener to remove.
+     */
+    public synchronized void removeExecutionListener(ExecutionListener listener) {
+        this.executionListeners = Arrays.stream(this.executionListeners)
+            .filter(existing -> existing != listener)
+            .toArray(ExecutionListener[]::new);
+    }
+
+    /**
+     * Get the {@link ExecutionListener}s currently attached to the simulator.
+     * The returned array must not be modified.
+     *
+     * @return The attached execution listeners, possibly empty.
+     */
+    public ExecutionListener[] getExecutionListeners() {
+        return this.executionListeners;
+    }
+
+    /**
+     * Determine whether the simulator thread is currently executing the program.
+     *
+     * @return <code>true</code> if the program is running, or <code>false</code> otherwise.
+     */
+    public boolean isRunning() {
+        SimulatorThread thread = this.thread;
+        return thread != null && thread.isAlive();
+    }
+
     /**
      * Simulate execution of given MIPS program.  It must have already been assembled.
      *
@@ -220,8 +660,9 @@ public class Simulator {
      * @throws ProcessingException Throws exception if run-time exception occurs.
      */
     public void simulate(Program program, int programCounter, int maxSteps, int[] breakpoints) throws ProcessingException {
-        this.thread = new SimulatorThread(this, program, programCounter, maxSteps, breakpoints);
-        this.thread.start();
+        SimulatorThread thread = new SimulatorThread(this, program, programCounter, maxSteps, breakpoints);
+        this.thread = thread;
+        thread.start();
 
         if (Application.getGUI() == null) {
             // The simulator was run from the command line
@@ -231,14 +672,17 @@ public class Simulator {
             SimulatorListener exceptionListener = new SimulatorListener() {
                 @Override
                 public void simulatorFinished(SimulatorFinishEvent event) {
-                    exception[0] = event.getException();
+                    // Exit syscalls also carry an exception object, but they are not errors
+                    if (event.getReason() == SimulatorFinishEvent.Reason.EXCEPTION) {
+                        exception[0] = event.getException();
+                    }
                 }
             };
             this.addThreadListener(exceptionListener);
 
             try {
-                // Wait for the simulator thread to finish
-                this.thread.join();
+                // Wait for the simulator thread to finish (the field is cleared if it is paused in the meantime)
+                thread.join();
             }
             catch (InterruptedException interruptedException) {
                 // This should not happen, as the simulator thread should handle the interrupt
@@ -253,15 +697,68 @@ public class Simulator {
         }
     }
 
+    /**
+     * Re-execute instructions on behalf of {@link TimeTravel}, starting from the current program counter.
+     * No listeners are notified, and this blocks until the simulator thread stops.
+     *
+     * @param maxSteps    The number of instructions to execute.
+     * @param breakpoints Breakpoints to report to {@link TimeTravel#breakpointReached()} without stopping,
+     *                    sorted in ascending order, or <code>null</code> for none.
+     */
+    void reexecute(int maxSteps, int[] breakpoints) {
+        SimulatorThread thread = new SimulatorThread(this, Application.program, RegisterFile.getProgramCounter(), maxSteps, breakpoints, true);
+        thread.start();
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            }
+            catch (InterruptedException exception) {
+                // The state must be consistent before returning, so keep waiting and restore the interrupt afterward
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Move to another point in the history recorded by {@link TimeTravel} on a separate thread, so that the calling
+     * thread (usually the GUI's) is not blocked while instructions are re-executed. While this is in progress,
+     * {@link #pause()} and {@link #terminate()} stop it as soon as the current stretch of re-execution completes.
+     *
+     * @param travel   The operation which changes the state, such as {@link TimeTravel#goToInstruction(long)}.
+     * @param finished Called on the same thread once the operation has completed or been stopped.
+     */
+    public void travel(Runnable travel, Runnable finished) {
+        this.timeTravel.resetCancellation();
+        Thread traveler = new Thread(() -> {
+            try {
+                travel.run();
+            }
+            finally {
+                finished.run();
+                this.travelThread = null;
+            }
+        }, "Time travel");
+        this.travelThread = traveler;
+        traveler.start();
+    }
+
     /**
      * Flag the simulator to stop due to pausing. Once it has done so,
      * {@link SimulatorListener#simulatorPaused(SimulatorPauseEvent)} will be called for all registered listeners.
+     * If {@link #travel(Runnable, Runnable)} is in progress, it is stopped instead.
      */
     public void pause() {
         if (this.thread != null) {
             this.thread.stopForPause();
             this.thread = null;
         }
+        else if (this.travelThread != null) {
+            this.timeTravel.cancel();
+        }
     }
 
     /**
@@ -276,10 +773,42 @@ public class Simulator {
             this.thread = null;
         }
         else {
+            Thread traveler = this.travelThread;
+            if (traveler != null) {
+                // Let the state settle first, so the program is left where re-execution stopped
+                this.timeTravel.cancel();
+                boolean interrupted = false;
+                while (traveler.isAlive()) {
+                    try {
+                        traveler.join();
+                    }
+                    catch (InterruptedException exception) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
             this.dispatchFinishEvent(RegisterFile.getProgramCounter(), SimulatorFinishEvent.Reason.EXTERNAL, null);
         }
     }
 
+    /**
+     * Terminate the program for the given reason once the current instruction completes, such as when a syscall
+     * finds the program has gone wrong. Has no effect if the simulator is not running.
+     *
+     * @param reason The reason given to {@link SimulatorListener#simulatorFinished(SimulatorFinishEvent)}.
+     */
+    public void terminate(SimulatorFinishEvent.Reason reason) {
+        // This may be called from another thread, such as the resource budget's timer, so read the field once
+        SimulatorThread thread = this.thread;
+        if (thread != null) {
+            thread.stopForTermination(reason);
+            this.thread = null;
+        }
+    }
+
     /**
      * Called when the simulator has started execution of the current program.
      * Invokes {@link SimulatorListener#simulatorStarted(SimulatorStartEvent)} for all listeners.
@@ -303,6 +832,7 @@ public class Simulator {
      * Invokes {@link SimulatorListener#simulatorPaused(SimulatorPauseEvent)} for all listeners.
      */
     public void dispatchPauseEvent(int stepCount, int programCounter, SimulatorPauseEvent.Reason reason) {
+        this.systemIO.flushOutput();
         final SimulatorPauseEvent event = new SimulatorPauseEvent(this, stepCount, programCounter, reason);
         for (SimulatorListener listener : this.threadListeners) {
             listener.simulatorPaused(event);
@@ -321,6 +851,7 @@ public class Simulator {
      * Invokes {@link SimulatorListener#simulatorFinished(SimulatorFinishEvent)} for all listeners.
      */
     public void dispatchFinishEvent(int programCounter, SimulatorFinishEvent.Reason reason, ProcessingException exception) {
+        this.systemIO.flushOutput();
         final SimulatorFinishEvent event = new SimulatorFinishEvent(this, programCounter, reason, exception);
         for (SimulatorListener listener : this.threadListeners) {
             listener.simulatorFinished(event);
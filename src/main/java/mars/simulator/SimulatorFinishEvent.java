@@ -36,6 +36,27 @@ public class SimulatorFinishEvent extends EventObject {
          * This is usually caused by the Stop action.
          */
         EXTERNAL,
+        /**
+         * The program's output differed from the expected output given to an {@link OutputComparator},
+         * so it was terminated without running any further.
+         */
+        OUTPUT_MISMATCH,
+        /**
+         * The program ran for longer than the wall-clock time allowed by its {@link ResourceBudget}.
+         */
+        TIME_LIMIT_EXCEEDED,
+        /**
+         * The program tried to write more output than allowed by its {@link ResourceBudget}.
+         */
+        OUTPUT_LIMIT_EXCEEDED,
+        /**
+         * The program grew the heap by more than allowed by its {@link ResourceBudget}.
+         */
+        HEAP_LIMIT_EXCEEDED,
+        /**
+         * The program tried to open more files at once than allowed by its {@link ResourceBudget}.
+         */
+        OPEN_FILE_LIMIT_EXCEEDED,
     }
 
     private final int programCounter;
@@ -3,7 +3,10 @@ package mars.simulator;
 import mars.*;
 import mars.mips.hardware.*;
 import mars.mips.instructions.BasicInstruction;
+import mars.mips.instructions.DecodedInstruction;
 import mars.mips.instructions.Instruction;
+import mars.simulator.profile.CallGraphProfiler;
+import mars.simulator.profile.ExecutionProfiler;
 import mars.util.Binary;
 import mars.venus.execute.RunSpeedPanel;
 
@@ -18,6 +21,9 @@ public class SimulatorThread extends Thread {
     private final Program program;
     private final int maxSteps;
     private final int[] breakPoints;
+    private final boolean reexecuting;
+    // Time spent re-executing on behalf of time travel does not count toward the time limit
+    private final ResourceBudget budget;
     private int programCounter;
     private volatile Runnable stopEventDispatcher;
 
@@ -30,11 +36,28 @@ public class SimulatorThread extends Thread {
      * @param breakPoints    Array of breakpoints (instruction addresses) specified by user.
      */
     public SimulatorThread(Simulator simulator, Program program, int programCounter, int maxSteps, int[] breakPoints) {
+        this(simulator, program, programCounter, maxSteps, breakPoints, false);
+    }
+
+    /**
+     * Create a new <code>SimulatorThread</code> without starting it, optionally for re-executing instructions on
+     * behalf of {@link TimeTravel}. When re-executing, no listeners are notified, and breakpoints are reported to
+     * {@link TimeTravel#breakpointReached()} instead of pausing the simulator.
+     *
+     * @param program        The program to be simulated.
+     * @param programCounter Address in text segment of first instruction to simulate.
+     * @param maxSteps       Maximum number of instruction steps to simulate.  Default of -1 means no maximum.
+     * @param breakPoints    Array of breakpoints (instruction addresses) specified by user.
+     * @param reexecuting    Whether the instructions are being re-executed by {@link TimeTravel}.
+     */
+    SimulatorThread(Simulator simulator, Program program, int programCounter, int maxSteps, int[] breakPoints, boolean reexecuting) {
         super("MIPS");
         this.simulator = simulator;
         this.program = program;
         this.maxSteps = maxSteps;
         this.breakPoints = breakPoints;
+        this.reexecuting = reexecuting;
+        this.budget = reexecuting ? null : simulator.getResourceBudget();
         this.programCounter = programCounter;
         this.stopEventDispatcher = this::dispatchExternalFinishEvent;
     }
@@ -61,14 +84,52 @@ public class SimulatorThread extends Thread {
         this.interrupt();
     }
 
+    /**
+     * Flag this thread to stop due to termination for the given reason, once the current instruction completes.
+     * Once it has done so, {@link SimulatorListener#simulatorFinished(SimulatorFinishEvent)} will be called for all
+     * registered listeners.
+     * <p>
+     * This method may be called from any thread, including this one.
+     *
+     * @param reason The reason given in the finish event.
+     */
+    public void stopForTermination(SimulatorFinishEvent.Reason reason) {
+        this.stopEventDispatcher = () -> this.dispatchFinishEvent(reason, null);
+        this.interrupt();
+    }
+
     private void dispatchExternalPauseEvent() {
         // Dispatch a pause event once the simulator stops
-        this.simulator.dispatchPauseEvent(this.maxSteps, this.programCounter, SimulatorPauseEvent.Reason.EXTERNAL);
+        this.dispatchPauseEvent(SimulatorPauseEvent.Reason.EXTERNAL);
     }
 
     private void dispatchExternalFinishEvent() {
         // Dispatch a finish event once the simulator stops
-        this.simulator.dispatchFinishEvent(this.programCounter, SimulatorFinishEvent.Reason.EXTERNAL, null);
+        this.dispatchFinishEvent(SimulatorFinishEvent.Reason.EXTERNAL, null);
+    }
+
+    private void dispatchPauseEvent(SimulatorPauseEvent.Reason reason) {
+        this.stopBudget();
+        if (!this.reexecuting) {
+            this.simulator.dispatchPauseEvent(this.maxSteps, this.programCounter, reason);
+        }
+    }
+
+    private void dispatchFinishEvent(SimulatorFinishEvent.Reason reason, ProcessingException exception) {
+        this.stopBudget();
+        if (!this.reexecuting) {
+            this.simulator.dispatchFinishEvent(this.programCounter, reason, exception);
+        }
+    }
+
+    /**
+     * Stop the wall-clock timer before any event is dispatched, so a time limit expiring while listeners run
+     * cannot terminate a program which has already stopped.
+     */
+    private void stopBudget() {
+        if (this.budget != null) {
+            this.budget.simulationStopped();
+        }
     }
 
     /**
@@ -86,12 +147,15 @@ public class SimulatorThread extends Thread {
         // Let the main thread run a bit to finish updating the GUI
         Thread.yield();
 
+        if (this.budget != null) {
+            this.budget.simulationStarting();
+        }
         try {
             this.runSimulation();
         }
         catch (ProcessingException exception) {
             // An unhandled exception occurred during simulation
-            this.simulator.dispatchFinishEvent(this.programCounter, SimulatorFinishEvent.Reason.EXCEPTION, exception);
+            this.dispatchFinishEvent(SimulatorFinishEvent.Reason.EXCEPTION, exception);
         }
         catch (InterruptedException exception) {
             // The event dispatcher runnable will be set by the method that caused the interrupt
@@ -101,7 +165,13 @@ public class SimulatorThread extends Thread {
             // Should only happen if there is a bug somewhere
             System.err.println("Error: internal exception during simulation (this is a bug!):");
             exception.printStackTrace(System.err);
-            this.simulator.dispatchFinishEvent(this.programCounter, SimulatorFinishEvent.Reason.INTERNAL_ERROR, null);
+            this.dispatchFinishEvent(SimulatorFinishEvent.Reason.INTERNAL_ERROR, null);
+        }
+        finally {
+            // Normally already stopped when the event was dispatched
+            this.stopBudget();
+            // Make the recorded input available in full if it is being streamed to a file
+            this.simulator.getInputLog().flush();
         }
     }
 
@@ -114,10 +184,38 @@ public class SimulatorThread extends Thread {
             Arrays.sort(this.breakPoints);
         }
 
-        this.simulator.dispatchStartEvent(this.maxSteps, this.programCounter);
+        if (!this.reexecuting) {
+            this.simulator.dispatchStartEvent(this.maxSteps, this.programCounter);
+        }
 
         RegisterFile.initializeProgramCounter(this.programCounter);
 
+        // When simulating multiple harts, each one's registers are swapped in and out of the register files,
+        // which back-stepping does not account for
+        this.simulator.initializeHarts();
+        boolean multipleHarts = this.simulator.getHartCount() > 1;
+        if (multipleHarts && Application.isBackSteppingEnabled()) {
+            Application.program.getBackStepper().setEnabled(false);
+        }
+        // Time travel replaces back-stepping when enabled; it also counts instructions while the input log is
+        // streamed to or from a file, and is null otherwise so it costs a single check
+        TimeTravel timeTravel = this.simulator.getTimeTravel();
+        if (timeTravel.simulationStarting(multipleHarts)) {
+            if (timeTravel.isActive() && Application.isBackSteppingEnabled()) {
+                Application.program.getBackStepper().setEnabled(false);
+            }
+        }
+        else {
+            timeTravel = null;
+        }
+        // The virtual clock advances with every instruction, and is null when disabled so it costs a single check
+        VirtualClock virtualClock = this.simulator.getVirtualClock().isEnabled() ? this.simulator.getVirtualClock() : null;
+        // Analysis engines observing the instruction stream; the common case of none costs a single length check
+        // (instructions being re-executed were already observed the first time)
+        ExecutionListener[] executionListeners = this.reexecuting ? new ExecutionListener[0] : this.simulator.getExecutionListeners();
+        ExecutionProfiler profiler = this.reexecuting ? null : this.simulator.getProfiler();
+        CallGraphProfiler callGraphProfiler = this.reexecuting ? null : this.simulator.getCallGraphProfiler();
+
         // If there is a step limit, this is used to track the number of steps taken
         int stepCount = 0;
 
@@ -153,13 +251,28 @@ public class SimulatorThread extends Thread {
 
         // Main simulation loop, repeat until the thread is interrupted or some end condition is reached
         while (true) {
+            // Schedule the next hart in round-robin order once this one has used up its quantum or halted.
+            // This is done before the instruction rather than after the previous one, so that the breakpoint
+            // check and any pause see the registers of the hart which executed the last instruction.
+            if (multipleHarts) {
+                if (!this.simulator.scheduleHart()) {
+                    // Every hart has halted, which is treated the same as an exit syscall
+                    this.dispatchFinishEvent(SimulatorFinishEvent.Reason.EXIT_SYSCALL, null);
+                    return;
+                }
+                this.programCounter = RegisterFile.getProgramCounter();
+            }
+            if (timeTravel != null) {
+                timeTravel.instructionStarting();
+            }
+
             // Fetch the statement to execute from memory
             ProgramStatement statement = this.fetchStatement();
             if (statement == null) {
                 // A null statement indicates that execution "ran off the bottom" of the program.
                 // While a real MIPS device would keep chugging along and executing garbage data as instructions,
                 // it's probably safe to say the user did not intend that to happen, so we'll just stop instead.
-                this.simulator.dispatchFinishEvent(this.programCounter, SimulatorFinishEvent.Reason.RAN_OFF_BOTTOM, null);
+                this.dispatchFinishEvent(SimulatorFinishEvent.Reason.RAN_OFF_BOTTOM, null);
                 return;
             }
 
@@ -199,9 +312,41 @@ public class SimulatorThread extends Thread {
                         );
                     }
 
+                    // The base register of a load may be overwritten by the load itself,
+                    // so the effective address must be computed before execution
+                    DecodedInstruction decoded = null;
+                    int memoryAddress = 0;
+                    if (executionListeners.length > 0) {
+                        decoded = DecodedInstruction.decode(statement.getBinaryStatement());
+                        if (decoded.getMemoryAccessSize() > 0) {
+                            int word = statement.getBinaryStatement();
+                            memoryAddress = RegisterFile.getRegisters()[(word >>> 21) & 0x1F].getValueNoNotify() + (short) word;
+                        }
+                    }
+
                     // Simulate the instruction execution
                     instruction.simulate(statement);
 
+                    if (decoded != null) {
+                        Integer delayedJumpAddress = this.simulator.getDelayedJumpAddress();
+                        int nextAddress = delayedJumpAddress != null ? delayedJumpAddress : RegisterFile.getProgramCounter();
+                        for (ExecutionListener listener : executionListeners) {
+                            listener.instructionExecuted(this.programCounter, decoded, memoryAddress, nextAddress);
+                        }
+                    }
+
+                    if (profiler != null) {
+                        // A taken branch or jump either sets a delayed jump address or changes the program counter
+                        profiler.instructionExecuted(this.programCounter, this.simulator.getDelayedJumpAddress() != null
+                            || RegisterFile.getProgramCounter() != this.programCounter + Instruction.BYTES_PER_INSTRUCTION);
+                    }
+
+                    if (callGraphProfiler != null) {
+                        Integer delayedJumpAddress = this.simulator.getDelayedJumpAddress();
+                        callGraphProfiler.instructionExecuted(this.programCounter, statement.getBinaryStatement(),
+                            delayedJumpAddress != null ? delayedJumpAddress : RegisterFile.getProgramCounter());
+                    }
+
                     // IF statement added 7/26/06 (explanation above)
                     if (Application.isBackSteppingEnabled()) {
                         Application.program.getBackStepper().addDoNothing(this.programCounter);
@@ -215,7 +360,7 @@ public class SimulatorThread extends Thread {
 
                     if (exception.getErrors() == null) {
                         // There are no errors attached, so this was caused by an exit syscall
-                        this.simulator.dispatchFinishEvent(this.programCounter, SimulatorFinishEvent.Reason.EXIT_SYSCALL, exception);
+                        this.dispatchFinishEvent(SimulatorFinishEvent.Reason.EXIT_SYSCALL, exception);
                         return;
                     }
 
@@ -247,6 +392,16 @@ public class SimulatorThread extends Thread {
                     // Proceed with interrupt handling as usual
                     throw exception;
                 }
+
+                if (timeTravel != null) {
+                    timeTravel.instructionCompleted();
+                }
+                if (virtualClock != null) {
+                    virtualClock.instructionCompleted();
+                }
+                if (!this.reexecuting) {
+                    this.simulator.instructionCompleted();
+                }
             }
 
             // Handle delayed branching if it occurs
@@ -263,17 +418,25 @@ public class SimulatorThread extends Thread {
             if (this.isInterrupted()) {
                 throw new InterruptedException();
             }
+            // Breakpoints passed while re-executing are reported rather than paused at,
+            // including on the last step, so they are checked before the step limit.
+            // Hits are counted again from the counts restored with the snapshot, so conditions see them as they were
+            if (this.reexecuting && this.simulator.isBreakpointTriggered(this.programCounter, true)
+                && this.breakPoints != null && Arrays.binarySearch(this.breakPoints, this.programCounter) >= 0) {
+                this.simulator.getTimeTravel().breakpointReached();
+            }
             // Check whether the step limit has been reached (if it is set)
             if (this.maxSteps > 0) {
                 stepCount++;
                 if (stepCount >= this.maxSteps) {
-                    this.simulator.dispatchPauseEvent(this.maxSteps, this.programCounter, SimulatorPauseEvent.Reason.STEP_LIMIT_REACHED);
+                    this.dispatchPauseEvent(SimulatorPauseEvent.Reason.STEP_LIMIT_REACHED);
                     return;
                 }
             }
             // Check for a breakpoint
-            if (this.breakPoints != null && Arrays.binarySearch(this.breakPoints, this.programCounter) >= 0) {
-                this.simulator.dispatchPauseEvent(this.maxSteps, this.programCounter, SimulatorPauseEvent.Reason.BREAKPOINT);
+            if (!this.reexecuting && this.breakPoints != null && Arrays.binarySearch(this.breakPoints, this.programCounter) >= 0
+                && this.simulator.isBreakpointTriggered(this.programCounter, true)) {
+                this.dispatchPauseEvent(SimulatorPauseEvent.Reason.BREAKPOINT);
                 return;
             }
 
@@ -281,7 +444,7 @@ public class SimulatorThread extends Thread {
             this.programCounter = RegisterFile.getProgramCounter();
 
             // Update the GUI and delay the next step if the program is not running at unlimited speed
-            if (Application.getGUI() != null && RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) {
+            if (!this.reexecuting && Application.getGUI() != null && RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) {
                 // Schedule a GUI update if one is not already scheduled
                 this.simulator.dispatchStepEvent();
 
@@ -1,11 +1,13 @@
 package mars.simulator;
 
 import mars.Application;
+import mars.mips.hardware.Memory;
 import mars.util.Binary;
 
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
+import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -147,27 +149,41 @@ public class SystemIO {
     public static final int FIRST_USER_DESCRIPTOR = 3;
 
     private static final boolean DEBUG_PRINT_HANDLES = false;
+    // Size of the transfer buffer kept between simulations; larger buffers are released on reset
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+    // Reads from files at least this large are done by mapping the file instead of copying through the channel
+    private static final int MAP_THRESHOLD = 1024 * 1024;
 
-    private static BufferedReader inputReader = null;
+    private static ConsoleInput standardInput = null;
 
     private Path workingDirectory = null;
+    private VirtualFileSystem fileSystem = null;
     private List<FileHandle> handles;
+    private ConsoleOutput standardOutput = null;
+    private ConsoleOutput standardError = null;
+    private OutputComparator outputComparator = null;
+    // Bytes written to files other than the standard streams, which count their own
+    private long fileOutputByteCount = 0;
+    private byte[] consoleInputData = null;
+    private ConsoleInput consoleInput = null;
+    private ByteBuffer transferBuffer = null;
     private int nextDescriptor;
     private String fileOperationMessage = null;
 
     /**
-     * Private method to simply return the BufferedReader used for
+     * Private method to simply return the source used for
      * keyboard input, redirected input, or piped input.
      * These are all equivalent in the eyes of the program because they are
      * transparent to it.  Lazy instantiation.
+     * It is shared between simulations, since input it has buffered would otherwise be lost.
      *
      * @author DPS 28 Feb 2008
      */
-    private static BufferedReader getInputReader() {
-        if (inputReader == null) {
-            inputReader = new BufferedReader(new InputStreamReader(System.in));
+    private static ConsoleInput getStandardInput() {
+        if (standardInput == null) {
+            standardInput = new ConsoleInput(System.in);
         }
-        return inputReader;
+        return standardInput;
     }
 
     /**
@@ -181,22 +197,127 @@ public class SystemIO {
      * Close any open files, and reinitialize standard I/O just in case.
      */
     public void resetFiles() {
+        this.flushOutput();
+        if (this.outputComparator != null) {
+            this.outputComparator.reset();
+        }
+        this.fileOutputByteCount = 0;
+        if (this.transferBuffer != null && this.transferBuffer.capacity() > TRANSFER_BUFFER_SIZE) {
+            this.transferBuffer = null;
+        }
         for (int descriptor = FIRST_USER_DESCRIPTOR; descriptor < this.handles.size(); descriptor++) {
-            this.closeFile(descriptor);
+            this.closeHostFile(descriptor);
         }
         this.initHandles();
     }
 
     private void initHandles() {
         this.handles = new ArrayList<>(3);
-        this.handles.add(new FileHandle("stdin", Channels.newChannel(System.in), READ_ONLY_FLAGS));
-        this.handles.add(new FileHandle("stdout", Channels.newChannel(System.out), WRITE_ONLY_FLAG));
-        this.handles.add(new FileHandle("stderr", Channels.newChannel(System.err), WRITE_ONLY_FLAG));
+        this.handles.add(null);
+        this.initConsoleInput();
+        // The print syscalls share these sinks with the descriptors so that output stays in order
+        this.standardOutput = new ConsoleOutput(System.out, false);
+        this.standardOutput.setComparator(this.outputComparator);
+        this.standardError = new ConsoleOutput(System.err, true);
+        this.handles.add(new FileHandle("stdout", this.standardOutput, WRITE_ONLY_FLAG));
+        this.handles.add(new FileHandle("stderr", this.standardError, WRITE_ONLY_FLAG));
         System.out.flush();
         System.err.flush();
         this.nextDescriptor = this.handles.size();
     }
 
+    private void initConsoleInput() {
+        // Preloaded input starts over from the beginning each time the program is reset
+        this.consoleInput = (this.consoleInputData != null) ? new ConsoleInput(this.consoleInputData) : getStandardInput();
+        this.handles.set(STDIN_DESCRIPTOR, new FileHandle("stdin", this.consoleInput, READ_ONLY_FLAGS));
+    }
+
+    /**
+     * Provide the program's console input from a byte array instead of the user. This input is used for the input
+     * syscalls and reads from file descriptor 0, even when the GUI is running, and is provided again from the
+     * beginning each time the program is reset.
+     *
+     * @param data The complete input, or <code>null</code> to return to reading from the user.
+     */
+    public void setConsoleInput(byte[] data) {
+        this.consoleInputData = data;
+        this.initConsoleInput();
+    }
+
+    /**
+     * Provide the program's console input from the contents of a file, as {@link #setConsoleInput(byte[])}.
+     *
+     * @param path The file containing the complete input.
+     * @throws IOException Thrown if the file cannot be read.
+     */
+    public void setConsoleInputFile(Path path) throws IOException {
+        this.setConsoleInput(Files.readAllBytes(path));
+    }
+
+    /**
+     * Determine whether console input comes from the GUI console, as opposed to standard input or data provided
+     * using {@link #setConsoleInput(byte[])}.
+     *
+     * @return <code>true</code> if input is requested from the GUI.
+     */
+    private boolean isInputFromGUI() {
+        return Application.getGUI() != null && this.consoleInputData == null;
+    }
+
+    /**
+     * Get a buffer for moving bytes between memory and a file, which is reused by every file syscall instead of
+     * being allocated for each one. The buffer is backed by an array, so bytes can be copied to and from
+     * memory in bulk using {@link mars.mips.hardware.Memory#fetchBytes(int, byte[], int, int)} and
+     * {@link mars.mips.hardware.Memory#storeBytes(int, byte[], int, int)}.
+     *
+     * @param length The number of bytes to be transferred.
+     * @return The buffer, cleared, with its limit set to <code>length</code>. Its contents are only valid until the
+     *         next call to this method.
+     */
+    public ByteBuffer getTransferBuffer(int length) {
+        if (this.transferBuffer == null || this.transferBuffer.capacity() < length) {
+            int capacity = TRANSFER_BUFFER_SIZE;
+            while (capacity < length) {
+                capacity = (capacity > Integer.MAX_VALUE / 2) ? length : capacity * 2;
+            }
+            this.transferBuffer = ByteBuffer.allocate(capacity);
+        }
+        return this.transferBuffer.clear().limit(length);
+    }
+
+    /**
+     * Write out any console output buffered while running from the command line. This is done automatically
+     * whenever the program waits for console input and whenever the simulator pauses or finishes.
+     */
+    public void flushOutput() {
+        if (this.standardOutput != null) {
+            this.standardOutput.flush();
+        }
+        if (this.standardError != null) {
+            this.standardError.flush();
+        }
+    }
+
+    /**
+     * Get the comparator which checks standard output against the expected output as it is produced.
+     *
+     * @return The comparator, or <code>null</code> if output is not being compared.
+     */
+    public OutputComparator getOutputComparator() {
+        return this.outputComparator;
+    }
+
+    /**
+     * Set the comparator which checks standard output against the expected output as it is produced. This only
+     * applies while running from the command line, since output to the GUI console is not compared.
+     *
+     * @param outputComparator The comparator, or <code>null</code> to stop comparing output.
+     */
+    public void setOutputComparator(OutputComparator outputComparator) {
+        this.outputComparator = outputComparator;
+        this.standardOutput.setComparator(outputComparator);
+    }
+
     /**
      * Get the working directory which is used to calculate relative paths when using {@link #openFile(Path, int)}.
      *
@@ -217,6 +338,27 @@ public class SystemIO {
         this.workingDirectory = workingDirectory;
     }
 
+    /**
+     * Get the virtual file system which the file syscalls use in place of the host file system.
+     *
+     * @return The virtual file system, or <code>null</code> if files are opened on the host.
+     */
+    public VirtualFileSystem getFileSystem() {
+        return this.fileSystem;
+    }
+
+    /**
+     * Set the virtual file system which the file syscalls use in place of the host file system. While one is set,
+     * the working directory is ignored and the program cannot open any file on the host. The change applies to
+     * files opened afterward.
+     *
+     * @param fileSystem The virtual file system, or <code>null</code> to open files on the host
+     *                   (which is the default behavior).
+     */
+    public void setFileSystem(VirtualFileSystem fileSystem) {
+        this.fileSystem = fileSystem;
+    }
+
     /**
      * Get the string message indicating the result of the previous file operation.
      *
@@ -289,11 +431,24 @@ public class SystemIO {
      * @author Ken Vollmar
      */
     public int openFile(Path filename, int flags) {
-        FileChannel channel;
+        // When replaying, the file was already opened the first time, so only the result is repeated
+        InputLog log = Simulator.getInstance().getInputLog();
+        if (log.hasNext(InputLog.INT)) {
+            return log.nextInt();
+        }
+        if (this.fileSystem == null) {
+            // Whether or not the file opens, the result depends on the host file system
+            log.markHostDependent();
+        }
+        return log.recordInt(this.openHostFile(filename, flags));
+    }
+
+    private int openHostFile(Path filename, int flags) {
+        SeekableByteChannel channel;
         Set<OpenOption> options = new HashSet<>();
         String mode;
 
-        if (this.workingDirectory != null) {
+        if (this.workingDirectory != null && this.fileSystem == null) {
             filename = this.workingDirectory.resolve(filename);
         }
 
@@ -339,8 +494,18 @@ public class SystemIO {
             return -1;
         }
 
+        if (!Simulator.getInstance().getResourceBudget().checkOpenFiles(this.getOpenFileCount())) {
+            this.fileOperationMessage = "File \"" + filename + "\" unable to open due to the open file limit";
+            return -1;
+        }
+
         try {
-            channel = FileChannel.open(filename, options);
+            if (this.fileSystem != null) {
+                channel = this.fileSystem.open(filename.toString(), options);
+            }
+            else {
+                channel = FileChannel.open(filename, options);
+            }
         }
         catch (IOException exception) {
             this.fileOperationMessage = "File \"" + filename + "\" unable to open for " + mode;
@@ -364,12 +529,32 @@ public class SystemIO {
         return descriptor;
     }
 
+    private int getOpenFileCount() {
+        int count = 0;
+        for (int descriptor = FIRST_USER_DESCRIPTOR; descriptor < this.handles.size(); descriptor++) {
+            if (this.handles.get(descriptor).isOpen()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     /**
      * Close the file with specified file descriptor. Sets the file operation message accordingly.
      *
      * @param descriptor The descriptor of the file to close.
      */
     public void closeFile(int descriptor) {
+        InputLog log = Simulator.getInstance().getInputLog();
+        if (log.hasNext(InputLog.INT)) {
+            log.nextInt();
+            return;
+        }
+        this.closeHostFile(descriptor);
+        log.recordInt(0);
+    }
+
+    private void closeHostFile(int descriptor) {
         // Do an explicit bounds check to provide more descriptive error messages
         if (FIRST_USER_DESCRIPTOR <= descriptor && descriptor < this.handles.size()) {
             FileHandle handle = this.getOpenHandle(descriptor);
@@ -417,6 +602,20 @@ public class SystemIO {
      * @return Number of bytes written, or -1 on error.
      */
     public int writeToFile(int descriptor, ByteBuffer buffer) {
+        InputLog log = Simulator.getInstance().getInputLog();
+        if (log.hasNext(InputLog.INT)) {
+            // The result the program sees is repeated, but output is only suppressed if it was already written
+            // (files opened while replaying are not actually opened, so writing to them does nothing)
+            if (!Simulator.getInstance().getTimeTravel().isReplaying()) {
+                this.writeHostFile(descriptor, buffer);
+            }
+            buffer.position(buffer.limit());
+            return log.nextInt();
+        }
+        return log.recordInt(this.writeHostFile(descriptor, buffer));
+    }
+
+    private int writeHostFile(int descriptor, ByteBuffer buffer) {
         // DPS 8-Jan-2013
         // Write to STDOUT or STDERR file descriptor while using IDE - write to console.
         if ((descriptor == STDOUT_DESCRIPTOR || descriptor == STDERR_DESCRIPTOR) && Application.getGUI() != null) {
@@ -429,6 +628,10 @@ public class SystemIO {
             return data.length;
         }
         // When running in command mode, code below works for either regular file or STDOUT/STDERR.
+        if (descriptor == STDERR_DESCRIPTOR) {
+            // Standard error is not buffered, so anything written to standard output before it must appear first
+            this.standardOutput.flush();
+        }
 
         // Retrieve the writable channel corresponding to the descriptor
         WritableByteChannel channel = this.getWritableChannel(descriptor);
@@ -437,9 +640,16 @@ public class SystemIO {
             this.fileOperationMessage = "File with descriptor " + descriptor + " is not open for writing";
             return -1;
         }
+        if (!this.checkOutputBudget(buffer.remaining())) {
+            this.fileOperationMessage = "Output limit exceeded writing to file with descriptor " + descriptor;
+            return -1;
+        }
         try {
             // From testing, this does not stop writing on zero-bytes.
             int numBytes = channel.write(buffer);
+            if (!(channel instanceof ConsoleOutput)) {
+                this.fileOutputByteCount += numBytes;
+            }
             this.fileOperationMessage = "Successfully wrote " + numBytes + " bytes to file with descriptor " + descriptor;
             return numBytes;
         }
@@ -453,6 +663,110 @@ public class SystemIO {
         }
     }
 
+    /**
+     * Map part of an open file into new heap space, which is filled from the file lazily, one page at a time,
+     * as the program accesses it. The file may be closed afterward without affecting the mapping.
+     * <p>
+     * The contents of the file are not recorded in the {@link InputLog}, only its name, so replaying the log
+     * maps the file again by name and expects it to be unchanged.
+     *
+     * @param descriptor The descriptor of a file open for reading.
+     * @param offset     The position in the file of the first byte to map.
+     * @param length     The number of bytes of heap space to map. Any bytes past the end of the file are zero.
+     * @param readOnly   Whether stores to the mapped space should raise an exception. Otherwise, stores only
+     *                   modify the simulated memory, never the file.
+     * @return The address of the mapped space, or -1 if the file could not be mapped.
+     * @throws IllegalArgumentException Thrown if the length is not positive or exceeds available heap storage.
+     */
+    public int mapFile(int descriptor, long offset, int length, boolean readOnly) throws IllegalArgumentException {
+        Memory.getInstance().checkHeapMapping(length);
+        InputLog log = Simulator.getInstance().getInputLog();
+        ByteBuffer contents;
+        if (log.hasNext(InputLog.STRING)) {
+            // When replaying, the file may not actually be open, so it is mapped again by name
+            String filename = log.nextString();
+            contents = null;
+            if (filename != null) {
+                try (SeekableByteChannel channel = (this.fileSystem != null)
+                    ? this.fileSystem.open(filename, Set.of(StandardOpenOption.READ))
+                    : FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+                    contents = this.mapHostFile(channel, filename, offset, length);
+                }
+                catch (IOException exception) {
+                    this.fileOperationMessage = "File \"" + filename + "\" unable to open for mapping";
+                }
+            }
+        }
+        else {
+            FileHandle handle = this.getOpenHandle(descriptor);
+            if (handle != null && handle.getChannel() instanceof SeekableByteChannel channel) {
+                contents = this.mapHostFile(channel, "with descriptor " + descriptor, offset, length);
+            }
+            else {
+                this.fileOperationMessage = "File with descriptor " + descriptor + " cannot be mapped";
+                contents = null;
+            }
+            log.recordString((contents == null) ? null : handle.getName());
+        }
+        if (contents == null) {
+            return -1;
+        }
+        return Memory.getInstance().mapHeapSpace(contents, length, readOnly);
+    }
+
+    private ByteBuffer mapHostFile(SeekableByteChannel channel, String description, long offset, int length) {
+        try {
+            long size = channel.size();
+            if (offset < 0 || offset > size) {
+                this.fileOperationMessage = "Offset " + offset + " is outside of file " + description;
+                return null;
+            }
+            int count = (int) Math.min(length, size - offset);
+            ByteBuffer contents;
+            if (channel instanceof FileChannel fileChannel) {
+                contents = fileChannel.map(FileChannel.MapMode.READ_ONLY, offset, count);
+            }
+            else {
+                // Files in a virtual file system are already in memory, so they are copied rather than mapped
+                long position = channel.position();
+                contents = ByteBuffer.allocate(count);
+                channel.position(offset);
+                while (contents.hasRemaining() && channel.read(contents) > 0) {
+                    // Keep reading until the region is filled
+                }
+                channel.position(position);
+                contents.flip();
+            }
+            this.fileOperationMessage = "Successfully mapped " + contents.limit() + " bytes of file " + description;
+            return contents;
+        }
+        catch (NonReadableChannelException exception) {
+            this.fileOperationMessage = "File " + description + " is not open for reading";
+            return null;
+        }
+        catch (IOException exception) {
+            this.fileOperationMessage = "Failed to map file " + description;
+            return null;
+        }
+    }
+
+    /**
+     * Read a large block of a file by mapping it into memory and copying it straight into the buffer, rather than
+     * reading it into a temporary buffer first. The position of the channel is advanced as a read would.
+     *
+     * @return The number of bytes read, or -1 if the channel is at the end of the file.
+     */
+    private static int readMapped(FileChannel channel, ByteBuffer buffer) throws IOException {
+        long position = channel.position();
+        long count = Math.min(buffer.remaining(), channel.size() - position);
+        if (count <= 0) {
+            return -1;
+        }
+        buffer.put(channel.map(FileChannel.MapMode.READ_ONLY, position, count));
+        channel.position(position + count);
+        return (int) count;
+    }
+
     /**
      * Read sequential bytes from a file into a buffer.
      *
@@ -461,10 +775,20 @@ public class SystemIO {
      * @return Number of bytes read, 0 on EOF, or -1 on error.
      */
     public int readFromFile(int descriptor, ByteBuffer buffer) throws InterruptedException {
+        InputLog log = Simulator.getInstance().getInputLog();
+        if (log.hasNext(InputLog.BYTES)) {
+            return log.nextBytes(buffer);
+        }
+        int start = buffer.position();
+        return log.recordBytes(this.readHostFile(descriptor, buffer), buffer, start);
+    }
+
+    private int readHostFile(int descriptor, ByteBuffer buffer) throws InterruptedException {
         // DPS 8-Jan-2013
         // Read from STDIN file descriptor while using IDE - get input from console.
-        if (descriptor == STDIN_DESCRIPTOR && Application.getGUI() != null) {
-            String input = this.readString(buffer.remaining());
+        if (descriptor == STDIN_DESCRIPTOR && this.isInputFromGUI()) {
+            int maxLength = buffer.remaining();
+            String input = trimInputString(this.awaitInputLine("Enter a string (maximum " + maxLength + " characters)", maxLength), maxLength);
             byte[] bytesRead = input.getBytes();
             int numBytes = Math.min(buffer.remaining(), bytesRead.length);
             buffer.put(bytesRead, 0, numBytes);
@@ -473,6 +797,10 @@ public class SystemIO {
             return numBytes;
         }
         // When running in command mode, code below works for either regular file or STDIN.
+        if (descriptor == STDIN_DESCRIPTOR) {
+            // Make sure any prompt has been written before blocking
+            this.flushOutput();
+        }
 
         // Retrieve the readable channel corresponding to the descriptor
         ReadableByteChannel channel = this.getReadableChannel(descriptor);
@@ -483,7 +811,13 @@ public class SystemIO {
         }
         try {
             // Read up to buffer.remaining() bytes of data from this input stream into an array of bytes.
-            int numBytes = channel.read(buffer);
+            int numBytes;
+            if (channel instanceof FileChannel fileChannel && buffer.remaining() >= MAP_THRESHOLD) {
+                numBytes = readMapped(fileChannel, buffer);
+            }
+            else {
+                numBytes = channel.read(buffer);
+            }
             // The method above will return -1 upon EOF, but our spec says that negative
             // value represents an error, so we return 0 for EOF.  DPS 10-July-2008.
             if (numBytes == -1) {
@@ -511,6 +845,14 @@ public class SystemIO {
      * @return New position in the file, or -1 if an error occurred.
      */
     public long seekFile(int descriptor, long offset, SeekWhence whence) {
+        InputLog log = Simulator.getInstance().getInputLog();
+        if (log.hasNext(InputLog.LONG)) {
+            return log.nextLong();
+        }
+        return log.recordLong(this.seekHostFile(descriptor, offset, whence));
+    }
+
+    private long seekHostFile(int descriptor, long offset, SeekWhence whence) {
         Channel channel = this.getChannel(descriptor);
         if (channel == null) {
             this.fileOperationMessage = "File descriptor " + descriptor + " is not open and cannot be seeked";
@@ -675,13 +1017,19 @@ public class SystemIO {
     }
 
     /**
-     * Implements syscall to print a string.
+     * Implements syscall to print a string. Nothing is printed while {@link TimeTravel} is re-executing
+     * instructions, since the string was already printed the first time.
      *
      * @param string The string to print.
      */
     public void printString(String string) {
+        if (Simulator.getInstance().getTimeTravel().isReplaying()) {
+            return;
+        }
         if (Application.getGUI() == null) {
-            System.out.print(string);
+            if (this.checkOutputBudget(this.standardOutput.getEncodedLength(string))) {
+                this.standardOutput.print(string);
+            }
         }
         else {
             Application.getGUI().getMessagesPane().getConsole().writeOutput(string);
@@ -689,118 +1037,162 @@ public class SystemIO {
     }
 
     /**
-     * Implements syscall to read an integer value.
+     * Implements syscall to print a character, as {@link #printString(String)}.
      *
-     * @return Integer value entered by user.
-     * @throws NumberFormatException Thrown if invalid input is entered.
+     * @param character The character to print.
      */
-    public int readInteger() throws NumberFormatException, InterruptedException {
-        String input = "";
+    public void printChar(char character) {
+        if (Simulator.getInstance().getTimeTravel().isReplaying()) {
+            return;
+        }
         if (Application.getGUI() == null) {
-            try {
-                input = getInputReader().readLine();
-            }
-            catch (IOException exception) {
-                // Leave the input as an empty string
+            if (this.checkOutputBudget((character < 0x80) ? 1 : this.standardOutput.getEncodedLength(String.valueOf(character)))) {
+                this.standardOutput.printChar(character);
             }
         }
         else {
-            if (Application.getSettings().popupSyscallInput.get()) {
-                input = Application.getGUI().getMessagesPane().getInputString("Enter an integer value");
-            }
-            else {
-                input = Application.getGUI().getMessagesPane().getConsole().awaitUserInput(-1);
-            }
+            Application.getGUI().getMessagesPane().getConsole().writeOutput(Character.toString(character));
         }
-
-        // Client is responsible for catching NumberFormatException
-        return Integer.parseInt(input.strip());
     }
 
     /**
-     * Implements syscall to read a float value.
+     * Implements syscall to print a signed integer in decimal, as {@link #printString(String)}.
      *
-     * @return Float value entered by user.
-     * @throws NumberFormatException Thrown if invalid input is entered.
-     * @author Ken Vollmar Feb 14 2005
+     * @param value The value to print.
      */
-    public float readFloat() throws NumberFormatException, InterruptedException {
-        String input = "";
+    public void printInt(int value) {
+        if (Simulator.getInstance().getTimeTravel().isReplaying()) {
+            return;
+        }
         if (Application.getGUI() == null) {
-            try {
-                input = getInputReader().readLine();
-            }
-            catch (IOException exception) {
-                // Leave the input as an empty string
+            if (this.checkOutputBudget(((value < 0) ? 1 : 0) + decimalLength(Math.abs((long) value)))) {
+                this.standardOutput.printInt(value);
             }
         }
         else {
-            if (Application.getSettings().popupSyscallInput.get()) {
-                input = Application.getGUI().getMessagesPane().getInputString("Enter a float value");
-            }
-            else {
-                input = Application.getGUI().getMessagesPane().getConsole().awaitUserInput(-1);
-            }
+            Application.getGUI().getMessagesPane().getConsole().writeOutput(Integer.toString(value));
         }
-        return Float.parseFloat(input.strip());
     }
 
     /**
-     * Implements syscall to read a double value.
+     * Implements syscall to print an unsigned integer in decimal, as {@link #printString(String)}.
      *
-     * @return Double value entered by user.
-     * @throws NumberFormatException Thrown if invalid input is entered.
-     * @author DPS 1 Aug 2005, based on Ken Vollmar's {@link #readFloat()}
+     * @param value The value to print, treated as unsigned.
      */
-    public double readDouble() throws NumberFormatException, InterruptedException {
-        String input = "";
+    public void printUnsignedInt(int value) {
+        if (Simulator.getInstance().getTimeTravel().isReplaying()) {
+            return;
+        }
         if (Application.getGUI() == null) {
-            try {
-                input = getInputReader().readLine();
-            }
-            catch (IOException exception) {
-                // Leave the input as an empty string
+            if (this.checkOutputBudget(decimalLength(Integer.toUnsignedLong(value)))) {
+                this.standardOutput.printUnsignedInt(value);
             }
         }
         else {
-            if (Application.getSettings().popupSyscallInput.get()) {
-                input = Application.getGUI().getMessagesPane().getInputString("Enter a double value");
-            }
-            else {
-                input = Application.getGUI().getMessagesPane().getConsole().awaitUserInput(-1);
+            Application.getGUI().getMessagesPane().getConsole().writeOutput(Integer.toUnsignedString(value));
+        }
+    }
+
+    /**
+     * Implements syscall to print an integer in hexadecimal, as {@link #printString(String)}.
+     *
+     * @param value The value to print.
+     */
+    public void printHex(int value) {
+        if (Simulator.getInstance().getTimeTravel().isReplaying()) {
+            return;
+        }
+        if (Application.getGUI() == null) {
+            if (this.checkOutputBudget(2 + Integer.SIZE / 4)) {
+                this.standardOutput.printHex(value);
             }
         }
-        return Double.parseDouble(input.strip());
+        else {
+            Application.getGUI().getMessagesPane().getConsole().writeOutput(Binary.intToHexString(value));
+        }
     }
 
     /**
-     * Implements syscall to read a string value.
+     * Implements syscall to print an integer in binary, as {@link #printString(String)}.
      *
-     * @param maxLength The maximum string length.
-     * @return String value entered by user, truncated to maximum length if necessary.
+     * @param value The value to print.
      */
-    public String readString(int maxLength) throws InterruptedException {
-        String input = "";
+    public void printBinary(int value) {
+        if (Simulator.getInstance().getTimeTravel().isReplaying()) {
+            return;
+        }
         if (Application.getGUI() == null) {
-            try {
-                input = getInputReader().readLine();
+            if (this.checkOutputBudget(Integer.SIZE)) {
+                this.standardOutput.printBinary(value);
             }
-            catch (IOException exception) {
-                // Leave the input as an empty string
+        }
+        else {
+            Application.getGUI().getMessagesPane().getConsole().writeOutput(Binary.intToBinaryString(value));
+        }
+    }
+
+    /**
+     * Check the output limit of the {@link ResourceBudget} before writing, terminating the program if it would be
+     * exceeded.
+     *
+     * @param count The number of bytes about to be written.
+     * @return <code>true</code> if the bytes may be written, or <code>false</code> if they would exceed the limit.
+     */
+    private boolean checkOutputBudget(long count) {
+        long total = this.standardOutput.getByteCount() + this.standardError.getByteCount() + this.fileOutputByteCount;
+        return Simulator.getInstance().getResourceBudget().checkOutput(total + count);
+    }
+
+    private static int decimalLength(long magnitude) {
+        int length = 1;
+        while (magnitude >= 10) {
+            magnitude /= 10;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Obtain a line of input for one of the console input syscalls, from the {@link InputLog} if it is replaying,
+     * or from the user otherwise (in which case it is recorded).
+     *
+     * @param prompt    The prompt to show if input is requested using a dialog.
+     * @param maxLength The maximum number of characters to accept in the console, or -1 for no maximum.
+     * @return The line entered, without a line terminator.
+     */
+    private String readInputLine(String prompt, int maxLength) throws InterruptedException {
+        InputLog log = Simulator.getInstance().getInputLog();
+        if (log.hasNext(InputLog.STRING)) {
+            return log.nextString();
+        }
+        return log.recordString(this.awaitInputLine(prompt, maxLength));
+    }
+
+    private String awaitInputLine(String prompt, int maxLength) throws InterruptedException {
+        String input = "";
+        if (!this.isInputFromGUI()) {
+            // Make sure any prompt has been written before blocking
+            this.flushOutput();
+            String line = this.consoleInput.readLine();
+            if (line != null) {
+                input = line;
             }
         }
         else {
             if (Application.getSettings().popupSyscallInput.get()) {
-                input = Application.getGUI().getMessagesPane().getInputString("Enter a string (maximum " + maxLength + " characters)");
+                input = Application.getGUI().getMessagesPane().getInputString(prompt);
             }
             else {
                 input = Application.getGUI().getMessagesPane().getConsole().awaitUserInput(maxLength);
-                if (input.endsWith("\n")) {
-                    input = input.substring(0, input.length() - 1);
-                }
             }
         }
+        return input;
+    }
 
+    private static String trimInputString(String input, int maxLength) {
+        if (input.endsWith("\n")) {
+            input = input.substring(0, input.length() - 1);
+        }
         // Trim the output if a maximum length is set
         if (maxLength > 0 && input.length() > maxLength) {
             return input.substring(0, maxLength);
@@ -810,6 +1202,60 @@ public class SystemIO {
         }
     }
 
+    /**
+     * Implements syscall to read an integer value.
+     *
+     * @return Integer value entered by user.
+     * @throws NumberFormatException Thrown if invalid input is entered.
+     */
+    public int readInteger() throws NumberFormatException, InterruptedException {
+        InputLog log = Simulator.getInstance().getInputLog();
+        if (!this.isInputFromGUI() && !log.isReplaying() && !log.isRecording() && !log.isRecordingFile()) {
+            // Nothing needs to be recorded, so parse the integer directly from the input
+            this.flushOutput();
+            return this.consoleInput.readInt();
+        }
+        String input = this.readInputLine("Enter an integer value", -1);
+
+        // Client is responsible for catching NumberFormatException
+        return Integer.parseInt(input.strip());
+    }
+
+    /**
+     * Implements syscall to read a float value.
+     *
+     * @return Float value entered by user.
+     * @throws NumberFormatException Thrown if invalid input is entered.
+     * @author Ken Vollmar Feb 14 2005
+     */
+    public float readFloat() throws NumberFormatException, InterruptedException {
+        String input = this.readInputLine("Enter a float value", -1);
+        return Float.parseFloat(input.strip());
+    }
+
+    /**
+     * Implements syscall to read a double value.
+     *
+     * @return Double value entered by user.
+     * @throws NumberFormatException Thrown if invalid input is entered.
+     * @author DPS 1 Aug 2005, based on Ken Vollmar's {@link #readFloat()}
+     */
+    public double readDouble() throws NumberFormatException, InterruptedException {
+        String input = this.readInputLine("Enter a double value", -1);
+        return Double.parseDouble(input.strip());
+    }
+
+    /**
+     * Implements syscall to read a string value.
+     *
+     * @param maxLength The maximum string length.
+     * @return String value entered by user, truncated to maximum length if necessary.
+     */
+    public String readString(int maxLength) throws InterruptedException {
+        String input = this.readInputLine("Enter a string (maximum " + maxLength + " characters)", maxLength);
+        return trimInputString(input, maxLength);
+    }
+
     /**
      * Implements syscall to read a char value.
      *
@@ -817,25 +1263,21 @@ public class SystemIO {
      * @throws IndexOutOfBoundsException Thrown if invalid input is entered.
      */
     public int readChar() throws IndexOutOfBoundsException, InterruptedException {
-        String input = "";
-        if (Application.getGUI() == null) {
-            try {
-                input = getInputReader().readLine();
-            }
-            catch (IOException exception) {
-                // Leave the input as an empty string
-            }
+        InputLog log = Simulator.getInstance().getInputLog();
+        String input;
+        if (log.hasNext(InputLog.STRING)) {
+            input = log.nextString();
+        }
+        else if (this.isInputFromGUI()) {
+            input = log.recordString(this.awaitInputLine("Enter a character value", 1));
         }
         else {
-            if (Application.getSettings().popupSyscallInput.get()) {
-                input = Application.getGUI().getMessagesPane().getInputString("Enter a character value");
-            }
-            else {
-                input = Application.getGUI().getMessagesPane().getConsole().awaitUserInput(1);
-            }
+            // Only the character itself is consumed, not the rest of the line
+            this.flushOutput();
+            int character = this.consoleInput.readChar();
+            input = log.recordString((character < 0) ? "" : String.valueOf((char) character));
         }
         // Throws index-out-of-bounds exception!
         return input.charAt(0); // first character input
     }
 }
-
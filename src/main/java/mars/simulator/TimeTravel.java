@@ -0,0 +1,551 @@
+package mars.simulator;
+
+import mars.Application;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.MemoryConfigurations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reverse execution built on periodic snapshots and deterministic re-execution, as an alternative to
+ * {@link BackStepper} which does not record anything per instruction.
+ * <p>
+ * Every {@link Application#TIME_TRAVEL_SNAPSHOT_INTERVAL} instructions, a snapshot is taken of the registers
+ * (including coprocessors 0 and 1), the heap address, and the hit counts of conditional breakpoints, which are
+ * counted again while re-executing. Rather than copying memory, each snapshot keeps the
+ * previous contents of the data pages modified since it was taken, along with the previous file mappings of any
+ * region mapped since then, which are collected through a {@link Memory.PageJournal}. Everything the program receives from outside the simulated machine is kept in the
+ * simulator's {@link InputLog}, including writes made to memory-mapped I/O by other threads (such as the keyboard
+ * of the MMIO simulator tool) along with the instruction count at which they happened.
+ * <p>
+ * To move to an earlier instruction, the nearest snapshot at or before it is restored by writing the saved pages
+ * back, newest first, and the program is re-executed forward at full speed, taking its input from the log.
+ * While re-executing instructions which had already been executed (see {@link #isReplaying()}), output and other
+ * effects outside the simulated machine are suppressed.
+ * <p>
+ * Instructions are numbered by the count of instructions executed before them since the history began, so
+ * "instruction <i>N</i>" is the state after <i>N</i> instructions have executed. Time travel is not available when
+ * simulating multiple harts, and writes to the text segment by self-modifying code are not restored.
+ * <p>
+ * Files on the host are not restored either. While re-executing, file operations take their results from the log
+ * without touching the files, so the files (and the positions of open descriptors) stay as they were at the latest
+ * instruction. Running forward again is consistent with them, but if execution diverges from the recording after
+ * moving backward, for instance because a register was edited, subsequent file operations act on the files as they
+ * were left at the latest instruction.
+ * <p>
+ * The input log counts toward {@link Application#MAXIMUM_TIME_TRAVEL_BYTES} along with the saved pages, and records
+ * from before the oldest snapshot are discarded along with it, so neither grows without bound.
+ * <p>
+ * Instructions are also counted, and writes to memory-mapped I/O logged and replayed, while the input log is
+ * being recorded to or replayed from a file, even if time travel is disabled.
+ */
+public class TimeTravel implements Memory.PageJournal, Memory.Listener {
+    private record SavedPage(Memory.DataRegion region, int pageIndex, int[] contents) {}
+
+    private record SavedMappings(Memory.DataRegion region, List<Memory.DataRegion.Mapping> mappings) {}
+
+    private static class Snapshot {
+        private final long instructionCount;
+        private final Hart registers;
+        private final int nextHeapAddress;
+        private int inputPosition;
+        private final long elapsedNanos;
+        private final Map<Integer, Long> hitCounts;
+        private final List<SavedPage> pages;
+        private final List<SavedMappings> mappings;
+
+        private Snapshot(long instructionCount, int inputPosition, long elapsedNanos, Map<Integer, Long> hitCounts) {
+            this.instructionCount = instructionCount;
+            this.registers = new Hart(0);
+            this.registers.save();
+            this.nextHeapAddress = Memory.getInstance().getNextHeapAddress();
+            this.inputPosition = inputPosition;
+            this.elapsedNanos = elapsedNanos;
+            this.hitCounts = hitCounts;
+            this.pages = new ArrayList<>();
+            this.mappings = new ArrayList<>();
+        }
+    }
+
+    private final Simulator simulator;
+    private final InputLog inputLog;
+    private final List<Snapshot> snapshots;
+    private boolean enabled;
+    private volatile boolean active;
+    private volatile boolean tracking;
+    private int snapshotInterval;
+    private long memoryLimit;
+    private long savedPageBytes;
+
+    private long instructionCount;
+    private long frontier;
+    private long nextSnapshotCount;
+    private long lastBreakpointCount;
+    private volatile boolean cancelled;
+
+    // Writes to memory-mapped I/O made by other threads, waiting to be logged by the simulator thread
+    private final List<InputLog.Store> pendingStores;
+    private volatile boolean storesPending;
+    // The instruction count of the next store in the log, valid while the log is at storeCheckPosition
+    private long nextStoreCount;
+    private int storeCheckPosition;
+
+    /**
+     * Create the time travel controller for a simulator. It is initially disabled.
+     *
+     * @param simulator The simulator whose execution is controlled.
+     * @param inputLog  The log of non-deterministic input used by the simulator.
+     */
+    public TimeTravel(Simulator simulator, InputLog inputLog) {
+        this.simulator = simulator;
+        this.inputLog = inputLog;
+        this.inputLog.setDivergenceHandler(this::discardFuture);
+        this.snapshots = new ArrayList<>();
+        this.enabled = false;
+        this.active = false;
+        this.snapshotInterval = Application.TIME_TRAVEL_SNAPSHOT_INTERVAL;
+        this.memoryLimit = Application.MAXIMUM_TIME_TRAVEL_BYTES;
+        this.pendingStores = new ArrayList<>();
+        this.reset();
+    }
+
+    /**
+     * Determine whether history will be recorded the next time the simulator runs.
+     *
+     * @return <code>true</code> if time travel is enabled, or <code>false</code> otherwise.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Enable or disable time travel. Any history recorded so far is discarded. While enabled,
+     * {@link BackStepper} is disabled whenever the simulator runs.
+     *
+     * @param enabled <code>true</code> to record history the next time the simulator runs.
+     */
+    public void setEnabled(boolean enabled) {
+        if (enabled != this.enabled) {
+            this.enabled = enabled;
+            if (!enabled) {
+                this.deactivate();
+            }
+            this.reset();
+        }
+    }
+
+    /**
+     * Set the number of instructions executed between snapshots. Shorter intervals make moving backward faster
+     * at the expense of memory.
+     *
+     * @param snapshotInterval The number of instructions between snapshots.
+     */
+    public void setSnapshotInterval(int snapshotInterval) {
+        if (snapshotInterval < 1) {
+            throw new IllegalArgumentException("snapshot interval must be positive");
+        }
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Determine whether history is being recorded for the current program.
+     *
+     * @return <code>true</code> if the simulator has run with time travel enabled since the last reset.
+     */
+    public boolean isActive() {
+        return this.active;
+    }
+
+    /**
+     * Get the number of instructions executed since the history began, which identifies the current state.
+     *
+     * @return The current instruction count.
+     */
+    public long getInstructionCount() {
+        return this.instructionCount;
+    }
+
+    /**
+     * Get the earliest instruction which can be returned to. This advances as the oldest snapshots are discarded
+     * to stay within {@link Application#MAXIMUM_TIME_TRAVEL_BYTES}.
+     *
+     * @return The instruction count of the oldest snapshot, or the current count if there is none.
+     */
+    public long getEarliestInstruction() {
+        return this.snapshots.isEmpty() ? this.instructionCount : this.snapshots.get(0).instructionCount;
+    }
+
+    /**
+     * Get the latest instruction which has been executed, which can be returned to by re-executing forward.
+     *
+     * @return The highest instruction count reached since the history began.
+     */
+    public long getLatestInstruction() {
+        return Math.max(this.frontier, this.instructionCount);
+    }
+
+    /**
+     * Determine whether the simulator is re-executing instructions which have already been executed once.
+     * Output and other effects outside the simulated machine should be suppressed while this is the case.
+     *
+     * @return <code>true</code> if the current instruction has been executed before, or <code>false</code> otherwise.
+     */
+    public boolean isReplaying() {
+        return this.instructionCount < this.frontier;
+    }
+
+    /**
+     * Determine whether there is any history before the current state.
+     *
+     * @return <code>true</code> if an earlier instruction can be returned to, or <code>false</code> otherwise.
+     */
+    public boolean canGoBack() {
+        return this.active && this.instructionCount > this.getEarliestInstruction();
+    }
+
+    /**
+     * Discard all history and input, and begin counting instructions from zero.
+     * This is called by {@link Simulator#reset()}.
+     */
+    public void reset() {
+        this.snapshots.clear();
+        this.savedPageBytes = 0;
+        this.inputLog.clear();
+        this.inputLog.setRecording(false);
+        this.active = false;
+        this.instructionCount = 0;
+        this.frontier = 0;
+        this.nextSnapshotCount = 0;
+        synchronized (this.pendingStores) {
+            this.pendingStores.clear();
+            this.storesPending = false;
+        }
+        this.storeCheckPosition = -1;
+    }
+
+    private void deactivate() {
+        Memory.getInstance().setPageJournal(null);
+        if (!this.tracking) {
+            Memory.getInstance().removeListener(this);
+        }
+    }
+
+    /**
+     * Called on the simulator thread before the first instruction of each run.
+     *
+     * @param multipleHarts Whether multiple harts are being simulated, in which case time travel is unavailable.
+     * @return <code>true</code> if instructions should be counted during this run, either to record history or
+     *         because the input log is being recorded to or replayed from a file.
+     */
+    boolean simulationStarting(boolean multipleHarts) {
+        boolean history = this.enabled && !multipleHarts;
+        this.tracking = history || this.inputLog.isRecordingFile() || this.inputLog.isReplayingFile();
+        if (!history && this.active) {
+            this.deactivate();
+            this.reset();
+        }
+        Memory memory = Memory.getInstance();
+        if (history) {
+            this.active = true;
+            this.inputLog.setRecording(true);
+            memory.setPageJournal(this);
+        }
+        else {
+            this.nextSnapshotCount = Long.MAX_VALUE;
+        }
+        // The MMIO range may have changed since the last run if memory was reset
+        memory.removeListener(this);
+        if (this.tracking) {
+            memory.addListener(this, memory.getAddress(MemoryConfigurations.MMIO_LOW), memory.getAddress(MemoryConfigurations.MMIO_HIGH));
+        }
+        return this.tracking;
+    }
+
+    /**
+     * Called on the simulator thread before each instruction is fetched, when the state is consistent.
+     */
+    void instructionStarting() {
+        if (this.instructionCount >= this.nextSnapshotCount) {
+            this.takeSnapshot();
+        }
+        if (this.storesPending) {
+            this.logPendingStores();
+        }
+        if (this.inputLog.hasNext(InputLog.STORE)) {
+            this.applyStores();
+        }
+    }
+
+    /**
+     * Called on the simulator thread, while holding {@link Application#MEMORY_AND_REGISTERS_LOCK},
+     * once an instruction has completed (including by raising an exception which was handled).
+     */
+    void instructionCompleted() {
+        this.instructionCount++;
+    }
+
+    /**
+     * Called on the simulator thread while re-executing, after an instruction located at a breakpoint completes.
+     */
+    void breakpointReached() {
+        this.lastBreakpointCount = this.instructionCount;
+    }
+
+    private void takeSnapshot() {
+        synchronized (Application.MEMORY_AND_REGISTERS_LOCK) {
+            this.snapshots.add(new Snapshot(this.instructionCount, this.inputLog.getPosition(), this.simulator.getVirtualClock().getElapsedNanos(), this.simulator.getBreakpointHitCounts()));
+            Memory.getInstance().clearPageJournal();
+            this.nextSnapshotCount = this.instructionCount + this.snapshotInterval;
+            // Stay within the memory limit by giving up the oldest history, but always keep one snapshot
+            while (this.savedPageBytes + this.inputLog.getLength() > this.memoryLimit && this.snapshots.size() > 1) {
+                this.savedPageBytes -= getSavedBytes(this.snapshots.remove(0));
+            }
+            this.discardUnreachableInput();
+        }
+    }
+
+    /**
+     * Discard the input logged before the oldest snapshot, which can no longer be replayed.
+     */
+    private void discardUnreachableInput() {
+        int start = this.snapshots.get(0).inputPosition;
+        if (start > 0) {
+            this.inputLog.discardBefore(start);
+            for (Snapshot snapshot : this.snapshots) {
+                snapshot.inputPosition -= start;
+            }
+            this.storeCheckPosition = -1;
+        }
+    }
+
+    private static long getSavedBytes(Snapshot snapshot) {
+        long bytes = 0;
+        for (SavedPage page : snapshot.pages) {
+            if (page.contents != null) {
+                bytes += (long) page.contents.length * Memory.BYTES_PER_WORD;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public void pageModified(Memory.DataRegion region, int pageIndex, int[] contents) {
+        if (!this.snapshots.isEmpty()) {
+            this.snapshots.get(this.snapshots.size() - 1).pages.add(new SavedPage(region, pageIndex, contents));
+            if (contents != null) {
+                this.savedPageBytes += (long) contents.length * Memory.BYTES_PER_WORD;
+            }
+        }
+    }
+
+    @Override
+    public void mappingsModified(Memory.DataRegion region, List<Memory.DataRegion.Mapping> mappings) {
+        if (!this.snapshots.isEmpty()) {
+            this.snapshots.get(this.snapshots.size() - 1).mappings.add(new SavedMappings(region, mappings));
+        }
+    }
+
+    @Override
+    public void memoryWritten(int address, int length, int value, int wordAddress, int wordValue) {
+        // Writes made by the program itself are reproduced by re-executing it
+        if (!this.tracking || Thread.currentThread() instanceof SimulatorThread) {
+            return;
+        }
+        // The log belongs to the simulator thread, which adds the store before the next instruction
+        synchronized (this.pendingStores) {
+            this.pendingStores.add(new InputLog.Store(0, wordAddress, wordValue));
+            this.storesPending = true;
+        }
+    }
+
+    private void logPendingStores() {
+        synchronized (this.pendingStores) {
+            for (InputLog.Store store : this.pendingStores) {
+                // Input arriving while replaying changes what happens next, which the log detects
+                this.inputLog.recordStore(this.instructionCount, store.address(), store.value());
+            }
+            this.pendingStores.clear();
+            this.storesPending = false;
+        }
+    }
+
+    private void applyStores() {
+        if (this.inputLog.getPosition() != this.storeCheckPosition) {
+            this.storeCheckPosition = this.inputLog.getPosition();
+            this.nextStoreCount = this.inputLog.getNextStoreCount();
+        }
+        if (this.instructionCount < this.nextStoreCount) {
+            return;
+        }
+        synchronized (Application.MEMORY_AND_REGISTERS_LOCK) {
+            while (this.inputLog.getNextStoreCount() <= this.instructionCount) {
+                InputLog.Store store = this.inputLog.nextStore();
+                try {
+                    Memory.getInstance().storeWord(store.address(), store.value(), false);
+                }
+                catch (Exception exception) {
+                    // The address was valid when it was recorded, so this should not occur
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget everything recorded after the current state, which is called when execution diverges from the
+     * recording. The log position is left alone, since the input log truncates itself.
+     */
+    private void discardFuture() {
+        this.frontier = this.instructionCount;
+        this.storeCheckPosition = -1;
+    }
+
+    /**
+     * Stop moving through the history as soon as the current stretch of re-execution completes, leaving the state
+     * wherever it has reached. This is called by {@link Simulator#pause()} and {@link Simulator#terminate()}
+     * while {@link Simulator#travel(Runnable, Runnable)} is in progress.
+     */
+    void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Allow moving through the history again after {@link #cancel()}.
+     */
+    void resetCancellation() {
+        this.cancelled = false;
+    }
+
+    /**
+     * Move to the state after a given number of instructions have executed since the history began,
+     * by restoring the nearest earlier snapshot and re-executing forward if necessary.
+     * This must only be called while the simulator is not running, and blocks until the state is reached
+     * or {@link #cancel()} is called. Listeners are not notified of the re-executed instructions.
+     *
+     * @param target The instruction count to move to, which is clamped to the range from
+     *               {@link #getEarliestInstruction()} to {@link #getLatestInstruction()}.
+     * @return The instruction count actually reached, which is less than <code>target</code> only if the
+     *         program stopped while re-executing.
+     */
+    public synchronized long goToInstruction(long target) {
+        if (!this.active) {
+            return this.instructionCount;
+        }
+        this.frontier = this.getLatestInstruction();
+        target = Math.max(this.getEarliestInstruction(), Math.min(target, this.frontier));
+        if (target < this.instructionCount) {
+            this.restore(this.findSnapshot(target));
+        }
+        this.runForward(target, null);
+        return this.instructionCount;
+    }
+
+    /**
+     * Move backward to the most recent point at which the simulator would have paused for one of the given
+     * breakpoints, i.e. just after an instruction located at a breakpoint was executed.
+     * This must only be called while the simulator is not running, and blocks until the state is reached
+     * or {@link #cancel()} is called.
+     *
+     * @param breakpoints The addresses of the breakpoints.
+     * @return <code>true</code> if a breakpoint was found, or <code>false</code> if none was found,
+     *         in which case the state is moved to {@link #getEarliestInstruction()}.
+     */
+    public boolean reverseContinue(int[] breakpoints) {
+        return this.reverseContinue(breakpoints, false);
+    }
+
+    /**
+     * Move backward to the most recent point at which one of the given breakpoints was reached.
+     * This must only be called while the simulator is not running, and blocks until the state is reached
+     * or {@link #cancel()} is called.
+     *
+     * @param breakpoints      The addresses of the breakpoints.
+     * @param beforeBreakpoint <code>true</code> to stop just before an instruction located at a breakpoint is
+     *                         executed (as debuggers such as GDB expect), or <code>false</code> to stop just after
+     *                         it is executed (as the simulator does when running forward).
+     * @return <code>true</code> if a breakpoint was found, or <code>false</code> if none was found,
+     *         in which case the state is moved to {@link #getEarliestInstruction()}.
+     */
+    public synchronized boolean reverseContinue(int[] breakpoints, boolean beforeBreakpoint) {
+        if (!this.canGoBack()) {
+            return false;
+        }
+        int[] sortedBreakpoints = (breakpoints == null) ? new int[0] : breakpoints.clone();
+        Arrays.sort(sortedBreakpoints);
+        long origin = this.instructionCount;
+        // Stop short of the origin when stopping after breakpoints, since the breakpoint there (if any) is the one
+        // being reversed from; when stopping before them, the instruction leading to the origin may be one
+        long limit = beforeBreakpoint ? origin : origin - 1;
+        this.frontier = this.getLatestInstruction();
+        // Search one interval at a time, newest first, since each interval only needs to be re-executed once
+        for (int index = this.findSnapshot(limit - 1); index >= 0 && !this.cancelled; index--) {
+            long end = (index + 1 < this.snapshots.size()) ? Math.min(this.snapshots.get(index + 1).instructionCount, limit) : limit;
+            this.restore(index);
+            this.lastBreakpointCount = -1;
+            this.runForward(end, sortedBreakpoints);
+            if (this.lastBreakpointCount >= 0 && this.lastBreakpointCount <= limit) {
+                this.goToInstruction(beforeBreakpoint ? this.lastBreakpointCount - 1 : this.lastBreakpointCount);
+                return true;
+            }
+        }
+        if (!this.cancelled) {
+            this.goToInstruction(this.getEarliestInstruction());
+        }
+        return false;
+    }
+
+    private int findSnapshot(long target) {
+        int index = this.snapshots.size() - 1;
+        while (index > 0 && this.snapshots.get(index).instructionCount > target) {
+            index--;
+        }
+        return index;
+    }
+
+    private void restore(int index) {
+        synchronized (Application.MEMORY_AND_REGISTERS_LOCK) {
+            // Undo each interval, newest first, so the oldest saved copy of each page is the one left in place
+            for (int current = this.snapshots.size() - 1; current >= index; current--) {
+                Snapshot snapshot = this.snapshots.get(current);
+                for (SavedPage page : snapshot.pages) {
+                    page.region.restorePage(page.pageIndex, page.contents);
+                }
+                for (SavedMappings saved : snapshot.mappings) {
+                    saved.region.restoreMappings(saved.mappings);
+                }
+                this.savedPageBytes -= getSavedBytes(snapshot);
+                if (current > index) {
+                    this.snapshots.remove(current);
+                }
+                else {
+                    // The interval starts over from its snapshot, which is kept
+                    snapshot.pages.clear();
+                    snapshot.mappings.clear();
+                }
+            }
+            Snapshot snapshot = this.snapshots.get(index);
+            snapshot.registers.restore();
+            Memory.getInstance().setNextHeapAddress(snapshot.nextHeapAddress);
+            Memory.getInstance().getReservationTable().clear();
+            Memory.getInstance().clearPageJournal();
+            this.instructionCount = snapshot.instructionCount;
+            this.nextSnapshotCount = snapshot.instructionCount + this.snapshotInterval;
+            this.inputLog.setPosition(snapshot.inputPosition);
+            this.simulator.getVirtualClock().setElapsedNanos(snapshot.elapsedNanos);
+            this.simulator.setBreakpointHitCounts(snapshot.hitCounts);
+        }
+    }
+
+    private void runForward(long target, int[] breakpoints) {
+        while (this.instructionCount < target && !this.cancelled) {
+            long before = this.instructionCount;
+            this.simulator.reexecute((int) Math.min(target - before, Integer.MAX_VALUE), breakpoints);
+            if (this.instructionCount == before) {
+                // The program stopped, which can only happen if execution diverged from the recording
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package mars.simulator;
+
+import java.util.Locale;
+
+/**
+ * Simulated clock which the time, sleep, and synchronous MIDI syscalls use in place of the host clock when enabled.
+ * Simulated time advances by a fixed number of nanoseconds for every instruction executed and by the full length of
+ * every sleep or note requested, none of which makes the simulator thread wait. Programs which animate, play music,
+ * or measure their own running time therefore finish as fast as they can be simulated, and always observe the same
+ * times regardless of how busy the host is.
+ * <p>
+ * Devices which measure time in instructions, such as the keyboard and display MMIO simulator, already agree with
+ * this clock. The elapsed time is saved and restored with the rest of the machine state by {@link TimeTravel}.
+ */
+public class VirtualClock {
+    /**
+     * Default length of an instruction in nanoseconds, which is roughly how long the simulator takes per instruction.
+     */
+    public static final long DEFAULT_NANOS_PER_INSTRUCTION = 10;
+
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    private boolean enabled;
+    private long nanosPerInstruction;
+    private long startMillis;
+    private long elapsedNanos;
+
+    /**
+     * Create a new clock, which is initially disabled and starts at the beginning of the Unix epoch.
+     */
+    public VirtualClock() {
+        this.enabled = false;
+        this.nanosPerInstruction = DEFAULT_NANOS_PER_INSTRUCTION;
+        this.startMillis = 0;
+        this.elapsedNanos = 0;
+    }
+
+    /**
+     * Apply options given as a comma-separated list. Valid items are:
+     * <ul>
+     * <li><code>ns=&lt;n&gt;</code> -- the number of nanoseconds each instruction takes.
+     * <li><code>start=&lt;ms&gt;</code> -- the time reported when the program starts, in milliseconds since
+     *     the Unix epoch.
+     * </ul>
+     *
+     * @param options The options to apply.
+     * @throws IllegalArgumentException Thrown if an item is unrecognized or its value is invalid.
+     */
+    public void configure(String options) {
+        for (String option : options.split(",")) {
+            option = option.strip();
+            if (option.isEmpty()) {
+                continue;
+            }
+            int separator = option.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("expected <key>=<value>: " + option);
+            }
+            String key = option.substring(0, separator).strip().toLowerCase(Locale.ROOT);
+            String value = option.substring(separator + 1).strip();
+            try {
+                switch (key) {
+                    case "ns" -> this.setNanosPerInstruction(Long.parseLong(value));
+                    case "start" -> this.setStartMillis(Long.parseLong(value));
+                    default -> throw new IllegalArgumentException("unrecognized option: " + option);
+                }
+            }
+            catch (NumberFormatException exception) {
+                throw new IllegalArgumentException("invalid number: " + option);
+            }
+        }
+    }
+
+    /**
+     * Determine whether the syscalls use this clock instead of the host clock.
+     *
+     * @return <code>true</code> if the clock is enabled, or <code>false</code> otherwise.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Enable or disable the clock. The change applies from the next time the simulator runs.
+     *
+     * @param enabled <code>true</code> to use simulated time instead of host time.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Get the number of nanoseconds each instruction takes.
+     *
+     * @return The length of an instruction in nanoseconds.
+     */
+    public long getNanosPerInstruction() {
+        return this.nanosPerInstruction;
+    }
+
+    /**
+     * Set the number of nanoseconds each instruction takes.
+     *
+     * @param nanosPerInstruction The length of an instruction in nanoseconds, which may be zero to count only sleeps.
+     * @throws IllegalArgumentException Thrown if the length is negative.
+     */
+    public void setNanosPerInstruction(long nanosPerInstruction) {
+        if (nanosPerInstruction < 0) {
+            throw new IllegalArgumentException("negative instruction time: " + nanosPerInstruction);
+        }
+        this.nanosPerInstruction = nanosPerInstruction;
+    }
+
+    /**
+     * Get the time reported when the program starts.
+     *
+     * @return The starting time in milliseconds since the Unix epoch.
+     */
+    public long getStartMillis() {
+        return this.startMillis;
+    }
+
+    /**
+     * Set the time reported when the program starts.
+     *
+     * @param startMillis The starting time in milliseconds since the Unix epoch.
+     */
+    public void setStartMillis(long startMillis) {
+        this.startMillis = startMillis;
+    }
+
+    /**
+     * Get the time elapsed since the program started.
+     *
+     * @return The elapsed simulated time in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return this.elapsedNanos;
+    }
+
+    /**
+     * Set the time elapsed since the program started, such as when returning to an earlier state.
+     *
+     * @param elapsedNanos The elapsed simulated time in nanoseconds.
+     */
+    public void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Get the current simulated time, as the time syscall reports it.
+     *
+     * @return The current time in milliseconds since the Unix epoch.
+     */
+    public long currentTimeMillis() {
+        return this.startMillis + this.elapsedNanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Advance the clock as if the program waited, without actually waiting.
+     *
+     * @param millis The length of the wait in milliseconds. Negative lengths are ignored.
+     */
+    public void sleep(long millis) {
+        if (millis > 0) {
+            this.elapsedNanos += millis * NANOS_PER_MILLI;
+        }
+    }
+
+    /**
+     * Return the clock to the time the program starts. This is called by {@link Simulator#reset()}.
+     */
+    public void reset() {
+        this.elapsedNanos = 0;
+    }
+
+    /**
+     * Called on the simulator thread, while holding {@link mars.Application#MEMORY_AND_REGISTERS_LOCK},
+     * once an instruction has completed.
+     */
+    void instructionCompleted() {
+        this.elapsedNanos += this.nanosPerInstruction;
+    }
+}
@@ -0,0 +1,405 @@
+package mars.simulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An in-memory file system which can take the place of the host file system for the file syscalls
+ * (see {@link SystemIO#setFileSystem(VirtualFileSystem)}). Input files are preloaded from byte arrays, and files
+ * the program writes are kept in memory, where they can be read back once the program finishes. The program cannot
+ * reach any file on the host, and files left by one run do not leak into the next if each run is given a new
+ * instance. This does not make concurrent runs possible, since the simulator and {@link SystemIO} are singletons
+ * which run one program at a time.
+ * <p>
+ * File names are plain strings: they are normalized as paths but not resolved against any working directory, so
+ * <code>data.txt</code>, <code>./data.txt</code>, and <code>dir/../data.txt</code> all name the same file.
+ * An optional quota limits the total size of all files; a write which would exceed it fails as a write to a full
+ * disk would.
+ */
+public class VirtualFileSystem {
+    private static class VirtualFile {
+        private byte[] data;
+        private int size;
+        private boolean modified;
+
+        private VirtualFile(byte[] data, boolean modified) {
+            this.data = data;
+            this.size = data.length;
+            this.modified = modified;
+        }
+    }
+
+    private final Map<String, VirtualFile> files;
+    private long sizeQuota;
+    private long totalSize;
+    private Path saveDirectory;
+
+    /**
+     * Create a new, empty file system with no quota.
+     */
+    public VirtualFileSystem() {
+        this.files = new TreeMap<>();
+        this.sizeQuota = Long.MAX_VALUE;
+        this.totalSize = 0;
+        this.saveDirectory = null;
+    }
+
+    /**
+     * Apply options given as a comma-separated list. Valid items are:
+     * <ul>
+     * <li><code>quota=&lt;bytes&gt;</code> -- limit the total size of all files.
+     * <li><code>load=&lt;host file&gt;</code> -- add a copy of a host file under its file name, without any
+     *     directory. May be given more than once.
+     * <li><code>save=&lt;directory&gt;</code> -- the host directory to copy files created or modified by the program
+     *     to when {@link #saveModifiedFiles()} is called.
+     * </ul>
+     *
+     * @param options The options to apply.
+     * @throws IllegalArgumentException Thrown if an item is unrecognized, its value is invalid, or a file to load
+     *         cannot be read.
+     */
+    public void configure(String options) {
+        for (String option : options.split(",")) {
+            option = option.strip();
+            if (option.isEmpty()) {
+                continue;
+            }
+            int separator = option.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("expected <key>=<value>: " + option);
+            }
+            String key = option.substring(0, separator).strip().toLowerCase(Locale.ROOT);
+            String value = option.substring(separator + 1).strip();
+            switch (key) {
+                case "quota" -> {
+                    try {
+                        this.setSizeQuota(Long.parseLong(value));
+                    }
+                    catch (NumberFormatException exception) {
+                        throw new IllegalArgumentException("invalid size: " + option);
+                    }
+                }
+                case "load" -> {
+                    Path path = Path.of(value);
+                    try {
+                        this.addFile(path.getFileName().toString(), Files.readAllBytes(path));
+                    }
+                    catch (IOException exception) {
+                        throw new IllegalArgumentException("unable to read " + value);
+                    }
+                }
+                case "save" -> this.saveDirectory = Path.of(value);
+                default -> throw new IllegalArgumentException("unrecognized option: " + option);
+            }
+        }
+    }
+
+    /**
+     * Limit the total size of all files. Files already larger than the quota are kept, but cannot grow.
+     *
+     * @param sizeQuota The maximum total size in bytes, or {@link Long#MAX_VALUE} for no limit.
+     * @throws IllegalArgumentException Thrown if the quota is negative.
+     */
+    public synchronized void setSizeQuota(long sizeQuota) {
+        if (sizeQuota < 0) {
+            throw new IllegalArgumentException("negative quota: " + sizeQuota);
+        }
+        this.sizeQuota = sizeQuota;
+    }
+
+    /**
+     * Get the limit on the total size of all files.
+     *
+     * @return The maximum total size in bytes, or {@link Long#MAX_VALUE} for no limit.
+     */
+    public synchronized long getSizeQuota() {
+        return this.sizeQuota;
+    }
+
+    /**
+     * Get the total size of all files.
+     *
+     * @return The total size in bytes.
+     */
+    public synchronized long getTotalSize() {
+        return this.totalSize;
+    }
+
+    /**
+     * Add a file, replacing any file with the same name. Files added this way do not count as modified.
+     * The quota does not apply.
+     *
+     * @param name     The name of the file.
+     * @param contents The contents of the file, which are copied.
+     */
+    public synchronized void addFile(String name, byte[] contents) {
+        VirtualFile previous = this.files.put(normalize(name), new VirtualFile(contents.clone(), false));
+        if (previous != null) {
+            this.totalSize -= previous.size;
+        }
+        this.totalSize += contents.length;
+    }
+
+    /**
+     * Get the contents of a file.
+     *
+     * @param name The name of the file.
+     * @return A copy of the contents of the file, or <code>null</code> if there is no such file.
+     */
+    public synchronized byte[] getFile(String name) {
+        VirtualFile file = this.files.get(normalize(name));
+        return (file == null) ? null : Arrays.copyOf(file.data, file.size);
+    }
+
+    /**
+     * Get the names of all files, in sorted order.
+     *
+     * @return The normalized names of the files.
+     */
+    public synchronized List<String> getFileNames() {
+        return new ArrayList<>(this.files.keySet());
+    }
+
+    /**
+     * Get the names of the files created or written to by the program, in sorted order.
+     *
+     * @return The normalized names of the modified files.
+     */
+    public synchronized List<String> getModifiedFileNames() {
+        List<String> names = new ArrayList<>();
+        for (Map.Entry<String, VirtualFile> entry : this.files.entrySet()) {
+            if (entry.getValue().modified) {
+                names.add(entry.getKey());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Get the host directory given by the <code>save</code> option, if any.
+     *
+     * @return The directory to save modified files to, or <code>null</code> if none was given.
+     */
+    public Path getSaveDirectory() {
+        return this.saveDirectory;
+    }
+
+    /**
+     * Copy every file created or modified by the program to the directory given by the <code>save</code> option,
+     * replacing any host files with the same names. Does nothing if no directory was given.
+     *
+     * @return The number of files saved.
+     * @throws IOException Thrown if a file could not be written.
+     */
+    public int saveModifiedFiles() throws IOException {
+        if (this.saveDirectory == null) {
+            return 0;
+        }
+        List<String> names = this.getModifiedFileNames();
+        for (String name : names) {
+            // Keep the program from writing outside the directory through names such as ../file
+            Path path = this.saveDirectory.resolve(name.replaceFirst("^/+", "")).normalize();
+            if (!path.startsWith(this.saveDirectory.normalize())) {
+                throw new IOException("file name " + name + " is outside of " + this.saveDirectory);
+            }
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Files.write(path, this.getFile(name));
+        }
+        return names.size();
+    }
+
+    /**
+     * Open a file as {@link java.nio.channels.FileChannel#open(Path, Set, java.nio.file.attribute.FileAttribute[])}
+     * would. The options {@link StandardOpenOption#READ}, {@link StandardOpenOption#WRITE},
+     * {@link StandardOpenOption#APPEND}, {@link StandardOpenOption#CREATE}, {@link StandardOpenOption#CREATE_NEW},
+     * and {@link StandardOpenOption#TRUNCATE_EXISTING} are supported.
+     *
+     * @param name    The name of the file.
+     * @param options The options specifying how to open the file.
+     * @return A channel for reading and/or writing the file.
+     * @throws IOException Thrown if the file does not exist and is not to be created, or exists and must not.
+     */
+    public synchronized SeekableByteChannel open(String name, Set<? extends OpenOption> options) throws IOException {
+        boolean append = options.contains(StandardOpenOption.APPEND);
+        boolean write = append || options.contains(StandardOpenOption.WRITE);
+        boolean read = options.contains(StandardOpenOption.READ) || !write;
+        boolean createNew = write && options.contains(StandardOpenOption.CREATE_NEW);
+        boolean create = createNew || (write && options.contains(StandardOpenOption.CREATE));
+
+        String key = normalize(name);
+        VirtualFile file = this.files.get(key);
+        if (file == null) {
+            if (!create) {
+                throw new NoSuchFileException(name);
+            }
+            file = new VirtualFile(new byte[0], true);
+            this.files.put(key, file);
+        }
+        else if (createNew) {
+            throw new FileAlreadyExistsException(name);
+        }
+        if (write && options.contains(StandardOpenOption.TRUNCATE_EXISTING) && file.size > 0) {
+            this.totalSize -= file.size;
+            file.size = 0;
+            file.modified = true;
+        }
+        return new VirtualFileChannel(file, read, write, append);
+    }
+
+    private static String normalize(String name) {
+        String normalized = Path.of(name).normalize().toString().replace('\\', '/');
+        return normalized.isEmpty() ? "." : normalized;
+    }
+
+    /**
+     * A channel for a file in this file system, with its own position.
+     */
+    private class VirtualFileChannel implements SeekableByteChannel {
+        private final VirtualFile file;
+        private final boolean readable;
+        private final boolean writable;
+        private final boolean append;
+        private long position;
+        private boolean open;
+
+        private VirtualFileChannel(VirtualFile file, boolean readable, boolean writable, boolean append) {
+            this.file = file;
+            this.readable = readable;
+            this.writable = writable;
+            this.append = append;
+            this.position = 0;
+            this.open = true;
+        }
+
+        @Override
+        public int read(ByteBuffer destination) throws IOException {
+            this.ensureOpen();
+            if (!this.readable) {
+                throw new NonReadableChannelException();
+            }
+            synchronized (VirtualFileSystem.this) {
+                if (this.position >= this.file.size) {
+                    return -1;
+                }
+                int count = (int) Math.min(destination.remaining(), this.file.size - this.position);
+                destination.put(this.file.data, (int) this.position, count);
+                this.position += count;
+                return count;
+            }
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            this.ensureOpen();
+            if (!this.writable) {
+                throw new NonWritableChannelException();
+            }
+            synchronized (VirtualFileSystem.this) {
+                if (this.append) {
+                    this.position = this.file.size;
+                }
+                int count = source.remaining();
+                long end = this.position + count;
+                long growth = Math.max(0, end - this.file.size);
+                if (end > Integer.MAX_VALUE - 8) {
+                    throw new IOException("file too large");
+                }
+                if (growth > VirtualFileSystem.this.sizeQuota - VirtualFileSystem.this.totalSize) {
+                    throw new IOException("file system quota exceeded");
+                }
+                if (end > this.file.data.length) {
+                    this.file.data = Arrays.copyOf(this.file.data, (int) Math.min(Math.max(end, 2L * this.file.data.length), Integer.MAX_VALUE - 8));
+                }
+                if (this.position > this.file.size) {
+                    // Writing past the end leaves a gap of zeros, which may hold stale bytes from a truncation
+                    Arrays.fill(this.file.data, this.file.size, (int) this.position, (byte) 0);
+                }
+                source.get(this.file.data, (int) this.position, count);
+                this.position = end;
+                this.file.size = (int) Math.max(this.file.size, end);
+                this.file.modified = true;
+                VirtualFileSystem.this.totalSize += growth;
+                return count;
+            }
+        }
+
+        @Override
+        public long position() throws IOException {
+            this.ensureOpen();
+            return this.position;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            this.ensureOpen();
+            if (newPosition < 0) {
+                throw new IllegalArgumentException("negative position: " + newPosition);
+            }
+            this.position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            this.ensureOpen();
+            synchronized (VirtualFileSystem.this) {
+                return this.file.size;
+            }
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) throws IOException {
+            this.ensureOpen();
+            if (size < 0) {
+                throw new IllegalArgumentException("negative size: " + size);
+            }
+            if (!this.writable) {
+                throw new NonWritableChannelException();
+            }
+            synchronized (VirtualFileSystem.this) {
+                if (size < this.file.size) {
+                    VirtualFileSystem.this.totalSize -= this.file.size - size;
+                    this.file.size = (int) size;
+                    this.file.modified = true;
+                }
+            }
+            this.position = Math.min(this.position, size);
+            return this;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return this.open;
+        }
+
+        @Override
+        public void close() {
+            this.open = false;
+        }
+
+        private void ensureOpen() throws ClosedChannelException {
+            if (!this.open) {
+                throw new ClosedChannelException();
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package mars.simulator.branch;
+
+/**
+ * Predictor which keeps a 2-bit saturating counter per branch, selected by the low bits of the branch address.
+ */
+public class BimodalPredictor implements BranchPredictor {
+    private final SaturatingCounters counters;
+
+    /**
+     * Create a new bimodal predictor.
+     *
+     * @param entries The number of counters, which must be a power of two.
+     * @throws IllegalArgumentException Thrown if <code>entries</code> is not a power of two.
+     */
+    public BimodalPredictor(int entries) {
+        this.counters = new SaturatingCounters(entries);
+    }
+
+    @Override
+    public String getName() {
+        return "bimodal (" + this.counters.size() + ")";
+    }
+
+    @Override
+    public boolean predict(int address) {
+        return this.counters.isTaken(address >>> 2);
+    }
+
+    @Override
+    public void update(int address, boolean taken) {
+        this.counters.update(address >>> 2, taken);
+    }
+
+    @Override
+    public void reset() {
+        this.counters.reset();
+    }
+}
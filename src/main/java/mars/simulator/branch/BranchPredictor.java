@@ -0,0 +1,36 @@
+package mars.simulator.branch;
+
+/**
+ * A conditional branch direction predictor, as evaluated by {@link BranchPredictorEvaluator}.
+ * For every executed conditional branch, {@link #predict(int)} is called first, then
+ * {@link #update(int, boolean)} with the actual outcome.
+ */
+public interface BranchPredictor {
+    /**
+     * Get a short description of this predictor and its configuration, for use in reports.
+     *
+     * @return The name of this predictor.
+     */
+    String getName();
+
+    /**
+     * Predict whether a conditional branch will be taken.
+     *
+     * @param address The address of the branch instruction.
+     * @return <code>true</code> if the branch is predicted taken, or <code>false</code> otherwise.
+     */
+    boolean predict(int address);
+
+    /**
+     * Train the predictor with the actual outcome of the branch most recently predicted.
+     *
+     * @param address The address of the branch instruction.
+     * @param taken   <code>true</code> if the branch was taken, or <code>false</code> otherwise.
+     */
+    void update(int address, boolean taken);
+
+    /**
+     * Discard all learned state.
+     */
+    void reset();
+}
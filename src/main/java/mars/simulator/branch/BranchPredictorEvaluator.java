@@ -0,0 +1,362 @@
+package mars.simulator.branch;
+
+import mars.ProgramStatement;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import mars.mips.instructions.DecodedInstruction;
+import mars.simulator.ExecutionListener;
+import mars.util.Binary;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Evaluates several branch predictors side by side over the instruction stream of a single run, as an
+ * {@link ExecutionListener}. Every conditional branch is predicted and then resolved by each predictor
+ * independently, and the outcomes are tallied both overall and for each static branch.
+ * Optionally, a {@link BranchTargetBuffer} is evaluated over all taken branches and jumps.
+ * <p>
+ * Per-branch statistics are kept in primitive arrays located through an open-addressed hash index
+ * on the branch address, so evaluation does not allocate once every branch has been seen.
+ */
+public class BranchPredictorEvaluator implements ExecutionListener {
+    private static final int DEFAULT_ENTRIES = 4096;
+    private static final int DEFAULT_HISTORY_BITS = 12;
+    private static final int DEFAULT_BTB_ENTRIES = 512;
+    private static final int DEFAULT_REPORTED_BRANCHES = 20;
+    private static final int NONE = -1;
+
+    private final List<BranchPredictor> predictorList;
+    private BranchPredictor[] predictors;
+    private BranchTargetBuffer targetBuffer;
+    private int reportedBranches;
+
+    private long branchCount;
+    private long takenCount;
+    private long[] correctCounts;
+    private long targetLookups;
+    private long targetHits;
+
+    // Per-branch statistics, indexed by the order in which branches were first executed
+    private int staticBranchCount;
+    private int[] branchAddresses;
+    private long[] branchExecutions;
+    private long[] branchTaken;
+    /**
+     * Flattened as <code>branch * predictors.length + predictor</code>.
+     */
+    private long[] branchCorrect;
+    private int[] indexKeys;
+    private int[] indexValues;
+
+    /**
+     * Create a new evaluator with no predictors. Use {@link #addPredictor(BranchPredictor)},
+     * {@link #configure(String)}, or {@link #addDefaultPredictors()} to choose what to evaluate.
+     */
+    public BranchPredictorEvaluator() {
+        this.predictorList = new ArrayList<>();
+        this.targetBuffer = null;
+        this.reportedBranches = DEFAULT_REPORTED_BRANCHES;
+        this.reset();
+    }
+
+    /**
+     * Add a predictor to be evaluated, discarding all statistics gathered so far.
+     *
+     * @param predictor The predictor to add.
+     */
+    public void addPredictor(BranchPredictor predictor) {
+        this.predictorList.add(predictor);
+        this.reset();
+    }
+
+    /**
+     * Set the branch target buffer to be evaluated, discarding all statistics gathered so far.
+     *
+     * @param targetBuffer The branch target buffer, or <code>null</code> to evaluate none.
+     */
+    public void setTargetBuffer(BranchTargetBuffer targetBuffer) {
+        this.targetBuffer = targetBuffer;
+        this.reset();
+    }
+
+    /**
+     * Set the maximum number of individual branches listed by {@link #writeReport(PrintStream)}.
+     *
+     * @param reportedBranches The number of most frequently executed branches to list.
+     */
+    public void setReportedBranches(int reportedBranches) {
+        this.reportedBranches = reportedBranches;
+    }
+
+    /**
+     * Add one predictor of every family with default table sizes, along with a branch target buffer.
+     */
+    public void addDefaultPredictors() {
+        this.configure("not-taken,taken,bimodal,gshare,tournament,btb");
+    }
+
+    /**
+     * Add the predictors given as a comma-separated list. Valid items are:
+     * <ul>
+     * <li><code>taken</code>, <code>not-taken</code> -- static predictors.
+     * <li><code>bimodal[=&lt;entries&gt;]</code> -- per-address 2-bit counters.
+     * <li><code>gshare[=&lt;entries&gt;/&lt;history bits&gt;]</code> -- global history XOR address.
+     * <li><code>tournament[=&lt;entries&gt;/&lt;history bits&gt;]</code> -- bimodal and gshare with a chooser.
+     * <li><code>btb[=&lt;entries&gt;]</code> -- a branch target buffer.
+     * <li><code>top=&lt;n&gt;</code> -- the number of individual branches to list in the report.
+     * </ul>
+     * Table sizes must be powers of two, and default to 4096 entries with 12 bits of history,
+     * and 512 entries for the branch target buffer. For example: <code>bimodal=1024,gshare=4096/10,btb</code>.
+     *
+     * @param options The predictors to add.
+     * @throws IllegalArgumentException Thrown if an item is unrecognized or its value is invalid.
+     */
+    public void configure(String options) {
+        for (String option : options.split(",")) {
+            int separator = option.indexOf('=');
+            String key = (separator < 0) ? option.trim() : option.substring(0, separator).trim();
+            String[] values = (separator < 0) ? new String[0] : option.substring(separator + 1).trim().split("/");
+            switch (key.toLowerCase(Locale.ROOT)) {
+                case "taken" -> this.addPredictor(new StaticPredictor(true));
+                case "not-taken" -> this.addPredictor(new StaticPredictor(false));
+                case "bimodal" -> this.addPredictor(new BimodalPredictor(
+                    parseValue(key, values, 0, DEFAULT_ENTRIES)
+                ));
+                case "gshare" -> this.addPredictor(new GSharePredictor(
+                    parseValue(key, values, 0, DEFAULT_ENTRIES),
+                    parseValue(key, values, 1, DEFAULT_HISTORY_BITS)
+                ));
+                case "tournament" -> this.addPredictor(new TournamentPredictor(
+                    parseValue(key, values, 0, DEFAULT_ENTRIES),
+                    parseValue(key, values, 1, DEFAULT_HISTORY_BITS)
+                ));
+                case "btb" -> this.setTargetBuffer(new BranchTargetBuffer(
+                    parseValue(key, values, 0, DEFAULT_BTB_ENTRIES)
+                ));
+                case "top" -> this.setReportedBranches(parseValue(key, values, 0, DEFAULT_REPORTED_BRANCHES));
+                default -> throw new IllegalArgumentException("unknown predictor \"" + key + "\"");
+            }
+        }
+    }
+
+    private static int parseValue(String key, String[] values, int index, int defaultValue) {
+        if (index >= values.length) {
+            return defaultValue;
+        }
+        try {
+            int value = Integer.decode(values[index].trim());
+            if (value >= 0) {
+                return value;
+            }
+        }
+        catch (NumberFormatException ignored) {
+            // Handled below
+        }
+        throw new IllegalArgumentException(key + ": invalid value \"" + values[index] + "\"");
+    }
+
+    /**
+     * Discard all statistics and the learned state of every predictor.
+     */
+    public void reset() {
+        this.predictors = this.predictorList.toArray(new BranchPredictor[0]);
+        for (BranchPredictor predictor : this.predictors) {
+            predictor.reset();
+        }
+        if (this.targetBuffer != null) {
+            this.targetBuffer.reset();
+        }
+        this.branchCount = 0;
+        this.takenCount = 0;
+        this.correctCounts = new long[this.predictors.length];
+        this.targetLookups = 0;
+        this.targetHits = 0;
+        this.staticBranchCount = 0;
+        this.branchAddresses = new int[64];
+        this.branchExecutions = new long[64];
+        this.branchTaken = new long[64];
+        this.branchCorrect = new long[64 * this.predictors.length];
+        this.indexKeys = new int[128];
+        this.indexValues = new int[128];
+        Arrays.fill(this.indexValues, NONE);
+    }
+
+    @Override
+    public void instructionExecuted(int address, DecodedInstruction instruction, int memoryAddress, int nextAddress) {
+        boolean isBranch = instruction.is(DecodedInstruction.BRANCH);
+        boolean taken = nextAddress != address + 4;
+        if (isBranch) {
+            this.branchCount++;
+            int branch = this.getBranchIndex(address);
+            this.branchExecutions[branch]++;
+            if (taken) {
+                this.takenCount++;
+                this.branchTaken[branch]++;
+            }
+            int base = branch * this.predictors.length;
+            for (int index = 0; index < this.predictors.length; index++) {
+                BranchPredictor predictor = this.predictors[index];
+                if (predictor.predict(address) == taken) {
+                    this.correctCounts[index]++;
+                    this.branchCorrect[base + index]++;
+                }
+                predictor.update(address, taken);
+            }
+        }
+        if (this.targetBuffer != null && (instruction.is(DecodedInstruction.JUMP) || (isBranch && taken))) {
+            this.targetLookups++;
+            if (this.targetBuffer.predictAndUpdate(address, nextAddress)) {
+                this.targetHits++;
+            }
+        }
+    }
+
+    private static int hash(int address) {
+        int hash = (address >>> 2) * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Find the statistics slot for a branch, creating one if this is the first time it has executed.
+     */
+    private int getBranchIndex(int address) {
+        int mask = this.indexKeys.length - 1;
+        int slot = hash(address) & mask;
+        while (this.indexValues[slot] != NONE) {
+            if (this.indexKeys[slot] == address) {
+                return this.indexValues[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int branch = this.staticBranchCount++;
+        if (branch == this.branchAddresses.length) {
+            int capacity = 2 * branch;
+            this.branchAddresses = Arrays.copyOf(this.branchAddresses, capacity);
+            this.branchExecutions = Arrays.copyOf(this.branchExecutions, capacity);
+            this.branchTaken = Arrays.copyOf(this.branchTaken, capacity);
+            this.branchCorrect = Arrays.copyOf(this.branchCorrect, capacity * this.predictors.length);
+        }
+        this.branchAddresses[branch] = address;
+        if (2 * this.staticBranchCount > this.indexKeys.length) {
+            // Keep the index at most half full, rebuilding it from the per-branch arrays
+            this.indexKeys = new int[2 * this.indexKeys.length];
+            this.indexValues = new int[this.indexKeys.length];
+            Arrays.fill(this.indexValues, NONE);
+            mask = this.indexKeys.length - 1;
+            for (int existing = 0; existing <= branch; existing++) {
+                slot = hash(this.branchAddresses[existing]) & mask;
+                while (this.indexValues[slot] != NONE) {
+                    slot = (slot + 1) & mask;
+                }
+                this.indexKeys[slot] = this.branchAddresses[existing];
+                this.indexValues[slot] = existing;
+            }
+        }
+        else {
+            this.indexKeys[slot] = address;
+            this.indexValues[slot] = branch;
+        }
+        return branch;
+    }
+
+    /**
+     * Get the number of conditional branches executed so far.
+     *
+     * @return The dynamic branch count.
+     */
+    public long getBranchCount() {
+        return this.branchCount;
+    }
+
+    /**
+     * Get the number of conditional branches executed so far which were taken.
+     *
+     * @return The dynamic taken branch count.
+     */
+    public long getTakenCount() {
+        return this.takenCount;
+    }
+
+    /**
+     * Get the fraction of branches a predictor has predicted correctly so far.
+     *
+     * @param predictor The index of the predictor, in the order it was added.
+     * @return The accuracy of the predictor, or 0 if no branches have executed.
+     */
+    public double getAccuracy(int predictor) {
+        return (this.branchCount == 0) ? 0.0 : (double) this.correctCounts[predictor] / this.branchCount;
+    }
+
+    /**
+     * Write a human-readable summary of the accuracy of each predictor, overall and for the most frequently
+     * executed branches, along with the hit rate of the branch target buffer.
+     *
+     * @param out The stream to write the report to.
+     */
+    public void writeReport(PrintStream out) {
+        out.println("Branch prediction (" + this.branchCount + " conditional branches, " + this.takenCount
+            + " taken, " + this.staticBranchCount + " distinct)");
+        for (int index = 0; index < this.predictors.length; index++) {
+            out.printf("  P%-2d %7.2f%%  %s%n", index + 1, 100.0 * this.getAccuracy(index), this.predictors[index].getName());
+        }
+        if (this.targetBuffer != null) {
+            out.printf(
+                "  BTB (%d entries): %d of %d taken branch/jump targets correct (%.2f%%)%n",
+                this.targetBuffer.size(),
+                this.targetHits,
+                this.targetLookups,
+                (this.targetLookups == 0) ? 0.0 : 100.0 * this.targetHits / this.targetLookups
+            );
+        }
+        if (this.staticBranchCount == 0 || this.reportedBranches <= 0) {
+            return;
+        }
+
+        // List the most frequently executed branches first
+        Integer[] order = new Integer[this.staticBranchCount];
+        Arrays.setAll(order, index -> index);
+        Arrays.sort(order, (first, second) -> Long.compare(this.branchExecutions[second], this.branchExecutions[first]));
+        int listed = Math.min(this.reportedBranches, order.length);
+        out.println("  Most frequently executed branches (" + listed + " of " + order.length + "):");
+        StringBuilder header = new StringBuilder("    Address     Executions  Taken  ");
+        for (int index = 0; index < this.predictors.length; index++) {
+            header.append(String.format("%7s  ", "P" + (index + 1)));
+        }
+        out.println(header.append("Source"));
+        for (int rank = 0; rank < listed; rank++) {
+            int branch = order[rank];
+            long executions = this.branchExecutions[branch];
+            StringBuilder line = new StringBuilder(String.format(
+                "    %s  %10d  %4.0f%%  ",
+                Binary.intToHexString(this.branchAddresses[branch]),
+                executions,
+                100.0 * this.branchTaken[branch] / executions
+            ));
+            for (int index = 0; index < this.predictors.length; index++) {
+                line.append(String.format("%6.1f%%  ", 100.0 * this.branchCorrect[branch * this.predictors.length + index] / executions));
+            }
+            out.println(line.append(describeStatement(this.branchAddresses[branch])));
+        }
+    }
+
+    private static String describeStatement(int address) {
+        try {
+            ProgramStatement statement = Memory.getInstance().fetchStatement(address, false);
+            if (statement != null) {
+                if (statement.getSource() != null && !statement.getSource().isBlank()) {
+                    return statement.getSourceLine() + ": " + statement.getSource().trim();
+                }
+                return statement.getPrintableBasicAssemblyStatement();
+            }
+        }
+        catch (AddressErrorException ignored) {
+            // Fall through
+        }
+        return "";
+    }
+}
@@ -0,0 +1,63 @@
+package mars.simulator.branch;
+
+import java.util.Arrays;
+
+/**
+ * A direct-mapped, tagged branch target buffer, which remembers the most recent target of each taken branch
+ * or jump so that fetch can be redirected before the instruction is decoded.
+ */
+public class BranchTargetBuffer {
+    private final int[] tags;
+    private final int[] targets;
+    private final boolean[] valid;
+    private final int mask;
+
+    /**
+     * Create a new, empty branch target buffer.
+     *
+     * @param entries The number of entries, which must be a power of two.
+     * @throws IllegalArgumentException Thrown if <code>entries</code> is not a power of two.
+     */
+    public BranchTargetBuffer(int entries) {
+        if (entries <= 0 || (entries & (entries - 1)) != 0) {
+            throw new IllegalArgumentException("table size must be a power of two, found " + entries);
+        }
+        this.tags = new int[entries];
+        this.targets = new int[entries];
+        this.valid = new boolean[entries];
+        this.mask = entries - 1;
+    }
+
+    /**
+     * Get the number of entries in this buffer.
+     *
+     * @return The capacity of the buffer.
+     */
+    public int size() {
+        return this.tags.length;
+    }
+
+    /**
+     * Look up the predicted target of a control transfer, then record its actual target.
+     *
+     * @param address The address of the branch or jump instruction.
+     * @param target  The address the instruction actually transferred control to.
+     * @return <code>true</code> if the buffer held an entry for the instruction with the correct target,
+     *         or <code>false</code> otherwise.
+     */
+    public boolean predictAndUpdate(int address, int target) {
+        int slot = (address >>> 2) & this.mask;
+        boolean correct = this.valid[slot] && this.tags[slot] == address && this.targets[slot] == target;
+        this.valid[slot] = true;
+        this.tags[slot] = address;
+        this.targets[slot] = target;
+        return correct;
+    }
+
+    /**
+     * Discard all entries.
+     */
+    public void reset() {
+        Arrays.fill(this.valid, false);
+    }
+}
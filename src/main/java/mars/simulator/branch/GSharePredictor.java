@@ -0,0 +1,53 @@
+package mars.simulator.branch;
+
+/**
+ * Predictor which selects a 2-bit saturating counter by XORing the branch address with a register
+ * holding the outcomes of the most recent branches (global history), so that correlated branches
+ * and repeating patterns can be predicted.
+ */
+public class GSharePredictor implements BranchPredictor {
+    private final SaturatingCounters counters;
+    private final int historyBits;
+    private final int historyMask;
+    private int history;
+
+    /**
+     * Create a new gshare predictor.
+     *
+     * @param entries     The number of counters, which must be a power of two.
+     * @param historyBits The number of recent branch outcomes to remember, from 0 to 30.
+     * @throws IllegalArgumentException Thrown if <code>entries</code> is not a power of two,
+     *                                  or <code>historyBits</code> is out of range.
+     */
+    public GSharePredictor(int entries, int historyBits) {
+        if (historyBits < 0 || historyBits > 30) {
+            throw new IllegalArgumentException("history length must be between 0 and 30 bits, found " + historyBits);
+        }
+        this.counters = new SaturatingCounters(entries);
+        this.historyBits = historyBits;
+        this.historyMask = (1 << historyBits) - 1;
+        this.history = 0;
+    }
+
+    @Override
+    public String getName() {
+        return "gshare (" + this.counters.size() + ", " + this.historyBits + "-bit history)";
+    }
+
+    @Override
+    public boolean predict(int address) {
+        return this.counters.isTaken((address >>> 2) ^ this.history);
+    }
+
+    @Override
+    public void update(int address, boolean taken) {
+        this.counters.update((address >>> 2) ^ this.history, taken);
+        this.history = ((this.history << 1) | (taken ? 1 : 0)) & this.historyMask;
+    }
+
+    @Override
+    public void reset() {
+        this.counters.reset();
+        this.history = 0;
+    }
+}
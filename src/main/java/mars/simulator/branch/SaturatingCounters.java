@@ -0,0 +1,75 @@
+package mars.simulator.branch;
+
+import java.util.Arrays;
+
+/**
+ * A table of 2-bit saturating counters, the building block of the dynamic predictors.
+ * Counter values 0 and 1 predict not taken, 2 and 3 predict taken.
+ */
+class SaturatingCounters {
+    private static final byte WEAKLY_NOT_TAKEN = 1;
+    private static final byte STRONGLY_TAKEN = 3;
+
+    private final byte[] counters;
+    private final int mask;
+
+    /**
+     * Create a new table with every counter weakly not taken.
+     *
+     * @param entries The number of counters, which must be a power of two.
+     * @throws IllegalArgumentException Thrown if <code>entries</code> is not a power of two.
+     */
+    SaturatingCounters(int entries) {
+        if (entries <= 0 || (entries & (entries - 1)) != 0) {
+            throw new IllegalArgumentException("table size must be a power of two, found " + entries);
+        }
+        this.counters = new byte[entries];
+        this.mask = entries - 1;
+        this.reset();
+    }
+
+    /**
+     * Get the number of counters in the table.
+     *
+     * @return The table size given when the table was created.
+     */
+    int size() {
+        return this.counters.length;
+    }
+
+    /**
+     * Determine whether a counter predicts taken.
+     *
+     * @param index The index of the counter, which is reduced modulo the table size.
+     * @return <code>true</code> if the counter predicts taken, or <code>false</code> otherwise.
+     */
+    boolean isTaken(int index) {
+        return this.counters[index & this.mask] >= 2;
+    }
+
+    /**
+     * Move a counter one step toward the actual outcome of a branch, saturating at either end.
+     *
+     * @param index The index of the counter, which is reduced modulo the table size.
+     * @param taken <code>true</code> if the branch was taken, or <code>false</code> otherwise.
+     */
+    void update(int index, boolean taken) {
+        int slot = index & this.mask;
+        byte counter = this.counters[slot];
+        if (taken) {
+            if (counter < STRONGLY_TAKEN) {
+                this.counters[slot] = (byte) (counter + 1);
+            }
+        }
+        else if (counter > 0) {
+            this.counters[slot] = (byte) (counter - 1);
+        }
+    }
+
+    /**
+     * Set every counter back to weakly not taken.
+     */
+    void reset() {
+        Arrays.fill(this.counters, WEAKLY_NOT_TAKEN);
+    }
+}
@@ -0,0 +1,37 @@
+package mars.simulator.branch;
+
+/**
+ * Predictor which always makes the same prediction, regardless of history.
+ */
+public class StaticPredictor implements BranchPredictor {
+    private final boolean taken;
+
+    /**
+     * Create a new static predictor.
+     *
+     * @param taken <code>true</code> to predict every branch taken, or <code>false</code> to predict not taken.
+     */
+    public StaticPredictor(boolean taken) {
+        this.taken = taken;
+    }
+
+    @Override
+    public String getName() {
+        return this.taken ? "static taken" : "static not-taken";
+    }
+
+    @Override
+    public boolean predict(int address) {
+        return this.taken;
+    }
+
+    @Override
+    public void update(int address, boolean taken) {
+        // Nothing to learn
+    }
+
+    @Override
+    public void reset() {
+        // Nothing to forget
+    }
+}
@@ -0,0 +1,59 @@
+package mars.simulator.branch;
+
+/**
+ * Predictor which combines a {@link BimodalPredictor} and a {@link GSharePredictor}, choosing between them for
+ * each branch with a table of 2-bit saturating counters which track which component has been more accurate.
+ */
+public class TournamentPredictor implements BranchPredictor {
+    private final BimodalPredictor local;
+    private final GSharePredictor global;
+    /**
+     * Counters predicting "taken" favor the global predictor.
+     */
+    private final SaturatingCounters chooser;
+    private final int historyBits;
+
+    /**
+     * Create a new tournament predictor whose component and chooser tables all have the same size.
+     *
+     * @param entries     The number of entries in each table, which must be a power of two.
+     * @param historyBits The global history length of the gshare component, from 0 to 30.
+     * @throws IllegalArgumentException Thrown if <code>entries</code> is not a power of two,
+     *                                  or <code>historyBits</code> is out of range.
+     */
+    public TournamentPredictor(int entries, int historyBits) {
+        this.local = new BimodalPredictor(entries);
+        this.global = new GSharePredictor(entries, historyBits);
+        this.chooser = new SaturatingCounters(entries);
+        this.historyBits = historyBits;
+    }
+
+    @Override
+    public String getName() {
+        return "tournament (" + this.chooser.size() + ", " + this.historyBits + "-bit history)";
+    }
+
+    @Override
+    public boolean predict(int address) {
+        return this.chooser.isTaken(address >>> 2) ? this.global.predict(address) : this.local.predict(address);
+    }
+
+    @Override
+    public void update(int address, boolean taken) {
+        boolean localCorrect = this.local.predict(address) == taken;
+        boolean globalCorrect = this.global.predict(address) == taken;
+        if (localCorrect != globalCorrect) {
+            // Only train the chooser when the components disagree
+            this.chooser.update(address >>> 2, globalCorrect);
+        }
+        this.local.update(address, taken);
+        this.global.update(address, taken);
+    }
+
+    @Override
+    public void reset() {
+        this.local.reset();
+        this.global.reset();
+        this.chooser.reset();
+    }
+}
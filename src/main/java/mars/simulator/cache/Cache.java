@@ -0,0 +1,632 @@
+package mars.simulator.cache;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * A single level of a simulated set-associative cache. Since only cache performance is being simulated,
+ * no memory contents are stored, just the address and state of each resident block.
+ * <p>
+ * All state is kept in primitive arrays indexed by line number (<code>set * associativity + way</code>), so an
+ * access never allocates. Lookups scan the ways of a set, except for highly associative caches, which keep an
+ * open-addressed hash index from block address to line. Replacement bookkeeping is constant time for LRU
+ * (a doubly linked recency list per set) and random replacement, and logarithmic in the associativity for PLRU.
+ * <p>
+ * Misses are filled from the next level, or from memory if this is the last level. Dirty blocks are written to
+ * the next level when evicted (write-back), or every write is forwarded immediately (write-through).
+ */
+public class Cache {
+    /**
+     * Sets with at most this many ways are searched linearly rather than through the hash index.
+     */
+    private static final int LINEAR_SEARCH_WAYS = 16;
+    private static final int NONE = -1;
+
+    private final String name;
+    private final int size;
+    private final int blockSize;
+    private final int associativity;
+    private final ReplacementPolicy replacementPolicy;
+    private final boolean writeBack;
+    private final boolean writeAllocate;
+    private Cache nextLevel;
+
+    private final int blockShift;
+    private final int setMask;
+    private final int[] blockAddresses;
+    private final boolean[] dirty;
+    /**
+     * For each set, the number of ways which hold a block. Ways are filled in order, so the valid lines
+     * of a set are always the first ones.
+     */
+    private final int[] filledWays;
+    // LRU recency list per set, linked through line numbers
+    private final int[] newerLines;
+    private final int[] olderLines;
+    private final int[] mostRecentLines;
+    private final int[] leastRecentLines;
+    // PLRU tree bits per set, stored as a heap of associativity - 1 nodes starting at index 1
+    private final boolean[] treeBits;
+    private long randomState;
+    // Hash index from block address to line, used only for highly associative caches
+    private final int[] indexKeys;
+    private final int[] indexLines;
+    private final int indexMask;
+    private int lastLine;
+
+    private long reads;
+    private long writes;
+    private long readMisses;
+    private long writeMisses;
+    private long evictions;
+    private long writebacks;
+    private long memoryReads;
+    private long memoryWrites;
+
+    /**
+     * Create a new, empty cache level which is backed directly by memory.
+     *
+     * @param name              The name used to identify this level in reports, e.g. <code>L1D</code>.
+     * @param size              The capacity of the cache in bytes.
+     * @param blockSize         The size of each block in bytes.
+     * @param associativity     The number of blocks per set. Use 1 for direct mapping, or
+     *                          <code>size / blockSize</code> for full associativity.
+     * @param replacementPolicy The policy for choosing which block of a full set to evict.
+     * @param writeBack         <code>true</code> to write dirty blocks to the next level only when they are evicted,
+     *                          or <code>false</code> to write through to the next level on every write.
+     * @param writeAllocate     <code>true</code> to bring a block into the cache on a write miss,
+     *                          or <code>false</code> to forward the write to the next level without allocating.
+     * @throws IllegalArgumentException Thrown if the sizes are not powers of two or are inconsistent.
+     */
+    public Cache(String name, int size, int blockSize, int associativity, ReplacementPolicy replacementPolicy, boolean writeBack, boolean writeAllocate) {
+        if (!isPowerOfTwo(size) || !isPowerOfTwo(blockSize) || !isPowerOfTwo(associativity)) {
+            throw new IllegalArgumentException(name + ": size, block size and associativity must be powers of two");
+        }
+        if ((long) blockSize * associativity > size) {
+            throw new IllegalArgumentException(name + ": block size times associativity exceeds the cache size");
+        }
+        this.name = name;
+        this.size = size;
+        this.blockSize = blockSize;
+        this.associativity = associativity;
+        this.replacementPolicy = replacementPolicy;
+        this.writeBack = writeBack;
+        this.writeAllocate = writeAllocate;
+        this.nextLevel = null;
+
+        int lineCount = size / blockSize;
+        int setCount = lineCount / associativity;
+        this.blockShift = Integer.numberOfTrailingZeros(blockSize);
+        this.setMask = setCount - 1;
+        this.blockAddresses = new int[lineCount];
+        this.dirty = new boolean[lineCount];
+        this.filledWays = new int[setCount];
+        this.newerLines = new int[lineCount];
+        this.olderLines = new int[lineCount];
+        this.mostRecentLines = new int[setCount];
+        this.leastRecentLines = new int[setCount];
+        this.treeBits = new boolean[lineCount];
+        if (associativity > LINEAR_SEARCH_WAYS) {
+            int indexCapacity = Integer.highestOneBit(lineCount) << 2;
+            this.indexKeys = new int[indexCapacity];
+            this.indexLines = new int[indexCapacity];
+            this.indexMask = indexCapacity - 1;
+        }
+        else {
+            this.indexKeys = null;
+            this.indexLines = null;
+            this.indexMask = 0;
+        }
+        this.reset();
+    }
+
+    private static boolean isPowerOfTwo(int value) {
+        return value > 0 && (value & (value - 1)) == 0;
+    }
+
+    /**
+     * Set the cache level which misses and write-backs from this level go to.
+     *
+     * @param nextLevel The next cache level, or <code>null</code> if this level is backed directly by memory.
+     */
+    public void setNextLevel(Cache nextLevel) {
+        this.nextLevel = nextLevel;
+    }
+
+    /**
+     * Get the cache level which misses and write-backs from this level go to.
+     *
+     * @return The next cache level, or <code>null</code> if this level is backed directly by memory.
+     */
+    public Cache getNextLevel() {
+        return this.nextLevel;
+    }
+
+    /**
+     * Get the name which identifies this level in reports.
+     *
+     * @return The name given when the cache was created, e.g. <code>L1D</code>.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Get the capacity of this level.
+     *
+     * @return The size of the cache in bytes.
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Get the size of each block.
+     *
+     * @return The block size in bytes.
+     */
+    public int getBlockSize() {
+        return this.blockSize;
+    }
+
+    /**
+     * Get the number of blocks per set.
+     *
+     * @return The associativity, which is 1 for a direct-mapped cache.
+     */
+    public int getAssociativity() {
+        return this.associativity;
+    }
+
+    /**
+     * Get the policy for choosing which block of a full set to evict.
+     *
+     * @return The replacement policy.
+     */
+    public ReplacementPolicy getReplacementPolicy() {
+        return this.replacementPolicy;
+    }
+
+    /**
+     * Determine whether dirty blocks are written to the next level only when evicted.
+     *
+     * @return <code>true</code> for write-back, or <code>false</code> for write-through.
+     */
+    public boolean isWriteBack() {
+        return this.writeBack;
+    }
+
+    /**
+     * Determine whether a block is brought into the cache on a write miss.
+     *
+     * @return <code>true</code> for write-allocate, or <code>false</code> for no-write-allocate.
+     */
+    public boolean isWriteAllocate() {
+        return this.writeAllocate;
+    }
+
+    /**
+     * Get the line which holds the block of the most recent access to this level, for displaying the cache.
+     * Lines are numbered <code>set * associativity + way</code>. If the most recent access spanned multiple blocks,
+     * this is the line of the last one.
+     *
+     * @return The line number, or -1 if there has been no access since the last reset or the most recent access
+     *         was a write miss which did not allocate a line.
+     */
+    public int getLastLine() {
+        return this.lastLine;
+    }
+
+    /**
+     * Empty the cache and discard all statistics.
+     */
+    public void reset() {
+        Arrays.fill(this.dirty, false);
+        Arrays.fill(this.filledWays, 0);
+        Arrays.fill(this.treeBits, false);
+        for (int set = 0; set < this.filledWays.length; set++) {
+            int firstLine = set * this.associativity;
+            int lastLine = firstLine + this.associativity - 1;
+            for (int line = firstLine; line <= lastLine; line++) {
+                this.newerLines[line] = (line == firstLine) ? NONE : line - 1;
+                this.olderLines[line] = (line == lastLine) ? NONE : line + 1;
+            }
+            this.mostRecentLines[set] = firstLine;
+            this.leastRecentLines[set] = lastLine;
+        }
+        if (this.indexLines != null) {
+            Arrays.fill(this.indexLines, NONE);
+        }
+        this.randomState = 0x2545F4914F6CDD1DL;
+        this.lastLine = NONE;
+        this.reads = 0;
+        this.writes = 0;
+        this.readMisses = 0;
+        this.writeMisses = 0;
+        this.evictions = 0;
+        this.writebacks = 0;
+        this.memoryReads = 0;
+        this.memoryWrites = 0;
+    }
+
+    /**
+     * Simulate an access to a range of bytes, which may span multiple blocks.
+     *
+     * @param address The address of the first byte accessed.
+     * @param length  The number of bytes accessed.
+     * @param write   <code>true</code> for a write, or <code>false</code> for a read.
+     * @return <code>true</code> if every block accessed was a hit, or <code>false</code> if any missed.
+     */
+    public boolean access(int address, int length, boolean write) {
+        int firstBlock = address >>> this.blockShift;
+        int lastBlock = (address + Math.max(length, 1) - 1) >>> this.blockShift;
+        boolean hit = this.accessBlock(firstBlock, write);
+        for (int block = firstBlock + 1; block - 1 != lastBlock; block++) {
+            hit &= this.accessBlock(block, write);
+        }
+        return hit;
+    }
+
+    /**
+     * Simulate an access to the block containing a given address.
+     *
+     * @param address Any address within the block accessed.
+     * @param write   <code>true</code> for a write, or <code>false</code> for a read.
+     * @return <code>true</code> if the access was a hit, or <code>false</code> if it missed.
+     */
+    public boolean access(int address, boolean write) {
+        return this.accessBlock(address >>> this.blockShift, write);
+    }
+
+    private boolean accessBlock(int block, boolean write) {
+        int set = block & this.setMask;
+        int line = this.findLine(set, block);
+        if (write) {
+            this.writes++;
+        }
+        else {
+            this.reads++;
+        }
+
+        if (line != NONE) {
+            this.lastLine = line;
+            this.touch(set, line);
+            if (write) {
+                this.write(line, block);
+            }
+            return true;
+        }
+
+        if (write) {
+            this.writeMisses++;
+            if (!this.writeAllocate) {
+                this.lastLine = NONE;
+                this.writeToNextLevel(block);
+                return false;
+            }
+        }
+        else {
+            this.readMisses++;
+        }
+
+        line = this.allocate(set, block);
+        this.lastLine = line;
+        if (this.nextLevel != null) {
+            this.nextLevel.access(block << this.blockShift, false);
+        }
+        else {
+            this.memoryReads++;
+        }
+        if (write) {
+            this.write(line, block);
+        }
+        return false;
+    }
+
+    private void write(int line, int block) {
+        if (this.writeBack) {
+            this.dirty[line] = true;
+        }
+        else {
+            this.writeToNextLevel(block);
+        }
+    }
+
+    private void writeToNextLevel(int block) {
+        if (this.nextLevel != null) {
+            this.nextLevel.access(block << this.blockShift, true);
+        }
+        else {
+            this.memoryWrites++;
+        }
+    }
+
+    private int findLine(int set, int block) {
+        if (this.indexLines != null) {
+            for (int slot = hash(block) & this.indexMask; this.indexLines[slot] != NONE; slot = (slot + 1) & this.indexMask) {
+                if (this.indexKeys[slot] == block) {
+                    return this.indexLines[slot];
+                }
+            }
+            return NONE;
+        }
+        int firstLine = set * this.associativity;
+        int endLine = firstLine + this.filledWays[set];
+        for (int line = firstLine; line < endLine; line++) {
+            if (this.blockAddresses[line] == block) {
+                return line;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Choose a line in the given set for a new block, evicting its current block if necessary.
+     */
+    private int allocate(int set, int block) {
+        int line;
+        if (this.filledWays[set] < this.associativity) {
+            // Use an empty way before evicting anything
+            line = set * this.associativity + this.filledWays[set]++;
+        }
+        else {
+            line = this.chooseVictim(set);
+            this.evictions++;
+            if (this.dirty[line]) {
+                this.writebacks++;
+                this.writeToNextLevel(this.blockAddresses[line]);
+            }
+            if (this.indexLines != null) {
+                this.removeFromIndex(this.blockAddresses[line]);
+            }
+        }
+        this.blockAddresses[line] = block;
+        this.dirty[line] = false;
+        if (this.indexLines != null) {
+            this.addToIndex(block, line);
+        }
+        this.touch(set, line);
+        return line;
+    }
+
+    private int chooseVictim(int set) {
+        return switch (this.replacementPolicy) {
+            case LRU -> this.leastRecentLines[set];
+            case PLRU -> {
+                int base = set * this.associativity;
+                int node = 1;
+                while (node < this.associativity) {
+                    node = 2 * node + (this.treeBits[base + node] ? 1 : 0);
+                }
+                yield base + node - this.associativity;
+            }
+            case RANDOM -> {
+                // xorshift64*, which is plenty for spreading evictions and is reproducible between runs
+                this.randomState ^= this.randomState >>> 12;
+                this.randomState ^= this.randomState << 25;
+                this.randomState ^= this.randomState >>> 27;
+                int way = (int) ((this.randomState * 0x2545F4914F6CDD1DL) >>> 32) & (this.associativity - 1);
+                yield set * this.associativity + way;
+            }
+        };
+    }
+
+    /**
+     * Update the replacement state to reflect an access to the given line.
+     */
+    private void touch(int set, int line) {
+        switch (this.replacementPolicy) {
+            case LRU -> {
+                int mostRecent = this.mostRecentLines[set];
+                if (line == mostRecent) {
+                    return;
+                }
+                // Unlink the line, which cannot be the most recent one
+                int newer = this.newerLines[line];
+                int older = this.olderLines[line];
+                this.olderLines[newer] = older;
+                if (older == NONE) {
+                    this.leastRecentLines[set] = newer;
+                }
+                else {
+                    this.newerLines[older] = newer;
+                }
+                // Relink it at the front
+                this.newerLines[line] = NONE;
+                this.olderLines[line] = mostRecent;
+                this.newerLines[mostRecent] = line;
+                this.mostRecentLines[set] = line;
+            }
+            case PLRU -> {
+                // Point every node on the path to this way away from it
+                int base = set * this.associativity;
+                int leaf = this.associativity + line - base;
+                while (leaf > 1) {
+                    this.treeBits[base + (leaf >>> 1)] = (leaf & 1) == 0;
+                    leaf >>>= 1;
+                }
+            }
+            case RANDOM -> {
+                // No replacement state to update
+            }
+        }
+    }
+
+    private static int hash(int block) {
+        int hash = block * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private void addToIndex(int block, int line) {
+        int slot = hash(block) & this.indexMask;
+        while (this.indexLines[slot] != NONE) {
+            slot = (slot + 1) & this.indexMask;
+        }
+        this.indexKeys[slot] = block;
+        this.indexLines[slot] = line;
+    }
+
+    private void removeFromIndex(int block) {
+        int slot = hash(block) & this.indexMask;
+        while (this.indexKeys[slot] != block || this.indexLines[slot] == NONE) {
+            slot = (slot + 1) & this.indexMask;
+        }
+        // Backward-shift deletion keeps probe sequences intact without tombstones
+        int next = slot;
+        while (true) {
+            next = (next + 1) & this.indexMask;
+            if (this.indexLines[next] == NONE) {
+                break;
+            }
+            int home = hash(this.indexKeys[next]) & this.indexMask;
+            boolean homeInRange = (slot <= next) ? (slot < home && home <= next) : (slot < home || home <= next);
+            if (!homeInRange) {
+                this.indexKeys[slot] = this.indexKeys[next];
+                this.indexLines[slot] = this.indexLines[next];
+                slot = next;
+            }
+        }
+        this.indexLines[slot] = NONE;
+    }
+
+    /**
+     * Get the number of block reads made to this level, including fills requested by the level above.
+     *
+     * @return The read count.
+     */
+    public long getReads() {
+        return this.reads;
+    }
+
+    /**
+     * Get the number of block writes made to this level, including write-backs and write-throughs
+     * from the level above.
+     *
+     * @return The write count.
+     */
+    public long getWrites() {
+        return this.writes;
+    }
+
+    /**
+     * Get the total number of block accesses made to this level.
+     *
+     * @return The number of reads plus the number of writes.
+     */
+    public long getAccesses() {
+        return this.reads + this.writes;
+    }
+
+    /**
+     * Get the number of reads which missed.
+     *
+     * @return The read miss count.
+     */
+    public long getReadMisses() {
+        return this.readMisses;
+    }
+
+    /**
+     * Get the number of writes which missed.
+     *
+     * @return The write miss count.
+     */
+    public long getWriteMisses() {
+        return this.writeMisses;
+    }
+
+    /**
+     * Get the total number of accesses which missed.
+     *
+     * @return The number of read misses plus the number of write misses.
+     */
+    public long getMisses() {
+        return this.readMisses + this.writeMisses;
+    }
+
+    /**
+     * Get the total number of accesses which hit.
+     *
+     * @return The number of accesses minus the number of misses.
+     */
+    public long getHits() {
+        return this.getAccesses() - this.getMisses();
+    }
+
+    /**
+     * Get the number of valid blocks evicted to make room for another block.
+     *
+     * @return The eviction count.
+     */
+    public long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * Get the number of dirty blocks written to the next level when evicted.
+     *
+     * @return The write-back count, which is always 0 for a write-through cache.
+     */
+    public long getWritebacks() {
+        return this.writebacks;
+    }
+
+    /**
+     * Get the number of blocks read from memory, which is only nonzero for the last level.
+     *
+     * @return The number of memory reads.
+     */
+    public long getMemoryReads() {
+        return this.memoryReads;
+    }
+
+    /**
+     * Get the number of writes sent to memory, which is only nonzero for the last level.
+     *
+     * @return The number of memory writes.
+     */
+    public long getMemoryWrites() {
+        return this.memoryWrites;
+    }
+
+    /**
+     * Get the fraction of accesses which missed.
+     *
+     * @return The miss rate, or 0 if there have been no accesses.
+     */
+    public double getMissRate() {
+        long accesses = this.getAccesses();
+        return (accesses == 0) ? 0.0 : (double) this.getMisses() / accesses;
+    }
+
+    /**
+     * Write a human-readable summary of the configuration and statistics of this level.
+     *
+     * @param out The stream to write the report to.
+     */
+    public void writeReport(PrintStream out) {
+        out.println(this.name + " (" + formatSize(this.size) + ", " + this.blockSize + "-byte blocks, "
+            + (this.associativity == 1 ? "direct-mapped" : this.associativity + "-way") + ", "
+            + this.replacementPolicy.getIdentifier() + ", "
+            + (this.writeBack ? "write-back" : "write-through") + ", "
+            + (this.writeAllocate ? "write-allocate" : "no-write-allocate") + ")");
+        out.println("  Accesses:   " + this.getAccesses() + " (" + this.reads + " reads, " + this.writes + " writes)");
+        out.println("  Hits:       " + this.getHits());
+        out.println("  Misses:     " + this.getMisses() + " (" + this.readMisses + " read, " + this.writeMisses + " write)");
+        out.printf("  Miss rate:  %.2f%%%n", 100.0 * this.getMissRate());
+        out.println("  Evictions:  " + this.evictions);
+        out.println("  Writebacks: " + this.writebacks);
+    }
+
+    private static String formatSize(int bytes) {
+        if (bytes % (1024 * 1024) == 0) {
+            return bytes / (1024 * 1024) + " MiB";
+        }
+        else if (bytes % 1024 == 0) {
+            return bytes / 1024 + " KiB";
+        }
+        else {
+            return bytes + " B";
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package mars.simulator.cache;
+
+import mars.mips.instructions.DecodedInstruction;
+import mars.simulator.ExecutionListener;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * A multi-level cache hierarchy which runs alongside the functional simulator as an {@link ExecutionListener}:
+ * split level 1 instruction and data caches, backed by an optional unified level 2 cache, backed by memory.
+ * Every instruction fetch is simulated in the instruction cache, and every load and store in the data cache.
+ * <p>
+ * Memory accesses performed on behalf of the program by syscalls are not simulated.
+ */
+public class CacheHierarchy implements ExecutionListener {
+    private String instructionSpecification;
+    private String dataSpecification;
+    private String unifiedSpecification;
+    private boolean writeBack;
+    private boolean writeAllocate;
+
+    private Cache instructionCache;
+    private Cache dataCache;
+    private Cache unifiedCache;
+
+    /**
+     * Create a new cache hierarchy with a 16 KiB 2-way instruction cache, a 16 KiB 4-way data cache (both with
+     * 32-byte blocks), and a 256 KiB 8-way level 2 cache with 64-byte blocks, all using LRU replacement,
+     * write-back, and write-allocate.
+     */
+    public CacheHierarchy() {
+        this.instructionSpecification = "16K/32/2";
+        this.dataSpecification = "16K/32/4";
+        this.unifiedSpecification = "256K/64/8";
+        this.writeBack = true;
+        this.writeAllocate = true;
+        this.build();
+    }
+
+    /**
+     * Apply configuration options given as a comma-separated list of <code>key=value</code> pairs, then rebuild
+     * the hierarchy in its empty state. Valid keys are:
+     * <ul>
+     * <li><code>l1i</code>, <code>l1d</code>, <code>l2</code> -- the geometry of a level, as
+     *     <code>&lt;size&gt;/&lt;block size&gt;/&lt;ways&gt;[/&lt;policy&gt;]</code>, where sizes are in bytes and may
+     *     have a <code>K</code> or <code>M</code> suffix, and the policy is <code>lru</code> (default),
+     *     <code>plru</code>, or <code>random</code>. Use <code>none</code> to omit a level; without an instruction
+     *     cache, instruction fetches are not simulated.
+     * <li><code>write</code> -- <code>back</code> or <code>through</code>, for the data and level 2 caches.
+     * <li><code>allocate</code> -- <code>on</code> or <code>off</code>, whether write misses allocate a block.
+     * </ul>
+     * For example: <code>l1d=8K/16/1,l2=none,write=through</code>.
+     *
+     * @param options The options to apply.
+     * @throws IllegalArgumentException Thrown if an option is unrecognized or its value is invalid.
+     */
+    public void configure(String options) {
+        for (String option : options.split(",")) {
+            int separator = option.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("expected key=value, found \"" + option + "\"");
+            }
+            String key = option.substring(0, separator).trim().toLowerCase(Locale.ROOT);
+            String value = option.substring(separator + 1).trim();
+            switch (key) {
+                case "l1i" -> this.instructionSpecification = value;
+                case "l1d" -> this.dataSpecification = value;
+                case "l2" -> this.unifiedSpecification = value;
+                case "write" -> {
+                    if (value.equalsIgnoreCase("back")) {
+                        this.writeBack = true;
+                    }
+                    else if (value.equalsIgnoreCase("through")) {
+                        this.writeBack = false;
+                    }
+                    else {
+                        throw new IllegalArgumentException("write must be back or through, found \"" + value + "\"");
+                    }
+                }
+                case "allocate" -> {
+                    if (value.equalsIgnoreCase("on") || value.equalsIgnoreCase("true")) {
+                        this.writeAllocate = true;
+                    }
+                    else if (value.equalsIgnoreCase("off") || value.equalsIgnoreCase("false")) {
+                        this.writeAllocate = false;
+                    }
+                    else {
+                        throw new IllegalArgumentException("allocate must be on or off, found \"" + value + "\"");
+                    }
+                }
+                default -> throw new IllegalArgumentException("unknown option \"" + key + "\"");
+            }
+        }
+        this.build();
+    }
+
+    private void build() {
+        if (this.dataSpecification.equalsIgnoreCase("none")) {
+            throw new IllegalArgumentException("the data cache cannot be omitted");
+        }
+        this.instructionCache = this.createCache("L1I", this.instructionSpecification);
+        this.dataCache = this.createCache("L1D", this.dataSpecification);
+        this.unifiedCache = this.createCache("L2", this.unifiedSpecification);
+        if (this.instructionCache != null) {
+            this.instructionCache.setNextLevel(this.unifiedCache);
+        }
+        this.dataCache.setNextLevel(this.unifiedCache);
+    }
+
+    private Cache createCache(String name, String specification) {
+        if (specification.equalsIgnoreCase("none")) {
+            return null;
+        }
+        String[] parts = specification.split("/");
+        if (parts.length < 3 || parts.length > 4) {
+            throw new IllegalArgumentException(name + " must be <size>/<block size>/<ways>[/<policy>], found \"" + specification + "\"");
+        }
+        ReplacementPolicy policy = ReplacementPolicy.LRU;
+        if (parts.length == 4) {
+            policy = ReplacementPolicy.fromIdentifier(parts[3].trim());
+            if (policy == null) {
+                throw new IllegalArgumentException(name + ": unknown replacement policy \"" + parts[3] + "\"");
+            }
+        }
+        return new Cache(
+            name,
+            parseSize(name, parts[0]),
+            parseSize(name, parts[1]),
+            parseSize(name, parts[2]),
+            policy,
+            this.writeBack,
+            this.writeAllocate
+        );
+    }
+
+    private static int parseSize(String name, String value) {
+        String number = value.trim().toUpperCase(Locale.ROOT);
+        int multiplier = 1;
+        if (number.endsWith("K")) {
+            multiplier = 1024;
+            number = number.substring(0, number.length() - 1);
+        }
+        else if (number.endsWith("M")) {
+            multiplier = 1024 * 1024;
+            number = number.substring(0, number.length() - 1);
+        }
+        try {
+            return Math.multiplyExact(Integer.decode(number), multiplier);
+        }
+        catch (NumberFormatException | ArithmeticException exception) {
+            throw new IllegalArgumentException(name + ": invalid size \"" + value + "\"");
+        }
+    }
+
+    /**
+     * Get the level 1 instruction cache.
+     *
+     * @return The instruction cache, or <code>null</code> if instruction fetches are not simulated.
+     */
+    public Cache getInstructionCache() {
+        return this.instructionCache;
+    }
+
+    /**
+     * Get the level 1 data cache.
+     *
+     * @return The data cache.
+     */
+    public Cache getDataCache() {
+        return this.dataCache;
+    }
+
+    /**
+     * Get the unified level 2 cache.
+     *
+     * @return The level 2 cache, or <code>null</code> if there is none.
+     */
+    public Cache getUnifiedCache() {
+        return this.unifiedCache;
+    }
+
+    /**
+     * Empty every level and discard all statistics.
+     */
+    public void reset() {
+        for (Cache cache : new Cache[] { this.instructionCache, this.dataCache, this.unifiedCache }) {
+            if (cache != null) {
+                cache.reset();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void instructionExecuted(int address, DecodedInstruction instruction, int memoryAddress, int nextAddress) {
+        if (this.instructionCache != null) {
+            this.instructionCache.access(address, false);
+        }
+        int accessSize = instruction.getMemoryAccessSize();
+        if (accessSize > 0) {
+            // Accesses may straddle two blocks when blocks are smaller than the access, or for lwl/lwr/swl/swr
+            this.dataCache.access(memoryAddress, accessSize, instruction.is(DecodedInstruction.STORE));
+        }
+    }
+
+    /**
+     * Write a human-readable summary of the configuration and statistics of every level,
+     * followed by the resulting memory traffic.
+     *
+     * @param out The stream to write the report to.
+     */
+    public void writeReport(PrintStream out) {
+        long memoryReads = 0;
+        long memoryWrites = 0;
+        for (Cache cache : new Cache[] { this.instructionCache, this.dataCache, this.unifiedCache }) {
+            if (cache != null) {
+                cache.writeReport(out);
+                memoryReads += cache.getMemoryReads();
+                memoryWrites += cache.getMemoryWrites();
+            }
+        }
+        out.println("Memory");
+        out.println("  Block reads: " + memoryReads);
+        out.println("  Writes:      " + memoryWrites);
+    }
+}
@@ -0,0 +1,50 @@
+package mars.simulator.cache;
+
+/**
+ * Policies for choosing which block of a full set to evict on a cache miss.
+ */
+public enum ReplacementPolicy {
+    /**
+     * Evict the least recently used block, tracked exactly with a recency list per set.
+     */
+    LRU("lru"),
+    /**
+     * Evict a block chosen by tree-based pseudo-LRU, which approximates LRU using one bit per internal tree node.
+     * Requires the associativity to be a power of two.
+     */
+    PLRU("plru"),
+    /**
+     * Evict a block chosen uniformly at random from a reproducible pseudo-random sequence.
+     */
+    RANDOM("random");
+
+    private final String identifier;
+
+    ReplacementPolicy(String identifier) {
+        this.identifier = identifier;
+    }
+
+    /**
+     * Get the name used to select this policy in configuration strings.
+     *
+     * @return The identifier of this policy, in lowercase.
+     */
+    public String getIdentifier() {
+        return this.identifier;
+    }
+
+    /**
+     * Find the policy with the given identifier, ignoring case.
+     *
+     * @param identifier The identifier to search for.
+     * @return The matching policy, or <code>null</code> if there is none.
+     */
+    public static ReplacementPolicy fromIdentifier(String identifier) {
+        for (ReplacementPolicy policy : values()) {
+            if (policy.identifier.equalsIgnoreCase(identifier)) {
+                return policy;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,182 @@
+package mars.simulator.gdb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The packet layer of the GDB remote serial protocol over a pair of byte streams, such as those of a socket.
+ * Packets have the form <code>$<i>data</i>#<i>checksum</i></code>, and each one received is acknowledged with
+ * <code>+</code> (or <code>-</code> if its checksum is wrong) until no-acknowledgment mode is started.
+ * <p>
+ * Incoming bytes are read on a separate thread, so that an interrupt request (a lone <code>0x03</code> byte) is
+ * noticed while the simulator is running, even though no packets are being processed at that time.
+ * Packet data is represented as ISO-8859-1 strings, so binary data passes through unchanged.
+ */
+public class GdbConnection {
+    private static final int INTERRUPT = 0x03;
+    // Marks the end of the stream in the packet queue
+    private static final String END_OF_STREAM = new String("");
+
+    private final InputStream input;
+    private final OutputStream output;
+    private final BlockingQueue<String> packets;
+    private volatile boolean interruptRequested;
+    private volatile boolean acknowledging;
+    private volatile IOException readException;
+
+    /**
+     * Create a new connection and begin reading from the input stream.
+     *
+     * @param input  The stream of bytes sent by GDB.
+     * @param output The stream of bytes to send to GDB.
+     */
+    public GdbConnection(InputStream input, OutputStream output) {
+        this.input = new BufferedInputStream(input);
+        this.output = new BufferedOutputStream(output);
+        this.packets = new LinkedBlockingQueue<>();
+        this.interruptRequested = false;
+        this.acknowledging = true;
+        this.readException = null;
+        Thread readerThread = new Thread(this::readPackets, "GDB connection reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Wait for the next packet from GDB.
+     *
+     * @return The data of the packet, or <code>null</code> if the connection was closed.
+     * @throws IOException Thrown if reading from the connection failed.
+     */
+    public String receivePacket() throws IOException {
+        String packet;
+        try {
+            packet = this.packets.take();
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        if (packet == END_OF_STREAM) {
+            // Leave the marker for any later calls
+            this.packets.add(END_OF_STREAM);
+            if (this.readException != null) {
+                throw this.readException;
+            }
+            return null;
+        }
+        return packet;
+    }
+
+    /**
+     * Send a packet to GDB.
+     *
+     * @param data The data of the packet, which must not contain any characters which need escaping.
+     * @throws IOException Thrown if writing to the connection failed.
+     */
+    public synchronized void sendPacket(String data) throws IOException {
+        byte[] bytes = data.getBytes(StandardCharsets.ISO_8859_1);
+        int checksum = 0;
+        for (byte value : bytes) {
+            checksum += value & 0xFF;
+        }
+        this.output.write('$');
+        this.output.write(bytes);
+        this.output.write('#');
+        this.output.write(Character.forDigit((checksum >> 4) & 0xF, 16));
+        this.output.write(Character.forDigit(checksum & 0xF, 16));
+        this.output.flush();
+    }
+
+    /**
+     * Stop acknowledging packets, as requested by GDB with <code>QStartNoAckMode</code>.
+     * The packet which requested it is still acknowledged.
+     */
+    public void stopAcknowledging() {
+        this.acknowledging = false;
+    }
+
+    /**
+     * Determine whether GDB has requested an interrupt since the last call to {@link #clearInterrupt()}.
+     *
+     * @return <code>true</code> if GDB has asked to stop the program.
+     */
+    public boolean isInterruptRequested() {
+        return this.interruptRequested;
+    }
+
+    /**
+     * Forget any interrupt requested by GDB.
+     */
+    public void clearInterrupt() {
+        this.interruptRequested = false;
+    }
+
+    /**
+     * Close both streams of the connection.
+     */
+    public void close() {
+        try {
+            this.input.close();
+        }
+        catch (IOException ignored) {
+            // The connection is being discarded anyway
+        }
+        try {
+            this.output.close();
+        }
+        catch (IOException ignored) {
+            // The connection is being discarded anyway
+        }
+    }
+
+    private void readPackets() {
+        try {
+            StringBuilder data = new StringBuilder();
+            int value;
+            while ((value = this.input.read()) >= 0) {
+                if (value == INTERRUPT) {
+                    this.interruptRequested = true;
+                    continue;
+                }
+                if (value != '$') {
+                    // Acknowledgments from GDB and stray bytes are ignored, since the stream is reliable
+                    continue;
+                }
+                data.setLength(0);
+                int checksum = 0;
+                while ((value = this.input.read()) >= 0 && value != '#') {
+                    data.append((char) value);
+                    checksum += value;
+                }
+                int high = this.input.read();
+                int low = this.input.read();
+                if (value < 0 || low < 0) {
+                    break;
+                }
+                boolean valid = Character.digit(high, 16) * 16 + Character.digit(low, 16) == (checksum & 0xFF);
+                if (this.acknowledging) {
+                    synchronized (this) {
+                        this.output.write(valid ? '+' : '-');
+                        this.output.flush();
+                    }
+                }
+                if (valid) {
+                    this.packets.add(data.toString());
+                }
+            }
+        }
+        catch (IOException exception) {
+            this.readException = exception;
+        }
+        finally {
+            this.packets.add(END_OF_STREAM);
+        }
+    }
+}
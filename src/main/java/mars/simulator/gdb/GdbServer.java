@@ -0,0 +1,625 @@
+package mars.simulator.gdb;
+
+import mars.Application;
+import mars.ProcessingException;
+import mars.Program;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Coprocessor0;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.RegisterFile;
+import mars.mips.instructions.DecodedInstruction;
+import mars.simulator.ExecutionListener;
+import mars.simulator.Simulator;
+import mars.simulator.SimulatorFinishEvent;
+import mars.simulator.SimulatorListener;
+import mars.simulator.TimeTravel;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * A stub for the GDB remote serial protocol, which lets GDB (or any front end which speaks the protocol) debug
+ * an assembled program without the graphical interface. It supports reading and writing registers and memory,
+ * breakpoints, watchpoints, single-stepping, continuing, and interrupting a running program. When
+ * {@link TimeTravel} is enabled, reverse stepping and reverse continuing are supported as well.
+ * <p>
+ * Registers use the standard numbering of GDB for 32-bit MIPS: <code>$0</code>-<code>$31</code>, then
+ * <code>status</code>, <code>lo</code>, <code>hi</code>, <code>badvaddr</code>, <code>cause</code>,
+ * <code>pc</code>, <code>$f0</code>-<code>$f31</code>, <code>fcsr</code>, and <code>fir</code>. A target
+ * description is also provided so GDB does not need to be told the architecture. Memory is transferred with the
+ * block operations of {@link Memory}, so a large dump costs a single packet rather than one access per word.
+ * <p>
+ * Breakpoints stop the program just before the instruction at their address executes, as GDB expects (unlike
+ * breakpoints set in the graphical interface). Watchpoints stop the program just after an instruction loads or
+ * stores a watched address; memory accessed by syscalls does not trigger them. The simulated program is the only
+ * thread, and its standard input and output remain those of MARS.
+ */
+public class GdbServer implements ExecutionListener {
+    private static final int MAX_PACKET_SIZE = 0x4000;
+
+    private static final int GPR_COUNT = 32;
+    private static final int STATUS_REGISTER = 32;
+    private static final int LO_REGISTER = 33;
+    private static final int HI_REGISTER = 34;
+    private static final int BADVADDR_REGISTER = 35;
+    private static final int CAUSE_REGISTER = 36;
+    private static final int PC_REGISTER = 37;
+    private static final int FIRST_FPR = 38;
+    private static final int FCSR_REGISTER = 70;
+    private static final int FIR_REGISTER = 71;
+    private static final int REGISTER_COUNT = 72;
+
+    // Bit positions of condition flags 0-7 within fcsr
+    private static final int[] CONDITION_FLAG_BITS = { 23, 25, 26, 27, 28, 29, 30, 31 };
+
+    // Signal numbers reported in stop replies
+    private static final int SIGINT = 2;
+    private static final int SIGTRAP = 5;
+    private static final int SIGSEGV = 11;
+
+    private static final int WATCH_WRITE = 2;
+    private static final int WATCH_READ = 3;
+    private static final int WATCH_ACCESS = 4;
+
+    private static final String TARGET_DESCRIPTION = """
+        <?xml version="1.0"?>
+        <!DOCTYPE target SYSTEM "gdb-target.dtd">
+        <target version="1.0">
+          <architecture>mips</architecture>
+          <feature name="org.gnu.gdb.mips.cpu">
+        %s    <reg name="lo" bitsize="32" regnum="33"/>
+            <reg name="hi" bitsize="32" regnum="34"/>
+            <reg name="pc" bitsize="32" regnum="37" type="code_ptr"/>
+          </feature>
+          <feature name="org.gnu.gdb.mips.cp0">
+            <reg name="status" bitsize="32" regnum="32"/>
+            <reg name="badvaddr" bitsize="32" regnum="35"/>
+            <reg name="cause" bitsize="32" regnum="36"/>
+          </feature>
+          <feature name="org.gnu.gdb.mips.fpu">
+        %s    <reg name="fcsr" bitsize="32" group="float" regnum="70"/>
+            <reg name="fir" bitsize="32" group="float" regnum="71"/>
+          </feature>
+        </target>
+        """;
+
+    private record Watchpoint(int type, int address, int length) {}
+
+    private final Program program;
+    private final PrintStream log;
+    private final ByteOrder byteOrder;
+    private final TreeSet<Integer> breakpointSet;
+    private final List<Watchpoint> watchpoints;
+    private GdbConnection connection;
+    private int[] breakpoints;
+    private Watchpoint[] watchpointArray;
+    private String lastStopReply;
+    // The program counter when the program last stopped, or null if it has not stopped since the server started
+    private Integer stoppedAddress;
+    private boolean exited;
+
+    // Written on the simulator thread while running
+    private volatile String stopReply;
+    private volatile SimulatorFinishEvent finishEvent;
+
+    /**
+     * Create a new server for a program which has already been assembled and whose program counter has been
+     * initialized.
+     *
+     * @param program The program to debug.
+     * @param log     The stream to report the status of the server and runtime errors to.
+     */
+    public GdbServer(Program program, PrintStream log) {
+        this.program = program;
+        this.log = log;
+        this.byteOrder = Memory.getInstance().getEndianness().getByteOrder();
+        this.breakpointSet = new TreeSet<>();
+        this.watchpoints = new ArrayList<>();
+        this.breakpoints = new int[0];
+        this.watchpointArray = new Watchpoint[0];
+        this.lastStopReply = "S" + toHexByte(SIGTRAP);
+        this.stoppedAddress = null;
+        this.exited = false;
+    }
+
+    /**
+     * Wait for GDB to connect to a TCP port on the loopback interface, then serve it until it detaches,
+     * kills the program, or disconnects.
+     *
+     * @param port The port to listen on, or 0 to choose any free port.
+     * @throws IOException Thrown if the port could not be opened or the connection failed.
+     */
+    public void serve(int port) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, 1, InetAddress.getLoopbackAddress())) {
+            this.log.println("Waiting for GDB to connect on " + serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort() + "...");
+            this.log.flush();
+            try (Socket socket = serverSocket.accept()) {
+                socket.setTcpNoDelay(true);
+                this.serve(new GdbConnection(socket.getInputStream(), socket.getOutputStream()));
+            }
+        }
+    }
+
+    /**
+     * Serve GDB over an existing connection until it detaches, kills the program, or disconnects.
+     * If GDB detaches, the program is resumed without breakpoints and this method returns once it stops.
+     *
+     * @param connection The connection to GDB.
+     * @throws IOException Thrown if the connection failed.
+     */
+    public void serve(GdbConnection connection) throws IOException {
+        this.connection = connection;
+        SimulatorListener listener = new SimulatorListener() {
+            @Override
+            public void simulatorFinished(SimulatorFinishEvent event) {
+                GdbServer.this.finishEvent = event;
+            }
+        };
+        Simulator.getInstance().addThreadListener(listener);
+        try {
+            boolean detached = false;
+            String packet;
+            while (!detached && (packet = connection.receivePacket()) != null) {
+                if (packet.equals("k")) {
+                    break;
+                }
+                if (packet.equals("D") || packet.startsWith("D;")) {
+                    connection.sendPacket("OK");
+                    detached = true;
+                    break;
+                }
+                connection.sendPacket(this.handlePacket(packet));
+            }
+            connection.close();
+            if (detached && !this.exited) {
+                this.log.println("GDB detached; resuming the program.");
+                this.breakpointSet.clear();
+                this.watchpoints.clear();
+                this.updateTriggers();
+                this.resume(-1);
+            }
+        }
+        finally {
+            Simulator.getInstance().removeThreadListener(listener);
+            Simulator.getInstance().removeExecutionListener(this);
+        }
+    }
+
+    private String handlePacket(String packet) throws IOException {
+        if (packet.isEmpty()) {
+            return "";
+        }
+        try {
+            return switch (packet.charAt(0)) {
+                case '?' -> this.lastStopReply;
+                case 'g' -> this.readRegisters();
+                case 'G' -> this.writeRegisters(packet.substring(1));
+                case 'p' -> this.readRegister(Integer.parseInt(packet.substring(1), 16));
+                case 'P' -> this.writeRegister(packet.substring(1));
+                case 'm' -> this.readMemory(packet.substring(1));
+                case 'M' -> this.writeMemory(packet.substring(1), false);
+                case 'X' -> this.writeMemory(packet.substring(1), true);
+                case 'c' -> this.resume(packet.substring(1), -1);
+                case 's' -> this.resume(packet.substring(1), 1);
+                case 'b' -> this.reverse(packet);
+                case 'Z', 'z' -> this.changeTrigger(packet);
+                case 'H', 'T' -> "OK";
+                case 'q' -> this.query(packet);
+                case 'Q' -> this.setOption(packet);
+                default -> "";
+            };
+        }
+        catch (NumberFormatException | IndexOutOfBoundsException exception) {
+            // Malformed packet
+            return "E01";
+        }
+    }
+
+    private String query(String packet) {
+        if (packet.startsWith("qSupported")) {
+            String features = "PacketSize=" + Integer.toHexString(MAX_PACKET_SIZE) + ";QStartNoAckMode+;qXfer:features:read+";
+            if (Simulator.getInstance().getTimeTravel().isEnabled()) {
+                features += ";ReverseContinue+;ReverseStep+";
+            }
+            return features;
+        }
+        if (packet.startsWith("qXfer:features:read:target.xml:")) {
+            String[] range = packet.substring("qXfer:features:read:target.xml:".length()).split(",");
+            int offset = Integer.parseInt(range[0], 16);
+            int length = Integer.parseInt(range[1], 16);
+            String description = getTargetDescription();
+            if (offset >= description.length()) {
+                return "l";
+            }
+            int end = Math.min(description.length(), offset + Math.min(length, MAX_PACKET_SIZE / 2));
+            return ((end == description.length()) ? "l" : "m") + escapeBinary(description.substring(offset, end));
+        }
+        return switch (packet) {
+            case "qC" -> "QC1";
+            case "qAttached" -> "1";
+            case "qfThreadInfo" -> "m1";
+            case "qsThreadInfo" -> "l";
+            case "qSymbol::" -> "OK";
+            default -> "";
+        };
+    }
+
+    private String setOption(String packet) {
+        if (packet.equals("QStartNoAckMode")) {
+            this.connection.stopAcknowledging();
+            return "OK";
+        }
+        return "";
+    }
+
+    private String readRegisters() {
+        StringBuilder reply = new StringBuilder(REGISTER_COUNT * 8);
+        for (int number = 0; number < REGISTER_COUNT; number++) {
+            this.appendHexWord(reply, this.getRegisterValue(number));
+        }
+        return reply.toString();
+    }
+
+    private String writeRegisters(String data) {
+        synchronized (Application.MEMORY_AND_REGISTERS_LOCK) {
+            for (int number = 0; number < REGISTER_COUNT && (number + 1) * 8 <= data.length(); number++) {
+                this.setRegisterValue(number, this.parseHexWord(data, number * 8));
+            }
+        }
+        return "OK";
+    }
+
+    private String readRegister(int number) {
+        if (number < 0 || number >= REGISTER_COUNT) {
+            return "E00";
+        }
+        StringBuilder reply = new StringBuilder(8);
+        this.appendHexWord(reply, this.getRegisterValue(number));
+        return reply.toString();
+    }
+
+    private String writeRegister(String arguments) {
+        int separator = arguments.indexOf('=');
+        int number = Integer.parseInt(arguments.substring(0, separator), 16);
+        if (number < 0 || number >= REGISTER_COUNT) {
+            return "E00";
+        }
+        synchronized (Application.MEMORY_AND_REGISTERS_LOCK) {
+            this.setRegisterValue(number, this.parseHexWord(arguments, separator + 1));
+        }
+        return "OK";
+    }
+
+    private int getRegisterValue(int number) {
+        if (number < GPR_COUNT) {
+            return RegisterFile.getValue(number);
+        }
+        if (number >= FIRST_FPR && number < FIRST_FPR + 32) {
+            return Coprocessor1.getValue(number - FIRST_FPR);
+        }
+        return switch (number) {
+            case STATUS_REGISTER -> Coprocessor0.getValue(Coprocessor0.STATUS);
+            case LO_REGISTER -> RegisterFile.getLowOrder();
+            case HI_REGISTER -> RegisterFile.getHighOrder();
+            case BADVADDR_REGISTER -> Coprocessor0.getValue(Coprocessor0.VADDR);
+            case CAUSE_REGISTER -> Coprocessor0.getValue(Coprocessor0.CAUSE);
+            case PC_REGISTER -> RegisterFile.getProgramCounter();
+            case FCSR_REGISTER -> {
+                int fcsr = 0;
+                for (int flag = 0; flag < CONDITION_FLAG_BITS.length; flag++) {
+                    fcsr |= Coprocessor1.getConditionFlag(flag) << CONDITION_FLAG_BITS[flag];
+                }
+                yield fcsr;
+            }
+            // Implementation register: single and double precision are implemented
+            case FIR_REGISTER -> 0x00030000;
+            default -> 0;
+        };
+    }
+
+    private void setRegisterValue(int number, int value) {
+        if (number < GPR_COUNT) {
+            RegisterFile.updateRegister(number, value);
+        }
+        else if (number >= FIRST_FPR && number < FIRST_FPR + 32) {
+            Coprocessor1.updateRegister(number - FIRST_FPR, value);
+        }
+        else {
+            switch (number) {
+                case STATUS_REGISTER -> Coprocessor0.updateRegister(Coprocessor0.STATUS, value);
+                case LO_REGISTER -> RegisterFile.setLowOrder(value);
+                case HI_REGISTER -> RegisterFile.setHighOrder(value);
+                case BADVADDR_REGISTER -> Coprocessor0.updateRegister(Coprocessor0.VADDR, value);
+                case CAUSE_REGISTER -> Coprocessor0.updateRegister(Coprocessor0.CAUSE, value);
+                case PC_REGISTER -> RegisterFile.setProgramCounter(value);
+                case FCSR_REGISTER -> {
+                    for (int flag = 0; flag < CONDITION_FLAG_BITS.length; flag++) {
+                        if ((value >> CONDITION_FLAG_BITS[flag] & 1) != 0) {
+                            Coprocessor1.setConditionFlag(flag);
+                        }
+                        else {
+                            Coprocessor1.clearConditionFlag(flag);
+                        }
+                    }
+                }
+                default -> {
+                    // Read-only registers are left alone
+                }
+            }
+        }
+    }
+
+    private String readMemory(String arguments) {
+        int separator = arguments.indexOf(',');
+        int address = Integer.parseUnsignedInt(arguments.substring(0, separator), 16);
+        int length = Math.min(Integer.parseInt(arguments.substring(separator + 1), 16), MAX_PACKET_SIZE / 2);
+        byte[] bytes = new byte[length];
+        try {
+            Memory.getInstance().fetchBytes(address, bytes, 0, length);
+        }
+        catch (AddressErrorException exception) {
+            // GDB accepts a partial read up to the first unmapped byte
+            length = exception.getAddress() - address;
+            if (length <= 0) {
+                return "E14";
+            }
+        }
+        StringBuilder reply = new StringBuilder(length * 2);
+        for (int index = 0; index < length; index++) {
+            reply.append(toHexByte(bytes[index]));
+        }
+        return reply.toString();
+    }
+
+    private String writeMemory(String arguments, boolean binary) {
+        int separator = arguments.indexOf(',');
+        int colon = arguments.indexOf(':');
+        int address = Integer.parseUnsignedInt(arguments.substring(0, separator), 16);
+        int length = Integer.parseInt(arguments.substring(separator + 1, colon), 16);
+        byte[] bytes;
+        if (binary) {
+            bytes = unescapeBinary(arguments.substring(colon + 1));
+        }
+        else {
+            bytes = new byte[length];
+            for (int index = 0; index < length; index++) {
+                bytes[index] = (byte) Integer.parseInt(arguments.substring(colon + 1 + index * 2, colon + 3 + index * 2), 16);
+            }
+        }
+        if (bytes.length != length) {
+            return "E01";
+        }
+        try {
+            synchronized (Application.MEMORY_AND_REGISTERS_LOCK) {
+                Memory.getInstance().storeBytes(address, bytes, 0, length);
+            }
+        }
+        catch (AddressErrorException exception) {
+            return "E14";
+        }
+        return "OK";
+    }
+
+    private String changeTrigger(String packet) {
+        boolean insert = packet.charAt(0) == 'Z';
+        String[] fields = packet.substring(1).split("[,;]");
+        int type = Integer.parseInt(fields[0]);
+        int address = Integer.parseUnsignedInt(fields[1], 16);
+        int length = Integer.parseInt(fields[2], 16);
+        if (type == 0 || type == 1) {
+            if (insert) {
+                this.breakpointSet.add(address);
+            }
+            else {
+                this.breakpointSet.remove(address);
+            }
+        }
+        else if (type >= WATCH_WRITE && type <= WATCH_ACCESS) {
+            Watchpoint watchpoint = new Watchpoint(type, address, Math.max(length, 1));
+            if (insert) {
+                this.watchpoints.add(watchpoint);
+            }
+            else {
+                this.watchpoints.remove(watchpoint);
+            }
+        }
+        else {
+            return "";
+        }
+        this.updateTriggers();
+        return "OK";
+    }
+
+    private void updateTriggers() {
+        this.breakpoints = this.breakpointSet.stream().mapToInt(Integer::intValue).toArray();
+        this.watchpointArray = this.watchpoints.toArray(new Watchpoint[0]);
+    }
+
+    private String resume(String address, int maxSteps) {
+        if (!address.isEmpty()) {
+            RegisterFile.setProgramCounter(Integer.parseUnsignedInt(address, 16));
+        }
+        int programCounter = RegisterFile.getProgramCounter();
+        if (!this.exited && Arrays.binarySearch(this.breakpoints, programCounter) >= 0
+            && (this.stoppedAddress == null || this.stoppedAddress != programCounter)) {
+            // The breakpoint was reached without stopping there, such as at the entry point or after the program
+            // counter was written, so it is reported before its instruction executes
+            this.stoppedAddress = programCounter;
+            this.lastStopReply = "S" + toHexByte(SIGTRAP);
+            return this.lastStopReply;
+        }
+        this.resume(maxSteps);
+        this.stoppedAddress = RegisterFile.getProgramCounter();
+        return this.lastStopReply;
+    }
+
+    private void resume(int maxSteps) {
+        if (this.exited) {
+            return;
+        }
+        this.stopReply = null;
+        this.finishEvent = null;
+        this.connection.clearInterrupt();
+        Simulator.getInstance().addExecutionListener(this);
+        try {
+            this.program.simulate(maxSteps);
+        }
+        catch (ProcessingException exception) {
+            // The program counter is left at the instruction which caused the exception, so the state can be
+            // examined, and continuing will raise the exception again as on real hardware
+            this.log.println(exception.getErrors().generateErrorAndWarningReport());
+            this.log.flush();
+            this.lastStopReply = "S" + toHexByte(SIGSEGV);
+            return;
+        }
+        finally {
+            Simulator.getInstance().removeExecutionListener(this);
+        }
+        SimulatorFinishEvent finishEvent = this.finishEvent;
+        if (finishEvent != null && finishEvent.getReason() != SimulatorFinishEvent.Reason.EXCEPTION) {
+            int exitCode = (finishEvent.getException() != null) ? finishEvent.getException().getExitCode() : 0;
+            this.exited = true;
+            this.lastStopReply = "W" + toHexByte(exitCode);
+        }
+        else if (this.stopReply != null) {
+            this.lastStopReply = this.stopReply;
+        }
+        else {
+            this.lastStopReply = "S" + toHexByte(SIGTRAP);
+        }
+    }
+
+    private String reverse(String packet) {
+        TimeTravel timeTravel = Simulator.getInstance().getTimeTravel();
+        if (!timeTravel.isEnabled()) {
+            return "E01";
+        }
+        if (!timeTravel.canGoBack()) {
+            // Reached the beginning of the recorded history
+            return "T" + toHexByte(SIGTRAP) + "replaylog:begin;";
+        }
+        switch (packet) {
+            case "bs" -> timeTravel.goToInstruction(timeTravel.getInstructionCount() - 1);
+            case "bc" -> {
+                if (!timeTravel.reverseContinue(this.breakpoints, true)) {
+                    return "T" + toHexByte(SIGTRAP) + "replaylog:begin;";
+                }
+            }
+            default -> {
+                return "";
+            }
+        }
+        this.stoppedAddress = RegisterFile.getProgramCounter();
+        this.lastStopReply = "S" + toHexByte(SIGTRAP);
+        return this.lastStopReply;
+    }
+
+    /**
+     * Stop the program once an instruction has executed if it reached a breakpoint or watchpoint,
+     * or if GDB asked for it to be interrupted.
+     */
+    @Override
+    public void instructionExecuted(int address, DecodedInstruction instruction, int memoryAddress, int nextAddress) {
+        if (this.stopReply != null) {
+            // Already stopping
+            return;
+        }
+        if (this.connection.isInterruptRequested()) {
+            this.stopAt("S" + toHexByte(SIGINT));
+            return;
+        }
+        if (instruction.getMemoryAccessSize() > 0) {
+            int accessEnd = memoryAddress + instruction.getMemoryAccessSize();
+            for (Watchpoint watchpoint : this.watchpointArray) {
+                boolean matches = switch (watchpoint.type) {
+                    case WATCH_WRITE -> instruction.is(DecodedInstruction.STORE);
+                    case WATCH_READ -> instruction.is(DecodedInstruction.LOAD);
+                    default -> true;
+                };
+                if (matches && Memory.rangesIntersect(memoryAddress, accessEnd - 1, watchpoint.address, watchpoint.address + watchpoint.length - 1)) {
+                    String kind = switch (watchpoint.type) {
+                        case WATCH_WRITE -> "watch";
+                        case WATCH_READ -> "rwatch";
+                        default -> "awatch";
+                    };
+                    this.stopAt("T" + toHexByte(SIGTRAP) + kind + ":" + Integer.toHexString(watchpoint.address) + ";");
+                    return;
+                }
+            }
+        }
+        // The program counter register holds the next instruction to execute, including in a delay slot
+        if (this.breakpoints.length > 0 && Arrays.binarySearch(this.breakpoints, RegisterFile.getProgramCounter()) >= 0) {
+            this.stopAt("S" + toHexByte(SIGTRAP));
+        }
+    }
+
+    private void stopAt(String stopReply) {
+        this.stopReply = stopReply;
+        Simulator.getInstance().pause();
+    }
+
+    private void appendHexWord(StringBuilder builder, int value) {
+        for (int index = 0; index < 4; index++) {
+            int shift = (this.byteOrder == ByteOrder.BIG_ENDIAN) ? (3 - index) * 8 : index * 8;
+            builder.append(toHexByte(value >> shift));
+        }
+    }
+
+    private int parseHexWord(String data, int offset) {
+        int value = 0;
+        for (int index = 0; index < 4; index++) {
+            int shift = (this.byteOrder == ByteOrder.BIG_ENDIAN) ? (3 - index) * 8 : index * 8;
+            value |= Integer.parseInt(data.substring(offset + index * 2, offset + index * 2 + 2), 16) << shift;
+        }
+        return value;
+    }
+
+    private static String toHexByte(int value) {
+        return new String(new char[] {
+            Character.forDigit((value >> 4) & 0xF, 16),
+            Character.forDigit(value & 0xF, 16),
+        });
+    }
+
+    private static String getTargetDescription() {
+        StringBuilder cpuRegisters = new StringBuilder();
+        StringBuilder fpuRegisters = new StringBuilder();
+        for (int number = 0; number < 32; number++) {
+            cpuRegisters.append("    <reg name=\"r").append(number).append("\" bitsize=\"32\" regnum=\"").append(number).append("\"/>\n");
+            fpuRegisters.append("    <reg name=\"f").append(number).append("\" bitsize=\"32\" type=\"ieee_single\" regnum=\"").append(FIRST_FPR + number).append("\"/>\n");
+        }
+        return TARGET_DESCRIPTION.formatted(cpuRegisters, fpuRegisters);
+    }
+
+    private static String escapeBinary(String data) {
+        StringBuilder escaped = new StringBuilder(data.length());
+        for (char value : data.toCharArray()) {
+            if (value == '#' || value == '$' || value == '}' || value == '*') {
+                escaped.append('}').append((char) (value ^ 0x20));
+            }
+            else {
+                escaped.append(value);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static byte[] unescapeBinary(String data) {
+        byte[] bytes = data.getBytes(StandardCharsets.ISO_8859_1);
+        int length = 0;
+        for (int index = 0; index < bytes.length; index++) {
+            bytes[length++] = (bytes[index] == '}' && index + 1 < bytes.length) ? (byte) (bytes[++index] ^ 0x20) : bytes[index];
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+}
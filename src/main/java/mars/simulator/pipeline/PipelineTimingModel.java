@@ -0,0 +1,433 @@
+package mars.simulator.pipeline;
+
+import mars.mips.instructions.DecodedInstruction;
+import mars.simulator.ExecutionListener;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Cycle-level timing model of the classic in-order IF/ID/EX/MEM/WB pipeline, which runs alongside the functional
+ * simulator as an {@link ExecutionListener}. The functional simulator determines what each instruction does;
+ * this model only determines when it could have done it, and accumulates cycle and stall counts.
+ * <p>
+ * The model tracks, for every register, the earliest cycle in which a dependent instruction may enter ID without
+ * stalling, so each executed instruction is accounted for in constant time with no allocation. The following
+ * hazards are modeled:
+ * <ul>
+ * <li>Data hazards, with or without forwarding. With forwarding, an ALU result is available to the next
+ *     instruction, a loaded value one cycle later (the load-use stall). Without forwarding, values are read from
+ *     the register file in the same cycle they are written back.
+ * <li>Branches and jumps, which are resolved in ID and thus need their operands one cycle earlier than the ALU.
+ * <li>Control hazards: a fixed number of bubbles after each taken branch and each jump. When delayed branching
+ *     is enabled, the delay slot hides one of those bubbles.
+ * <li>The multiply/divide unit, which runs independently of the main pipeline for a configurable number of cycles.
+ *     A second multiply or divide waits until the unit is free, and reading a result waits until it is ready.
+ * </ul>
+ */
+public class PipelineTimingModel implements ExecutionListener {
+    /**
+     * Kinds of instruction producing a register value, used to attribute stalls.
+     */
+    private static final byte PRODUCER_ALU = 0;
+    private static final byte PRODUCER_LOAD = 1;
+    private static final byte PRODUCER_MULTIPLY_DIVIDE = 2;
+
+    /**
+     * Number of cycles between ID and WB (EX, MEM, WB).
+     */
+    private static final int STAGES_AFTER_DECODE = 3;
+
+    private boolean forwarding;
+    private int branchPenalty;
+    private int jumpPenalty;
+    private int multiplyLatency;
+    private int divideLatency;
+    private boolean delayedBranching;
+
+    /**
+     * For each register, the earliest ID cycle in which an instruction can use it in EX without stalling.
+     */
+    private final long[] readyCycles;
+    private final byte[] producers;
+    private long decodeCycle;
+    private long multiplyDivideFreeCycle;
+    private int pendingBubbles;
+
+    private long instructionCount;
+    private long loadUseStalls;
+    private long dataStalls;
+    private long multiplyDivideStalls;
+    private long controlStalls;
+    private long branchCount;
+    private long takenBranchCount;
+    private long jumpCount;
+
+    /**
+     * Create a new timing model with forwarding enabled, a one-cycle penalty for taken branches and jumps,
+     * a 4-cycle multiply and a 32-cycle divide.
+     */
+    public PipelineTimingModel() {
+        this.forwarding = true;
+        this.branchPenalty = 1;
+        this.jumpPenalty = 1;
+        this.multiplyLatency = 4;
+        this.divideLatency = 32;
+        this.delayedBranching = false;
+        this.readyCycles = new long[DecodedInstruction.REGISTER_COUNT];
+        this.producers = new byte[DecodedInstruction.REGISTER_COUNT];
+        this.reset();
+    }
+
+    /**
+     * Apply configuration options given as a comma-separated list of <code>key=value</code> pairs. Valid keys are
+     * <code>forwarding</code> (<code>on</code> or <code>off</code>), <code>branch</code> and <code>jump</code>
+     * (penalty in cycles), and <code>mult</code> and <code>div</code> (latency in cycles).
+     * For example: <code>forwarding=off,branch=2,div=20</code>.
+     *
+     * @param options The options to apply.
+     * @throws IllegalArgumentException Thrown if an option is unrecognized or its value is invalid.
+     */
+    public void configure(String options) {
+        for (String option : options.split(",")) {
+            int separator = option.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("expected key=value, found \"" + option + "\"");
+            }
+            String key = option.substring(0, separator).trim().toLowerCase();
+            String value = option.substring(separator + 1).trim();
+            switch (key) {
+                case "forwarding" -> {
+                    if (value.equalsIgnoreCase("on") || value.equalsIgnoreCase("true")) {
+                        this.setForwarding(true);
+                    }
+                    else if (value.equalsIgnoreCase("off") || value.equalsIgnoreCase("false")) {
+                        this.setForwarding(false);
+                    }
+                    else {
+                        throw new IllegalArgumentException("forwarding must be on or off, found \"" + value + "\"");
+                    }
+                }
+                case "branch" -> this.setBranchPenalty(parseCycles(key, value));
+                case "jump" -> this.setJumpPenalty(parseCycles(key, value));
+                case "mult" -> this.setMultiplyLatency(parseCycles(key, value));
+                case "div" -> this.setDivideLatency(parseCycles(key, value));
+                default -> throw new IllegalArgumentException("unknown option \"" + key + "\"");
+            }
+        }
+    }
+
+    private static int parseCycles(String key, String value) {
+        try {
+            int cycles = Integer.decode(value);
+            if (cycles >= 0) {
+                return cycles;
+            }
+        }
+        catch (NumberFormatException ignored) {
+            // Handled below
+        }
+        throw new IllegalArgumentException(key + " must be a non-negative number of cycles, found \"" + value + "\"");
+    }
+
+    /**
+     * Determine whether results are forwarded to dependent instructions before they are written back.
+     *
+     * @return <code>true</code> if forwarding is modeled, which is the default.
+     */
+    public boolean isForwarding() {
+        return this.forwarding;
+    }
+
+    /**
+     * Set whether results are forwarded to dependent instructions before they are written back.
+     *
+     * @param forwarding <code>true</code> to model forwarding, or <code>false</code> to make dependent
+     *                   instructions wait for write-back.
+     */
+    public void setForwarding(boolean forwarding) {
+        this.forwarding = forwarding;
+    }
+
+    /**
+     * Get the number of bubbles inserted after each taken branch.
+     *
+     * @return The branch penalty in cycles, which is 1 by default.
+     */
+    public int getBranchPenalty() {
+        return this.branchPenalty;
+    }
+
+    /**
+     * Set the number of bubbles inserted after each taken branch.
+     *
+     * @param branchPenalty The branch penalty in cycles, which must not be negative.
+     */
+    public void setBranchPenalty(int branchPenalty) {
+        this.branchPenalty = branchPenalty;
+    }
+
+    /**
+     * Get the number of bubbles inserted after each jump.
+     *
+     * @return The jump penalty in cycles, which is 1 by default.
+     */
+    public int getJumpPenalty() {
+        return this.jumpPenalty;
+    }
+
+    /**
+     * Set the number of bubbles inserted after each jump.
+     *
+     * @param jumpPenalty The jump penalty in cycles, which must not be negative.
+     */
+    public void setJumpPenalty(int jumpPenalty) {
+        this.jumpPenalty = jumpPenalty;
+    }
+
+    /**
+     * Get the number of cycles the multiply unit is busy for each multiply.
+     *
+     * @return The multiply latency in cycles, which is 4 by default.
+     */
+    public int getMultiplyLatency() {
+        return this.multiplyLatency;
+    }
+
+    /**
+     * Set the number of cycles the multiply unit is busy for each multiply.
+     *
+     * @param multiplyLatency The multiply latency in cycles, which must not be negative.
+     */
+    public void setMultiplyLatency(int multiplyLatency) {
+        this.multiplyLatency = multiplyLatency;
+    }
+
+    /**
+     * Get the number of cycles the divide unit is busy for each divide.
+     *
+     * @return The divide latency in cycles, which is 32 by default.
+     */
+    public int getDivideLatency() {
+        return this.divideLatency;
+    }
+
+    /**
+     * Set the number of cycles the divide unit is busy for each divide.
+     *
+     * @param divideLatency The divide latency in cycles, which must not be negative.
+     */
+    public void setDivideLatency(int divideLatency) {
+        this.divideLatency = divideLatency;
+    }
+
+    /**
+     * Determine whether the program is run with delayed branching, in which case the delay slot
+     * hides one bubble of each branch or jump penalty.
+     *
+     * @return <code>true</code> if delayed branching is modeled.
+     */
+    public boolean isDelayedBranching() {
+        return this.delayedBranching;
+    }
+
+    /**
+     * Set whether the program is run with delayed branching, in which case the delay slot
+     * hides one bubble of each branch or jump penalty.
+     *
+     * @param delayedBranching <code>true</code> if delayed branching is enabled.
+     */
+    public void setDelayedBranching(boolean delayedBranching) {
+        this.delayedBranching = delayedBranching;
+    }
+
+    /**
+     * Discard all timing state and statistics, as if no instructions had been executed.
+     */
+    public void reset() {
+        Arrays.fill(this.readyCycles, 0);
+        Arrays.fill(this.producers, PRODUCER_ALU);
+        // The first instruction is fetched in cycle 1 and decoded in cycle 2
+        this.decodeCycle = 1;
+        this.multiplyDivideFreeCycle = 0;
+        this.pendingBubbles = 0;
+        this.instructionCount = 0;
+        this.loadUseStalls = 0;
+        this.dataStalls = 0;
+        this.multiplyDivideStalls = 0;
+        this.controlStalls = 0;
+        this.branchCount = 0;
+        this.takenBranchCount = 0;
+        this.jumpCount = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void instructionExecuted(int address, DecodedInstruction instruction, int memoryAddress, int nextAddress) {
+        this.instructionCount++;
+
+        // Bubbles left by the previous instruction's control transfer
+        long cycle = this.decodeCycle + 1 + this.pendingBubbles;
+        this.controlStalls += this.pendingBubbles;
+        this.pendingBubbles = 0;
+
+        // Operands of branches and jumps are needed in ID rather than EX, one cycle earlier,
+        // unless there is no forwarding, in which case everything is read from the register file in ID anyway
+        boolean resolvedInDecode = instruction.is(DecodedInstruction.BRANCH | DecodedInstruction.JUMP);
+        int decodeDelay = resolvedInDecode && this.forwarding ? 1 : 0;
+        long operandCycle = cycle;
+        byte stallProducer = PRODUCER_ALU;
+        for (int source : instruction.getSources()) {
+            if (source != 0 && this.readyCycles[source] + decodeDelay > operandCycle) {
+                operandCycle = this.readyCycles[source] + decodeDelay;
+                stallProducer = this.producers[source];
+            }
+        }
+        if (operandCycle > cycle) {
+            long stalls = operandCycle - cycle;
+            switch (stallProducer) {
+                case PRODUCER_LOAD -> this.loadUseStalls += stalls;
+                case PRODUCER_MULTIPLY_DIVIDE -> this.multiplyDivideStalls += stalls;
+                default -> this.dataStalls += stalls;
+            }
+            cycle = operandCycle;
+        }
+
+        // A multiply or divide cannot start until the unit has finished the previous one
+        boolean usesMultiplyDivide = instruction.is(DecodedInstruction.MULTIPLY | DecodedInstruction.DIVIDE);
+        if (usesMultiplyDivide && this.multiplyDivideFreeCycle > cycle) {
+            this.multiplyDivideStalls += this.multiplyDivideFreeCycle - cycle;
+            cycle = this.multiplyDivideFreeCycle;
+        }
+        this.decodeCycle = cycle;
+
+        // Determine when the results of this instruction can be used
+        long readyCycle;
+        byte producer;
+        if (usesMultiplyDivide) {
+            int latency = instruction.is(DecodedInstruction.DIVIDE) ? this.divideLatency : this.multiplyLatency;
+            this.multiplyDivideFreeCycle = cycle + Math.max(latency, 1);
+            readyCycle = this.forwarding ? cycle + latency : cycle + latency + STAGES_AFTER_DECODE - 1;
+            producer = PRODUCER_MULTIPLY_DIVIDE;
+        }
+        else if (instruction.is(DecodedInstruction.LOAD)) {
+            readyCycle = this.forwarding ? cycle + 2 : cycle + STAGES_AFTER_DECODE;
+            producer = PRODUCER_LOAD;
+        }
+        else {
+            readyCycle = this.forwarding ? cycle + 1 : cycle + STAGES_AFTER_DECODE;
+            producer = PRODUCER_ALU;
+        }
+        for (int destination : instruction.getDestinations()) {
+            this.readyCycles[destination] = readyCycle;
+            this.producers[destination] = producer;
+        }
+
+        // Control transfers insert bubbles before the next instruction
+        int penalty = 0;
+        if (instruction.is(DecodedInstruction.JUMP)) {
+            this.jumpCount++;
+            penalty = this.jumpPenalty;
+        }
+        else if (instruction.is(DecodedInstruction.BRANCH)) {
+            this.branchCount++;
+            if (nextAddress != address + 4) {
+                this.takenBranchCount++;
+                penalty = this.branchPenalty;
+            }
+        }
+        if (penalty > 0) {
+            this.pendingBubbles = this.delayedBranching ? penalty - 1 : penalty;
+        }
+    }
+
+    /**
+     * Get the number of instructions executed so far.
+     *
+     * @return The instruction count.
+     */
+    public long getInstructionCount() {
+        return this.instructionCount;
+    }
+
+    /**
+     * Get the number of cycles needed for all instructions executed so far to leave the pipeline.
+     *
+     * @return The cycle count, or 0 if no instructions have been executed.
+     */
+    public long getCycleCount() {
+        return (this.instructionCount == 0) ? 0 : this.decodeCycle + STAGES_AFTER_DECODE;
+    }
+
+    /**
+     * Get the average number of cycles per instruction.
+     *
+     * @return The CPI, or 0 if no instructions have been executed.
+     */
+    public double getCyclesPerInstruction() {
+        return (this.instructionCount == 0) ? 0.0 : (double) this.getCycleCount() / this.instructionCount;
+    }
+
+    /**
+     * Get the number of cycles instructions have stalled waiting for a value being loaded from memory.
+     *
+     * @return The load-use stall count.
+     */
+    public long getLoadUseStalls() {
+        return this.loadUseStalls;
+    }
+
+    /**
+     * Get the number of cycles instructions have stalled waiting for a value computed by another instruction,
+     * other than loads and the multiply/divide unit.
+     *
+     * @return The data stall count.
+     */
+    public long getDataStalls() {
+        return this.dataStalls;
+    }
+
+    /**
+     * Get the number of cycles instructions have stalled waiting for the multiply/divide unit to become free
+     * or for its result to be ready.
+     *
+     * @return The multiply/divide stall count.
+     */
+    public long getMultiplyDivideStalls() {
+        return this.multiplyDivideStalls;
+    }
+
+    /**
+     * Get the number of bubbles inserted after taken branches and jumps.
+     *
+     * @return The control stall count.
+     */
+    public long getControlStalls() {
+        return this.controlStalls;
+    }
+
+    /**
+     * Write a human-readable summary of the configuration and statistics of this model.
+     *
+     * @param out The stream to write the report to.
+     */
+    public void writeReport(PrintStream out) {
+        long totalStalls = this.loadUseStalls + this.dataStalls + this.multiplyDivideStalls + this.controlStalls;
+        out.println("Pipeline timing (5-stage, forwarding " + (this.forwarding ? "on" : "off")
+            + ", branch penalty " + this.branchPenalty + ", jump penalty " + this.jumpPenalty
+            + ", mult " + this.multiplyLatency + ", div " + this.divideLatency
+            + (this.delayedBranching ? ", delayed branching" : "") + ")");
+        out.println("  Instructions:      " + this.instructionCount);
+        out.println("  Cycles:            " + this.getCycleCount());
+        out.printf("  CPI:               %.3f%n", this.getCyclesPerInstruction());
+        out.println("  Stall cycles:      " + totalStalls);
+        out.println("    Load-use:        " + this.loadUseStalls);
+        out.println("    Other data:      " + this.dataStalls);
+        out.println("    Multiply/divide: " + this.multiplyDivideStalls);
+        out.println("    Control:         " + this.controlStalls);
+        out.println("  Branches:          " + this.branchCount + " (" + this.takenBranchCount + " taken)");
+        out.println("  Jumps:             " + this.jumpCount);
+    }
+}
@@ -0,0 +1,379 @@
+package mars.simulator.profile;
+
+import mars.Program;
+import mars.ProgramStatement;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.RegisterFile;
+import mars.mips.instructions.DecodedInstruction;
+import mars.mips.instructions.Instruction;
+import mars.util.Binary;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Function-level profiler, driven directly by the simulator thread rather than through listeners. It maintains a
+ * shadow call stack which is pushed by calls (<code>jal</code>, <code>jalr</code>, <code>bgezal</code>,
+ * <code>bltzal</code>) and popped by returns (<code>jr $ra</code>), and from it records for each function the number
+ * of calls, the instructions executed in the function itself (exclusive count), the instructions executed while the
+ * function was active, including its callees (inclusive count), and the maximum recursion depth.
+ * <p>
+ * Functions are identified by their entry address, i.e. the target of a call, and named after the text label there.
+ * The code executed before the first call is attributed to a root function named after the first instruction.
+ * <p>
+ * A return pops frames until it finds the one whose return address matches where execution continues, so a function
+ * which is left by a jump rather than a return is popped along with it. A return which matches no frame on the
+ * stack (for example, <code>jr $ra</code> used as an ordinary jump) leaves the stack unchanged and is counted as
+ * mismatched.
+ * <p>
+ * The stack and all counters are kept in primitive arrays which only grow when a new maximum depth or a new function
+ * is reached, so profiling does not allocate per call and deeply recursive programs can be profiled. Instructions
+ * are only decoded when execution does not continue sequentially.
+ *
+ * @see mars.simulator.Simulator#setCallGraphProfiler(CallGraphProfiler)
+ */
+public class CallGraphProfiler {
+    private static final int INITIAL_FUNCTIONS = 64;
+    private static final int INITIAL_STACK_DEPTH = 256;
+    private static final int DEFAULT_REPORTED_FUNCTIONS = 20;
+
+    /**
+     * Counts for one function, as returned by {@link #getFunctionProfiles()}.
+     *
+     * @param address           The entry address of the function.
+     * @param name              The label at the entry address, or the address in hexadecimal if there is none.
+     * @param calls             The number of times the function was called.
+     * @param exclusiveCount    The number of instructions executed in the function itself.
+     * @param inclusiveCount    The number of instructions executed while the function was active, including
+     *                          callees. Recursive activations are only counted once.
+     * @param maxRecursionDepth The maximum number of activations of the function on the stack at once.
+     */
+    public record FunctionProfile(int address, String name, long calls, long exclusiveCount, long inclusiveCount, int maxRecursionDepth) {}
+
+    // Open-addressing hash table from entry address to function index (plus one, so zero means empty)
+    private int[] tableAddresses;
+    private int[] tableIndices;
+
+    // Per-function counters, indexed by function index
+    private int functionCount;
+    private int[] entryAddresses;
+    private long[] callCounts;
+    private long[] exclusiveCounts;
+    private long[] inclusiveCounts;
+    private long[] outermostStarts;
+    private int[] activeDepths;
+    private int[] maxDepths;
+
+    // The shadow call stack, as parallel arrays of function index and expected return address
+    private int depth;
+    private int[] stackFunctions;
+    private int[] stackReturnAddresses;
+
+    private long instructionCount;
+    private long totalCalls;
+    private long mismatchedReturns;
+    private int maxStackDepth;
+
+    private int reportedFunctions;
+
+    /**
+     * Create a new profiler with no counts.
+     */
+    public CallGraphProfiler() {
+        this.reportedFunctions = DEFAULT_REPORTED_FUNCTIONS;
+        this.reset();
+    }
+
+    /**
+     * Apply options given as a comma-separated list. The only valid item is <code>top=&lt;n&gt;</code>, the number
+     * of functions listed in the report (default 20).
+     *
+     * @param options The options to apply.
+     * @throws IllegalArgumentException Thrown if an item is unrecognized or its value is invalid.
+     */
+    public void configure(String options) {
+        for (String option : options.split(",")) {
+            option = option.strip();
+            if (option.isEmpty()) {
+                continue;
+            }
+            int separator = option.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("expected <key>=<value>: " + option);
+            }
+            String key = option.substring(0, separator).strip().toLowerCase(Locale.ROOT);
+            String value = option.substring(separator + 1).strip();
+            if (!key.equals("top")) {
+                throw new IllegalArgumentException("unrecognized option: " + option);
+            }
+            int count;
+            try {
+                count = Integer.parseInt(value);
+            }
+            catch (NumberFormatException exception) {
+                count = -1;
+            }
+            if (count < 0) {
+                throw new IllegalArgumentException("invalid number: " + option);
+            }
+            this.reportedFunctions = count;
+        }
+    }
+
+    /**
+     * Discard all counts and empty the call stack.
+     */
+    public void reset() {
+        this.tableAddresses = new int[INITIAL_FUNCTIONS * 2];
+        this.tableIndices = new int[INITIAL_FUNCTIONS * 2];
+        this.functionCount = 0;
+        this.entryAddresses = new int[INITIAL_FUNCTIONS];
+        this.callCounts = new long[INITIAL_FUNCTIONS];
+        this.exclusiveCounts = new long[INITIAL_FUNCTIONS];
+        this.inclusiveCounts = new long[INITIAL_FUNCTIONS];
+        this.outermostStarts = new long[INITIAL_FUNCTIONS];
+        this.activeDepths = new int[INITIAL_FUNCTIONS];
+        this.maxDepths = new int[INITIAL_FUNCTIONS];
+        this.depth = 0;
+        this.stackFunctions = new int[INITIAL_STACK_DEPTH];
+        this.stackReturnAddresses = new int[INITIAL_STACK_DEPTH];
+        this.instructionCount = 0;
+        this.totalCalls = 0;
+        this.mismatchedReturns = 0;
+        this.maxStackDepth = 0;
+    }
+
+    /**
+     * Account for an executed instruction. This is called by the simulator thread after each instruction completes.
+     *
+     * @param address     The address of the instruction.
+     * @param word        The binary encoding of the instruction.
+     * @param nextAddress The address of the instruction to be executed after the branch delay slot, if any.
+     */
+    public void instructionExecuted(int address, int word, int nextAddress) {
+        if (this.depth == 0) {
+            // The root frame can never be returned to, since returns only search the frames above it
+            this.push(this.getFunction(address), address);
+        }
+        this.instructionCount++;
+        this.exclusiveCounts[this.stackFunctions[this.depth - 1]]++;
+        if (nextAddress == address + Instruction.BYTES_PER_INSTRUCTION) {
+            return;
+        }
+        DecodedInstruction decoded = DecodedInstruction.decode(word);
+        if (decoded.is(DecodedInstruction.CALL)) {
+            // The link register has already been written with the address the callee should return to
+            int returnAddress = RegisterFile.getRegisters()[decoded.getDestinations()[0]].getValueNoNotify();
+            int function = this.getFunction(nextAddress);
+            this.callCounts[function]++;
+            this.totalCalls++;
+            this.push(function, returnAddress);
+        }
+        else if (decoded.is(DecodedInstruction.RETURN)) {
+            for (int frame = this.depth - 1; frame > 0; frame--) {
+                if (this.stackReturnAddresses[frame] == nextAddress) {
+                    while (this.depth > frame) {
+                        this.pop();
+                    }
+                    return;
+                }
+            }
+            this.mismatchedReturns++;
+        }
+    }
+
+    /**
+     * Get the total number of instructions counted.
+     *
+     * @return The number of instructions executed while profiling.
+     */
+    public long getInstructionCount() {
+        return this.instructionCount;
+    }
+
+    /**
+     * Get the total number of calls counted.
+     *
+     * @return The number of calls executed while profiling.
+     */
+    public long getCallCount() {
+        return this.totalCalls;
+    }
+
+    /**
+     * Get the number of returns which did not match any frame on the shadow call stack.
+     *
+     * @return The number of mismatched returns.
+     */
+    public long getMismatchedReturnCount() {
+        return this.mismatchedReturns;
+    }
+
+    /**
+     * Get the maximum depth reached by the shadow call stack, including the root frame.
+     *
+     * @return The maximum stack depth.
+     */
+    public int getMaxStackDepth() {
+        return this.maxStackDepth;
+    }
+
+    /**
+     * Get the counts for every function reached, in the order they were first reached. Functions which are still
+     * active have their inclusive count taken up to the latest instruction.
+     * <p>
+     * While the simulator is running, this should be called while synchronized on
+     * {@link mars.Application#MEMORY_AND_REGISTERS_LOCK}.
+     *
+     * @return A snapshot of the counts of each function.
+     */
+    public List<FunctionProfile> getFunctionProfiles() {
+        // Only the programs which contain profiled code are needed to name the functions
+        Set<Program> programs = new LinkedHashSet<>();
+        for (int function = 0; function < this.functionCount; function++) {
+            try {
+                ProgramStatement statement = Memory.getInstance().fetchStatement(this.entryAddresses[function], false);
+                if (statement != null && statement.getSourceMIPSprogram() != null) {
+                    programs.add(statement.getSourceMIPSprogram());
+                }
+            }
+            catch (AddressErrorException exception) {
+                // The function will be named by its address
+            }
+        }
+        SymbolIndex symbols = new SymbolIndex(programs);
+        List<FunctionProfile> profiles = new ArrayList<>(this.functionCount);
+        for (int function = 0; function < this.functionCount; function++) {
+            long inclusiveCount = this.inclusiveCounts[function];
+            if (this.activeDepths[function] > 0) {
+                inclusiveCount += this.instructionCount - this.outermostStarts[function];
+            }
+            profiles.add(new FunctionProfile(
+                this.entryAddresses[function],
+                symbols.describe(this.entryAddresses[function]),
+                this.callCounts[function],
+                this.exclusiveCounts[function],
+                inclusiveCount,
+                this.maxDepths[function]
+            ));
+        }
+        return profiles;
+    }
+
+    /**
+     * Write a summary of the profile, listing the functions with the highest inclusive counts.
+     *
+     * @param out The stream to write the report to.
+     */
+    public void writeReport(PrintStream out) {
+        out.println("Call graph profile (" + this.instructionCount + " instructions, " + this.totalCalls
+            + " calls, maximum stack depth " + this.maxStackDepth + ")");
+        if (this.mismatchedReturns > 0) {
+            out.println("  Returns not matching any active call: " + this.mismatchedReturns);
+        }
+        if (this.instructionCount == 0 || this.reportedFunctions <= 0) {
+            return;
+        }
+        List<FunctionProfile> profiles = this.getFunctionProfiles();
+        profiles.sort((first, second) -> Long.compare(second.inclusiveCount(), first.inclusiveCount()));
+        int listed = Math.min(this.reportedFunctions, profiles.size());
+        out.println("  Functions by inclusive instructions (" + listed + " of " + profiles.size() + "):");
+        out.println("       Inclusive      %     Exclusive      %         Calls  Depth  Address     Function");
+        for (FunctionProfile profile : profiles.subList(0, listed)) {
+            out.printf(
+                "    %12d  %5.1f  %12d  %5.1f  %12d  %5d  %s  %s%n",
+                profile.inclusiveCount(),
+                100.0 * profile.inclusiveCount() / this.instructionCount,
+                profile.exclusiveCount(),
+                100.0 * profile.exclusiveCount() / this.instructionCount,
+                profile.calls(),
+                profile.maxRecursionDepth(),
+                Binary.intToHexString(profile.address()),
+                profile.name()
+            );
+        }
+    }
+
+    private void push(int function, int returnAddress) {
+        if (this.depth == this.stackFunctions.length) {
+            this.stackFunctions = Arrays.copyOf(this.stackFunctions, this.depth * 2);
+            this.stackReturnAddresses = Arrays.copyOf(this.stackReturnAddresses, this.depth * 2);
+        }
+        this.stackFunctions[this.depth] = function;
+        this.stackReturnAddresses[this.depth] = returnAddress;
+        this.depth++;
+        this.maxStackDepth = Math.max(this.maxStackDepth, this.depth);
+        // Inclusive counts are measured from the outermost activation, so recursion is not counted twice
+        int activeDepth = ++this.activeDepths[function];
+        if (activeDepth == 1) {
+            this.outermostStarts[function] = this.instructionCount;
+        }
+        this.maxDepths[function] = Math.max(this.maxDepths[function], activeDepth);
+    }
+
+    private void pop() {
+        int function = this.stackFunctions[--this.depth];
+        if (--this.activeDepths[function] == 0) {
+            this.inclusiveCounts[function] += this.instructionCount - this.outermostStarts[function];
+        }
+    }
+
+    /**
+     * Find the index of the function with the given entry address, adding it if it has not been reached before.
+     */
+    private int getFunction(int address) {
+        int mask = this.tableAddresses.length - 1;
+        int slot = slotOf(address, mask);
+        while (this.tableIndices[slot] != 0) {
+            if (this.tableAddresses[slot] == address) {
+                return this.tableIndices[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int function = this.functionCount++;
+        if (function == this.entryAddresses.length) {
+            int capacity = function * 2;
+            this.entryAddresses = Arrays.copyOf(this.entryAddresses, capacity);
+            this.callCounts = Arrays.copyOf(this.callCounts, capacity);
+            this.exclusiveCounts = Arrays.copyOf(this.exclusiveCounts, capacity);
+            this.inclusiveCounts = Arrays.copyOf(this.inclusiveCounts, capacity);
+            this.outermostStarts = Arrays.copyOf(this.outermostStarts, capacity);
+            this.activeDepths = Arrays.copyOf(this.activeDepths, capacity);
+            this.maxDepths = Arrays.copyOf(this.maxDepths, capacity);
+        }
+        this.entryAddresses[function] = address;
+        this.tableAddresses[slot] = address;
+        this.tableIndices[slot] = function + 1;
+        // Keep the table at most half full
+        if (this.functionCount * 2 > this.tableAddresses.length) {
+            this.rehash(this.tableAddresses.length * 2);
+        }
+        return function;
+    }
+
+    private void rehash(int capacity) {
+        this.tableAddresses = new int[capacity];
+        this.tableIndices = new int[capacity];
+        int mask = capacity - 1;
+        for (int function = 0; function < this.functionCount; function++) {
+            int slot = slotOf(this.entryAddresses[function], mask);
+            while (this.tableIndices[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.tableAddresses[slot] = this.entryAddresses[function];
+            this.tableIndices[slot] = function + 1;
+        }
+    }
+
+    private static int slotOf(int address, int mask) {
+        // Addresses are word-aligned and clustered, so mix the bits before masking
+        int hash = address * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
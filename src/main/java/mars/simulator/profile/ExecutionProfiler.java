@@ -0,0 +1,362 @@
+package mars.simulator.profile;
+
+import mars.Program;
+import mars.ProgramStatement;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import mars.mips.instructions.DecodedInstruction;
+import mars.util.Binary;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Exact per-address execution profiler, driven directly by the simulator thread rather than through listeners.
+ * For every word of text executed, it counts how many times the instruction there was executed, and how many
+ * times execution did not continue with the next sequential instruction (i.e. how many times a branch was taken).
+ * <p>
+ * Counts are kept in primitive arrays, one pair per 4 KiB page of text, allocated the first time the page is
+ * executed. The page of the previous instruction is remembered, so counting an instruction costs a comparison
+ * and one or two array increments.
+ * <p>
+ * After the run, counts are attributed to source lines with {@link ProgramStatement#getSourceLine()} and can be
+ * reported as the hottest lines, written as annotated source files, or written as collapsed stacks for flame
+ * graph tools (one line per source line, of the form <code>label;file:line count</code>, where <code>label</code>
+ * is the nearest text label preceding the code).
+ *
+ * @see mars.simulator.Simulator#setProfiler(ExecutionProfiler)
+ */
+public class ExecutionProfiler {
+    private static final int PAGE_BYTES = 4096;
+    private static final int PAGE_WORDS = PAGE_BYTES / Memory.BYTES_PER_WORD;
+    private static final int DEFAULT_REPORTED_LINES = 20;
+
+    private static class Page {
+        private final long[] executions = new long[PAGE_WORDS];
+        private final long[] taken = new long[PAGE_WORDS];
+    }
+
+    private final Map<Integer, Page> pages;
+    // The most recently executed page; the base is initially unaligned so it never matches
+    private int currentPageBase;
+    private long[] currentExecutions;
+    private long[] currentTaken;
+
+    private int reportedLines;
+    private Path annotatedSourcePath;
+    private Path flameGraphPath;
+
+    /**
+     * Create a new profiler with no counts.
+     */
+    public ExecutionProfiler() {
+        this.pages = new HashMap<>();
+        this.reportedLines = DEFAULT_REPORTED_LINES;
+        this.annotatedSourcePath = null;
+        this.flameGraphPath = null;
+        this.reset();
+    }
+
+    /**
+     * Apply options given as a comma-separated list. Valid items are:
+     * <ul>
+     * <li><code>top=&lt;n&gt;</code> -- the number of hottest source lines listed in the report (default 20).
+     * <li><code>annotate=&lt;file&gt;</code> -- write the source of every executed file with counts on each line.
+     * <li><code>flame=&lt;file&gt;</code> -- write collapsed stacks for flame graph tools.
+     * </ul>
+     *
+     * @param options The options to apply.
+     * @throws IllegalArgumentException Thrown if an item is unrecognized or its value is invalid.
+     */
+    public void configure(String options) {
+        for (String option : options.split(",")) {
+            option = option.strip();
+            if (option.isEmpty()) {
+                continue;
+            }
+            int separator = option.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("expected <key>=<value>: " + option);
+            }
+            String key = option.substring(0, separator).strip().toLowerCase(Locale.ROOT);
+            String value = option.substring(separator + 1).strip();
+            switch (key) {
+                case "top" -> {
+                    int count;
+                    try {
+                        count = Integer.parseInt(value);
+                    }
+                    catch (NumberFormatException exception) {
+                        count = -1;
+                    }
+                    if (count < 0) {
+                        throw new IllegalArgumentException("invalid number: " + option);
+                    }
+                    this.reportedLines = count;
+                }
+                case "annotate" -> this.annotatedSourcePath = Path.of(value);
+                case "flame" -> this.flameGraphPath = Path.of(value);
+                default -> throw new IllegalArgumentException("unrecognized option: " + option);
+            }
+        }
+    }
+
+    /**
+     * Discard all counts.
+     */
+    public void reset() {
+        this.pages.clear();
+        this.currentPageBase = 1;
+        this.currentExecutions = null;
+        this.currentTaken = null;
+    }
+
+    /**
+     * Count an executed instruction. This is called by the simulator thread after each instruction completes.
+     *
+     * @param address The address of the instruction.
+     * @param taken   Whether execution will not continue with the next sequential instruction
+     *                (i.e. a branch or jump was taken).
+     */
+    public void instructionExecuted(int address, boolean taken) {
+        int pageBase = address & -PAGE_BYTES;
+        if (pageBase != this.currentPageBase) {
+            Page page = this.pages.computeIfAbsent(pageBase, base -> new Page());
+            this.currentPageBase = pageBase;
+            this.currentExecutions = page.executions;
+            this.currentTaken = page.taken;
+        }
+        int index = (address & (PAGE_BYTES - 1)) >>> 2;
+        this.currentExecutions[index]++;
+        if (taken) {
+            this.currentTaken[index]++;
+        }
+    }
+
+    /**
+     * Get the number of times the instruction at an address was executed.
+     *
+     * @param address The address of the instruction.
+     * @return The execution count.
+     */
+    public long getExecutionCount(int address) {
+        Page page = this.pages.get(address & -PAGE_BYTES);
+        return (page == null) ? 0 : page.executions[(address & (PAGE_BYTES - 1)) >>> 2];
+    }
+
+    /**
+     * Get the number of times execution did not continue sequentially after the instruction at an address,
+     * which for a branch is the number of times it was taken.
+     *
+     * @param address The address of the instruction.
+     * @return The taken count.
+     */
+    public long getTakenCount(int address) {
+        Page page = this.pages.get(address & -PAGE_BYTES);
+        return (page == null) ? 0 : page.taken[(address & (PAGE_BYTES - 1)) >>> 2];
+    }
+
+    /**
+     * Get the total number of instructions counted.
+     *
+     * @return The sum of the execution counts of all addresses.
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (Page page : this.pages.values()) {
+            for (long count : page.executions) {
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Counts for one line of source, accumulated over the instructions generated from it.
+     */
+    private static class LineProfile {
+        private final ProgramStatement firstStatement;
+        private long instructions;
+        private long branches;
+        private long taken;
+
+        private LineProfile(ProgramStatement firstStatement) {
+            this.firstStatement = firstStatement;
+        }
+    }
+
+    /**
+     * Attribute the counts to source lines, grouped by source program and ordered by line number.
+     */
+    private Map<Program, TreeMap<Integer, LineProfile>> getLineProfiles() {
+        Map<Program, TreeMap<Integer, LineProfile>> profiles = new LinkedHashMap<>();
+        // Visit pages in address order so the output is stable
+        TreeMap<Integer, Page> sortedPages = new TreeMap<>(Integer::compareUnsigned);
+        sortedPages.putAll(this.pages);
+        for (Map.Entry<Integer, Page> entry : sortedPages.entrySet()) {
+            Page page = entry.getValue();
+            for (int index = 0; index < PAGE_WORDS; index++) {
+                if (page.executions[index] == 0) {
+                    continue;
+                }
+                int address = entry.getKey() + index * Memory.BYTES_PER_WORD;
+                ProgramStatement statement;
+                try {
+                    statement = Memory.getInstance().fetchStatement(address, false);
+                }
+                catch (AddressErrorException exception) {
+                    statement = null;
+                }
+                if (statement == null) {
+                    // Code generated at runtime has no source
+                    statement = new ProgramStatement(0, address);
+                }
+                // Addresses are visited in ascending order, so each line keeps its first statement
+                ProgramStatement firstStatement = statement;
+                int key = (statement.getSourceMIPSprogram() == null) ? address : statement.getSourceLine();
+                LineProfile line = profiles.computeIfAbsent(statement.getSourceMIPSprogram(), program -> new TreeMap<>(Integer::compareUnsigned))
+                    .computeIfAbsent(key, lineNumber -> new LineProfile(firstStatement));
+                line.instructions += page.executions[index];
+                if (DecodedInstruction.decode(statement.getBinaryStatement()).is(DecodedInstruction.BRANCH)) {
+                    line.branches += page.executions[index];
+                    line.taken += page.taken[index];
+                }
+            }
+        }
+        return profiles;
+    }
+
+    /**
+     * Write a summary of the profile, listing the source lines which executed the most instructions, then write the
+     * annotated source and flame graph files if they were requested with {@link #configure(String)}.
+     *
+     * @param out The stream to write the report to.
+     */
+    public void writeReport(PrintStream out) {
+        Map<Program, TreeMap<Integer, LineProfile>> profiles = this.getLineProfiles();
+        long total = this.getTotalCount();
+        out.println("Execution profile (" + total + " instructions)");
+        if (total > 0 && this.reportedLines > 0) {
+            List<LineProfile> lines = new ArrayList<>();
+            profiles.values().forEach(fileLines -> lines.addAll(fileLines.values()));
+            lines.sort((first, second) -> Long.compare(second.instructions, first.instructions));
+            int listed = Math.min(this.reportedLines, lines.size());
+            out.println("  Hottest source lines (" + listed + " of " + lines.size() + "):");
+            out.println("    Instructions      %    Address     Line");
+            for (LineProfile line : lines.subList(0, listed)) {
+                ProgramStatement statement = line.firstStatement;
+                out.printf(
+                    "    %12d  %5.1f  %s  %s%n",
+                    line.instructions,
+                    100.0 * line.instructions / total,
+                    Binary.intToHexString(statement.getAddress()),
+                    getLocation(statement) + formatBranches(line) + "  " + statement.getSource().strip()
+                );
+            }
+        }
+        if (this.annotatedSourcePath != null) {
+            try {
+                this.writeAnnotatedSource(this.annotatedSourcePath, profiles);
+                out.println("  Annotated source written to " + this.annotatedSourcePath);
+            }
+            catch (IOException exception) {
+                out.println("  Unable to write annotated source to " + this.annotatedSourcePath + ": " + exception.getMessage());
+            }
+        }
+        if (this.flameGraphPath != null) {
+            try {
+                this.writeCollapsedStacks(this.flameGraphPath, profiles);
+                out.println("  Flame graph stacks written to " + this.flameGraphPath);
+            }
+            catch (IOException exception) {
+                out.println("  Unable to write flame graph stacks to " + this.flameGraphPath + ": " + exception.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Write the source of every program which executed at least one instruction, with each line prefixed by the
+     * number of instructions it executed and, for branches, how often they were taken.
+     *
+     * @param path The file to write.
+     * @throws IOException Thrown if the file could not be written.
+     */
+    public void writeAnnotatedSource(Path path) throws IOException {
+        this.writeAnnotatedSource(path, this.getLineProfiles());
+    }
+
+    private void writeAnnotatedSource(Path path, Map<Program, TreeMap<Integer, LineProfile>> profiles) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path))) {
+            for (Map.Entry<Program, TreeMap<Integer, LineProfile>> entry : profiles.entrySet()) {
+                Program program = entry.getKey();
+                TreeMap<Integer, LineProfile> lines = entry.getValue();
+                List<String> source = (program == null) ? null : program.getSourceList();
+                writer.println("==> " + ((program == null) ? "(no source)" : program.getFilename()) + " <==");
+                if (source == null) {
+                    for (LineProfile line : lines.values()) {
+                        writer.printf("%12d  %s%n", line.instructions, Binary.intToHexString(line.firstStatement.getAddress()));
+                    }
+                    continue;
+                }
+                for (int lineNumber = 1; lineNumber <= source.size(); lineNumber++) {
+                    LineProfile line = lines.get(lineNumber);
+                    String count = (line == null) ? "" : Long.toString(line.instructions);
+                    String branches = (line == null) ? "" : formatBranches(line);
+                    writer.printf("%12s %5d: %s%s%n", count, lineNumber, source.get(lineNumber - 1), branches.isEmpty() ? "" : "   #" + branches);
+                }
+                writer.println();
+            }
+        }
+    }
+
+    /**
+     * Write the profile in the collapsed stack format read by flame graph tools, with one line per source line.
+     *
+     * @param path The file to write.
+     * @throws IOException Thrown if the file could not be written.
+     */
+    public void writeCollapsedStacks(Path path) throws IOException {
+        this.writeCollapsedStacks(path, this.getLineProfiles());
+    }
+
+    private void writeCollapsedStacks(Path path, Map<Program, TreeMap<Integer, LineProfile>> profiles) throws IOException {
+        SymbolIndex symbols = new SymbolIndex(profiles.keySet());
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path))) {
+            for (TreeMap<Integer, LineProfile> lines : profiles.values()) {
+                for (LineProfile line : lines.values()) {
+                    String label = symbols.getNameContaining(line.firstStatement.getAddress());
+                    writer.println(toFrame((label == null) ? "(unknown)" : label) + ";" + toFrame(getLocation(line.firstStatement)) + " " + line.instructions);
+                }
+            }
+        }
+    }
+
+    private static String getLocation(ProgramStatement statement) {
+        if (statement.getSourceMIPSprogram() == null) {
+            return Binary.intToHexString(statement.getAddress());
+        }
+        return Path.of(statement.getSourceFile()).getFileName() + ":" + statement.getSourceLine();
+    }
+
+    private static String formatBranches(LineProfile line) {
+        if (line.branches == 0) {
+            return "";
+        }
+        return " [taken " + line.taken + ", not taken " + (line.branches - line.taken) + "]";
+    }
+
+    // Frames are separated by semicolons and the count by a space, so neither may appear in a frame
+    private static String toFrame(String name) {
+        return name.replace(';', ':').replace(' ', '_');
+    }
+}
@@ -0,0 +1,96 @@
+package mars.simulator.profile;
+
+import mars.Application;
+import mars.Program;
+import mars.assembler.Symbol;
+import mars.util.Binary;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sorted index of the text labels of one or more assembled programs, for attributing addresses to the code they
+ * belong to. Global labels take precedence over local labels at the same address.
+ */
+class SymbolIndex {
+    private final int[] addresses;
+    private final String[] names;
+
+    /**
+     * Build an index of the text labels defined in the given programs and the global symbol table.
+     *
+     * @param programs The programs whose local labels should be included.
+     */
+    SymbolIndex(Collection<Program> programs) {
+        // Keyed by address so a global label replaces a local label at the same address
+        Map<Integer, String> labels = new LinkedHashMap<>();
+        for (Program program : programs) {
+            if (program != null && program.getLocalSymbolTable() != null) {
+                for (Symbol symbol : program.getLocalSymbolTable().getTextSymbols()) {
+                    labels.putIfAbsent(symbol.getAddress(), symbol.getName());
+                }
+            }
+        }
+        if (Application.globalSymbolTable != null) {
+            for (Symbol symbol : Application.globalSymbolTable.getTextSymbols()) {
+                labels.put(symbol.getAddress(), symbol.getName());
+            }
+        }
+        List<Map.Entry<Integer, String>> entries = new ArrayList<>(labels.entrySet());
+        // Unsigned order, since kernel text lies above user text
+        entries.sort(Comparator.comparingLong(entry -> Integer.toUnsignedLong(entry.getKey())));
+        this.addresses = new int[entries.size()];
+        this.names = new String[entries.size()];
+        for (int index = 0; index < entries.size(); index++) {
+            this.addresses[index] = entries.get(index).getKey();
+            this.names[index] = entries.get(index).getValue();
+        }
+    }
+
+    /**
+     * Find the nearest label at or before an address.
+     *
+     * @param address The address of an instruction.
+     * @return The name of the label, or <code>null</code> if there is none.
+     */
+    String getNameContaining(int address) {
+        int index = this.find(address);
+        return (index >= 0) ? this.names[index] : null;
+    }
+
+    /**
+     * Describe an address in terms of the nearest label at or before it.
+     *
+     * @param address The address of an instruction.
+     * @return The name of the label if it is at the address, the name followed by an offset such as
+     *         <code>loop+0x8</code> if it precedes the address, or the address in hexadecimal if there is no label.
+     */
+    String describe(int address) {
+        int index = this.find(address);
+        if (index < 0) {
+            return Binary.intToHexString(address);
+        }
+        int offset = address - this.addresses[index];
+        return (offset == 0) ? this.names[index] : this.names[index] + "+0x" + Integer.toHexString(offset);
+    }
+
+    // Index of the last label at or before the address, or -1
+    private int find(int address) {
+        int low = 0;
+        int high = this.addresses.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (Integer.compareUnsigned(this.addresses[middle], address) <= 0) {
+                low = middle + 1;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        return low - 1;
+    }
+}
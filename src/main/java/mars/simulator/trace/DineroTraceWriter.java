@@ -0,0 +1,262 @@
+package mars.simulator.trace;
+
+import mars.mips.instructions.DecodedInstruction;
+import mars.simulator.ExecutionListener;
+import mars.util.Binary;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Writes the memory references made by the program in the traditional "din" input format of the Dinero IV cache
+ * simulator: one line per reference, consisting of a label (0 for a data read, 1 for a data write, 2 for an
+ * instruction fetch), a space, and the address in hexadecimal. Each instruction executed produces a fetch followed
+ * by the load or store it performs, if any.
+ * <p>
+ * Lines are formatted directly into a large buffer which is written to the file only when it fills, so tracing
+ * costs a few dozen byte stores per reference and no allocation. References can be restricted to given address
+ * ranges, and instruction fetches can be left out entirely for data cache experiments.
+ */
+public class DineroTraceWriter implements ExecutionListener, Closeable {
+    /**
+     * Dinero label for a data read.
+     */
+    public static final int READ = 0;
+    /**
+     * Dinero label for a data write.
+     */
+    public static final int WRITE = 1;
+    /**
+     * Dinero label for an instruction fetch.
+     */
+    public static final int FETCH = 2;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    // A label, a space, up to 8 hex digits, and a newline
+    private static final int MAX_LINE_LENGTH = 11;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final Path path;
+    private FileChannel channel;
+    private byte[] buffer;
+    private int length;
+    private boolean fetchesIncluded;
+    // Inclusive address ranges as parallel arrays, compared unsigned; empty means every address is included
+    private int[] rangeStarts;
+    private int[] rangeEnds;
+    private long referenceCount;
+    private IOException writeError;
+
+    /**
+     * Create a writer for the given file, which is not opened until {@link #open()} is called so that options can
+     * be applied first.
+     *
+     * @param path The file to write.
+     */
+    public DineroTraceWriter(Path path) {
+        this.path = path;
+        this.channel = null;
+        this.buffer = null;
+        this.length = 0;
+        this.fetchesIncluded = true;
+        this.rangeStarts = new int[0];
+        this.rangeEnds = new int[0];
+        this.referenceCount = 0;
+        this.writeError = null;
+    }
+
+    /**
+     * Apply options given as a comma-separated list. Valid items are:
+     * <ul>
+     * <li><code>range=&lt;low&gt;-&lt;high&gt;</code> -- only write references to addresses from <i>low</i> to
+     *     <i>high</i> inclusive. May be given more than once to include several ranges.
+     * <li><code>fetch=on|off</code> -- whether to write instruction fetches (default on).
+     * </ul>
+     *
+     * @param options The options to apply.
+     * @throws IllegalArgumentException Thrown if an item is unrecognized or its value is invalid.
+     */
+    public void configure(String options) {
+        for (String option : options.split(",")) {
+            option = option.strip();
+            if (option.isEmpty()) {
+                continue;
+            }
+            int separator = option.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("expected <key>=<value>: " + option);
+            }
+            String key = option.substring(0, separator).strip().toLowerCase(Locale.ROOT);
+            String value = option.substring(separator + 1).strip();
+            switch (key) {
+                case "range" -> {
+                    int dash = value.indexOf('-', 1);
+                    if (dash < 0) {
+                        throw new IllegalArgumentException("expected <low>-<high>: " + option);
+                    }
+                    try {
+                        this.addRange(Binary.decodeInteger(value.substring(0, dash)), Binary.decodeInteger(value.substring(dash + 1)));
+                    }
+                    catch (NumberFormatException exception) {
+                        throw new IllegalArgumentException("invalid address: " + option);
+                    }
+                }
+                case "fetch" -> {
+                    switch (value.toLowerCase(Locale.ROOT)) {
+                        case "on" -> this.fetchesIncluded = true;
+                        case "off" -> this.fetchesIncluded = false;
+                        default -> throw new IllegalArgumentException("expected on or off: " + option);
+                    }
+                }
+                default -> throw new IllegalArgumentException("unrecognized option: " + option);
+            }
+        }
+    }
+
+    /**
+     * Restrict the references written to those within the given address range, in addition to any ranges already
+     * added.
+     *
+     * @param low  The lowest address included.
+     * @param high The highest address included, which is compared unsigned.
+     * @throws IllegalArgumentException Thrown if the range is empty.
+     */
+    public void addRange(int low, int high) {
+        if (Integer.compareUnsigned(low, high) > 0) {
+            throw new IllegalArgumentException("empty address range " + Binary.intToHexString(low) + "-" + Binary.intToHexString(high));
+        }
+        this.rangeStarts = Arrays.copyOf(this.rangeStarts, this.rangeStarts.length + 1);
+        this.rangeEnds = Arrays.copyOf(this.rangeEnds, this.rangeEnds.length + 1);
+        this.rangeStarts[this.rangeStarts.length - 1] = low;
+        this.rangeEnds[this.rangeEnds.length - 1] = high;
+    }
+
+    /**
+     * Set whether instruction fetches are written.
+     *
+     * @param fetchesIncluded <code>true</code> to write fetches as well as loads and stores.
+     */
+    public void setFetchesIncluded(boolean fetchesIncluded) {
+        this.fetchesIncluded = fetchesIncluded;
+    }
+
+    /**
+     * Open the file for writing, replacing it if it exists.
+     *
+     * @throws IOException Thrown if the file cannot be opened.
+     */
+    public void open() throws IOException {
+        this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.buffer = new byte[BUFFER_SIZE];
+        this.length = 0;
+        this.referenceCount = 0;
+        this.writeError = null;
+    }
+
+    /**
+     * Get the number of references written so far.
+     *
+     * @return The number of lines written.
+     */
+    public long getReferenceCount() {
+        return this.referenceCount;
+    }
+
+    @Override
+    public void instructionExecuted(int address, DecodedInstruction instruction, int memoryAddress, int nextAddress) {
+        if (this.fetchesIncluded) {
+            this.writeReference(FETCH, address);
+        }
+        if (instruction.getMemoryAccessSize() > 0) {
+            this.writeReference(instruction.is(DecodedInstruction.STORE) ? WRITE : READ, memoryAddress);
+        }
+    }
+
+    /**
+     * Write a single reference, if its address is within the ranges being written.
+     *
+     * @param label   The Dinero label: {@link #READ}, {@link #WRITE}, or {@link #FETCH}.
+     * @param address The address referenced.
+     */
+    public void writeReference(int label, int address) {
+        if (this.buffer == null || !this.isIncluded(address)) {
+            return;
+        }
+        if (this.buffer.length - this.length < MAX_LINE_LENGTH) {
+            this.writeBuffer();
+        }
+        byte[] buffer = this.buffer;
+        int length = this.length;
+        buffer[length++] = (byte) ('0' + label);
+        buffer[length++] = ' ';
+        // Hexadecimal without leading zeros, as written by other tools producing din traces
+        int shift = Math.max(0, (31 - Integer.numberOfLeadingZeros(address)) & ~3);
+        for (; shift >= 0; shift -= 4) {
+            buffer[length++] = HEX_DIGITS[(address >>> shift) & 0xF];
+        }
+        buffer[length++] = '\n';
+        this.length = length;
+        this.referenceCount++;
+    }
+
+    /**
+     * Write everything buffered so far and close the file.
+     *
+     * @throws IOException Thrown if writing to the file failed at any point.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.channel == null) {
+            return;
+        }
+        this.writeBuffer();
+        try {
+            this.channel.close();
+        }
+        catch (IOException exception) {
+            if (this.writeError == null) {
+                this.writeError = exception;
+            }
+        }
+        this.channel = null;
+        this.buffer = null;
+        IOException error = this.writeError;
+        this.writeError = null;
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private boolean isIncluded(int address) {
+        if (this.rangeStarts.length == 0) {
+            return true;
+        }
+        for (int range = 0; range < this.rangeStarts.length; range++) {
+            if (Integer.compareUnsigned(address, this.rangeStarts[range]) >= 0 && Integer.compareUnsigned(address, this.rangeEnds[range]) <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeBuffer() {
+        ByteBuffer data = ByteBuffer.wrap(this.buffer, 0, this.length);
+        try {
+            while (data.hasRemaining()) {
+                this.channel.write(data);
+            }
+        }
+        catch (IOException exception) {
+            // Reported when the file is closed; the rest of the trace is discarded
+            this.writeError = exception;
+        }
+        this.length = 0;
+    }
+}
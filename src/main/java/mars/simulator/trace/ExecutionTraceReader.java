@@ -0,0 +1,327 @@
+package mars.simulator.trace;
+
+import mars.mips.hardware.Register;
+import mars.util.Binary;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Sequential reader for trace files written by {@link ExecutionTracer}, compressed or not. The reader is positioned
+ * on one record at a time, and the accessors describe the current record, so reading a trace does not allocate
+ * per instruction. The full register state after each instruction is reconstructed as well:
+ * <pre>
+ * try (ExecutionTraceReader reader = new ExecutionTraceReader(path)) {
+ *     while (reader.next()) {
+ *         int address = reader.getAddress();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+public class ExecutionTraceReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int GZIP_MAGIC = 0x8B1F;
+
+    private final InputStream input;
+    private final byte[] buffer;
+    private int bufferPosition;
+    private int bufferLength;
+
+    private final int[] registerValues;
+    private int nextAddress;
+    private int previousMemoryAddress;
+
+    private long instructionCount;
+    private int address;
+    private int writeCount;
+    private int[] writtenRegisters;
+    private int memoryAccessSize;
+    private boolean memoryWrite;
+    private int memoryAddress;
+    private long memoryValue;
+
+    /**
+     * Open a trace file and read its header.
+     *
+     * @param path The trace file, which may be compressed with GZIP.
+     * @throws IOException Thrown if the file cannot be read or is not a trace.
+     */
+    public ExecutionTraceReader(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.buffer = new byte[BUFFER_SIZE];
+        this.bufferPosition = 0;
+        this.bufferLength = 0;
+        try {
+            // Peek at the first two bytes to detect compression, then start over
+            ByteBuffer header = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading until both bytes are in the buffer
+            }
+            boolean compressed = !header.hasRemaining() && (header.getShort(0) & 0xFFFF) == GZIP_MAGIC;
+            channel.position(0);
+            InputStream input = Channels.newInputStream(channel);
+            this.input = compressed ? new GZIPInputStream(input, BUFFER_SIZE) : input;
+            byte[] magic = new byte[ExecutionTracer.MAGIC.length];
+            for (int index = 0; index < magic.length; index++) {
+                magic[index] = (byte) this.readByte();
+            }
+            if (!Arrays.equals(magic, ExecutionTracer.MAGIC)) {
+                throw new IOException(path + " is not an execution trace");
+            }
+            int registerCount = (int) this.readUnsigned();
+            if (registerCount > 0xFF) {
+                throw new IOException(path + " is not an execution trace");
+            }
+            this.registerValues = new int[registerCount];
+            for (int index = 0; index < registerCount; index++) {
+                this.registerValues[index] = (int) this.readUnsigned();
+            }
+        }
+        catch (IOException exception) {
+            channel.close();
+            throw exception;
+        }
+        this.nextAddress = 0;
+        this.previousMemoryAddress = 0;
+        this.instructionCount = 0;
+        this.writtenRegisters = new int[8];
+    }
+
+    /**
+     * Advance to the next record.
+     *
+     * @return <code>true</code> if there was another record, or <code>false</code> at the end of the trace.
+     * @throws IOException Thrown if the trace could not be read or is truncated.
+     */
+    public boolean next() throws IOException {
+        if (this.bufferPosition == this.bufferLength && !this.fill()) {
+            return false;
+        }
+        int tag = this.readByte();
+        this.address = this.nextAddress;
+        if ((tag & ExecutionTracer.ADDRESS_JUMP) != 0) {
+            this.address += this.readSigned() << 2;
+        }
+        this.nextAddress = this.address + 4;
+
+        this.writeCount = (tag >>> ExecutionTracer.REGISTER_COUNT_SHIFT) & ExecutionTracer.REGISTER_COUNT_MASK;
+        if (this.writeCount == ExecutionTracer.REGISTER_COUNT_MASK) {
+            this.writeCount = (int) this.readUnsigned();
+        }
+        if (this.writeCount > this.writtenRegisters.length) {
+            this.writtenRegisters = new int[Math.max(this.writeCount, this.writtenRegisters.length * 2)];
+        }
+        for (int write = 0; write < this.writeCount; write++) {
+            int index = this.readByte();
+            if (index >= this.registerValues.length) {
+                throw new IOException("invalid register index " + index + " in execution trace");
+            }
+            this.writtenRegisters[write] = index;
+            this.registerValues[index] += this.readSigned();
+        }
+
+        if ((tag & ExecutionTracer.MEMORY_ACCESS) != 0) {
+            this.memoryAccessSize = 1 << (tag >>> ExecutionTracer.MEMORY_SIZE_SHIFT);
+            this.memoryWrite = (tag & ExecutionTracer.MEMORY_WRITE) != 0;
+            this.memoryAddress = this.previousMemoryAddress + this.readSigned();
+            this.previousMemoryAddress = this.memoryAddress;
+            this.memoryValue = this.readUnsigned();
+        }
+        else {
+            this.memoryAccessSize = 0;
+            this.memoryWrite = false;
+            this.memoryAddress = 0;
+            this.memoryValue = 0;
+        }
+        this.instructionCount++;
+        return true;
+    }
+
+    /**
+     * Get the number of records read so far, which is also the position of the current record counting from 1.
+     *
+     * @return The number of instructions read.
+     */
+    public long getInstructionCount() {
+        return this.instructionCount;
+    }
+
+    /**
+     * Get the address of the current instruction.
+     *
+     * @return The address of the instruction.
+     */
+    public int getAddress() {
+        return this.address;
+    }
+
+    /**
+     * Get the number of registers written by the current instruction.
+     *
+     * @return The number of register writes.
+     */
+    public int getRegisterWriteCount() {
+        return this.writeCount;
+    }
+
+    /**
+     * Get the index of a register written by the current instruction, using the register numbering of
+     * {@link mars.mips.instructions.DecodedInstruction}.
+     *
+     * @param write The position of the write, from 0 to {@link #getRegisterWriteCount()} - 1.
+     * @return The register index.
+     */
+    public int getWrittenRegister(int write) {
+        return this.writtenRegisters[write];
+    }
+
+    /**
+     * Get the value of a register after the current instruction, using the register numbering of
+     * {@link mars.mips.instructions.DecodedInstruction}.
+     *
+     * @param index The register index.
+     * @return The value of the register.
+     */
+    public int getRegisterValue(int index) {
+        return this.registerValues[index];
+    }
+
+    /**
+     * Get the number of bytes of memory accessed by the current instruction.
+     *
+     * @return The access size, or 0 if the instruction did not access memory.
+     */
+    public int getMemoryAccessSize() {
+        return this.memoryAccessSize;
+    }
+
+    /**
+     * Determine whether the current instruction wrote to memory.
+     *
+     * @return <code>true</code> for a store, or <code>false</code> for a load or if memory was not accessed.
+     */
+    public boolean isMemoryWrite() {
+        return this.memoryWrite;
+    }
+
+    /**
+     * Get the effective address of the memory accessed by the current instruction.
+     *
+     * @return The address, or 0 if the instruction did not access memory.
+     */
+    public int getMemoryAddress() {
+        return this.memoryAddress;
+    }
+
+    /**
+     * Get the value read or written by the current instruction. Bytes and halfwords are zero-extended, unaligned
+     * word accesses give the word containing the address, and doubleword accesses give both words, the word at the
+     * lower address in the low half.
+     *
+     * @return The value accessed, or 0 if the instruction did not access memory.
+     */
+    public long getMemoryValue() {
+        return this.memoryValue;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.input.close();
+    }
+
+    /**
+     * Convert a trace file to text, with one line per instruction of the form
+     * <pre>
+     * 42 0x00400010 $t0=0x00000005 W4[0x10010000]=0x00000005
+     * </pre>
+     * giving the instruction count, the address, each register written and its new value, and any memory read
+     * (<code>R</code>) or written (<code>W</code>) along with its size in bytes, address, and value.
+     *
+     * @param tracePath The trace file to read.
+     * @param textPath  The text file to write, which is replaced if it exists.
+     * @return The number of instructions converted.
+     * @throws IOException Thrown if the trace could not be read or the text could not be written.
+     */
+    public static long convertToText(Path tracePath, Path textPath) throws IOException {
+        String[] names = getRegisterNames();
+        try (ExecutionTraceReader reader = new ExecutionTraceReader(tracePath);
+             PrintWriter writer = new PrintWriter(Files.newBufferedWriter(textPath))) {
+            StringBuilder line = new StringBuilder();
+            while (reader.next()) {
+                line.setLength(0);
+                line.append(reader.getInstructionCount()).append(' ').append(Binary.intToHexString(reader.getAddress()));
+                for (int write = 0; write < reader.getRegisterWriteCount(); write++) {
+                    int index = reader.getWrittenRegister(write);
+                    String name = (index < names.length) ? names[index] : "$r" + index;
+                    line.append(' ').append(name).append('=').append(Binary.intToHexString(reader.getRegisterValue(index)));
+                }
+                if (reader.getMemoryAccessSize() > 0) {
+                    line.append(' ').append(reader.isMemoryWrite() ? 'W' : 'R').append(reader.getMemoryAccessSize())
+                        .append('[').append(Binary.intToHexString(reader.getMemoryAddress())).append("]=")
+                        .append(reader.getMemoryAccessSize() > 4 ? Binary.longToHexString(reader.getMemoryValue())
+                            : Binary.intToHexString((int) reader.getMemoryValue()));
+                }
+                writer.println(line);
+            }
+            return reader.getInstructionCount();
+        }
+    }
+
+    private static String[] getRegisterNames() {
+        Register[] registers = ExecutionTracer.getTracedRegisters();
+        String[] names = new String[registers.length];
+        for (int index = 0; index < registers.length; index++) {
+            names[index] = registers[index].getName();
+        }
+        return names;
+    }
+
+    private boolean fill() throws IOException {
+        int count;
+        do {
+            count = this.input.read(this.buffer, 0, this.buffer.length);
+        }
+        while (count == 0);
+        this.bufferPosition = 0;
+        this.bufferLength = Math.max(count, 0);
+        return count > 0;
+    }
+
+    private int readByte() throws IOException {
+        if (this.bufferPosition == this.bufferLength && !this.fill()) {
+            throw new EOFException("execution trace is truncated");
+        }
+        return this.buffer[this.bufferPosition++] & 0xFF;
+    }
+
+    private long readUnsigned() throws IOException {
+        long value = 0;
+        int shift = 0;
+        int current;
+        do {
+            current = this.readByte();
+            value |= (long) (current & 0x7F) << shift;
+            shift += 7;
+        }
+        while ((current & 0x80) != 0);
+        return value;
+    }
+
+    private int readSigned() throws IOException {
+        int value = (int) this.readUnsigned();
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,349 @@
+package mars.simulator.trace;
+
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.Register;
+import mars.mips.hardware.RegisterFile;
+import mars.mips.instructions.DecodedInstruction;
+import mars.mips.instructions.Instruction;
+import mars.simulator.ExecutionListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records every instruction executed to a compact binary trace file: the address of the instruction, the registers
+ * it wrote along with their new values, and the memory it read or wrote. Traces can be read back with
+ * {@link ExecutionTraceReader}.
+ * <p>
+ * Records are encoded on the simulator thread into a ring buffer, and a background thread drains the buffer to the
+ * file, optionally compressed with GZIP. The buffer has a single producer and a single consumer which only
+ * communicate through two position counters, so neither thread ever takes a lock; the simulator thread only waits
+ * if the writer falls a full buffer behind. Encoding a typical instruction takes a handful of byte stores.
+ * <p>
+ * A trace file begins with the 8-byte magic <code>MARSTRC1</code>, followed by the number of registers and the
+ * value of each register when tracing began, indexed as in {@link DecodedInstruction} (general-purpose registers,
+ * floating-point registers, hi, lo, and the condition flags). Then there is one record per instruction:
+ * <ol>
+ * <li>A tag byte. Bit 0 is set if the address is not the one following the previous instruction. Bits 1-3 hold
+ *     the number of register writes, or 7 if the number follows separately. Bit 4 is set if the instruction
+ *     accessed memory, bit 5 is set if that access was a write, and bits 6-7 hold the base-2 logarithm of the
+ *     access size in bytes.
+ * <li>If bit 0 of the tag is set, the difference in words from the expected address.
+ * <li>If bits 1-3 of the tag are all set, the number of register writes.
+ * <li>For each register write, the register index as a single byte, followed by the difference between the new
+ *     value and the register's previous value.
+ * <li>If the instruction accessed memory, the difference between its address and the address of the previous access,
+ *     followed by the value read or written (zero-extended, or the whole doubleword for 8-byte accesses).
+ * </ol>
+ * Integers are variable-length: 7 bits per byte, least significant first, with the high bit set on all bytes but the
+ * last. Differences are zigzag-encoded so that small negative values are also short.
+ * <p>
+ * Register writes are those listed by {@link DecodedInstruction#getDestinations()}, except that for system
+ * instructions such as <code>syscall</code>, every general-purpose and floating-point register which changed is
+ * recorded, since services return their results in registers.
+ */
+public class ExecutionTracer implements ExecutionListener, Closeable {
+    static final byte[] MAGIC = { 'M', 'A', 'R', 'S', 'T', 'R', 'C', '1' };
+    static final int ADDRESS_JUMP = 1;
+    static final int REGISTER_COUNT_SHIFT = 1;
+    static final int REGISTER_COUNT_MASK = 7;
+    static final int MEMORY_ACCESS = 1 << 4;
+    static final int MEMORY_WRITE = 1 << 5;
+    static final int MEMORY_SIZE_SHIFT = 6;
+
+    private static final int BUFFER_SIZE = 1 << 22;
+    // Upper bound on the size of one record: a tag, an address, a count, every register, and a memory access
+    private static final int MAX_RECORD_SIZE = 1 + 5 + 5 + DecodedInstruction.REGISTER_COUNT * 6 + 5 + 10;
+    // Records are made visible to the writer in batches, so the simulator thread rarely touches shared state
+    private static final int PUBLISH_THRESHOLD = 1 << 14;
+    private static final long WRITER_IDLE_NANOS = 1_000_000;
+    private static final long PRODUCER_WAIT_NANOS = 10_000;
+
+    private final Register[] registers;
+    private final int[] previousValues;
+    private int expectedAddress;
+    private int previousMemoryAddress;
+
+    private final byte[] buffer;
+    private final int mask;
+    // Owned by the simulator thread
+    private long head;
+    private long cachedConsumed;
+    // Shared between the simulator thread and the writer thread
+    private final AtomicLong published;
+    private final AtomicLong consumed;
+    private volatile boolean closing;
+
+    private final WritableByteChannel output;
+    private final Thread writerThread;
+    private volatile IOException writeError;
+
+    /**
+     * Create a tracer which writes to the given file, recording the current values of the registers as the initial
+     * state. The tracer must be attached to the simulator with
+     * {@link mars.simulator.Simulator#addExecutionListener(ExecutionListener)} and closed when tracing is done.
+     *
+     * @param path       The file to write, which is replaced if it exists.
+     * @param compressed Whether to compress the trace with GZIP.
+     * @throws IOException Thrown if the file cannot be opened.
+     */
+    public ExecutionTracer(Path path, boolean compressed) throws IOException {
+        this.registers = getTracedRegisters();
+        this.previousValues = new int[this.registers.length];
+        this.expectedAddress = 0;
+        this.previousMemoryAddress = 0;
+
+        this.buffer = new byte[BUFFER_SIZE];
+        this.mask = BUFFER_SIZE - 1;
+        this.head = 0;
+        this.cachedConsumed = 0;
+        this.published = new AtomicLong();
+        this.consumed = new AtomicLong();
+        this.closing = false;
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.output = compressed ? Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(channel), 1 << 16)) : channel;
+        this.writeError = null;
+
+        for (byte value : MAGIC) {
+            this.writeByte(value);
+        }
+        this.writeUnsigned(this.registers.length);
+        for (int index = 0; index < this.registers.length; index++) {
+            this.previousValues[index] = this.registers[index].getValueNoNotify();
+            this.writeUnsigned(this.previousValues[index] & 0xFFFFFFFFL);
+        }
+
+        this.writerThread = new Thread(this::drain, "Execution trace writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Get the registers which are traced, indexed as in {@link DecodedInstruction}.
+     *
+     * @return A new array of the traced registers.
+     */
+    static Register[] getTracedRegisters() {
+        Register[] registers = new Register[DecodedInstruction.REGISTER_COUNT];
+        System.arraycopy(RegisterFile.getRegisters(), 0, registers, 0, DecodedInstruction.FIRST_FLOATING_POINT);
+        System.arraycopy(Coprocessor1.getRegisters(), 0, registers, DecodedInstruction.FIRST_FLOATING_POINT, DecodedInstruction.HIGH_ORDER - DecodedInstruction.FIRST_FLOATING_POINT);
+        registers[DecodedInstruction.HIGH_ORDER] = RegisterFile.getHighOrderRegister();
+        registers[DecodedInstruction.LOW_ORDER] = RegisterFile.getLowOrderRegister();
+        registers[DecodedInstruction.CONDITION_FLAGS] = Coprocessor1.getConditionFlagsRegister();
+        return registers;
+    }
+
+    @Override
+    public void instructionExecuted(int address, DecodedInstruction instruction, int memoryAddress, int nextAddress) {
+        this.reserve(MAX_RECORD_SIZE);
+        // The tag is filled in once the record is complete
+        long tagPosition = this.head++;
+        int tag = 0;
+
+        if (address != this.expectedAddress) {
+            tag |= ADDRESS_JUMP;
+            this.writeSigned((address - this.expectedAddress) >> 2);
+        }
+        this.expectedAddress = address + Instruction.BYTES_PER_INSTRUCTION;
+
+        int writeCount;
+        if (instruction.is(DecodedInstruction.SYSTEM)) {
+            writeCount = this.writeChangedRegisters();
+        }
+        else {
+            int[] destinations = instruction.getDestinations();
+            writeCount = destinations.length;
+            if (writeCount >= REGISTER_COUNT_MASK) {
+                this.writeUnsigned(writeCount);
+            }
+            for (int index : destinations) {
+                this.writeRegister(index);
+            }
+        }
+        tag |= Math.min(writeCount, REGISTER_COUNT_MASK) << REGISTER_COUNT_SHIFT;
+
+        int size = instruction.getMemoryAccessSize();
+        if (size > 0) {
+            tag |= MEMORY_ACCESS | (Integer.numberOfTrailingZeros(size) << MEMORY_SIZE_SHIFT);
+            if (instruction.is(DecodedInstruction.STORE)) {
+                tag |= MEMORY_WRITE;
+            }
+            this.writeSigned(memoryAddress - this.previousMemoryAddress);
+            this.previousMemoryAddress = memoryAddress;
+            this.writeUnsigned(readMemory(memoryAddress, size));
+        }
+
+        this.buffer[(int) tagPosition & this.mask] = (byte) tag;
+        if (this.head - this.published.getPlain() >= PUBLISH_THRESHOLD) {
+            this.published.setRelease(this.head);
+        }
+    }
+
+    /**
+     * Make every record encoded so far available to the writer thread. Records are otherwise handed over in batches,
+     * so this should be called whenever the simulator pauses if the trace file is being read while it is written.
+     */
+    public void flush() {
+        this.published.setRelease(this.head);
+        LockSupport.unpark(this.writerThread);
+    }
+
+    /**
+     * Write all remaining records, wait for the writer thread to finish, and close the file. This must be called
+     * on the simulator thread or after the simulator has stopped.
+     *
+     * @throws IOException Thrown if writing to the file failed at any point.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closing) {
+            return;
+        }
+        // Everything must be published before the writer can see that the tracer is closing
+        this.published.setRelease(this.head);
+        this.closing = true;
+        LockSupport.unpark(this.writerThread);
+        try {
+            this.writerThread.join();
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            this.output.close();
+        }
+        catch (IOException exception) {
+            if (this.writeError == null) {
+                this.writeError = exception;
+            }
+        }
+        if (this.writeError != null) {
+            throw this.writeError;
+        }
+    }
+
+    private int writeChangedRegisters() {
+        // Count first, since the count precedes the writes
+        int count = 0;
+        for (int index = 1; index < DecodedInstruction.HIGH_ORDER; index++) {
+            if (this.registers[index].getValueNoNotify() != this.previousValues[index]) {
+                count++;
+            }
+        }
+        if (count >= REGISTER_COUNT_MASK) {
+            this.writeUnsigned(count);
+        }
+        for (int index = 1; index < DecodedInstruction.HIGH_ORDER; index++) {
+            if (this.registers[index].getValueNoNotify() != this.previousValues[index]) {
+                this.writeRegister(index);
+            }
+        }
+        return count;
+    }
+
+    private void writeRegister(int index) {
+        int value = this.registers[index].getValueNoNotify();
+        this.writeByte((byte) index);
+        this.writeSigned(value - this.previousValues[index]);
+        this.previousValues[index] = value;
+    }
+
+    private static long readMemory(int address, int size) {
+        try {
+            return switch (size) {
+                case 1 -> Memory.getInstance().fetchByte(address, false) & 0xFFL;
+                case 2 -> Memory.getInstance().fetchHalfword(address, false) & 0xFFFFL;
+                // Unaligned word accesses (lwl, lwr, swl, swr) are traced as the word containing the address
+                case 4 -> Memory.getInstance().fetchWord(address & -Memory.BYTES_PER_WORD, false) & 0xFFFFFFFFL;
+                default -> (Memory.getInstance().fetchWord(address, false) & 0xFFFFFFFFL)
+                    | ((long) Memory.getInstance().fetchWord(address + Memory.BYTES_PER_WORD, false) << 32);
+            };
+        }
+        catch (AddressErrorException exception) {
+            return 0;
+        }
+    }
+
+    /**
+     * Wait until the buffer has room for the given number of bytes.
+     */
+    private void reserve(int size) {
+        if (this.buffer.length - (this.head - this.cachedConsumed) >= size) {
+            return;
+        }
+        this.flush();
+        while (this.buffer.length - (this.head - (this.cachedConsumed = this.consumed.getAcquire())) < size) {
+            LockSupport.parkNanos(PRODUCER_WAIT_NANOS);
+        }
+    }
+
+    private void writeByte(byte value) {
+        this.buffer[(int) this.head++ & this.mask] = value;
+    }
+
+    private void writeUnsigned(long value) {
+        while ((value & ~0x7FL) != 0) {
+            this.writeByte((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        this.writeByte((byte) value);
+    }
+
+    private void writeSigned(int value) {
+        // Zigzag encoding keeps small negative values short
+        this.writeUnsigned(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Body of the writer thread, which copies published records from the buffer to the file until the tracer is
+     * closed. If writing fails, the rest of the trace is discarded so that the simulator never waits indefinitely.
+     */
+    private void drain() {
+        long position = 0;
+        while (true) {
+            boolean finished = this.closing;
+            long end = this.published.getAcquire();
+            if (position == end) {
+                if (finished) {
+                    return;
+                }
+                LockSupport.parkNanos(WRITER_IDLE_NANOS);
+                continue;
+            }
+            if (this.writeError == null) {
+                try {
+                    int start = (int) position & this.mask;
+                    int length = (int) (end - position);
+                    int firstLength = Math.min(length, this.buffer.length - start);
+                    this.writeFully(ByteBuffer.wrap(this.buffer, start, firstLength));
+                    if (firstLength < length) {
+                        this.writeFully(ByteBuffer.wrap(this.buffer, 0, length - firstLength));
+                    }
+                }
+                catch (IOException exception) {
+                    this.writeError = exception;
+                }
+            }
+            position = end;
+            this.consumed.setRelease(position);
+        }
+    }
+
+    private void writeFully(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            this.output.write(data);
+        }
+    }
+}
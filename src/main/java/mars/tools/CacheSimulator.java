@@ -2,6 +2,7 @@ package mars.tools;
 
 import mars.mips.hardware.Memory;
 import mars.mips.hardware.MemoryConfigurations;
+import mars.simulator.cache.Cache;
 import mars.util.Binary;
 
 import javax.swing.*;
@@ -11,7 +12,6 @@ import java.awt.*;
 import java.awt.event.ItemEvent;
 import java.util.Arrays;
 import java.util.Objects;
-import java.util.Random;
 
 /*
 Copyright (c) 2003-2011,  Pete Sanderson and Kenneth Vollmar
@@ -104,15 +104,26 @@ public class CacheSimulator extends AbstractMarsTool {
     }
 
     public enum ReplacementPolicy {
-        LRU("LRU"),
-        RANDOM("Random");
+        LRU("LRU", mars.simulator.cache.ReplacementPolicy.LRU),
+        RANDOM("Random", mars.simulator.cache.ReplacementPolicy.RANDOM);
 
         public static final ReplacementPolicy DEFAULT = LRU;
 
         private final String label;
+        private final mars.simulator.cache.ReplacementPolicy policy;
 
-        ReplacementPolicy(String label) {
+        ReplacementPolicy(String label, mars.simulator.cache.ReplacementPolicy policy) {
             this.label = label;
+            this.policy = policy;
+        }
+
+        /**
+         * Get the policy of the cache engine which implements this choice.
+         *
+         * @return The corresponding replacement policy of {@link Cache}.
+         */
+        public mars.simulator.cache.ReplacementPolicy getPolicy() {
+            return this.policy;
         }
 
         @Override
@@ -127,15 +138,12 @@ public class CacheSimulator extends AbstractMarsTool {
 
     // Cache-related data structures
     private Integer[] cacheSetSizeChoices; // Will change dynamically based on the other selections
-    private AbstractCache cache;
+    private Cache cache;
     private int memoryAccessCount;
     private int cacheHitCount;
     private int cacheMissCount;
     private double cacheHitRate;
 
-    // RNG used for random replacement policy.  For testing, set seed for reproducible stream
-    private final Random random = new Random(0);
-
     /**
      * Construct an instance of this tool. This will be used by the {@link mars.venus.ToolManager}.
      */
@@ -209,6 +217,7 @@ public class CacheSimulator extends AbstractMarsTool {
         this.cacheReplacementSelector = new JComboBox<>(ReplacementPolicy.values());
         this.cacheReplacementSelector.setEditable(false);
         this.cacheReplacementSelector.setSelectedItem(ReplacementPolicy.DEFAULT);
+        this.cacheReplacementSelector.addActionListener(event -> this.reset());
 
         this.cacheBlockSizeSelector = new JComboBox<>(Arrays.stream(CACHE_BLOCK_SIZE_CHOICES).boxed().toArray(Integer[]::new));
         this.cacheBlockSizeSelector.setEditable(false);
@@ -404,27 +413,34 @@ public class CacheSimulator extends AbstractMarsTool {
 
     @Override
     public void memoryRead(int address, int length, int value, int wordAddress, int wordValue) {
-        this.processMemoryAccess(wordAddress);
+        this.processMemoryAccess(wordAddress, false);
     }
 
     @Override
     public void memoryWritten(int address, int length, int value, int wordAddress, int wordValue) {
-        this.processMemoryAccess(wordAddress);
+        this.processMemoryAccess(wordAddress, true);
     }
 
     /**
      * Apply caching policies and update display when connected MIPS program accesses (data) memory.
+     * The cache is write-back and write-allocate, so reads and writes hit or miss alike.
      */
-    private void processMemoryAccess(int address) {
+    private void processMemoryAccess(int address, boolean write) {
         this.memoryAccessCount++;
-        CacheAccessResult cacheAccessResult = this.cache.isItAHitThenReadOnMiss(address);
-        if (cacheAccessResult.isHit()) {
+        boolean hit = this.cache.access(address, write);
+        // Lines of the cache engine are numbered by set and way, just like the blocks of the animation
+        int blockNumber = this.cache.getLastLine();
+        if (this.debug) {
+            this.writeLog("(" + this.memoryAccessCount + ") address: " + Binary.intToHexString(address)
+                + (hit ? " -- HIT" : " -- MISS") + " in block " + blockNumber + "\n");
+        }
+        if (hit) {
             this.cacheHitCount++;
-            this.animations.showHit(cacheAccessResult.blockNumber);
+            this.animations.showHit(blockNumber);
         }
         else {
             this.cacheMissCount++;
-            this.animations.showMiss(cacheAccessResult.blockNumber);
+            this.animations.showMiss(blockNumber);
         }
         this.cacheHitRate = this.cacheHitCount / (double) this.memoryAccessCount;
 
@@ -502,19 +518,27 @@ public class CacheSimulator extends AbstractMarsTool {
      */
     private void updateCacheSetSizeSelector() {
         this.cacheSetSizeSelector.setModel(new DefaultComboBoxModel<>(this.determineSetSizeChoices(
-            this.cacheBlockCountSelector.getSelectedIndex(),
+            CACHE_BLOCK_COUNT_CHOICES[this.cacheBlockCountSelector.getSelectedIndex()],
             (PlacementPolicy) Objects.requireNonNull(this.cachePlacementSelector.getSelectedItem())
         )));
     }
 
     /**
-     * Create and return a new cache object based on current specs.
+     * Create and return a new cache object based on current specs. The placement and replacement policies are
+     * simulated by the same engine used for headless cache simulation, where direct mapping is a set size of 1
+     * and full associativity is a single set containing every block.
      */
-    private AbstractCache createNewCache() {
-        return new AnyCache(
-            CACHE_BLOCK_COUNT_CHOICES[this.cacheBlockCountSelector.getSelectedIndex()],
-            CACHE_BLOCK_SIZE_CHOICES[this.cacheBlockSizeSelector.getSelectedIndex()],
-            (Integer) Objects.requireNonNull(this.cacheSetSizeSelector.getSelectedItem())
+    private Cache createNewCache() {
+        int blockSize = CACHE_BLOCK_SIZE_CHOICES[this.cacheBlockSizeSelector.getSelectedIndex()] * Memory.BYTES_PER_WORD;
+        int blockCount = CACHE_BLOCK_COUNT_CHOICES[this.cacheBlockCountSelector.getSelectedIndex()];
+        return new Cache(
+            NAME,
+            blockCount * blockSize,
+            blockSize,
+            (Integer) Objects.requireNonNull(this.cacheSetSizeSelector.getSelectedItem()),
+            ((ReplacementPolicy) Objects.requireNonNull(this.cacheReplacementSelector.getSelectedItem())).getPolicy(),
+            true,
+            true
         );
     }
 
@@ -561,244 +585,6 @@ public class CacheSimulator extends AbstractMarsTool {
         this.logDisplay.setCaretPosition(this.logDisplay.getDocument().getLength());
     }
 
-    /**
-     * Represents a block in the cache.  Since we are only simulating
-     * cache performance, there's no need to actually store memory contents.
-     */
-    private static class CacheBlock {
-        public boolean valid;
-        public int tag;
-        public int sizeInWords;
-        public int mostRecentAccessTime;
-
-        public CacheBlock(int sizeInWords) {
-            this.valid = false;
-            this.tag = 0;
-            this.sizeInWords = sizeInWords;
-            this.mostRecentAccessTime = -1;
-        }
-    }
-
-    /**
-     * Represents the outcome of a cache access.  There are two parts:
-     * whether it was a hit or not, and in which block is the value stored.
-     * In the case of a hit, the block associated with address.  In the case of
-     * a miss, the block where new association is made.
-     *
-     * @author DPS 23-Dec-2010
-     */
-    private record CacheAccessResult(boolean isHit, int blockNumber) {}
-
-    /**
-     * Abstract Cache class.  Subclasses will implement specific policies.
-     */
-    private abstract static class AbstractCache {
-        private final int numberOfBlocks;
-        private final int blockSizeInWords;
-        private final int setSizeInBlocks;
-        private final int numberOfSets;
-        protected CacheBlock[] blocks;
-
-        protected AbstractCache(int numberOfBlocks, int blockSizeInWords, int setSizeInBlocks) {
-            this.numberOfBlocks = numberOfBlocks;
-            this.blockSizeInWords = blockSizeInWords;
-            this.setSizeInBlocks = setSizeInBlocks;
-            this.numberOfSets = numberOfBlocks / setSizeInBlocks;
-            this.blocks = new CacheBlock[numberOfBlocks];
-            this.reset();
-        }
-
-        // This will work regardless of placement. 
-        // For direct map, #sets==#blocks
-        // For full assoc, #sets==1 so anything % #sets == 0
-        // For n-way assoc, it extracts the set bits in address.
-        public int getSetNumber(int address) {
-            return address / Memory.BYTES_PER_WORD / this.blockSizeInWords % this.numberOfSets;
-        }
-
-        // This will work regardless of placement policy (direct map, n-way or full assoc)
-        public int getTag(int address) {
-            return address / Memory.BYTES_PER_WORD / this.blockSizeInWords / this.numberOfSets;
-        }
-
-        // This will work regardless of placement policy (direct map, n-way or full assoc)
-        // Returns absolute block offset into the cache.
-        public int getFirstBlockToSearch(int address) {
-            return this.getSetNumber(address) * this.setSizeInBlocks;
-        }
-
-        // This will work regardless of placement policy (direct map, n-way or full assoc)
-        // Returns absolute block offset into the cache.
-        public int getLastBlockToSearch(int address) {
-            return this.getFirstBlockToSearch(address) + this.setSizeInBlocks - 1;
-        }
-
-        /**
-         * Reset the cache contents.
-         */
-        public void reset() {
-            for (int block = 0; block < this.numberOfBlocks; block++) {
-                this.blocks[block] = new CacheBlock(this.blockSizeInWords);
-            }
-            System.gc(); // Scoop 'em up now
-        }
-
-        // Subclass must implement this according to its policies
-        public abstract CacheAccessResult isItAHitThenReadOnMiss(int address);
-    }
-
-    // Implements any of the well-known cache organizations.  Physical memory
-    // address is partitioned depending on organization:
-    //    Direct Mapping:    [ tag | block | word | byte ]
-    //    Fully Associative: [ tag | word | byte ]
-    //    Set Associative:   [ tag | set | word | byte ]
-    //
-    // Bit lengths of each part are determined as follows:
-    // Direct Mapping:
-    //   byte  = log2 of #bytes in a word (typically 4)
-    //   word  = log2 of #words in a block
-    //   block = log2 of #blocks in the cache
-    //   tag   = #bytes in address - (byte+word+block)
-    // Fully Associative:
-    //   byte  = log2 of #bytes in a word (typically 4)
-    //   word  = log2 of #words in a block
-    //   tag   = #bytes in address - (byte+word)
-    // Set Associative:
-    //   byte  = log2 of #bytes in a word (typically 4)
-    //   word  = log2 of #words in a block
-    //   set   = log2 of #sets in the cache
-    //   tag   = #bytes in address - (byte+word+set)
-    //
-    // Direct Mapping (1 way set associative):
-    // The block value for a given address identifies its block index into the cache.
-    // That's why its called "direct mapped."  This is the only cache block it can
-    // occupy.  If that cache block is empty or if it is occupied by a different tag,
-    // this is a MISS.  If that cache block is occupied by the same tag, this is a HIT.
-    // There is no replacement policy: upon a cache miss of an occupied block, the old
-    // block is written out (unless write-through) and the new one read in.
-    // Those actions are not simulated here.
-    //
-    // Fully Associative:
-    // There is one set, and very tag has to be searched before determining hit or miss.
-    // If tag is matched, it is a hit.  If tag is not matched and there is at least one
-    // empty block, it is a miss and the new tag will occupy it.  If tag is not matched
-    // and every block is occupied, it is a miss and one of the occupied blocks will be
-    // selected for removal and the new tag will replace it.
-    //
-    // n-way Set Associative:
-    // Each set consists of n blocks, and the number of sets in the cache is total number
-    // of blocks divided by n.  The set bits in the address will identify which set to
-    // search, and every tag in that set has to be searched before determining hit or miss.
-    // If tag is matched, it is a hit.  If tag is not matched and there is at least one
-    // empty block, it is a miss and the new tag will occupy it.  If tag is not matched
-    // and every block is occupied, it is a miss and one of the occupied blocks will be
-    // selected for removal and the new tag will replace it.
-    //
-    private class AnyCache extends AbstractCache {
-        public AnyCache(int numberOfBlocks, int blockSizeInWords, int setSizeInBlocks) {
-            super(numberOfBlocks, blockSizeInWords, setSizeInBlocks);
-        }
-
-        private enum CacheResultReason {
-            SET_FULL,
-            HIT,
-            MISS,
-        }
-
-        /**
-         * This method works for any of the placement policies:
-         * direct mapped, full associative or n-way set associative.
-         */
-        @Override
-        public CacheAccessResult isItAHitThenReadOnMiss(int address) {
-            CacheResultReason result = CacheResultReason.SET_FULL;
-            int firstBlock = this.getFirstBlockToSearch(address);
-            int lastBlock = this.getLastBlockToSearch(address);
-            if (CacheSimulator.this.debug) {
-                CacheSimulator.this.writeLog("(" + CacheSimulator.this.memoryAccessCount + ") address: "
-                    + Binary.intToHexString(address) + " (tag " + Binary.intToHexString(this.getTag(address)) + ") "
-                    + " block range: " + firstBlock + "-" + lastBlock + "\n");
-            }
-            CacheBlock block;
-            int blockNumber;
-            // Will do a sequential instead of associative search!
-            for (blockNumber = firstBlock; blockNumber <= lastBlock; blockNumber++) {
-                block = this.blocks[blockNumber];
-                if (CacheSimulator.this.debug) {
-                    CacheSimulator.this.writeLog("   trying block " + blockNumber + ((block.valid)
-                        ? " tag " + Binary.intToHexString(block.tag)
-                        : " empty"));
-                }
-                if (block.valid && block.tag == getTag(address)) {//  it's a hit!
-                    if (CacheSimulator.this.debug) {
-                        CacheSimulator.this.writeLog(" -- HIT\n");
-                    }
-                    result = CacheResultReason.HIT;
-                    block.mostRecentAccessTime = CacheSimulator.this.memoryAccessCount;
-                    break;
-                }
-                if (!block.valid) {
-                    // It's a miss but I got it now because it is empty!
-                    if (CacheSimulator.this.debug) {
-                        CacheSimulator.this.writeLog(" -- MISS\n");
-                    }
-                    result = CacheResultReason.MISS;
-                    block.valid = true;
-                    block.tag = this.getTag(address);
-                    block.mostRecentAccessTime = CacheSimulator.this.memoryAccessCount;
-                    break;
-                }
-                if (CacheSimulator.this.debug) {
-                    CacheSimulator.this.writeLog(" -- OCCUPIED\n");
-                }
-            }
-            if (result == CacheResultReason.SET_FULL) {
-                // Select one to replace and replace it...
-                if (CacheSimulator.this.debug) {
-                    CacheSimulator.this.writeLog("   MISS due to FULL SET");
-                }
-                int blockToReplace = this.selectBlockToReplace(firstBlock, lastBlock);
-                block = blocks[blockToReplace];
-                block.tag = this.getTag(address);
-                block.mostRecentAccessTime = CacheSimulator.this.memoryAccessCount;
-                blockNumber = blockToReplace;
-            }
-            return new CacheAccessResult(result == CacheResultReason.HIT, blockNumber);
-        }
-
-        /**
-         * Call this if all blocks in the set are full.  If the set contains more than one block,
-         * It will pick on to replace based on selected replacement policy.
-         */
-        private int selectBlockToReplace(int first, int last) {
-            int replaceBlock = first;
-            if (first != last) {
-                switch ((ReplacementPolicy) Objects.requireNonNull(CacheSimulator.this.cacheReplacementSelector.getSelectedItem())) {
-                    case RANDOM:
-                        replaceBlock = first + CacheSimulator.this.random.nextInt(last - first + 1);
-                        if (CacheSimulator.this.debug) {
-                            CacheSimulator.this.writeLog(" -- Random replace block " + replaceBlock + "\n");
-                        }
-                        break;
-                    case LRU:
-                    default:
-                        int leastRecentAccessTime = CacheSimulator.this.memoryAccessCount; // All of them have to be less than this
-                        for (int block = first; block <= last; block++) {
-                            if (this.blocks[block].mostRecentAccessTime < leastRecentAccessTime) {
-                                leastRecentAccessTime = this.blocks[block].mostRecentAccessTime;
-                                replaceBlock = block;
-                            }
-                        }
-                        if (CacheSimulator.this.debug) {
-                            CacheSimulator.this.writeLog(" -- LRU replace block " + replaceBlock + "; unused since (" + leastRecentAccessTime + ")\n");
-                        }
-                        break;
-                }
-            }
-            return replaceBlock;
-        }
-    }
-
     /**
      * Class to display animated cache
      */
@@ -0,0 +1,224 @@
+package mars.tools;
+
+import mars.Application;
+import mars.simulator.Simulator;
+import mars.simulator.SimulatorFinishEvent;
+import mars.simulator.SimulatorListener;
+import mars.simulator.SimulatorPauseEvent;
+import mars.simulator.SimulatorStartEvent;
+import mars.simulator.profile.CallGraphProfiler;
+import mars.util.Binary;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.*;
+import java.util.List;
+
+/**
+ * Tool which shows the function-level profile recorded by a {@link CallGraphProfiler}: for each function called,
+ * the number of calls, the instructions executed in the function itself and including its callees, and the
+ * maximum recursion depth. The table is refreshed periodically while the program runs and whenever it stops.
+ */
+public class FunctionProfiler extends AbstractMarsTool implements SimulatorListener {
+    private static final String NAME = "Function Profiler";
+    private static final String VERSION = "Version 1.0";
+    private static final int REFRESH_INTERVAL_MILLIS = 500;
+    private static final String[] COLUMN_NAMES = {
+        "Function", "Address", "Calls", "Exclusive", "Exclusive %", "Inclusive", "Inclusive %", "Max Depth",
+    };
+
+    private CallGraphProfiler profiler;
+    private List<CallGraphProfiler.FunctionProfile> profiles;
+    private long instructionCount;
+    private ProfileTableModel tableModel;
+    private JLabel summaryLabel;
+    private Timer refreshTimer;
+
+    /**
+     * Construct an instance of this tool. This will be used by the {@link mars.venus.ToolManager}.
+     */
+    @SuppressWarnings("unused")
+    public FunctionProfiler() {
+        super(NAME + ", " + VERSION);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    protected void initializePreGUI() {
+        this.profiler = new CallGraphProfiler();
+        this.profiles = List.of();
+        this.instructionCount = 0;
+    }
+
+    @Override
+    protected JComponent buildMainDisplayArea() {
+        this.tableModel = new ProfileTableModel();
+        JTable table = new JTable(this.tableModel);
+        table.setAutoCreateRowSorter(true);
+        table.setFillsViewportHeight(true);
+        table.getColumnModel().getColumn(0).setPreferredWidth(160);
+        DefaultTableCellRenderer percentRenderer = new DefaultTableCellRenderer() {
+            @Override
+            protected void setValue(Object value) {
+                this.setText(String.format("%.1f", (Double) value));
+            }
+        };
+        percentRenderer.setHorizontalAlignment(SwingConstants.RIGHT);
+        table.getColumnModel().getColumn(4).setCellRenderer(percentRenderer);
+        table.getColumnModel().getColumn(6).setCellRenderer(percentRenderer);
+
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setPreferredSize(new Dimension(720, 300));
+
+        this.summaryLabel = new JLabel();
+        this.updateSummary();
+
+        JPanel panel = new JPanel(new BorderLayout(6, 6));
+        panel.add(this.summaryLabel, BorderLayout.NORTH);
+        panel.add(scrollPane, BorderLayout.CENTER);
+        return panel;
+    }
+
+    @Override
+    protected JComponent getHelpComponent() {
+        final String helpContent = """
+            This tool profiles the program at the level of functions.  It keeps
+            a shadow call stack which is pushed by calls (jal, jalr, bgezal, bltzal)
+            and popped by returns (jr $ra), and records for each function:
+
+            Calls -- the number of times the function was called.
+            Exclusive -- instructions executed in the function itself.
+            Inclusive -- instructions executed while the function was active,
+                including the functions it called.  Recursive calls are only
+                counted once.
+            Max Depth -- the most activations of the function at once.
+
+            Functions are named after the label at the address called.  Code
+            executed before the first call belongs to a root function.  A return
+            which matches no active call is treated as an ordinary jump.
+
+            Profiling begins the next time the program runs after this tool is
+            opened, and starts over whenever the program is reset.  Click a
+            column heading to sort by that column.
+            """;
+        JButton help = new JButton("Help");
+        help.putClientProperty("JButton.buttonType", "help");
+        help.addActionListener(event -> JOptionPane.showMessageDialog(this.dialog, helpContent));
+        return help;
+    }
+
+    @Override
+    protected void startObserving() {
+        Simulator.getInstance().setCallGraphProfiler(this.profiler);
+        Simulator.getInstance().addGUIListener(this);
+        this.refreshTimer = new Timer(REFRESH_INTERVAL_MILLIS, event -> this.refresh());
+    }
+
+    @Override
+    protected void stopObserving() {
+        this.refreshTimer.stop();
+        Simulator.getInstance().removeGUIListener(this);
+        if (Simulator.getInstance().getCallGraphProfiler() == this.profiler) {
+            Simulator.getInstance().setCallGraphProfiler(null);
+        }
+    }
+
+    @Override
+    protected void reset() {
+        synchronized (Application.MEMORY_AND_REGISTERS_LOCK) {
+            this.profiler.reset();
+        }
+        this.refresh();
+    }
+
+    @Override
+    public void simulatorStarted(SimulatorStartEvent event) {
+        this.refreshTimer.start();
+    }
+
+    @Override
+    public void simulatorPaused(SimulatorPauseEvent event) {
+        this.refreshTimer.stop();
+        this.refresh();
+    }
+
+    @Override
+    public void simulatorFinished(SimulatorFinishEvent event) {
+        this.refreshTimer.stop();
+        this.refresh();
+    }
+
+    @Override
+    public void simulatorStepped() {
+        this.refresh();
+    }
+
+    /**
+     * Take a new snapshot of the profile and display it.
+     */
+    private void refresh() {
+        synchronized (Application.MEMORY_AND_REGISTERS_LOCK) {
+            this.profiles = this.profiler.getFunctionProfiles();
+            this.instructionCount = this.profiler.getInstructionCount();
+            this.updateSummary();
+        }
+        this.tableModel.fireTableDataChanged();
+    }
+
+    private void updateSummary() {
+        String summary = this.instructionCount + " instructions, " + this.profiler.getCallCount()
+            + " calls, maximum stack depth " + this.profiler.getMaxStackDepth();
+        if (this.profiler.getMismatchedReturnCount() > 0) {
+            summary += ", " + this.profiler.getMismatchedReturnCount() + " mismatched returns";
+        }
+        this.summaryLabel.setText(summary);
+    }
+
+    private class ProfileTableModel extends AbstractTableModel {
+        @Override
+        public int getRowCount() {
+            return FunctionProfiler.this.profiles.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMN_NAMES.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMN_NAMES[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return switch (column) {
+                case 0, 1 -> String.class;
+                case 4, 6 -> Double.class;
+                case 7 -> Integer.class;
+                default -> Long.class;
+            };
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            CallGraphProfiler.FunctionProfile profile = FunctionProfiler.this.profiles.get(row);
+            long total = Math.max(FunctionProfiler.this.instructionCount, 1);
+            return switch (column) {
+                case 0 -> profile.name();
+                case 1 -> Binary.intToHexString(profile.address());
+                case 2 -> profile.calls();
+                case 3 -> profile.exclusiveCount();
+                case 4 -> 100.0 * profile.exclusiveCount() / total;
+                case 5 -> profile.inclusiveCount();
+                case 6 -> 100.0 * profile.inclusiveCount() / total;
+                default -> profile.maxRecursionDepth();
+            };
+        }
+    }
+}
@@ -368,6 +368,16 @@ public class MessagesPane extends JTabbedPane implements SimulatorListener {
                 this.messages.writeOutput(Simulator.class.getSimpleName() + ": stopped simulation after encountering an internal error.\n");
                 this.console.writeOutput("\n--- program terminated due to internal error ---\n\n");
             }
+            case OUTPUT_MISMATCH -> {
+                this.messages.writeOutput(Simulator.class.getSimpleName() + ": stopped simulation when output differed from expected output.\n");
+                this.console.writeOutput("\n--- program terminated (output differs from expected output) ---\n\n");
+            }
+            case TIME_LIMIT_EXCEEDED, OUTPUT_LIMIT_EXCEEDED, HEAP_LIMIT_EXCEEDED, OPEN_FILE_LIMIT_EXCEEDED -> {
+                String limit = Simulator.getInstance().getResourceBudget().describeExceeded();
+                this.messages.writeOutput(Simulator.class.getSimpleName() + ": stopped simulation (" + limit + ").\n");
+                this.console.writeOutput("\n--- program terminated (" + limit + ") ---\n\n");
+                this.setSelectedComponent(this.consoleTab);
+            }
         }
     }
 }
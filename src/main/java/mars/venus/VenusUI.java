@@ -124,6 +124,10 @@ public class VenusUI extends JFrame implements SimulatorListener {
     private RunStartAction runStartAction;
     private RunStepForwardAction runStepForwardAction;
     private RunStepBackwardAction runStepBackwardAction;
+    private RunReverseContinueAction runReverseContinueAction;
+    private RunGoToInstructionAction runGoToInstructionAction;
+    private RunRecordInputAction runRecordInputAction;
+    private RunReplayInputAction runReplayInputAction;
     private RunPauseAction runPauseAction;
     private RunStopAction runStopAction;
     private RunResetAction runResetAction;
@@ -145,6 +149,7 @@ public class VenusUI extends JFrame implements SimulatorListener {
     private SettingsHighlightingAction settingsHighlightingAction;
     private SettingsMemoryConfigurationAction settingsMemoryConfigurationAction;
     private SettingsSelfModifyingCodeAction settingsSelfModifyingCodeAction;
+    private SettingsTimeTravelAction settingsTimeTravelAction;
     private SettingsEndiannessAction settingsEndiannessAction;
     private SettingsPreferencesAction settingsPreferencesAction;
 
@@ -282,6 +287,7 @@ public class VenusUI extends JFrame implements SimulatorListener {
         this.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
 
         Simulator.getInstance().addGUIListener(this);
+        Simulator.getInstance().getTimeTravel().setEnabled(this.settings.timeTravelEnabled.get());
 
         // Update all actions
         for (VenusAction action : this.actions) {
@@ -354,6 +360,10 @@ public class VenusUI extends JFrame implements SimulatorListener {
         this.actions.add(this.runPauseAction = new RunPauseAction(this, KeyEvent.VK_P, KeyStroke.getKeyStroke(KeyEvent.VK_F9, 0)));
         this.actions.add(this.runStepForwardAction = new RunStepForwardAction(this, KeyEvent.VK_T, KeyStroke.getKeyStroke(KeyEvent.VK_F7, 0)));
         this.actions.add(this.runStepBackwardAction = new RunStepBackwardAction(this, KeyEvent.VK_B, KeyStroke.getKeyStroke(KeyEvent.VK_F8, 0)));
+        this.actions.add(this.runReverseContinueAction = new RunReverseContinueAction(this, KeyEvent.VK_V, KeyStroke.getKeyStroke(KeyEvent.VK_F8, KeyEvent.SHIFT_DOWN_MASK)));
+        this.actions.add(this.runGoToInstructionAction = new RunGoToInstructionAction(this, KeyEvent.VK_I, null));
+        this.actions.add(this.runRecordInputAction = new RunRecordInputAction(this, KeyEvent.VK_E, null));
+        this.actions.add(this.runReplayInputAction = new RunReplayInputAction(this, KeyEvent.VK_Y, null));
         this.actions.add(this.runResetAction = new RunResetAction(this, KeyEvent.VK_R, KeyStroke.getKeyStroke(KeyEvent.VK_F12, 0)));
         this.actions.add(this.runClearBreakpointsAction = new RunClearBreakpointsAction(this, KeyEvent.VK_K, KeyStroke.getKeyStroke(KeyEvent.VK_K, menuShortcutMask)));
         this.actions.add(this.runToggleBreakpointsAction = new RunToggleBreakpointsAction(this, KeyEvent.VK_T, KeyStroke.getKeyStroke(KeyEvent.VK_T, menuShortcutMask)));
@@ -369,6 +379,7 @@ public class VenusUI extends JFrame implements SimulatorListener {
         this.actions.add(this.settingsProgramArgumentsAction = new SettingsProgramArgumentsAction(this, "Allow program arguments", null, "If set, program arguments for MIPS program can be entered in border of Text Segment window.", null, null));
         this.actions.add(this.settingsDelayedBranchingAction = new SettingsDelayedBranchingAction(this, "Delayed branching", null, "If set, delayed branching will occur during MIPS execution.", null, null));
         this.actions.add(this.settingsSelfModifyingCodeAction = new SettingsSelfModifyingCodeAction(this, "Self-modifying code", null, "If set, the MIPS program can write and branch to both text and data segments.", null, null));
+        this.actions.add(this.settingsTimeTravelAction = new SettingsTimeTravelAction(this, "Time travel debugging", null, "If set, snapshots are taken during execution so the program can be moved back to any earlier instruction.", null, null));
         this.actions.add(this.settingsEndiannessAction = new SettingsEndiannessAction(this, "Use big-endian byte ordering", null, "If set, the bytes in a word will be ordered from most to least significant.", null, null));
         this.actions.add(this.settingsEditorAction = new SettingsEditorAction(this, "Editor Settings...", null, "View and modify text editor settings", null, null));
         this.actions.add(this.settingsHighlightingAction = new SettingsHighlightingAction(this, "Highlighting...", null, "View and modify Execute tab highlighting colors", null, null));
@@ -430,8 +441,13 @@ public class VenusUI extends JFrame implements SimulatorListener {
         runMenu.add(this.createMenuItem(this.runPauseAction));
         runMenu.add(this.createMenuItem(this.runStepForwardAction));
         runMenu.add(this.createMenuItem(this.runStepBackwardAction));
+        runMenu.add(this.createMenuItem(this.runReverseContinueAction));
+        runMenu.add(this.createMenuItem(this.runGoToInstructionAction));
         runMenu.add(this.createMenuItem(this.runResetAction));
         runMenu.addSeparator();
+        runMenu.add(this.createMenuCheckBox(this.runRecordInputAction, false));
+        runMenu.add(this.createMenuCheckBox(this.runReplayInputAction, false));
+        runMenu.addSeparator();
         runMenu.add(this.createMenuItem(this.runClearBreakpointsAction));
         runMenu.add(this.createMenuItem(this.runToggleBreakpointsAction));
         menuBar.add(runMenu);
@@ -451,6 +467,7 @@ public class VenusUI extends JFrame implements SimulatorListener {
         settingsMenu.add(this.createMenuCheckBox(this.settingsPopupInputAction, this.settings.popupSyscallInput.get()));
         settingsMenu.add(this.createMenuCheckBox(this.settingsDelayedBranchingAction, this.settings.delayedBranchingEnabled.get()));
         settingsMenu.add(this.createMenuCheckBox(this.settingsSelfModifyingCodeAction, this.settings.selfModifyingCodeEnabled.get()));
+        settingsMenu.add(this.createMenuCheckBox(this.settingsTimeTravelAction, this.settings.timeTravelEnabled.get()));
         settingsMenu.add(this.createMenuCheckBox(this.settingsEndiannessAction, this.settings.useBigEndian.get()));
         settingsMenu.addSeparator();
         settingsMenu.add(this.createMenuItem(this.settingsEditorAction));
@@ -793,4 +810,14 @@ public class VenusUI extends JFrame implements SimulatorListener {
     public RunAssembleAction getRunAssembleAction() {
         return this.runAssembleAction;
     }
+
+    /**
+     * Get a reference to the Run->Reset action.  Needed by the input log actions to start
+     * recording or replaying from the beginning of the program.
+     *
+     * @return The object for the Run->Reset operation.
+     */
+    public RunResetAction getRunResetAction() {
+        return this.runResetAction;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+package mars.venus.actions.run;
+
+import mars.simulator.Simulator;
+import mars.simulator.TimeTravel;
+import mars.venus.VenusUI;
+import mars.venus.actions.VenusAction;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+
+/**
+ * Action for the Run -> Go to Instruction menu item.
+ */
+public class RunGoToInstructionAction extends VenusAction {
+    public RunGoToInstructionAction(VenusUI gui, Integer mnemonic, KeyStroke accel) {
+        super(gui, "Go to Instruction...", null, "Move to any point in the execution history", mnemonic, accel);
+    }
+
+    /**
+     * Prompt for an instruction count, then move the program to the state after that many instructions
+     * have been executed.
+     */
+    @Override
+    public void actionPerformed(ActionEvent event) {
+        TimeTravel timeTravel = Simulator.getInstance().getTimeTravel();
+        long earliest = timeTravel.getEarliestInstruction();
+        long latest = timeTravel.getLatestInstruction();
+        String input = (String) JOptionPane.showInputDialog(
+            this.gui,
+            "Enter the number of instructions executed (" + earliest + " to " + latest + "):",
+            "Go to Instruction",
+            JOptionPane.QUESTION_MESSAGE,
+            null,
+            null,
+            Long.toString(timeTravel.getInstructionCount())
+        );
+        if (input == null) {
+            return;
+        }
+        long target;
+        try {
+            target = Long.parseLong(input.trim());
+        }
+        catch (NumberFormatException exception) {
+            JOptionPane.showMessageDialog(this.gui, "\"" + input.trim() + "\" is not a valid instruction count.", "Go to Instruction", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        RunStepBackwardAction.travel(this.gui, () -> timeTravel.goToInstruction(target));
+    }
+
+    @Override
+    public void update() {
+        TimeTravel timeTravel = Simulator.getInstance().getTimeTravel();
+        this.setEnabled(this.gui.getProgramStatus().isRunnable() && timeTravel.isActive()
+            && timeTravel.getLatestInstruction() > timeTravel.getEarliestInstruction());
+    }
+}
@@ -0,0 +1,66 @@
+package mars.venus.actions.run;
+
+import mars.simulator.InputLog;
+import mars.simulator.Simulator;
+import mars.venus.VenusUI;
+import mars.venus.actions.VenusAction;
+import mars.venus.execute.ProgramStatus;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Action for the Run -> Record Input to File menu item.
+ */
+public class RunRecordInputAction extends VenusAction {
+    public RunRecordInputAction(VenusUI gui, Integer mnemonic, KeyStroke accel) {
+        super(gui, "Record Input to File...", null, "Record all input the program receives so the run can be replayed exactly", mnemonic, accel);
+    }
+
+    /**
+     * Start recording the input log to a file chosen by the user, from the beginning of the program,
+     * or stop recording if a file is already being recorded.
+     */
+    @Override
+    public void actionPerformed(ActionEvent event) {
+        JCheckBoxMenuItem checkBox = (JCheckBoxMenuItem) event.getSource();
+        InputLog inputLog = Simulator.getInstance().getInputLog();
+        if (!checkBox.isSelected()) {
+            try {
+                inputLog.stopRecordingFile();
+            }
+            catch (IOException exception) {
+                JOptionPane.showMessageDialog(this.gui, "Unable to write the input log: " + exception.getMessage(), this.getName(), JOptionPane.ERROR_MESSAGE);
+            }
+            return;
+        }
+
+        JFileChooser fileChooser = new JFileChooser(this.gui.getEditor().getCurrentSaveDirectory());
+        fileChooser.setDialogTitle("Record Input to File");
+        if (fileChooser.showSaveDialog(this.gui) != JFileChooser.APPROVE_OPTION) {
+            checkBox.setSelected(false);
+            return;
+        }
+        File file = fileChooser.getSelectedFile();
+        try {
+            inputLog.startRecordingFile(file.toPath());
+        }
+        catch (IOException exception) {
+            JOptionPane.showMessageDialog(this.gui, "Unable to open " + file + ": " + exception.getMessage(), this.getName(), JOptionPane.ERROR_MESSAGE);
+            checkBox.setSelected(false);
+            return;
+        }
+        // The recording must begin with the program, so start it over if it has already run
+        if (this.gui.getProgramStatus().hasStarted()) {
+            this.gui.getRunResetAction().actionPerformed(event);
+        }
+        this.gui.getMessagesPane().getMessages().writeOutput(this.getName() + ": recording input to " + file + "\n");
+    }
+
+    @Override
+    public void update() {
+        this.setEnabled(this.gui.getProgramStatus() != ProgramStatus.RUNNING);
+    }
+}
@@ -0,0 +1,61 @@
+package mars.venus.actions.run;
+
+import mars.simulator.InputLog;
+import mars.simulator.Simulator;
+import mars.venus.VenusUI;
+import mars.venus.actions.VenusAction;
+import mars.venus.execute.ProgramStatus;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Action for the Run -> Replay Input from File menu item.
+ */
+public class RunReplayInputAction extends VenusAction {
+    public RunReplayInputAction(VenusUI gui, Integer mnemonic, KeyStroke accel) {
+        super(gui, "Replay Input from File...", null, "Feed the program input recorded earlier instead of waiting for it", mnemonic, accel);
+    }
+
+    /**
+     * Start replaying an input log file chosen by the user from the beginning of the program,
+     * or stop replaying if a file is already being replayed.
+     */
+    @Override
+    public void actionPerformed(ActionEvent event) {
+        JCheckBoxMenuItem checkBox = (JCheckBoxMenuItem) event.getSource();
+        InputLog inputLog = Simulator.getInstance().getInputLog();
+        if (!checkBox.isSelected()) {
+            inputLog.stopReplayingFile();
+            return;
+        }
+
+        JFileChooser fileChooser = new JFileChooser(this.gui.getEditor().getCurrentSaveDirectory());
+        fileChooser.setDialogTitle("Replay Input from File");
+        if (fileChooser.showOpenDialog(this.gui) != JFileChooser.APPROVE_OPTION) {
+            checkBox.setSelected(false);
+            return;
+        }
+        File file = fileChooser.getSelectedFile();
+        try {
+            inputLog.startReplayingFile(file.toPath());
+        }
+        catch (IOException exception) {
+            JOptionPane.showMessageDialog(this.gui, "Unable to read " + file + ": " + exception.getMessage(), this.getName(), JOptionPane.ERROR_MESSAGE);
+            checkBox.setSelected(false);
+            return;
+        }
+        // The replay must begin with the program, so start it over if it has already run
+        if (this.gui.getProgramStatus().hasStarted()) {
+            this.gui.getRunResetAction().actionPerformed(event);
+        }
+        this.gui.getMessagesPane().getMessages().writeOutput(this.getName() + ": replaying input from " + file + "\n");
+    }
+
+    @Override
+    public void update() {
+        this.setEnabled(this.gui.getProgramStatus() != ProgramStatus.RUNNING);
+    }
+}
@@ -0,0 +1,34 @@
+package mars.venus.actions.run;
+
+import mars.simulator.Simulator;
+import mars.simulator.TimeTravel;
+import mars.venus.VenusUI;
+import mars.venus.actions.VenusAction;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+
+/**
+ * Action for the Run -> Reverse Continue menu item.
+ */
+public class RunReverseContinueAction extends VenusAction {
+    public RunReverseContinueAction(VenusUI gui, Integer mnemonic, KeyStroke accel) {
+        super(gui, "Reverse Continue", null, "Run backward to the previous breakpoint", mnemonic, accel);
+    }
+
+    /**
+     * Move back to the most recent point at which a breakpoint was hit, or to the earliest point in the history
+     * if no breakpoint was hit.
+     */
+    @Override
+    public void actionPerformed(ActionEvent event) {
+        TimeTravel timeTravel = Simulator.getInstance().getTimeTravel();
+        int[] breakPoints = this.gui.getMainPane().getExecuteTab().getTextSegmentWindow().getSortedBreakPointsArray();
+        RunStepBackwardAction.travel(this.gui, () -> timeTravel.reverseContinue(breakPoints));
+    }
+
+    @Override
+    public void update() {
+        this.setEnabled(this.gui.getProgramStatus().isRunnable() && Simulator.getInstance().getTimeTravel().canGoBack());
+    }
+}
@@ -1,6 +1,8 @@
 package mars.venus.actions.run;
 
 import mars.Application;
+import mars.simulator.Simulator;
+import mars.simulator.TimeTravel;
 import mars.venus.RegistersPane;
 import mars.venus.execute.ExecuteTab;
 import mars.venus.actions.VenusAction;
@@ -51,20 +53,58 @@ public class RunStepBackwardAction extends VenusAction {
      */
     @Override
     public void actionPerformed(ActionEvent event) {
-        this.gui.getMessagesPane().selectConsoleTab();
-        RegistersPane registersPane = this.gui.getRegistersPane();
-        ExecuteTab executeTab = this.gui.getMainPane().getExecuteTab();
-        executeTab.getTextSegmentWindow().setCodeHighlighting(true);
+        TimeTravel timeTravel = Simulator.getInstance().getTimeTravel();
+        if (timeTravel.canGoBack()) {
+            travel(this.gui, () -> timeTravel.goToInstruction(timeTravel.getInstructionCount() - 1));
+            return;
+        }
 
         boolean inDelaySlot = Application.program.getBackStepper().isInDelaySlot(); // Added 25 June 2007
+        updateAfter(this.gui, () -> Application.program.getBackStepper().backStep(), inDelaySlot);
+    }
+
+    @Override
+    public void update() {
+        this.setEnabled(this.gui.getProgramStatus().isRunnable() && (Simulator.getInstance().getTimeTravel().canGoBack()
+            || (Application.isBackSteppingEnabled() && !Application.program.getBackStepper().isEmpty())));
+    }
+
+    /**
+     * Move the simulated machine to another point in its history using {@link TimeTravel},
+     * then refresh the Execute tab to show the new state and pause the program there.
+     * The program is shown as running while instructions are re-executed, which happens on a separate thread
+     * (see {@link Simulator#travel(Runnable, Runnable)}), so Pause and Stop remain available.
+     *
+     * @param gui    The GUI to refresh.
+     * @param travel The operation which changes the state of the simulated machine.
+     */
+    static void travel(VenusUI gui, Runnable travel) {
+        startUpdate(gui);
+        gui.setProgramStatus(ProgramStatus.RUNNING);
+        Simulator.getInstance().travel(travel, () -> SwingUtilities.invokeLater(() -> finishUpdate(gui, null)));
+    }
+
+    private static void updateAfter(VenusUI gui, Runnable change, Boolean inDelaySlot) {
+        startUpdate(gui);
+        change.run();
+        finishUpdate(gui, inDelaySlot);
+    }
+
+    private static void startUpdate(VenusUI gui) {
+        gui.getMessagesPane().selectConsoleTab();
+        RegistersPane registersPane = gui.getRegistersPane();
+        ExecuteTab executeTab = gui.getMainPane().getExecuteTab();
+        executeTab.getTextSegmentWindow().setCodeHighlighting(true);
 
         executeTab.getDataSegmentWindow().startObservingMemory();
         registersPane.getRegistersWindow().startObservingRegisters();
         registersPane.getCoprocessor0Window().startObservingRegisters();
         registersPane.getCoprocessor1Window().startObservingRegisters();
+    }
 
-        Application.program.getBackStepper().backStep();
-
+    private static void finishUpdate(VenusUI gui, Boolean inDelaySlot) {
+        RegistersPane registersPane = gui.getRegistersPane();
+        ExecuteTab executeTab = gui.getMainPane().getExecuteTab();
         executeTab.getDataSegmentWindow().stopObservingMemory();
         registersPane.getRegistersWindow().stopObservingRegisters();
         registersPane.getCoprocessor0Window().stopObservingRegisters();
@@ -73,13 +113,12 @@ public class RunStepBackwardAction extends VenusAction {
         registersPane.getCoprocessor1Window().updateRegisters();
         registersPane.getCoprocessor0Window().updateRegisters();
         executeTab.getDataSegmentWindow().updateValues();
+        if (inDelaySlot == null) {
+            // The restored state records whether a delayed branch is pending
+            inDelaySlot = Simulator.getInstance().isInDelaySlot();
+        }
         executeTab.getTextSegmentWindow().highlightStepAtPC(inDelaySlot); // Argument added 25 June 2007
 
-        this.gui.setProgramStatus(ProgramStatus.PAUSED);
-    }
-
-    @Override
-    public void update() {
-        this.setEnabled(this.gui.getProgramStatus().isRunnable() && Application.isBackSteppingEnabled() && !Application.program.getBackStepper().isEmpty());
+        gui.setProgramStatus(ProgramStatus.PAUSED);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,27 @@
+package mars.venus.actions.settings;
+
+import mars.Application;
+import mars.simulator.Simulator;
+import mars.venus.actions.VenusAction;
+import mars.venus.VenusUI;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+
+/**
+ * Action class for the Settings menu item to control whether snapshots of the simulated machine are taken
+ * during execution, allowing the program to be moved back to any earlier instruction.
+ */
+public class SettingsTimeTravelAction extends VenusAction {
+    public SettingsTimeTravelAction(VenusUI gui, String name, Icon icon, String description, Integer mnemonic, KeyStroke accel) {
+        super(gui, name, icon, description, mnemonic, accel);
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent event) {
+        boolean enabled = ((JCheckBoxMenuItem) event.getSource()).isSelected();
+        Application.getSettings().timeTravelEnabled.set(enabled);
+        Simulator.getInstance().getTimeTravel().setEnabled(enabled);
+        this.gui.setProgramStatus(this.gui.getProgramStatus());
+    }
+}
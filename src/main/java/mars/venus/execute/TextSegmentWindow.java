@@ -15,6 +15,7 @@ import javax.swing.border.EmptyBorder;
 import javax.swing.event.*;
 import javax.swing.table.*;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.util.*;
@@ -126,6 +127,8 @@ public class TextSegmentWindow extends JInternalFrame implements SimulatorListen
         int addressBase = this.gui.getMainPane().getExecuteTab().getAddressDisplayBase();
         this.codeHighlighting = true;
         this.breakpointsEnabled = true;
+        // Conditions refer to addresses of the previous assembly
+        Simulator.getInstance().clearBreakpointConditions();
         List<ProgramStatement> statements = Application.program.getMachineStatements();
         this.data = new Object[statements.size()][COLUMN_NAMES.length];
         this.intAddresses = new int[this.data.length];
@@ -475,6 +478,7 @@ public class TextSegmentWindow extends JInternalFrame implements SimulatorListen
      * updates the display of the breakpoint column.
      */
     public void clearAllBreakpoints() {
+        Simulator.getInstance().clearBreakpointConditions();
         for (int row = 0; row < this.tableModel.getRowCount(); row++) {
             if ((Boolean) this.data[row][BREAKPOINT_COLUMN]) {
                 // Must use this method to assure display updated and listener notified
@@ -492,6 +496,48 @@ public class TextSegmentWindow extends JInternalFrame implements SimulatorListen
         ((JCheckBox) ((DefaultCellEditor) this.table.getCellEditor(0, BREAKPOINT_COLUMN)).getComponent()).setSelected(false);
     }
 
+    /**
+     * Prompt the user for the condition of the breakpoint on a given row, then set the breakpoint with
+     * that condition. An empty condition makes the breakpoint unconditional.
+     *
+     * @param row The row of the instruction in the table.
+     */
+    public void editBreakpointCondition(int row) {
+        int address = this.intAddresses[row];
+        BreakpointCondition condition = Simulator.getInstance().getBreakpointCondition(address);
+        String source = (condition == null) ? "" : condition.getSource();
+        while (true) {
+            source = (String) JOptionPane.showInputDialog(
+                this.gui,
+                "Pause at " + Binary.intToHexString(address) + " only when this condition is nonzero\n"
+                    + "(e.g. $t0 == 5 && mem[$sp + 4] > 100, or hits >= 1000), or leave empty to always pause:",
+                "Breakpoint Condition",
+                JOptionPane.QUESTION_MESSAGE,
+                null,
+                null,
+                source
+            );
+            if (source == null) {
+                return;
+            }
+            if (source.isBlank()) {
+                Simulator.getInstance().setBreakpointCondition(address, null);
+                break;
+            }
+            try {
+                Simulator.getInstance().setBreakpointCondition(address, BreakpointCondition.parse(source));
+                break;
+            }
+            catch (IllegalArgumentException exception) {
+                JOptionPane.showMessageDialog(this.gui, "Invalid condition: " + exception.getMessage(), "Breakpoint Condition", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+        if (!(Boolean) this.data[row][BREAKPOINT_COLUMN]) {
+            // Must use this method to assure display updated and listener notified
+            this.tableModel.setValueAt(Boolean.TRUE, row, BREAKPOINT_COLUMN);
+        }
+    }
+
     /**
      * Highlights the source code line whose address matches the current
      * program counter value.  This is used for stepping through code
@@ -967,6 +1013,47 @@ public class TextSegmentWindow extends JInternalFrame implements SimulatorListen
 
         public TextSegmentTable(TextTableModel model) {
             super(model);
+            // Right-clicking a breakpoint check box edits the condition of the breakpoint
+            this.addMouseListener(new MouseAdapter() {
+                @Override
+                public void mousePressed(MouseEvent event) {
+                    this.showPopup(event);
+                }
+
+                @Override
+                public void mouseReleased(MouseEvent event) {
+                    this.showPopup(event);
+                }
+
+                private void showPopup(MouseEvent event) {
+                    int row = TextSegmentTable.this.rowAtPoint(event.getPoint());
+                    int column = TextSegmentTable.this.columnAtPoint(event.getPoint());
+                    if (!event.isPopupTrigger() || row < 0 || column < 0
+                        || TextSegmentTable.this.convertColumnIndexToModel(column) != BREAKPOINT_COLUMN) {
+                        return;
+                    }
+                    JPopupMenu popup = new JPopupMenu();
+                    JMenuItem editItem = new JMenuItem("Edit Breakpoint Condition...");
+                    editItem.addActionListener(action -> TextSegmentWindow.this.editBreakpointCondition(row));
+                    popup.add(editItem);
+                    popup.show(TextSegmentTable.this, event.getX(), event.getY());
+                }
+            });
+        }
+
+        // Show the condition and hit count of a conditional breakpoint when hovering over its check box
+        @Override
+        public String getToolTipText(MouseEvent event) {
+            int row = this.rowAtPoint(event.getPoint());
+            int column = this.columnAtPoint(event.getPoint());
+            if (row >= 0 && column >= 0 && this.convertColumnIndexToModel(column) == BREAKPOINT_COLUMN) {
+                BreakpointCondition condition = Simulator.getInstance().getBreakpointCondition(TextSegmentWindow.this.intAddresses[row]);
+                if (condition != null) {
+                    return "Condition: " + condition.getSource() + " (hits: " + condition.getHitCount() + ")";
+                }
+                return "Right-click to add a condition to this breakpoint";
+            }
+            return super.getToolTipText(event);
         }
 
         private static final String[] COLUMN_TOOL_TIPS = {